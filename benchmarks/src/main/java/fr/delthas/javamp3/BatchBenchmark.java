@@ -0,0 +1,87 @@
+package fr.delthas.javamp3;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the decoding time of a directory of files with {@link BatchDecoder#decodeAll(List, BatchDecoder.Sink)}, for several parallelisms, to show how it
+ * scales with the number of cores.
+ * <p>
+ * The directory holds {@link #files} copies of a sample repeated {@link #repeat} times, written to a temporary directory, so that the files are likely in
+ * the page cache and the decoding is CPU-bound. With a parallelism up to the number of cores, the time should decrease almost linearly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchBenchmark {
+  @Param("/mp3/stereo_kikuo.mp3")
+  public String sample;
+
+  @Param("1")
+  public int repeat;
+
+  @Param("16")
+  public int files;
+
+  @Param({"1", "2", "4", "8"})
+  public int parallelism;
+
+  /* Virtual threads require Java 21 */
+  @Param("false")
+  public boolean virtualThreads;
+
+  private Path directory;
+  private List<Path> paths;
+  private BatchDecoder decoder;
+
+  @Setup
+  public void setup() throws IOException {
+    byte[] data = Fixtures.generate(sample, repeat);
+    directory = Files.createTempDirectory("javamp3-batch");
+    paths = new ArrayList<>();
+    for(int i = 0; i < files; i++) {
+      Path path = directory.resolve(i + ".mp3");
+      Files.write(path, data);
+      paths.add(path);
+    }
+    decoder = new BatchDecoder(parallelism);
+    decoder.setVirtualThreads(virtualThreads);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try(Stream<Path> stream = Files.list(directory)) {
+      for(Path path : (Iterable<Path>) stream::iterator) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public long decodeAll() throws InterruptedException {
+    long samples = 0;
+    for(BatchDecoder.Result result : decoder.decodeAll(paths, (path, sound) -> {
+      byte[] b = new byte[64 * 1024];
+      while(sound.read(b, 0, b.length) != -1) {
+        // discard the samples
+      }
+    })) {
+      if(!result.isSuccess()) {
+        throw new IllegalStateException(result.getError());
+      }
+      samples += result.getSamples();
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,30 @@
+package fr.delthas.javamp3;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate of the decoder is reported along with its speed.
+ * <p>
+ * The arguments are the usual JMH command line options, e.g. {@code java -jar target/benchmarks.jar StageBenchmark.huffman -p table=24}.
+ */
+public final class Benchmarks {
+  private Benchmarks() {
+    throw new IllegalStateException("This class cannot be instantiated!");
+  }
+
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if(options.shouldHelp() || options.shouldList() || options.shouldListProfilers() || options.shouldListResultFormats() || options.shouldListWithParams()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,60 @@
+package fr.delthas.javamp3;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Generates the encoded inputs of the benchmarks from the samples of the library tests.
+ * <p>
+ * The samples are only a few seconds long, so they are repeated to build longer sounds: their tags are stripped, and their frames are concatenated,
+ * which is a valid MPEG stream since the first frame of each sample doesn't use the bit reservoir.
+ */
+final class Fixtures {
+  private Fixtures() {
+    throw new IllegalStateException("This class cannot be instantiated!");
+  }
+
+  /**
+   * Returns the frames of the specified sample repeated the specified number of times.
+   *
+   * @param name The name of the sample resource, e.g. {@code /mp3/stereo_kikuo.mp3}.
+   * @param repeat The number of times the sample is repeated.
+   */
+  static byte[] generate(String name, int repeat) throws IOException {
+    byte[] sample = read(name);
+    int from = 0;
+    int to = sample.length;
+    try(Sound sound = new Sound(ByteBuffer.wrap(sample))) {
+      for(Tag tag : sound.getTags()) {
+        if(tag.getOffset() == 0) {
+          from = Math.max(from, tag.getLength());
+        } else {
+          to = (int) Math.min(to, tag.getOffset());
+        }
+      }
+    }
+    byte[] data = new byte[(to - from) * repeat];
+    for(int i = 0; i < repeat; i++) {
+      System.arraycopy(sample, from, data, i * (to - from), to - from);
+    }
+    return data;
+  }
+
+  /**
+   * Returns the content of the specified sample, tags included.
+   */
+  static byte[] read(String name) throws IOException {
+    try(InputStream in = Fixtures.class.getResourceAsStream(name)) {
+      if(in == null) {
+        throw new FileNotFoundException("No benchmark sample named " + name);
+      }
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      byte[] b = new byte[8192];
+      int n;
+      while((n = in.read(b)) != -1) {
+        os.write(b, 0, n);
+      }
+      return os.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package fr.delthas.javamp3;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end decoding time of whole sounds with {@link Sound#read(byte[], int, int)}, for every layer and channel mode, and the time to
+ * skip whole sounds read from a non-seekable stream with {@link Sound#skip(long)}.
+ * <p>
+ * Each sound is a sample repeated {@link #repeat} times, decoded from a heap buffer so that no I/O is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SoundBenchmark {
+  @Param({
+          "/mp1/mono_kikuo.mp1",
+          "/mp1/stereo_kikuo.mp1",
+          "/mp2/mono_kikuo.mp2",
+          "/mp2/stereo_kikuo.mp2",
+          "/mp3/mono_kikuo.mp3",
+          "/mp3/stereo_kikuo.mp3",
+          "/mp3/joint_stereo_kikuo.mp3",
+          "/mp3/joint_stereo_22050_kikuo.mp3",
+          "/mp3/mono_8000_kikuo.mp3",
+  })
+  public String sample;
+
+  @Param("8")
+  public int repeat;
+
+  @Param({"PCM_16", "FLOAT_32"})
+  public SampleFormat format;
+
+  private byte[] data;
+  private final byte[] b = new byte[64 * 1024];
+
+  @Setup
+  public void setup() throws IOException {
+    data = Fixtures.generate(sample, repeat);
+  }
+
+  @Benchmark
+  public long read() throws IOException {
+    long total = 0;
+    try(Sound sound = new Sound(ByteBuffer.wrap(data), format)) {
+      int n;
+      while((n = sound.read(b, 0, b.length)) != -1) {
+        total += n;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long skip() throws IOException {
+    try(Sound sound = new Sound(new ByteArrayInputStream(data), format)) {
+      return sound.skip(Integer.MAX_VALUE);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package fr.delthas.javamp3;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding stages separately, each on the amount of data of one Layer III granule of one channel.
+ * <p>
+ * The inputs are pseudo-random rather than extracted from a sound, so that every benchmark does the same work on every run, and so that the fast paths
+ * for silent data are never taken.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+  private static final long SEED = 0x6A6176614D5033L;
+
+  @State(Scope.Thread)
+  public static class Bits {
+    final byte[] data = new byte[4096];
+    final Decoder.BitReader reader = new Decoder.BitReader();
+
+    @Setup
+    public void setup() {
+      new Random(SEED).nextBytes(data);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Huffman {
+    /* A table without linbits, tables with linbits, and a quadruples table */
+    @Param({"7", "16", "24", "32"})
+    public int table;
+
+    final byte[] data = new byte[4096];
+    final Decoder.BitReader reader = new Decoder.BitReader();
+    final int[] values = new int[4];
+
+    @Setup
+    public void setup() {
+      new Random(SEED).nextBytes(data);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Spectrum {
+    final int[] scalefac_scale = {0, 1, 0, 1};
+    final int[] preflag = {0, 1, 0, 1};
+    final int[] global_gain = {150, 160, 150, 160};
+    final int[] subblock_gain = new int[2 * 2 * 3];
+    final int[] scalefac_l = new int[2 * 2 * 21];
+    final int[] scalefac_s = new int[2 * 2 * 12 * 3];
+    /* Quantized values, as read by the Huffman decoder */
+    final float[] quantized = new float[2 * 2 * 576];
+    final float[] is = new float[2 * 2 * 576];
+    final float[] rawout = new float[36];
+    final double[] imdct = new double[45];
+
+    @Setup
+    public void setup() {
+      Random random = new Random(SEED);
+      for(int i = 0; i < scalefac_l.length; i++) {
+        scalefac_l[i] = random.nextInt(16);
+      }
+      for(int i = 0; i < scalefac_s.length; i++) {
+        scalefac_s[i] = random.nextInt(16);
+      }
+      for(int i = 0; i < subblock_gain.length; i++) {
+        subblock_gain[i] = random.nextInt(8);
+      }
+      for(int i = 0; i < quantized.length; i++) {
+        quantized[i] = random.nextInt(64) - 32;
+      }
+      for(int i = 0; i < is.length; i++) {
+        is[i] = (float) random.nextGaussian();
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Synthesis {
+    final float[] samples = new float[18 * 32];
+    final float[] pcm = new float[18 * 32];
+    Decoder.SoundData soundData;
+
+    @Setup
+    public void setup() throws IOException {
+      Random random = new Random(SEED);
+      for(int i = 0; i < samples.length; i++) {
+        samples[i] = (float) random.nextGaussian() * 0.1f;
+      }
+      soundData = Decoder.init(new ByteArrayInputStream(Fixtures.read("/mp3/stereo_kikuo.mp3")));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Packing {
+    @Param({"PCM_16", "FLOAT_32"})
+    public SampleFormat format;
+
+    Decoder.SoundData soundData;
+    byte[] dst;
+
+    @Setup
+    public void setup() throws IOException {
+      soundData = Decoder.init(new ByteArrayInputStream(Fixtures.read("/mp3/stereo_kikuo.mp3")));
+      /* Skip the silent start of the sample */
+      for(int i = 0; i < 100; i++) {
+        Decoder.decodeFrame(soundData);
+      }
+      dst = new byte[soundData.pcmLength * format.getBytesPerSample()];
+    }
+  }
+
+  /**
+   * Reads fields of the widths found in side information and scalefactors.
+   */
+  @Benchmark
+  public int bitReader(Bits state) {
+    Decoder.BitReader reader = state.reader;
+    Decoder.reset(reader, state.data, 0, state.data.length);
+    int sum = 0;
+    for(int i = 0; i < 576; i++) {
+      sum += Decoder.read(reader, 1 + (i & 15));
+    }
+    return sum;
+  }
+
+  /**
+   * Decodes the 576 values of a granule, by pairs or by quadruples.
+   */
+  @Benchmark
+  public int huffman(Huffman state) {
+    Decoder.BitReader reader = state.reader;
+    Decoder.reset(reader, state.data, 0, state.data.length);
+    int[] values = state.values;
+    int step = state.table >= 32 ? 4 : 2;
+    int sum = 0;
+    for(int i = 0; i < 576; i += step) {
+      Decoder.huffman_III(reader, state.table, values);
+      sum += values[0] + values[1];
+    }
+    return sum;
+  }
+
+  /**
+   * Requantizes the 576 values of a long block granule, including the copy of the quantized values.
+   */
+  @Benchmark
+  public float requantizeLong(Spectrum state) {
+    float[] is = state.is;
+    System.arraycopy(state.quantized, 0, is, 0, 576);
+    for(int i = 0; i < 576; i++) {
+      Decoder.requantize_long_III(0, 0, state.scalefac_scale, state.preflag, state.global_gain, state.scalefac_l, is, i, Math.min(i / 27, 21));
+    }
+    return is[575];
+  }
+
+  /**
+   * Requantizes the 576 values of a short block granule, including the copy of the quantized values.
+   */
+  @Benchmark
+  public float requantizeShort(Spectrum state) {
+    float[] is = state.is;
+    System.arraycopy(state.quantized, 0, is, 0, 576);
+    for(int i = 0; i < 576; i++) {
+      Decoder.requantize_short_III(0, 0, state.scalefac_scale, state.subblock_gain, state.global_gain, state.scalefac_s, is, i, Math.min(i / 48, 12), (i >> 4) % 3);
+    }
+    return is[575];
+  }
+
+  /**
+   * Runs the IMDCT of the 32 subbands of a long block granule.
+   */
+  @Benchmark
+  public float imdctLong(Spectrum state) {
+    float sum = 0;
+    for(int sb = 0; sb < 32; sb++) {
+      Decoder.imdct_III(state.is, sb * 18, state.rawout, 0, state.imdct);
+      sum += state.rawout[sb];
+    }
+    return sum;
+  }
+
+  /**
+   * Runs the IMDCT of the 32 subbands of a short block granule.
+   */
+  @Benchmark
+  public float imdctShort(Spectrum state) {
+    float sum = 0;
+    for(int sb = 0; sb < 32; sb++) {
+      Decoder.imdct_III(state.is, sb * 18, state.rawout, 2, state.imdct);
+      sum += state.rawout[sb];
+    }
+    return sum;
+  }
+
+  /**
+   * Runs the polyphase synthesis of the 18 time slots of a granule.
+   */
+  @Benchmark
+  public float synthesis(Synthesis state) {
+    for(int ss = 0; ss < 18; ss++) {
+      Decoder.synth(state.samples, ss, 18, state.soundData, 0, state.pcm, ss * 32, 1);
+    }
+    return state.pcm[575];
+  }
+
+  /**
+   * Converts the samples of a stereo frame to the output format.
+   */
+  @Benchmark
+  public byte[] packing(Packing state) {
+    Decoder.pack(state.soundData, state.format, 0, state.soundData.pcmLength, state.dst, 0);
+    return state.dst;
+  }
+}
@@ -0,0 +1,305 @@
+package fr.delthas.javamp3;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A decoder of batches of files, that decodes several files concurrently, e.g. to transcode a whole music library.
+ * <p>
+ * {@link #decodeAll(List, Sink)} opens a {@link Sound} for each file, passes it to a {@link Sink} that consumes its samples, e.g. by writing them to another file, and closes it. Files are decoded concurrently, at most {@link #getParallelism()} at a time, which bounds the memory used by the batch regardless of its size: each file in flight takes a decoder, reused across files (see {@link DecoderPool}), and a memory mapping of the file.
+ * <p>
+ * On Java 21 and later, each file is decoded on its own virtual thread by default, so that sinks blocking on I/O don't hold a platform thread, see {@link #setVirtualThreads(boolean)}. On earlier versions, files are decoded on a pool of {@link #getParallelism()} platform threads.
+ * <p>
+ * Errors are isolated per file: a file that can't be decoded, or whose sink throws, is reported as failed in its {@link Result}, and doesn't stop the other files from being decoded. The progress of the batch may be followed with {@link #setProgress(Consumer)}.
+ *
+ * @see Sound
+ * @see DecoderPool
+ */
+public final class BatchDecoder {
+  /* Executors.newVirtualThreadPerTaskExecutor(), looked up reflectively so that the library still runs on Java 8, or null if unavailable */
+  private static final Method VIRTUAL_THREAD_EXECUTOR;
+  
+  static {
+    Method method;
+    try {
+      method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch(NoSuchMethodException e) {
+      method = null;
+    }
+    VIRTUAL_THREAD_EXECUTOR = method;
+  }
+  
+  /**
+   * A consumer of the sounds of a batch, see {@link #decodeAll(List, Sink)}.
+   */
+  @FunctionalInterface
+  public interface Sink {
+    /**
+     * Consumes the samples of the sound of the specified file, typically by reading it fully, e.g. with {@link Sound#decodeFullyInto(java.io.OutputStream)}.
+     * <p>
+     * This method is called concurrently for different files, from the threads decoding the batch. The sound is closed once this method returns, and must not be used afterwards.
+     *
+     * @param path The path of the file.
+     * @param sound The sound of the file.
+     * @throws IOException If an {@link IOException} is thrown when reading the sound or when writing its samples, in which case the file is reported as failed.
+     */
+    void accept(Path path, Sound sound) throws IOException;
+  }
+  
+  /**
+   * The outcome of the decoding of a file of a batch.
+   */
+  public static final class Result {
+    private final Path path;
+    private final long samples;
+    private final long nanos;
+    private final Exception error;
+  
+    Result(Path path, long samples, long nanos, Exception error) {
+      this.path = path;
+      this.samples = samples;
+      this.nanos = nanos;
+      this.error = error;
+    }
+  
+    /**
+     * Returns the path of the file.
+     *
+     * @return The path of the file, non-null.
+     */
+    public Path getPath() {
+      return path;
+    }
+  
+    /**
+     * Returns the number of samples per channel of the file read by the sink, that is its position once the sink returned, see {@link Sound#getPosition()}.
+     *
+     * @return The number of samples per channel read, or 0 if the file failed before being opened.
+     */
+    public long getSamples() {
+      return samples;
+    }
+  
+    /**
+     * Returns the time spent decoding the file, from its opening to its closing, including the time spent in the sink.
+     *
+     * @return The time spent decoding the file, in nanoseconds.
+     */
+    public long getNanos() {
+      return nanos;
+    }
+  
+    /**
+     * Returns whether the file was decoded successfully, that is without error.
+     *
+     * @return Whether the file was decoded successfully.
+     */
+    public boolean isSuccess() {
+      return error == null;
+    }
+  
+    /**
+     * Returns the error that made the decoding of the file fail, or null if it was decoded successfully.
+     * <p>
+     * This is typically an {@link IOException} thrown when opening or decoding the file, or by the sink.
+     *
+     * @return The error of the file, or null if it was decoded successfully.
+     */
+    public Exception getError() {
+      return error;
+    }
+  
+    @Override
+    public String toString() {
+      return "Result{path=" + path + ", samples=" + samples + ", nanos=" + nanos + ", error=" + error + '}';
+    }
+  }
+  
+  private final int parallelism;
+  private final DecoderPool pool;
+  private SampleFormat format = SampleFormat.PCM_16;
+  private boolean virtualThreads = VIRTUAL_THREAD_EXECUTOR != null;
+  private Consumer<Result> progress;
+  
+  /**
+   * Creates a new batch decoder, that decodes as many files concurrently as there are available processors.
+   */
+  public BatchDecoder() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * Creates a new batch decoder, that decodes at most the specified number of files concurrently.
+   * <p>
+   * Decoding is CPU-bound, so the number of available processors is usually best, unless the sinks spend a significant time blocking on I/O, in which case a higher parallelism with virtual threads may be faster.
+   *
+   * @param parallelism The maximum number of files decoded concurrently, must be positive.
+   */
+  public BatchDecoder(int parallelism) {
+    if(parallelism <= 0) {
+      throw new IllegalArgumentException("The parallelism must be positive!");
+    }
+    this.parallelism = parallelism;
+    pool = new DecoderPool(parallelism);
+  }
+  
+  /**
+   * Returns the maximum number of files decoded concurrently by this batch decoder.
+   *
+   * @return The maximum number of files decoded concurrently.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+  
+  /**
+   * Sets the format of the samples of the sounds passed to the sink. The format is {@link SampleFormat#PCM_16} by default.
+   *
+   * @param format The format of the decoded samples, must be non-null.
+   */
+  public void setFormat(SampleFormat format) {
+    this.format = Objects.requireNonNull(format, "The specified SampleFormat must be non-null!");
+  }
+  
+  /**
+   * Returns the format of the samples of the sounds passed to the sink.
+   *
+   * @return The format of the decoded samples, non-null.
+   */
+  public SampleFormat getFormat() {
+    return format;
+  }
+  
+  /**
+   * Sets whether each file is decoded on its own virtual thread, rather than on a pool of platform threads. Virtual threads are used by default when they are available, that is on Java 21 and later.
+   *
+   * @param virtualThreads Whether to decode files on virtual threads.
+   * @throws UnsupportedOperationException If virtual threads are enabled but aren't available on this runtime.
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    if(virtualThreads && VIRTUAL_THREAD_EXECUTOR == null) {
+      throw new UnsupportedOperationException("Virtual threads aren't available on this runtime");
+    }
+    this.virtualThreads = virtualThreads;
+  }
+  
+  /**
+   * Returns whether files are decoded on virtual threads, see {@link #setVirtualThreads(boolean)}.
+   *
+   * @return Whether files are decoded on virtual threads.
+   */
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+  
+  /**
+   * Sets a callback called with the result of each file once it is decoded, or fails, e.g. to report the progress of a batch.
+   * <p>
+   * The callback is called from the threads decoding the batch, as files complete, but never concurrently, so it doesn't need to be thread-safe. It should return quickly, as it delays the other files completing meanwhile.
+   *
+   * @param progress The callback called with the result of each file, or null to remove it.
+   */
+  public void setProgress(Consumer<Result> progress) {
+    this.progress = progress;
+  }
+  
+  /**
+   * Decodes the specified files, passing the sound of each file to the specified sink, and returns their results once they are all decoded.
+   * <p>
+   * Each file is opened as with {@link Sound#Sound(Path, SampleFormat)}, with the format of this batch decoder, and closed once the sink returns. Files are started in order, and at most {@link #getParallelism()} files are decoded concurrently. Errors of a file are reported in its result, and don't stop the batch.
+   * <p>
+   * This method blocks until all the files are decoded. If the calling thread is interrupted, the threads decoding files are interrupted, and this method returns without waiting for them, nor starting the remaining files.
+   *
+   * @param paths The paths of the files to decode, must be non-null.
+   * @param sink The consumer of the sounds of the files, must be non-null.
+   * @return The results of the files, in the order of {@code paths}, non-null.
+   * @throws InterruptedException If the calling thread is interrupted while waiting for the files to be decoded.
+   */
+  public List<Result> decodeAll(List<Path> paths, Sink sink) throws InterruptedException {
+    Objects.requireNonNull(paths, "The specified List must be non-null!");
+    Objects.requireNonNull(sink, "The specified Sink must be non-null!");
+    SampleFormat format = this.format;
+    Consumer<Result> progress = this.progress;
+    ReentrantLock progressLock = new ReentrantLock();
+    /* Acquired before submitting each file, so that files not started yet don't take any memory */
+    Semaphore permits = new Semaphore(parallelism);
+    List<Future<Result>> futures = new ArrayList<>(paths.size());
+    ExecutorService executor = executor();
+    try {
+      for(Path path : paths) {
+        Objects.requireNonNull(path, "The specified List must not contain null paths!");
+        permits.acquire();
+        futures.add(executor.submit(() -> {
+          try {
+            Result result = decode(path, sink, format);
+            if(progress != null) {
+              progressLock.lock();
+              try {
+                progress.accept(result);
+              } finally {
+                progressLock.unlock();
+              }
+            }
+            return result;
+          } finally {
+            permits.release();
+          }
+        }));
+      }
+      List<Result> results = new ArrayList<>(futures.size());
+      for(Future<Result> future : futures) {
+        try {
+          results.add(future.get());
+        } catch(ExecutionException e) {
+          /* Exceptions of the files are in their results, this is an error, or an exception thrown by the progress callback */
+          Throwable cause = e.getCause();
+          if(cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw (RuntimeException) cause;
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  private Result decode(Path path, Sink sink, SampleFormat format) {
+    long start = System.nanoTime();
+    long samples = 0;
+    Exception error = null;
+    try(Sound sound = pool.open(path, format)) {
+      try {
+        sink.accept(path, sound);
+      } finally {
+        samples = sound.getPosition();
+      }
+    } catch(Exception e) {
+      error = e;
+    }
+    return new Result(path, samples, System.nanoTime() - start, error);
+  }
+  
+  private ExecutorService executor() {
+    if(virtualThreads) {
+      try {
+        return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+      } catch(ReflectiveOperationException e) {
+        throw new IllegalStateException("Shouldn't happen (internal error)", e);
+      }
+    }
+    return Executors.newFixedThreadPool(parallelism, r -> {
+      Thread thread = new Thread(r, "javamp3-batch");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
@@ -0,0 +1,22 @@
+package fr.delthas.javamp3;
+
+/**
+ * The way a resilient decoder replaces the samples of a corrupt frame, whose data can't be decoded.
+ *
+ * @see Sound#setConcealment(Concealment)
+ * @see Sound#setResilient(boolean)
+ */
+public enum Concealment {
+  /**
+   * The frame is decoded as silence. This is the default concealment.
+   * <p>
+   * The synthesis filterbanks still run over the silent frame, so that the samples fade out and back in over a few samples rather than being cut abruptly.
+   */
+  SILENCE,
+  /**
+   * The samples of the previous frame are repeated, which hides short losses better than silence in music, at the cost of audible stutter when several consecutive frames are corrupt.
+   * <p>
+   * The first frame of a stream, which has no previous frame, is decoded as silence.
+   */
+  REPEAT
+}
@@ -0,0 +1,23 @@
+package fr.delthas.javamp3;
+
+/**
+ * Whether and how the CRC of the frames that have one is checked, see {@link Sound#setCrcCheck(CrcCheck)}.
+ * <p>
+ * The CRC of a frame, when it is protected by one, covers the last bits of its header and its side information: for Layer I and II frames, their bit allocation and scalefactor selection; for Layer III frames, their side information, which describes how their main data is decoded. The samples themselves aren't covered.
+ *
+ * @see Sound#setCrcCheck(CrcCheck)
+ */
+public enum CrcCheck {
+  /**
+   * The CRC is ignored. This is the default.
+   */
+  OFF,
+  /**
+   * The CRC is checked, and frames whose CRC doesn't match are counted and reported, but still decoded as is.
+   */
+  COUNT,
+  /**
+   * The CRC is checked, and frames whose CRC doesn't match are counted, reported, and dropped: they are concealed as corrupt frames rather than decoded, see {@link Concealment}. The main data of dropped Layer III frames is still kept in the bit reservoir for the next frames.
+   */
+  DROP
+}
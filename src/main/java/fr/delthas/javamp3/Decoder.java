@@ -1,14 +1,39 @@
 package fr.delthas.javamp3;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @SuppressWarnings({"Duplicates", "PointlessArithmeticExpression"})
 final class Decoder {
   private static final float INV_SQUARE_2 = 0.70710678118654752440f;
+  /* The number of blocks between the front end and the back end of a pipelined decoder, a power of two */
+  private static final int PIPELINE_BLOCKS = 8;
+  /* The number of times a side of the pipeline yields, then parks for PIPELINE_PARK_NANOS, while waiting for the other side */
+  private static final int PIPELINE_SPINS = 64;
+  private static final long PIPELINE_PARK_NANOS = 50_000;
+  /* The number of times the producer parks while the pipeline is full, i.e. about one second, before it stops until it is needed again */
+  private static final int PIPELINE_IDLE_PARKS = 20_000;
+  /* The channel worker parks for CHANNEL_PARK_NANOS between frames, and stops after CHANNEL_IDLE_PARKS without a frame, i.e. about one second */
+  private static final long CHANNEL_PARK_NANOS = 10_000_000;
+  private static final int CHANNEL_IDLE_PARKS = 100;
   private static final int[] BITRATE_LAYER_I = {0, 32000, 64000, 96000, 128000, 160000, 192000, 224000, 256000, 288000, 320000, 352000, 384000, 416000, 448000};
   private static final int[] BITRATE_LAYER_II = {0, 32000, 48000, 56000, 64000, 80000, 96000, 112000, 128000, 160000, 192000, 224000, 256000, 320000, 384000};
   private static final int[] BITRATE_LAYER_III = {0, 32000, 40000, 48000, 56000, 64000, 80000, 96000, 112000, 128000, 160000, 192000, 224000, 256000, 320000};
-  private static final int[] SAMPLING_FREQUENCY = {44100, 48000, 32000};
+  private static final int[] BITRATE_LAYER_I_LSF = {0, 32000, 48000, 56000, 64000, 80000, 96000, 112000, 128000, 144000, 160000, 176000, 192000, 224000, 256000};
+  private static final int[] BITRATE_LAYER_II_III_LSF = {0, 8000, 16000, 24000, 32000, 40000, 48000, 56000, 64000, 80000, 96000, 112000, 128000, 144000, 160000};
+  /* MPEG-1, then MPEG-2 and MPEG-2.5 low sampling frequencies (LSF) */
+  private static final int[] SAMPLING_FREQUENCY = {44100, 48000, 32000, 22050, 24000, 16000, 11025, 12000, 8000};
   private static final float[] SCALEFACTORS = {2.00000000000000f, 1.58740105196820f, 1.25992104989487f, 1.00000000000000f, 0.79370052598410f, 0.62996052494744f, 0.50000000000000f, 0.39685026299205f, 0.31498026247372f, 0.25000000000000f, 0.19842513149602f, 0.15749013123686f, 0.12500000000000f, 0.09921256574801f, 0.07874506561843f, 0.06250000000000f, 0.04960628287401f, 0.03937253280921f, 0.03125000000000f, 0.02480314143700f, 0.01968626640461f, 0.01562500000000f, 0.01240157071850f, 0.00984313320230f, 0.00781250000000f, 0.00620078535925f, 0.00492156660115f, 0.00390625000000f, 0.00310039267963f, 0.00246078330058f, 0.00195312500000f, 0.00155019633981f, 0.00123039165029f, 0.00097656250000f, 0.00077509816991f, 0.00061519582514f, 0.00048828125000f, 0.00038754908495f, 0.00030759791257f, 0.00024414062500f, 0.00019377454248f, 0.00015379895629f, 0.00012207031250f, 0.00009688727124f, 0.00007689947814f, 0.00006103515625f, 0.00004844363562f, 0.00003844973907f, 0.00003051757813f, 0.00002422181781f, 0.00001922486954f, 0.00001525878906f, 0.00001211090890f, 0.00000961243477f, 0.00000762939453f, 0.00000605545445f, 0.00000480621738f, 0.00000381469727f, 0.00000302772723f, 0.00000240310869f, 0.00000190734863f, 0.00000151386361f, 0.00000120155435f};
   private static final int[] SCALEFACTOR_SIZES_LAYER_III = {
           0, 0, 0, 1, 0, 2, 0, 3,
@@ -29,20 +54,62 @@ final class Decoder {
           0, 4, 8, 12, 16, 20, 24, 30, 36, 44, 54, 66, 82, 102, 126, 156, 194,
           240, 296, 364, 448, 550, 576,
           0, 4, 8, 12, 16, 22, 30, 42, 58, 78, 104, 138, 180, 192
+          ,
+          
+          0, 6, 12, 18, 24, 30, 36, 44, 54, 66, 80, 96, 116, 140, 168, 200, 238,
+          284, 336, 396, 464, 522, 576,
+          0, 4, 8, 12, 18, 24, 32, 42, 56, 74, 100, 132, 174, 192
+          ,
+          
+          0, 6, 12, 18, 24, 30, 36, 44, 54, 66, 80, 96, 114, 136, 162, 194, 232,
+          278, 332, 394, 464, 540, 576,
+          0, 4, 8, 12, 18, 26, 36, 48, 62, 80, 104, 136, 180, 192
+          ,
+          
+          0, 6, 12, 18, 24, 30, 36, 44, 54, 66, 80, 96, 116, 140, 168, 200, 238,
+          284, 336, 396, 464, 522, 576,
+          0, 4, 8, 12, 18, 26, 36, 48, 62, 80, 104, 134, 174, 192
+          ,
+          
+          0, 6, 12, 18, 24, 30, 36, 44, 54, 66, 80, 96, 116, 140, 168, 200, 238,
+          284, 336, 396, 464, 522, 576,
+          0, 4, 8, 12, 18, 26, 36, 48, 62, 80, 104, 134, 174, 192
+          ,
+          
+          0, 6, 12, 18, 24, 30, 36, 44, 54, 66, 80, 96, 116, 140, 168, 200, 238,
+          284, 336, 396, 464, 522, 576,
+          0, 4, 8, 12, 18, 26, 36, 48, 62, 80, 104, 134, 174, 192
+          ,
+          
+          0, 12, 24, 36, 48, 60, 72, 88, 108, 132, 160, 192, 232, 280, 336, 400, 476,
+          566, 568, 570, 572, 574, 576,
+          0, 8, 16, 24, 36, 52, 72, 96, 124, 160, 162, 164, 166, 192
+  };
+  /* Number of scalefactors of each of the 4 partitions of a LSF granule, for each way of coding scalefac_compress,
+   * for long, short, and mixed blocks */
+  private static final int[] SCALEFACTOR_PARTITIONS_LSF_LAYER_III = {
+          6, 5, 5, 5, 9, 9, 9, 9, 6, 9, 9, 9,
+          6, 5, 7, 3, 9, 9, 12, 6, 6, 9, 12, 6,
+          11, 10, 0, 0, 18, 18, 0, 0, 15, 18, 0, 0,
+          7, 7, 7, 0, 12, 12, 12, 0, 6, 15, 12, 0,
+          6, 6, 6, 3, 12, 9, 9, 6, 6, 12, 9, 6,
+          8, 8, 5, 0, 15, 12, 9, 0, 6, 18, 9, 0
   };
   private static final float[] CS_ALIASING_LAYER_III = {0.857493f, 0.881742f, 0.949629f, 0.983315f, 0.995518f, 0.999161f, 0.999899f, 0.999993f};
   private static final float[] CA_ALIASING_LAYER_III = {-0.514496f, -0.471732f, -0.313377f, -0.181913f, -0.094574f, -0.040966f, -0.014199f, -0.003700f};
   private static final float[] POWTAB_LAYER_III;
   private static final float[] IS_RATIOS_LAYER_III;
+  private static final float[] IS_RATIOS_LSF_LAYER_III;
   private static final float[] IMDCT_WINDOW_LAYER_III;
   private static final float[] PRE_FRACTOR_LAYER_I;
-  private static final float[] NIK_COEFFICIENTS;
-  private static final float[] SYNTH_WINDOW_TABLE_LAYER_III;
+  /* The CRC-16 of each byte, with the polynomial x^16 + x^15 + x^2 + 1 */
+  private static final int[] CRC_16;
+  private static final double[] DCT_FACTORS;
   private static final float[] DI_COEFFICIENTS = {0.000000000f, -0.000015259f, -0.000015259f, -0.000015259f, -0.000015259f, -0.000015259f, -0.000015259f, -0.000030518f, -0.000030518f, -0.000030518f, -0.000030518f, -0.000045776f, -0.000045776f, -0.000061035f, -0.000061035f, -0.000076294f, -0.000076294f, -0.000091553f, -0.000106812f, -0.000106812f, -0.000122070f, -0.000137329f, -0.000152588f, -0.000167847f, -0.000198364f, -0.000213623f, -0.000244141f, -0.000259399f, -0.000289917f, -0.000320435f, -0.000366211f, -0.000396729f, -0.000442505f, -0.000473022f, -0.000534058f, -0.000579834f, -0.000625610f, -0.000686646f, -0.000747681f, -0.000808716f, -0.000885010f, -0.000961304f, -0.001037598f, -0.001113892f, -0.001205444f, -0.001296997f, -0.001388550f, -0.001480103f, -0.001586914f, -0.001693726f, -0.001785278f, -0.001907349f, -0.002014160f, -0.002120972f, -0.002243042f, -0.002349854f, -0.002456665f, -0.002578735f, -0.002685547f, -0.002792358f, -0.002899170f, -0.002990723f, -0.003082275f, -0.003173828f, 0.003250122f, 0.003326416f, 0.003387451f, 0.003433228f, 0.003463745f, 0.003479004f, 0.003479004f, 0.003463745f, 0.003417969f, 0.003372192f, 0.003280640f, 0.003173828f, 0.003051758f, 0.002883911f, 0.002700806f, 0.002487183f, 0.002227783f, 0.001937866f, 0.001617432f, 0.001266479f, 0.000869751f, 0.000442505f, -0.000030518f, -0.000549316f, -0.001098633f, -0.001693726f, -0.002334595f, -0.003005981f, -0.003723145f, -0.004486084f, -0.005294800f, -0.006118774f, -0.007003784f, -0.007919312f, -0.008865356f, -0.009841919f, -0.010848999f, -0.011886597f, -0.012939453f, -0.014022827f, -0.015121460f, -0.016235352f, -0.017349243f, -0.018463135f, -0.019577026f, -0.020690918f, -0.021789551f, -0.022857666f, -0.023910522f, -0.024932861f, -0.025909424f, -0.026840210f, -0.027725220f, -0.028533936f, -0.029281616f, -0.029937744f, -0.030532837f, -0.031005859f, -0.031387329f, -0.031661987f, -0.031814575f, -0.031845093f, -0.031738281f, -0.031478882f, 0.031082153f, 0.030517578f, 0.029785156f, 0.028884888f, 0.027801514f, 0.026535034f, 0.025085449f, 0.023422241f, 0.021575928f, 0.019531250f, 0.017257690f, 0.014801025f, 0.012115479f, 0.009231567f, 0.006134033f, 0.002822876f, -0.000686646f, -0.004394531f, -0.008316040f, -0.012420654f, -0.016708374f, -0.021179199f, -0.025817871f, -0.030609131f, -0.035552979f, -0.040634155f, -0.045837402f, -0.051132202f, -0.056533813f, -0.061996460f, -0.067520142f, -0.073059082f, -0.078628540f, -0.084182739f, -0.089706421f, -0.095169067f, -0.100540161f, -0.105819702f, -0.110946655f, -0.115921021f, -0.120697021f, -0.125259399f, -0.129562378f, -0.133590698f, -0.137298584f, -0.140670776f, -0.143676758f, -0.146255493f, -0.148422241f, -0.150115967f, -0.151306152f, -0.151962280f, -0.152069092f, -0.151596069f, -0.150497437f, -0.148773193f, -0.146362305f, -0.143264771f, -0.139450073f, -0.134887695f, -0.129577637f, -0.123474121f, -0.116577148f, -0.108856201f, 0.100311279f, 0.090927124f, 0.080688477f, 0.069595337f, 0.057617187f, 0.044784546f, 0.031082153f, 0.016510010f, 0.001068115f, -0.015228271f, -0.032379150f, -0.050354004f, -0.069168091f, -0.088775635f, -0.109161377f, -0.130310059f, -0.152206421f, -0.174789429f, -0.198059082f, -0.221984863f, -0.246505737f, -0.271591187f, -0.297210693f, -0.323318481f, -0.349868774f, -0.376800537f, -0.404083252f, -0.431655884f, -0.459472656f, -0.487472534f, -0.515609741f, -0.543823242f, -0.572036743f, -0.600219727f, -0.628295898f, -0.656219482f, -0.683914185f, -0.711318970f, -0.738372803f, -0.765029907f, -0.791213989f, -0.816864014f, -0.841949463f, -0.866363525f, -0.890090942f, -0.913055420f, -0.935195923f, -0.956481934f, -0.976852417f, -0.996246338f, -1.014617920f, -1.031936646f, -1.048156738f, -1.063217163f, -1.077117920f, -1.089782715f, -1.101211548f, -1.111373901f, -1.120223999f, -1.127746582f, -1.133926392f, -1.138763428f, -1.142211914f, -1.144287109f, 1.144989014f, 1.144287109f, 1.142211914f, 1.138763428f, 1.133926392f, 1.127746582f, 1.120223999f, 1.111373901f, 1.101211548f, 1.089782715f, 1.077117920f, 1.063217163f, 1.048156738f, 1.031936646f, 1.014617920f, 0.996246338f, 0.976852417f, 0.956481934f, 0.935195923f, 0.913055420f, 0.890090942f, 0.866363525f, 0.841949463f, 0.816864014f, 0.791213989f, 0.765029907f, 0.738372803f, 0.711318970f, 0.683914185f, 0.656219482f, 0.628295898f, 0.600219727f, 0.572036743f, 0.543823242f, 0.515609741f, 0.487472534f, 0.459472656f, 0.431655884f, 0.404083252f, 0.376800537f, 0.349868774f, 0.323318481f, 0.297210693f, 0.271591187f, 0.246505737f, 0.221984863f, 0.198059082f, 0.174789429f, 0.152206421f, 0.130310059f, 0.109161377f, 0.088775635f, 0.069168091f, 0.050354004f, 0.032379150f, 0.015228271f, -0.001068115f, -0.016510010f, -0.031082153f, -0.044784546f, -0.057617187f, -0.069595337f, -0.080688477f, -0.090927124f, 0.100311279f, 0.108856201f, 0.116577148f, 0.123474121f, 0.129577637f, 0.134887695f, 0.139450073f, 0.143264771f, 0.146362305f, 0.148773193f, 0.150497437f, 0.151596069f, 0.152069092f, 0.151962280f, 0.151306152f, 0.150115967f, 0.148422241f, 0.146255493f, 0.143676758f, 0.140670776f, 0.137298584f, 0.133590698f, 0.129562378f, 0.125259399f, 0.120697021f, 0.115921021f, 0.110946655f, 0.105819702f, 0.100540161f, 0.095169067f, 0.089706421f, 0.084182739f, 0.078628540f, 0.073059082f, 0.067520142f, 0.061996460f, 0.056533813f, 0.051132202f, 0.045837402f, 0.040634155f, 0.035552979f, 0.030609131f, 0.025817871f, 0.021179199f, 0.016708374f, 0.012420654f, 0.008316040f, 0.004394531f, 0.000686646f, -0.002822876f, -0.006134033f, -0.009231567f, -0.012115479f, -0.014801025f, -0.017257690f, -0.019531250f, -0.021575928f, -0.023422241f, -0.025085449f, -0.026535034f, -0.027801514f, -0.028884888f, -0.029785156f, -0.030517578f, 0.031082153f, 0.031478882f, 0.031738281f, 0.031845093f, 0.031814575f, 0.031661987f, 0.031387329f, 0.031005859f, 0.030532837f, 0.029937744f, 0.029281616f, 0.028533936f, 0.027725220f, 0.026840210f, 0.025909424f, 0.024932861f, 0.023910522f, 0.022857666f, 0.021789551f, 0.020690918f, 0.019577026f, 0.018463135f, 0.017349243f, 0.016235352f, 0.015121460f, 0.014022827f, 0.012939453f, 0.011886597f, 0.010848999f, 0.009841919f, 0.008865356f, 0.007919312f, 0.007003784f, 0.006118774f, 0.005294800f, 0.004486084f, 0.003723145f, 0.003005981f, 0.002334595f, 0.001693726f, 0.001098633f, 0.000549316f, 0.000030518f, -0.000442505f, -0.000869751f, -0.001266479f, -0.001617432f, -0.001937866f, -0.002227783f, -0.002487183f, -0.002700806f, -0.002883911f, -0.003051758f, -0.003173828f, -0.003280640f, -0.003372192f, -0.003417969f, -0.003463745f, -0.003479004f, -0.003479004f, -0.003463745f, -0.003433228f, -0.003387451f, -0.003326416f, 0.003250122f, 0.003173828f, 0.003082275f, 0.002990723f, 0.002899170f, 0.002792358f, 0.002685547f, 0.002578735f, 0.002456665f, 0.002349854f, 0.002243042f, 0.002120972f, 0.002014160f, 0.001907349f, 0.001785278f, 0.001693726f, 0.001586914f, 0.001480103f, 0.001388550f, 0.001296997f, 0.001205444f, 0.001113892f, 0.001037598f, 0.000961304f, 0.000885010f, 0.000808716f, 0.000747681f, 0.000686646f, 0.000625610f, 0.000579834f, 0.000534058f, 0.000473022f, 0.000442505f, 0.000396729f, 0.000366211f, 0.000320435f, 0.000289917f, 0.000259399f, 0.000244141f, 0.000213623f, 0.000198364f, 0.000167847f, 0.000152588f, 0.000137329f, 0.000122070f, 0.000106812f, 0.000106812f, 0.000091553f, 0.000076294f, 0.000076294f, 0.000061035f, 0.000061035f, 0.000045776f, 0.000045776f, 0.000030518f, 0.000030518f, 0.000030518f, 0.000030518f, 0.000015259f, 0.000015259f, 0.000015259f, 0.000015259f, 0.000015259f, 0.000015259f};
   private static final int[] SHIFT_ENDIANESS = {255, 254, 253, 252, 251, 250, 249, 248, 247, 246, 245, 244, 243, 242, 241, 240, 239, 238, 237, 236, 235, 234, 233, 232, 231, 230, 229, 228, 227, 226, 225, 224, 223, 222, 221, 220, 219, 218, 217, 216, 215, 214, 213, 212, 211, 210, 209, 208, 207, 206, 205, 204, 203, 202, 201, 200, 199, 198, 197, 196, 195, 194, 193, 192, 191, 190, 189, 188, 187, 186, 185, 184, 183, 182, 181, 180, 179, 178, 177, 176, 175, 174, 173, 172, 171, 170, 169, 168, 167, 166, 165, 164, 163, 162, 161, 160, 159, 158, 157, 156, 155, 154, 153, 152, 151, 150, 149, 148, 147, 146, 145, 144, 143, 142, 141, 140, 139, 138, 137, 136, 135, 134, 133, 132, 131, 130, 129, 128, 127, 126, 125, 124, 123, 122, 121, 120, 119, 118, 117, 116, 115, 114, 113, 112, 111, 110, 109, 108, 107, 106, 105, 104, 103, 102, 101, 100, 99, 98, 97, 96, 95, 94, 93, 92, 91, 90, 89, 88, 87, 86, 85, 84, 83, 82, 81, 80, 79, 78, 77, 76, 75, 74, 73, 72, 71, 70, 69, 68, 67, 66, 65, 64, 63, 62, 61, 60, 59, 58, 57, 56, 55, 54, 53, 52, 51, 50, 49, 48, 47, 46, 45, 44, 43, 42, 41, 40, 39, 38, 37, 36, 35, 34, 33, 32, 31, 30, 29, 28, 27, 26, 25, 24, 23, 22, 21, 20, 19, 18, 17, 16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0};
-  private static final int[] SB_LIMIT = {27, 30, 8, 12};
-  private static final int[][] NBAL = {{4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2}, {4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 2}, {4, 4, 3, 3, 3, 3, 3, 3}, {4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3}};
-  private static final int[][][] QUANTIZATION_INDEX_LAYER_II = {{{0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}}, {{0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}}, {{0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}}, {{0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}}};
+  private static final int[] SB_LIMIT = {27, 30, 8, 12, 30};
+  private static final int[][] NBAL = {{4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2}, {4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 2}, {4, 4, 3, 3, 3, 3, 3, 3}, {4, 4, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3}, {4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2}};
+  private static final int[][][] QUANTIZATION_INDEX_LAYER_II = {{{0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}}, {{0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 2, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 2, 3, 4, 5, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}, {0, 1, 16}}, {{0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}}, {{0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}}, {{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3, 4, 5, 6, 7}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}, {0, 1, 3}}};
   private static final int[] NLEVELS = {3, 5, 7, 9, 15, 31, 63, 127, 255, 511, 1023, 2047, 4095, 8191, 16383, 32767, 65535};
   private static final float[] C_LAYER_II = {1.33333333333f, 1.60000000000f, 1.14285714286f, 1.77777777777f, 1.06666666666f, 1.03225806452f, 1.01587301587f, 1.00787401575f, 1.00392156863f, 1.00195694716f, 1.00097751711f, 1.00048851979f, 1.00024420024f, 1.00012208522f, 1.00006103888f, 1.00003051851f, 1.00001525902f};
   private static final float[] D_LAYER_II = {0.50000000000f, 0.50000000000f, 0.25000000000f, 0.50000000000f, 0.12500000000f, 0.06250000000f, 0.03125000000f, 0.01562500000f, 0.00781250000f, 0.00390625000f, 0.00195312500f, 0.00097656250f, 0.00048828125f, 0.00024414063f, 0.00012207031f, 0.00006103516f, 0.00003051758f};
@@ -330,7 +397,7 @@ final class Decoder {
           0x000a, 0x000b, 0x0401, 0x0201, 0x000c, 0x000d, 0x0201, 0x000e, 0x000f,
   };
   private static final int[] HUFFMAN_TABLE_OFFSET_LAYER_III = {
-          Short.MIN_VALUE, 0, 7, 24, Short.MIN_VALUE, 41, 72, 103, 174, 245, 316, 443, 570, 697, Short.MIN_VALUE, 1208, 1719, 1719, 1719, 1719, 1719, 1719, 1719, 1719, 2230, 2230, 2230, 2230, 2230, 2230, 2230, 2230, 2742, 2261
+          Short.MIN_VALUE, 0, 7, 24, Short.MIN_VALUE, 41, 72, 103, 174, 245, 316, 443, 570, 697, Short.MIN_VALUE, 1208, 1719, 1719, 1719, 1719, 1719, 1719, 1719, 1719, 2230, 2230, 2230, 2230, 2230, 2230, 2230, 2230, 2742, 2773
   };
   private static final int[] HUFFMAN_TREELEN_LAYER_III = {
           0, 7, 17, 17, 0, 31, 31, 71, 71, 71, 127, 127, 127, 511, 0, 511, 511, 511, 511, 511, 511, 511, 511, 511, 512, 512, 512, 512, 512, 512, 512, 512, 31, 31
@@ -338,27 +405,71 @@ final class Decoder {
   private static final int[] HUFFMAN_LINBITS_LAYER_III = {
           0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4, 6, 8, 10, 13, 4, 5, 6, 7, 8, 9, 11, 13, 0, 0
   };
+  private static final int HUFFMAN_LUT_BITS = 8;
+  /* For each table, indexed by the next HUFFMAN_LUT_BITS bits:
+   * >= 0: code word found, bits 15-8 code word length, bits 7-0 code word
+   * < 0: code word longer than HUFFMAN_LUT_BITS, ~entry is the tree position to continue from */
+  private static final int[][] HUFFMAN_LUT_LAYER_III;
   private static final float[] REQUANTIZE_LONG_PRETAB_LAYER_III = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
           1, 1, 1, 1, 2, 2, 3, 3, 3, 2};
-  private static final float[] COS_12_LAYER_III;
-  private static final float[] COS_36_LAYER_III;
+  private static final double[] COS_6_LAYER_III;
+  private static final double[] COS_9_LAYER_III;
+  private static final double[] IMDCT_PRESCALE_LAYER_III;
+  private static final double[] IMDCT_BUTTERFLY_LAYER_III;
   
   static {
+    HUFFMAN_LUT_LAYER_III = new int[HUFFMAN_TREELEN_LAYER_III.length][];
+    for (int table = 0; table < HUFFMAN_TREELEN_LAYER_III.length; table++) {
+      int treelen = HUFFMAN_TREELEN_LAYER_III[table];
+      if (treelen == 0) {
+        continue;
+      }
+      int offset = HUFFMAN_TABLE_OFFSET_LAYER_III[table];
+      for (int other = 0; other < table; other++) {
+        if (HUFFMAN_LUT_LAYER_III[other] != null && HUFFMAN_TABLE_OFFSET_LAYER_III[other] == offset) {
+          HUFFMAN_LUT_LAYER_III[table] = HUFFMAN_LUT_LAYER_III[other];
+          break;
+        }
+      }
+      if (HUFFMAN_LUT_LAYER_III[table] != null) {
+        continue;
+      }
+      int[] lut = new int[1 << HUFFMAN_LUT_BITS];
+      for (int prefix = 0; prefix < lut.length; prefix++) {
+        int point = 0;
+        int length = 0;
+        while (true) {
+          if (point < treelen && (HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff00) == 0) {
+            lut[prefix] = length << 8 | (HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff);
+            break;
+          }
+          if (length == HUFFMAN_LUT_BITS || point >= treelen) {
+            lut[prefix] = ~point;
+            break;
+          }
+          point = huffman_step_III(offset, point, (prefix >>> (HUFFMAN_LUT_BITS - 1 - length)) & 1);
+          length++;
+        }
+      }
+      HUFFMAN_LUT_LAYER_III[table] = lut;
+    }
     PRE_FRACTOR_LAYER_I = new float[16];
     for (int i = 0; i < 16; i++) {
       double pow = 0b1 << i;
       PRE_FRACTOR_LAYER_I[i] = (float) (pow / (pow - 1));
     }
-    NIK_COEFFICIENTS = new float[64 * 32];
-    for (int i = 0; i < 64; i++) {
-      for (int k = 0; k < 32; k++) {
-        double value = 1e9 * Math.cos((16 + i) * (2 * k + 1) * Math.PI / 64);
-        if (value >= 0) {
-          value = (int) (value + 0.5);
-        } else {
-          value = (int) (value - 0.5);
-        }
-        NIK_COEFFICIENTS[i * 32 + k] = (float) (value * 1e-9);
+    CRC_16 = new int[256];
+    for (int i = 0; i < 256; i++) {
+      int crc = i << 8;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 0x8000) != 0 ? crc << 1 ^ 0x8005 : crc << 1;
+      }
+      CRC_16[i] = crc & 0xFFFF;
+    }
+    DCT_FACTORS = new double[31];
+    for (int half = 1; half <= 16; half *= 2) {
+      for (int i = 0; i < half; i++) {
+        DCT_FACTORS[half - 1 + i] = 0.5 / Math.cos((i + 0.5) * Math.PI / (2 * half));
       }
     }
     POWTAB_LAYER_III = new float[8207];
@@ -369,6 +480,12 @@ final class Decoder {
     for (int i = 0; i < 6; i++) {
       IS_RATIOS_LAYER_III[i] = (float) Math.tan((i * Math.PI) / 12.0);
     }
+    /* The ratio is a power of 2^-1/4 or 2^-1/2 depending on intensity_scale */
+    IS_RATIOS_LSF_LAYER_III = new float[2 * 32];
+    for (int i = 0; i < 32; i++) {
+      IS_RATIOS_LSF_LAYER_III[i] = (float) Math.pow(2, -0.25 * i);
+      IS_RATIOS_LSF_LAYER_III[32 + i] = (float) Math.pow(2, -0.5 * i);
+    }
     IMDCT_WINDOW_LAYER_III = new float[4 * 36];
     {
           /* Blocktype 0 */
@@ -400,23 +517,25 @@ final class Decoder {
         IMDCT_WINDOW_LAYER_III[3 * 36 + i] = (float) Math.sin(Math.PI / 36 * (i + 0.5));
       }
     }
-    SYNTH_WINDOW_TABLE_LAYER_III = new float[64 * 32];
-    for (int i = 0; i < 64; i++) {
-      for (int j = 0; j < 32; j++) {
-        SYNTH_WINDOW_TABLE_LAYER_III[i * 32 + j] = (float) Math.cos((16 + i) * (2 * j + 1) * Math.PI / 64.0);
+    COS_6_LAYER_III = new double[6 * 6];
+    for (int i = 0; i < 6; i++) {
+      for (int j = 0; j < 6; j++) {
+        COS_6_LAYER_III[i * 6 + j] = Math.cos(Math.PI / 6 * (i + 0.5) * (j + 0.5));
       }
     }
-    COS_12_LAYER_III = new float[6 * 12];
-    for (int i = 0; i < 6; i++) {
-      for (int j = 0; j < 12; j++) {
-        COS_12_LAYER_III[i * 12 + j] = (float) Math.cos(Math.PI / (2 * 12) * (2.0*j + 1 + 12/2) * (2.0*i + 1));
+    COS_9_LAYER_III = new double[9 * 9];
+    for (int i = 0; i < 9; i++) {
+      for (int j = 0; j < 9; j++) {
+        COS_9_LAYER_III[i * 9 + j] = Math.cos(Math.PI / 9 * (j + 0.5) * i);
       }
     }
-    COS_36_LAYER_III = new float[18*36];
+    IMDCT_PRESCALE_LAYER_III = new double[18];
     for (int i = 0; i < 18; i++) {
-      for (int j = 0; j < 36; j++) {
-        COS_36_LAYER_III[i * 36 + j] = (float) Math.cos(Math.PI / (2 * 36) * (2.0*j + 1 + 36/2) * (2.0*i + 1));
-      }
+      IMDCT_PRESCALE_LAYER_III[i] = 0.5 / Math.cos(Math.PI / 36 * (i + 0.5));
+    }
+    IMDCT_BUTTERFLY_LAYER_III = new double[9];
+    for (int i = 0; i < 9; i++) {
+      IMDCT_BUTTERFLY_LAYER_III[i] = 0.5 / Math.cos(Math.PI / 18 * (i + 0.5));
     }
   }
   
@@ -425,53 +544,287 @@ final class Decoder {
   }
   
   public static SoundData init(InputStream in) throws IOException {
+    return init(in, null);
+  }
+  
+  public static SoundData init(ByteBuffer in) throws IOException {
+    return init(in, null);
+  }
+  
+  /**
+   * Initializes a decoder reading from the specified stream, reusing the buffers of the specified decoder if it is non-null, see {@link DecoderPool}.
+   * <p>
+   * The specified decoder must not be used anymore, and is reset to the initial state of a decoder. It is returned, unless there's no MPEG data in the stream.
+   */
+  static SoundData init(InputStream in, SoundData recycled) throws IOException {
+    return init(new Buffer(in, recycled == null ? null : recycled.buffer.recyclable()), recycled);
+  }
+  
+  static SoundData init(ByteBuffer in, SoundData recycled) throws IOException {
+    return init(new Buffer(in), recycled);
+  }
+  
+  /**
+   * Initializes a decoder that is fed chunks of the stream with {@link #feed(SoundData, ByteBuffer)}, rather than reading it. Its first frame is decoded
+   * once it is fed.
+   */
+  static SoundData push() {
     SoundData soundData = new SoundData();
-    soundData.buffer = new Buffer(in);
-    soundData.buffer.lastByte = soundData.buffer.in.read();
+    soundData.buffer = new Buffer();
+    return soundData;
+  }
+  
+  /**
+   * Copies as many bytes as possible of the specified chunk into the buffer of a push decoder, advancing the chunk position. At least some bytes are
+   * copied if the chunk isn't empty, unless the buffer is full, in which case its next frame is complete.
+   */
+  static void feed(SoundData soundData, ByteBuffer chunk) {
+    Buffer buffer = soundData.buffer;
+    if (buffer.pending > 0) {
+      /* The rest of a tag */
+      int skipped = (int) Math.min(buffer.pending, chunk.remaining());
+      ((java.nio.Buffer) chunk).position(chunk.position() + skipped);
+      buffer.pending -= skipped;
+      buffer.base += skipped;
+    }
+    if (buffer.position > 0 && buffer.array.length - buffer.limit < chunk.remaining()) {
+      int available = buffer.limit - buffer.position;
+      System.arraycopy(buffer.array, buffer.position, buffer.array, 0, available);
+      buffer.base += buffer.position;
+      buffer.position = 0;
+      buffer.limit = available;
+    }
+    int length = Math.min(chunk.remaining(), buffer.array.length - buffer.limit);
+    chunk.get(buffer.array, buffer.limit, length);
+    buffer.limit += length;
+  }
+  
+  /**
+   * Marks the end of the stream of a push decoder, so that its last frames and tags are decoded even though no more bytes follow them.
+   */
+  static void finish(SoundData soundData) {
+    soundData.buffer.eof = true;
+  }
+  
+  /**
+   * Decodes the next frame of a push decoder, if it was fed completely. Returns false if more bytes must be fed, or if the end of the stream is reached.
+   */
+  static boolean decodePushed(SoundData soundData) throws IOException {
+    soundData.buffer.starved = false;
+    return decodeFrame(soundData);
+  }
+  
+  private static SoundData init(Buffer buffer, SoundData recycled) throws IOException {
+    if (buffer.seekable) {
+      trailingTags(buffer);
+    }
+    SoundData soundData = recycled == null ? new SoundData() : reset(recycled);
+    soundData.buffer = buffer;
     if(!decodeFrame(soundData))
       return null;
     return soundData;
   }
   
+  /**
+   * Resets a decoder that isn't used anymore to the initial state of a decoder, keeping its buffers, which are reused when the first frame is decoded if
+   * the new stream has the same layer and number of channels. Its pipeline and channel worker, whose threads must be stopped, are dropped.
+   */
+  private static SoundData reset(SoundData soundData) {
+    soundData.buffer = null;
+    soundData.frequency = -1;
+    soundData.stereo = -1;
+    soundData.layer = -1;
+    soundData.frameSamples = 0;
+    soundData.index.size = 0;
+    soundData.frame = -1;
+    soundData.position = 0;
+    soundData.pcmLength = 0;
+    soundData.pcmScale = 0;
+    soundData.mainDataTop = 0;
+    soundData.pipeline = null;
+    soundData.channelWorker = null;
+    soundData.vbrHeader = null;
+    soundData.metrics = null;
+    soundData.untimedFrames = 0;
+    soundData.timed = false;
+    soundData.resilient = false;
+    soundData.concealment = Concealment.SILENCE;
+    soundData.errorListener = null;
+    soundData.crcCheck = CrcCheck.OFF;
+    Block block = soundData.block;
+    block.samples = null;
+    block.end = false;
+    block.error = null;
+    block.timed = false;
+    block.event = null;
+    block.concealed = false;
+    block.skip = false;
+    return soundData;
+  }
+  
+  /**
+   * Returns a decoder that can't decode frames anymore, with the same properties, tags and position as the specified decoder, so that the specified
+   * decoder may be reused while a closed {@link Sound} still uses its properties.
+   */
+  static SoundData detach(SoundData soundData) {
+    SoundData detached = new SoundData();
+    detached.buffer = soundData.buffer;
+    detached.frequency = soundData.frequency;
+    detached.stereo = soundData.stereo;
+    detached.layer = soundData.layer;
+    detached.frameSamples = soundData.frameSamples;
+    detached.frame = soundData.frame;
+    detached.position = soundData.position;
+    detached.pcmLength = soundData.pcmLength;
+    detached.pcmScale = soundData.pcmScale;
+    detached.vbrHeader = soundData.vbrHeader;
+    detached.metrics = soundData.metrics;
+    return detached;
+  }
+  
   public static boolean decodeFrame(SoundData soundData) throws IOException {
-      if (soundData.buffer.lastByte == -1) {
+    Pipeline pipeline = soundData.pipeline;
+    if (pipeline != null) {
+      if (pipeline.enabled || pipeline.head.get() != pipeline.tail.get()) {
+        return next(soundData);
+      }
+      /* The blocks parsed before the pipeline was disabled were all synthesized */
+      soundData.pipeline = null;
+    }
+    return decodeFrame(soundData, soundData.block);
+  }
+  
+  /**
+   * Decodes the next frame on the calling thread, regardless of the pipeline.
+   */
+  private static boolean decodeFrame(SoundData soundData, Block block) throws IOException {
+    if (!parseFrame(soundData, block)) {
+      return false;
+    }
+    synthFrame(soundData, block);
+    return true;
+  }
+  
+  /**
+   * Skips the next frame on the calling thread, without decoding it, so that the frames after it decode exactly as if it had been decoded, as long as
+   * the frames overlapping them are decoded, see {@link #overlapFrames(SoundData)}. Only the bit reservoir of Layer III streams is kept, as the main
+   * data of the next frames may start in this frame. Returns false if the end of the stream is reached.
+   */
+  private static boolean skipFrame(SoundData soundData) throws IOException {
+    Block block = soundData.block;
+    block.skip = true;
+    try {
+      if (!parseFrame(soundData, block)) {
         return false;
       }
+      if (block.skip) {
+        soundData.position = block.position;
+      } else {
+        synthFrame(soundData, block);
+      }
+      return true;
+    } finally {
+      block.skip = false;
+    }
+  }
+  
+  /**
+   * The front end of the decoder: parses the next frame of the stream into the specified block, that is reads its bitstream, and for Layer III frames
+   * its main data from the bit reservoir, and requantizes it. Returns false if the end of the stream is reached.
+   */
+  private static boolean parseFrame(SoundData soundData, Block block) throws IOException {
+      Buffer buffer = soundData.buffer;
+      DecoderMetrics metrics = soundData.metrics;
       
+      block.timed = false;
+      long start = 0;
+      if (metrics != null) {
+        int interval = metrics.timingInterval();
+        if (interval != 0 && ++soundData.untimedFrames >= interval) {
+          soundData.untimedFrames = 0;
+          block.timed = true;
+          start = System.nanoTime();
+        }
+        Supplier<FrameEvent> events = metrics.frameEvents();
+        if (events != null) {
+          block.event = events.get();
+          block.event.begin();
+        }
+      }
+      block.concealed = false;
+      BitReader reader = soundData.reader;
+      int version, layer, protectionBit, bitrateIndex, samplingFrequency, paddingBit, mode, modeExtension, frameSize;
       while (true) {
-        int read;
-        do {
-          read = soundData.buffer.lastByte;
-          soundData.buffer.lastByte = soundData.buffer.in.read();
-          if (soundData.buffer.lastByte == -1) {
-            return false;
-          }
-        } while (read != 0b11111111);
-        if ((soundData.buffer.lastByte >>> 4) != 0b1111) {
-          soundData.buffer.lastByte = soundData.buffer.in.read();
-          if (soundData.buffer.lastByte == -1) {
-            return false;
-          }
-        } else {
+        if (!sync(buffer)) {
+          block.event = null;
+          return false;
+        }
+        reset(reader, buffer.array, buffer.data, buffer.position, buffer.limit);
+        skip(reader, 11);
+        
+        version = read(reader, 2);
+        layer = read(reader, 2);
+        protectionBit = read(reader, 1);
+        bitrateIndex = read(reader, 4);
+        samplingFrequency = samplingFrequency(version, read(reader, 2));
+        paddingBit = read(reader, 1);
+        read(reader, 1); /* private_bit */
+        mode = read(reader, 2);
+        modeExtension = read(reader, 2);
+        read(reader, 4);
+        
+        if (!soundData.resilient) {
+          frameSize = frameSize(layer, bitrateIndex, samplingFrequency, paddingBit);
           break;
         }
+        frameSize = confirm(soundData, buffer, layer, protectionBit, bitrateIndex, samplingFrequency, paddingBit, mode, modeExtension);
+        if (buffer.starved) {
+          block.event = null;
+          return false;
+        }
+        if (frameSize != 0) {
+          break;
+        }
+        /* A false sync word: search the next one from the following byte */
+        buffer.skipped++;
+        buffer.position++;
+        if (metrics != null) {
+          metrics.falseSync();
+        }
+      }
+      /* Counted from the previous frame rather than from this call, as a push decoder may have to be fed several times to find the sync word */
+      long skipped = buffer.skipped - buffer.synced;
+      buffer.synced = buffer.skipped;
+      long frameOffset = buffer.base + buffer.position;
+      if (skipped != 0 && soundData.resilient) {
+        /* The skipped bytes may be the main data of lost frames: the frames referring to data before them are decoded as silence rather than garbage */
+        soundData.mainDataTop = 0;
+      }
+      if (metrics != null) {
+        metrics.synced(skipped);
+        if (block.timed) {
+          long now = System.nanoTime();
+          block.syncNanos = now - start;
+          start = now;
+        }
+        if (block.event != null) {
+          block.event.offset(frameOffset);
+        }
       }
-  
-    soundData.buffer.current = 4;
       
-      int id = read(soundData.buffer, 1);
-      int layer = read(soundData.buffer, 2);
-      int protectionBit = read(soundData.buffer, 1);
-      int bitrateIndex = read(soundData.buffer, 4);
-      int samplingFrequency = read(soundData.buffer, 2);
-      int paddingBit = read(soundData.buffer, 1);
-      int privateBit = read(soundData.buffer, 1);
-      int mode = read(soundData.buffer, 2);
-      int modeExtension = read(soundData.buffer, 2);
-      read(soundData.buffer, 4);
+      int available = fill(buffer, frameSize > 0 ? frameSize : buffer.data.capacity());
+      if (buffer.starved) {
+        /* The frame is parsed again once the rest of it is fed */
+        block.event = null;
+        return false;
+      }
+      reset(reader, buffer.array, buffer.data, buffer.position, buffer.limit);
+      skip(reader, 32);
       
       if (soundData.frequency == -1) {
         soundData.frequency = SAMPLING_FREQUENCY[samplingFrequency];
+        soundData.layer = layer;
+        soundData.frameSamples = frameSamples(layer, samplingFrequency);
       }
       
       if (soundData.stereo == -1) {
@@ -480,254 +833,1173 @@ final class Decoder {
         } else {
           soundData.stereo = 1;
         }
+        int channels = soundData.stereo + 1;
+        /* The buffers of a reused decoder are kept if they have the right size, and reset to the initial state */
+        if (soundData.synthOffset == null || soundData.synthOffset.length != channels) {
+          soundData.synthOffset = new int[channels];
+          soundData.synthBuffer = new float[channels * 1024];
+          soundData.synthSilence = new int[channels];
+          soundData.storeSilent = new boolean[channels];
+          soundData.pcm = new float[1152 * channels];
+        } else {
+          Arrays.fill(soundData.synthBuffer, 0.0f);
+        }
+        Arrays.fill(soundData.synthOffset, 64);
+        Arrays.fill(soundData.synthSilence, 16);
+        Arrays.fill(soundData.storeSilent, true);
         if (layer == 0b01 /* layer III */) {
-          if (mode == 0b11 /* single_channel */) {
-            soundData.mainData = new byte[1024];
-            soundData.store = new float[32 * 18];
-            soundData.v = new float[1024];
+          if (soundData.store == null || soundData.store.length != channels * 32 * 18) {
+            soundData.store = new float[channels * 32 * 18];
           } else {
-            soundData.mainData = new byte[2 * 1024];
-            soundData.store = new float[2 * 32 * 18];
-            soundData.v = new float[2 * 1024];
+            Arrays.fill(soundData.store, 0.0f);
           }
-          soundData.mainDataReader = new MainDataReader(soundData.mainData);
-        } else {
-          if (mode == 0b11 /* single_channel */) {
-            soundData.synthOffset = new int[]{64};
-            soundData.synthBuffer = new float[1024];
-          } else {
-            soundData.synthOffset = new int[]{64, 64};
-            soundData.synthBuffer = new float[2 * 1024];
+          if (soundData.mainData == null) {
+            /* Up to 511 bytes of reservoir followed by the main data of a frame */
+            soundData.mainData = new byte[4096];
+            soundData.mainDataReader = new BitReader();
+          }
+          if (block.workspace == null || block.workspace.re.length != channels) {
+            block.workspace = new LayerIIIWorkspace(channels);
           }
         }
       }
       
       int bound = modeExtension == 0b0 ? 4 : modeExtension == 0b01 ? 8 : modeExtension == 0b10 ? 12 : modeExtension == 0b11 ? 16 : -1;
       
+      boolean crcError = false;
       if (protectionBit == 0) {
-        // TODO CRC CHECK
-        read(soundData.buffer, 16);
+        read(reader, 16);
+        if (soundData.crcCheck != CrcCheck.OFF && !block.skip && frameSize > 0 && available >= frameSize) {
+          crcError = !crc(soundData, buffer.data, buffer.position, layer, bitrateIndex, samplingFrequency, mode, modeExtension);
+        }
       }
       
-      if (layer == 0b11 /* layer I */) {
-        float[] sampleDecoded = null;
-        if (mode == 0b11 /* single_channel */) {
-          sampleDecoded = samples_I(soundData.buffer, 1, -1);
-        } else if (mode == 0b0 /* stereo */ || mode == 0b10 /* dual_channel */) {
-          sampleDecoded = samples_I(soundData.buffer, 2, -1);
-        } else if (mode == 0b01 /* intensity_stereo */) {
-          sampleDecoded = samples_I(soundData.buffer, 2, bound);
+      FrameIndex index = soundData.index;
+      int frame = ++soundData.frame;
+      if (!buffer.seekable) {
+        /* Pushed streams and input streams can't be seeked backward, and may be live streams that never end, so their frames aren't indexed */
+        block.position = (long) frame * soundData.frameSamples;
+      } else {
+        if (frame == index.size) {
+          long position = frame == 0 ? 0 : index.samples[frame - 1] + soundData.frameSamples;
+          add(index, frameOffset, position, layer == 0b01 /* layer III */ ? peek(reader, samplingFrequency >= 3 /* LSF */ ? 8 : 9) : 0);
         }
-        if (mode == 0b11 /* single_channel */) {
-          synth(soundData, sampleDecoded, soundData.synthOffset, soundData.synthBuffer, 1);
-        } else {
-          synth(soundData, sampleDecoded, soundData.synthOffset, soundData.synthBuffer, 2);
+        block.position = index.samples[frame];
+      }
+      if (skipped != 0 && soundData.resilient) {
+        report(soundData, DecodingError.Type.LOST_SYNC, frameOffset, block.position, skipped, null);
+      }
+      if (block.skip) {
+        if (frameSize > 0 && available >= frameSize) {
+          /* Fast-forward: only keep the bit reservoir for the next frames */
+          if (layer == 0b01 /* layer III */) {
+            skipMainData_III(soundData, buffer.data, buffer.position, frameSize, protectionBit, samplingFrequency, mode);
+          }
+          buffer.position += frameSize;
+          block.event = null;
+          return true;
         }
-      } else if (layer == 0b10 /* layer II */) {
-        float[] sampleDecoded = null;
-        int bitrate = BITRATE_LAYER_II[bitrateIndex];
-        if (mode == 0b11 /* single_channel */) {
-          sampleDecoded = samples_II(soundData.buffer, 1, -1, bitrate, soundData.frequency);
-        } else if (mode == 0b0 /* stereo */ || mode == 0b10 /* dual_channel */) {
-          sampleDecoded = samples_II(soundData.buffer, 2, -1, bitrate, soundData.frequency);
-        } else if (mode == 0b01 /* intensity_stereo */) {
-          sampleDecoded = samples_II(soundData.buffer, 2, bound, bitrate, soundData.frequency);
+        /* The end of the frame is unknown: decode it */
+        block.skip = false;
+      }
+      if (crcError) {
+        if (metrics != null) {
+          metrics.crcError();
         }
-        if (mode == 0b11 /* single_channel */) {
-          synth(soundData, sampleDecoded, soundData.synthOffset, soundData.synthBuffer, 1);
-        } else {
-          synth(soundData, sampleDecoded, soundData.synthOffset, soundData.synthBuffer, 2);
+        report(soundData, DecodingError.Type.CRC_MISMATCH, frameOffset, block.position, 0, null);
+        if (soundData.crcCheck == CrcCheck.DROP) {
+          block.channels = soundData.stereo + 1;
+          if (layer == 0b01 /* layer III */) {
+            block.samples = null;
+            block.samplingFrequency = samplingFrequency;
+            block.granules = samplingFrequency >= 3 /* LSF */ ? 1 : 2;
+            skipMainData_III(soundData, buffer.data, buffer.position, frameSize, protectionBit, samplingFrequency, mode);
+          }
+          conceal(soundData, block, layer);
+          buffer.position += frameSize;
+          if (block.timed) {
+            block.bitstreamNanos = System.nanoTime() - start;
+          }
+          return true;
+        }
+      }
+      
+      if (frame == 0 && (index.size == 1 || !buffer.seekable) && layer == 0b01 /* layer III */ && available >= frameSize) {
+        soundData.vbrHeader = vbrHeader(buffer.data, buffer.position, frameSize, 4 + (protectionBit == 0 ? 2 : 0) + sideInfoSize(samplingFrequency, mode));
+      }
+      
+      try {
+        if (layer == 0b11 /* layer I */) {
+          float[] sampleDecoded = null;
+          if (mode == 0b11 /* single_channel */) {
+            sampleDecoded = samples_I(reader, 1, -1);
+          } else if (mode == 0b0 /* stereo */ || mode == 0b10 /* dual_channel */) {
+            sampleDecoded = samples_I(reader, 2, -1);
+          } else if (mode == 0b01 /* intensity_stereo */) {
+            sampleDecoded = samples_I(reader, 2, bound);
+          }
+          block.samples = sampleDecoded;
+          block.channels = mode == 0b11 /* single_channel */ ? 1 : 2;
+        } else if (layer == 0b10 /* layer II */) {
+          float[] sampleDecoded = null;
+          int bitrate = (samplingFrequency >= 3 /* LSF */ ? BITRATE_LAYER_II_III_LSF : BITRATE_LAYER_II)[bitrateIndex];
+          if (mode == 0b11 /* single_channel */) {
+            sampleDecoded = samples_II(reader, 1, -1, bitrate, soundData.frequency);
+          } else if (mode == 0b0 /* stereo */ || mode == 0b10 /* dual_channel */) {
+            sampleDecoded = samples_II(reader, 2, -1, bitrate, soundData.frequency);
+          } else if (mode == 0b01 /* intensity_stereo */) {
+            sampleDecoded = samples_II(reader, 2, bound, bitrate, soundData.frequency);
+          }
+          block.samples = sampleDecoded;
+          block.channels = mode == 0b11 /* single_channel */ ? 1 : 2;
+        } else if (layer == 0b01 /* layer III */) {
+          if (frameSize > 2000 && metrics != null) {
+            metrics.oversizedFrame();
+          }
+          if (available < frameSize) {
+            if (soundData.resilient) {
+              truncated(soundData, block, buffer, frameOffset);
+              return false;
+            }
+            throw new EOFException("Unexpected EOF reached in MPEG data");
+          }
+          block.samples = null;
+          block.channels = soundData.stereo == 1 ? 2 : 1;
+          block.samplingFrequency = samplingFrequency;
+          block.granules = samplingFrequency >= 3 /* LSF */ ? 1 : 2;
+          samples_III(reader, buffer.data, buffer.position, block.channels, frameSize, protectionBit, samplingFrequency, mode, modeExtension, block.workspace, soundData);
         }
-      } else if (layer == 0b01 /* layer III */) {
-        int frameSize = (144 * BITRATE_LAYER_III[bitrateIndex]) / SAMPLING_FREQUENCY[samplingFrequency] + paddingBit;
-        if (frameSize > 2000) {
-          System.err.println("Frame too large! " + frameSize);
+      } catch (RuntimeException e) {
+        /* Corrupt data, e.g. an illegal Huffman code or an out of range value */
+        if (!soundData.resilient) {
+          throw e;
         }
-        samples_III(soundData.buffer, soundData.stereo == 1 ? 2 : 1, soundData.mainDataReader, frameSize, samplingFrequency, mode, modeExtension, soundData.store, soundData.v, soundData);
+        conceal(soundData, block, layer);
+        report(soundData, DecodingError.Type.CORRUPT_FRAME, frameOffset, block.position, 0, e);
+      }
+      if (layer == 0b01 /* layer III */) {
+        buffer.position += frameSize;
+        if (block.timed) {
+          block.bitstreamNanos = System.nanoTime() - start;
+        }
+        return true;
       }
       
-      if (soundData.buffer.current != 0) {
-        read(soundData.buffer, 8 - soundData.buffer.current);
+      /* Skip to the next byte boundary */
+      int consumed = (position(reader) + 7) >>> 3;
+      if (soundData.resilient && consumed > frameSize && frameSize > 0 && available >= frameSize) {
+        /* The frame was read past its end, into the next frame */
+        if (!block.concealed) {
+          conceal(soundData, block, layer);
+          report(soundData, DecodingError.Type.CORRUPT_FRAME, frameOffset, block.position, 0, null);
+        }
+        consumed = frameSize;
+      }
+      if (consumed > available) {
+        if (soundData.resilient) {
+          truncated(soundData, block, buffer, frameOffset);
+          return false;
+        }
+        throw new EOFException("Unexpected EOF reached in MPEG data");
+      }
+      /* Then skip the ancillary data up to the end of the frame, if its size is known, rather than search it for a sync word */
+      buffer.position += Math.max(consumed, Math.min(frameSize, available));
+      if (block.timed) {
+        block.bitstreamNanos = System.nanoTime() - start;
       }
       
       return true;
   }
   
-  private static void samples_III(Buffer buffer, int stereo, MainDataReader mainDataReader, int frameSize, int samplingFrequency, int mode, int modeExtension, float[] store, float[] v, SoundData soundData) throws IOException {
-    int[] scfsi = new int[stereo * 4];
-    int[] part2_3_length = new int[stereo * 2];
-    int[] big_values = new int[stereo * 2];
-    int[] global_gain = new int[stereo * 2];
-    int[] scalefac_compress = new int[stereo * 2];
-    int[] win_switch_flag = new int[stereo * 2];
-    int[] block_type = new int[stereo * 2];
-    int[] mixed_block_flag = new int[stereo * 2];
-    int[] table_select = new int[stereo * 2 * 3];
-    int[] subblock_gain = new int[stereo * 2 * 3];
-    int[] region0_count = new int[stereo * 2];
-    int[] region1_count = new int[stereo * 2];
-    int[] preflag = new int[stereo * 2];
-    int[] scalefac_scale = new int[stereo * 2];
-    int[] count1table_select = new int[stereo * 2];
-    int[] count1 = new int[stereo * 2];
-    int[] scalefac_l = new int[stereo * 2 * 21];
-    int[] scalefac_s = new int[stereo * 2 * 12 * 3];
-    float[] is = new float[stereo * 2 * 576];
-    int mainDataBegin = read(buffer, 9);
-    read(buffer, stereo == 1 ? 5 : 3);
-    
-    for (int ch = 0; ch < stereo; ch++) {
-      for (int scaleband = 0; scaleband < 4; scaleband++) {
-        scfsi[ch * 4 + scaleband] = read(buffer, 1);
+  /**
+   * Returns the size of the frame whose header is at the buffer position, or 0 if the header is most likely a false sync word found in corrupt data:
+   * if it has reserved values, or doesn't match the previous frames, or, when bytes were skipped to find it, if the frame isn't followed by the header of
+   * a similar frame or by a tag, or if its CRC doesn't match when CRCs are checked. Returns the size of the frame as is if it can't be checked, e.g. for
+   * the last frame of the stream, and for free format frames.
+   */
+  private static int confirm(SoundData soundData, Buffer buffer, int layer, int protectionBit, int bitrateIndex, int samplingFrequency, int paddingBit, int mode, int modeExtension) throws IOException {
+    if (layer == 0b00 /* reserved */ || bitrateIndex == 0b1111 /* bad */ || samplingFrequency == -1) {
+      return 0;
+    }
+    if (soundData.frequency != -1 && (layer != soundData.layer || SAMPLING_FREQUENCY[samplingFrequency] != soundData.frequency
+            || (mode == 0b11 /* single_channel */) != (soundData.stereo == 0))) {
+      return 0;
+    }
+    int frameSize = frameSize(layer, bitrateIndex, samplingFrequency, paddingBit);
+    if (frameSize < 0 || soundData.frequency != -1 && buffer.skipped == buffer.synced) {
+      /* A frame right after the previous one is trusted, so that a corrupt header only loses its own frame, rather than the previous one too */
+      return frameSize;
+    }
+    if (protectionBit == 0 && soundData.crcCheck != CrcCheck.OFF) {
+      /* The CRC checks the header on its own, without waiting for the next frame */
+      if (fill(buffer, frameSize) < frameSize) {
+        return frameSize;
       }
+      return crc(soundData, buffer.data, buffer.position, layer, bitrateIndex, samplingFrequency, mode, modeExtension) ? frameSize : 0;
     }
-    for (int gr = 0; gr < 2; gr++) {
-      for (int ch = 0; ch < stereo; ch++) {
-        part2_3_length[ch * 2 + gr] = read(buffer, 12);
-        big_values[ch * 2 + gr] = read(buffer, 9);
-        global_gain[ch * 2 + gr] = read(buffer, 8);
-        scalefac_compress[ch * 2 + gr] = read(buffer, 4);
-        
-        win_switch_flag[ch * 2 + gr] = read(buffer, 1);
-        
-        if (win_switch_flag[ch * 2 + gr] == 1) {
-          block_type[ch * 2 + gr] = read(buffer, 2);
-          mixed_block_flag[ch * 2 + gr] = read(buffer, 1);
-          for (int region = 0; region < 2; region++) {
-            table_select[ch * 2 * 3 + gr * 3 + region] = read(buffer, 5);
-          }
-          for (int window = 0; window < 3; window++) {
-            subblock_gain[ch * 2 * 3 + gr * 3 + window] = read(buffer, 3);
+    if (fill(buffer, frameSize + 4) < frameSize + 4) {
+      return frameSize;
+    }
+    ByteBuffer data = buffer.data;
+    int i = buffer.position;
+    int next = i + frameSize;
+    /* The same sync word, version, layer and sampling frequency */
+    if (data.get(next) == (byte) 0b11111111 && (data.get(next + 1) & 0b11111110) == (data.get(i + 1) & 0b11111110) && (data.get(next + 2) & 0b00001100) == (data.get(i + 2) & 0b00001100)) {
+      return frameSize;
+    }
+    if (tag(data, next, "ID3") || tag(data, next, "TAG") || tag(data, next, "APE")) {
+      return frameSize;
+    }
+    return 0;
+  }
+  
+  /**
+   * Conceals the corrupt frame parsed into the block: decodes it as silence, or marks it so that the samples of the previous frame are kept.
+   */
+  private static void conceal(SoundData soundData, Block block, int layer) {
+    block.concealed = true;
+    if (layer == 0b01 /* layer III */) {
+      /* As for a bit reservoir underflow */
+      Arrays.fill(block.workspace.count1, 0);
+      Arrays.fill(block.workspace.is, 0.0f);
+    } else {
+      block.channels = soundData.stereo + 1;
+      block.samples = new float[block.channels * 32 * (layer == 0b11 /* layer I */ ? 12 : 12 * 3)];
+    }
+    if (soundData.metrics != null) {
+      soundData.metrics.concealedFrame();
+    }
+  }
+  
+  /**
+   * Drops the truncated last frame of the stream, and reports it.
+   */
+  private static void truncated(SoundData soundData, Block block, Buffer buffer, long frameOffset) {
+    report(soundData, DecodingError.Type.TRUNCATED_FRAME, frameOffset, block.position, buffer.limit - buffer.position, null);
+    buffer.position = buffer.limit;
+    block.event = null;
+  }
+  
+  private static void report(SoundData soundData, DecodingError.Type type, long offset, long position, long length, Exception cause) {
+    Consumer<DecodingError> listener = soundData.errorListener;
+    if (listener != null) {
+      listener.accept(new DecodingError(type, offset, position, length, cause));
+    }
+  }
+  
+  /**
+   * The back end of the decoder: synthesizes the PCM samples of a block parsed by {@link #parseFrame(SoundData, Block)}, with the IMDCT and the
+   * polyphase synthesis filterbank, whose overlap state is kept from block to block.
+   */
+  private static void synthFrame(SoundData soundData, Block block) {
+    boolean timed = block.timed;
+    long start = timed ? System.nanoTime() : 0;
+    long imdct = 0;
+    long synthesis = 0;
+    if (block.concealed && soundData.concealment == Concealment.REPEAT && soundData.pcmLength != 0) {
+      /* Keep the samples of the previous frame */
+    } else if (block.samples != null) {
+      synth(soundData, block.samples, block.channels);
+      if (timed) {
+        synthesis = System.nanoTime() - start;
+      }
+    } else {
+      soundData.timed = timed;
+      hybrid_III(soundData, block.workspace, block.channels, block.granules, block.samplingFrequency);
+      if (timed) {
+        long[] hybridNanos = soundData.hybridNanos;
+        for (int ch = 0; ch < block.channels; ch++) {
+          imdct += hybridNanos[ch * 2] - hybridNanos[ch * 2 + 1];
+          synthesis += hybridNanos[ch * 2 + 1];
+        }
+      }
+    }
+    soundData.position = block.position;
+    DecoderMetrics metrics = soundData.metrics;
+    if (metrics != null) {
+      metrics.frame(4 - soundData.layer);
+      if (timed) {
+        metrics.timedFrame(block.syncNanos, block.bitstreamNanos, imdct, synthesis);
+      }
+    }
+    FrameEvent event = block.event;
+    if (event != null) {
+      block.event = null;
+      event.end(4 - soundData.layer, block.channels, block.position);
+    }
+  }
+  
+  /**
+   * Enables or disables pipelined decoding, where the front end of the decoder runs on a separate thread, ahead of the back end, which runs in
+   * {@link #decodeFrame(SoundData)}.
+   * <p>
+   * The blocks parsed by the front end are passed to the back end through a bounded ring. The thread is started when blocks are needed, and stops when the
+   * pipeline is disabled, when the decoder seeks, or when no block was consumed for about a second. The blocks parsed before the pipeline is disabled
+   * are still synthesized by the next calls to {@link #decodeFrame(SoundData)}.
+   */
+  static void pipeline(SoundData soundData, boolean pipelined) {
+    if (pipelined) {
+      if (soundData.pipeline == null) {
+        soundData.pipeline = new Pipeline(soundData.layer == 0b01 /* layer III */ ? soundData.stereo + 1 : 0);
+      }
+      soundData.pipeline.enabled = true;
+    } else if (soundData.pipeline != null) {
+      stop(soundData.pipeline);
+      soundData.pipeline.enabled = false;
+    }
+  }
+  
+  /**
+   * Synthesizes the next block of the pipeline, starting its producer if needed.
+   */
+  private static boolean next(SoundData soundData) throws IOException {
+    Pipeline pipeline = soundData.pipeline;
+    long head = pipeline.head.get();
+    for (int spins = 0; pipeline.tail.get() == head; spins++) {
+      /* The producer publishes its last block before it stops running, so check again before starting a new one */
+      if (!pipeline.running && pipeline.tail.get() == head) {
+        start(soundData);
+      }
+      backoff(spins);
+    }
+    Block block = pipeline.blocks[(int) (head & (PIPELINE_BLOCKS - 1))];
+    Throwable error = block.error;
+    block.error = null;
+    try {
+      if (error instanceof IOException) {
+        throw (IOException) error;
+      } else if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      } else if (error instanceof Error) {
+        throw (Error) error;
+      } else if (error != null) {
+        throw new IOException(error);
+      }
+      if (block.end) {
+        return false;
+      }
+      synthFrame(soundData, block);
+      return true;
+    } finally {
+      pipeline.head.lazySet(head + 1);
+    }
+  }
+  
+  private static void start(SoundData soundData) {
+    Pipeline pipeline = soundData.pipeline;
+    pipeline.running = true;
+    Thread thread = new Thread(() -> produce(soundData, pipeline), "JavaMP3 pipeline");
+    thread.setDaemon(true);
+    pipeline.producer = thread;
+    thread.start();
+  }
+  
+  /**
+   * Parses frames into the free blocks of the pipeline, until the end of the stream, an error, or until it is stopped.
+   */
+  private static void produce(SoundData soundData, Pipeline pipeline) {
+    try {
+      while (!pipeline.stopped) {
+        long tail = pipeline.tail.get();
+        for (int spins = 0; tail - pipeline.head.get() == PIPELINE_BLOCKS; spins++) {
+          if (pipeline.stopped || spins == PIPELINE_SPINS + PIPELINE_IDLE_PARKS) {
+            return;
           }
-          if ((block_type[ch * 2 + gr] == 2) &&
-                  (mixed_block_flag[ch * 2 + gr] == 0)) {
-            region0_count[ch * 2 + gr] = 8;
+          backoff(spins);
+        }
+        Block block = pipeline.blocks[(int) (tail & (PIPELINE_BLOCKS - 1))];
+        boolean last;
+        try {
+          last = block.end = !parseFrame(soundData, block);
+        } catch (Throwable t) {
+          block.error = t;
+          last = true;
+        }
+        pipeline.tail.lazySet(tail + 1);
+        if (last) {
+          return;
+        }
+      }
+    } finally {
+      pipeline.running = false;
+    }
+  }
+  
+  /**
+   * Stops the producer of the pipeline, and waits until it is stopped.
+   */
+  private static void stop(Pipeline pipeline) {
+    pipeline.stopped = true;
+    for (int spins = 0; pipeline.running; spins++) {
+      LockSupport.unpark(pipeline.producer);
+      backoff(spins);
+    }
+    pipeline.stopped = false;
+  }
+  
+  /**
+   * Stops the producer of the pipeline, and synthesizes the blocks it parsed, so that the front end and the back end are on the same frame, as if the
+   * decoder wasn't pipelined.
+   */
+  private static void drain(SoundData soundData) {
+    Pipeline pipeline = soundData.pipeline;
+    stop(pipeline);
+    long tail = pipeline.tail.get();
+    for (long head = pipeline.head.get(); head < tail; head++) {
+      Block block = pipeline.blocks[(int) (head & (PIPELINE_BLOCKS - 1))];
+      if (block.error == null && !block.end) {
+        synthFrame(soundData, block);
+      }
+      block.error = null;
+    }
+    pipeline.head.set(tail);
+  }
+  
+  /**
+   * Enables or disables the synthesis of the two channels of stereo Layer III frames on two threads, once the specified number of frames was decoded.
+   * <p>
+   * The right channel is synthesized by a worker thread, which is started when needed, and stops when parallel synthesis is disabled, or when no frame
+   * was synthesized for about a second.
+   */
+  static void parallelChannels(SoundData soundData, boolean parallel, int threshold) {
+    ChannelWorker worker = soundData.channelWorker;
+    if (parallel) {
+      if (worker == null) {
+        worker = soundData.channelWorker = new ChannelWorker();
+      }
+      worker.threshold = threshold;
+      worker.frames = 0;
+    } else if (worker != null) {
+      worker.stopped = true;
+      for (int spins = 0; worker.running; spins++) {
+        LockSupport.unpark(worker.thread);
+        backoff(spins);
+      }
+      soundData.channelWorker = null;
+    }
+  }
+  
+  private static void start(SoundData soundData, ChannelWorker worker) {
+    worker.running = true;
+    Thread thread = new Thread(() -> work(soundData, worker), "JavaMP3 channel");
+    thread.setDaemon(true);
+    worker.thread = thread;
+    thread.start();
+  }
+  
+  /**
+   * Synthesizes the right channel of the frames requested by the decoding thread, until stopped or idle.
+   */
+  private static void work(SoundData soundData, ChannelWorker worker) {
+    try {
+      long handled = worker.done;
+      int idle = 0;
+      for (int spins = 0; !worker.stopped && idle < CHANNEL_IDLE_PARKS; spins++) {
+        long requested = worker.requested;
+        if (requested == handled) {
+          if (spins < PIPELINE_SPINS) {
+            Thread.yield();
           } else {
-            region0_count[ch * 2 + gr] = 7;
-          }
-          
-          region1_count[ch * 2 + gr] =
-                  20 - region0_count[ch * 2 + gr];
-        } else {
-          for (int region = 0; region < 3; region++) {
-            table_select[ch * 2 * 3 + gr * 3 + region] = read(buffer, 5);
+            /* Woken up early by the next request */
+            LockSupport.parkNanos(CHANNEL_PARK_NANOS);
+            idle++;
           }
-          region0_count[ch * 2 + gr] = read(buffer, 4);
-          region1_count[ch * 2 + gr] = read(buffer, 3);
-          block_type[ch * 2 + gr] = 0;
+          continue;
         }
-        preflag[ch * 2 + gr] = read(buffer, 1);
-        scalefac_scale[ch * 2 + gr] = read(buffer, 1);
-        count1table_select[ch * 2 + gr] = read(buffer, 1);
+        try {
+          hybrid_III(soundData, worker.workspace, 1, worker.granules, worker.samplingFrequency, worker.pcm, 0, 1);
+        } catch (Throwable t) {
+          worker.error = t;
+        }
+        handled = requested;
+        worker.done = handled;
+        LockSupport.unpark(worker.waiter);
+        spins = -1;
+        idle = 0;
       }
+    } finally {
+      worker.running = false;
     }
-    
-    System.arraycopy(mainDataReader.array, mainDataReader.top - mainDataBegin, mainDataReader.array, 0, mainDataBegin);
-    
-    int mainDataSize = frameSize - (stereo == 2 ? 32 : 17) - 4;
-    readInto(buffer, mainDataReader.array, mainDataBegin, mainDataSize);
-    mainDataReader.index = 0;
-    mainDataReader.current = 0;
-    mainDataReader.top = mainDataBegin + mainDataSize;
-    
-    for (int gr = 0; gr < 2; gr++) {
-      for (int ch = 0; ch < stereo; ch++) {
-        
-        int part_2_start = mainDataReader.index * 8 + mainDataReader.current;
+  }
+  
+  private static void backoff(int spins) {
+    if (spins < PIPELINE_SPINS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PIPELINE_PARK_NANOS);
+    }
+  }
+  
+  /**
+   * Positions the decoder on the frame containing the specified sample, and decodes it, so that its first sample is {@code soundData.position}.
+   * <p>
+   * The frame is found in the frame index, which is extended by scanning frame headers only when the source is seekable. Other sources aren't indexed, and
+   * are decoded forward up to the frame.
+   * The decoding restarts a few frames before the target frame, so that the bit reservoir and the IMDCT and synthesis overlap state are exactly the same
+   * as if the stream had been decoded from its start.
+   * <p>
+   * Returns false if the sample is past the end of the stream.
+   */
+  static boolean seek(SoundData soundData, long sample) throws IOException {
+    if (soundData.pipeline != null) {
+      drain(soundData);
+      if (!soundData.pipeline.enabled) {
+        soundData.pipeline = null;
+      }
+    }
+    /* The frames are decoded on the calling thread, so that the front end and the back end stay on the same frame */
+    FrameIndex index = soundData.index;
+    Buffer buffer = soundData.buffer;
+    if (!buffer.seekable && sample < soundData.position) {
+      throw new IOException("Cannot seek backwards in a non-seekable stream");
+    }
+    int target = find(index, sample, soundData.frameSamples);
+    if (target == -1 && buffer.seekable) {
+      scan(soundData, sample);
+      target = find(index, sample, soundData.frameSamples);
+    }
+    if (target == -1 || target > soundData.frame) {
+      int start = target == -1 ? -1 : prerollStart(soundData, target);
+      if (target == -1 || start <= soundData.frame + 1) {
+        /* The target frame isn't indexed, or is close enough to decode up to it: only the frames overlapping it and the frame itself are decoded */
+        long decoded = (overlapFrames(soundData) + 1) * (long) soundData.frameSamples;
+        while (soundData.position + soundData.frameSamples <= sample || target > soundData.frame) {
+          boolean skip = sample - (soundData.position + soundData.frameSamples) >= decoded;
+          if (!(skip ? skipFrame(soundData) : decodeFrame(soundData, soundData.block))) {
+            return false;
+          }
+        }
+        return true;
+      }
+    } else if (target == soundData.frame) {
+      return true;
+    }
+    int start = prerollStart(soundData, target);
+    seek(buffer, index.offsets[start]);
+    soundData.frame = start - 1;
+    /* Restart from a clean state, which is exactly the initial state when restarting from the first frame */
+    soundData.mainDataTop = 0;
+    Arrays.fill(soundData.synthOffset, 64);
+    Arrays.fill(soundData.synthBuffer, 0.0f);
+    Arrays.fill(soundData.synthSilence, 16);
+    if (soundData.store != null) {
+      Arrays.fill(soundData.store, 0.0f);
+    }
+    Arrays.fill(soundData.storeSilent, true);
+    /* The frames before the frames overlapping the target frame are only needed for the bit reservoir */
+    int overlap = Math.max(target - overlapFrames(soundData), 0);
+    while (soundData.frame < target) {
+      if (!(soundData.frame + 1 < overlap ? skipFrame(soundData) : decodeFrame(soundData, soundData.block))) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  static List<Tag> tags(SoundData soundData) {
+    return soundData.buffer.tags;
+  }
+  
+  static boolean seekable(SoundData soundData) {
+    return soundData.buffer.seekable;
+  }
+  
+  /**
+   * Returns the number of frames before a frame whose samples overlap it, which must be decoded so that it is decoded exactly.
+   */
+  private static int overlapFrames(SoundData soundData) {
+    /* The synthesis filterbank overlaps 16 time slots, and the IMDCT overlaps one granule, which is more than a frame
+     * for Layer I frames and single granule Layer III frames */
+    return soundData.frameSamples < 1152 ? 2 : 1;
+  }
+  
+  /**
+   * Returns the first frame that must be decoded so that the specified frame is decoded exactly.
+   */
+  private static int prerollStart(SoundData soundData, int frame) {
+    FrameIndex index = soundData.index;
+    int start = Math.max(frame - overlapFrames(soundData), 0);
+    if (soundData.layer != 0b01 /* layer III */) {
+      return start;
+    }
+    /* The main data of the frames decoded before the target frame and of the target frame may start in the main data of previous frames */
+    int first = start;
+    for (int k = first; k <= frame; k++) {
+      int needed = index.mainDataBegins[k];
+      int j = k;
+      while (needed > 0 && j > 0) {
+        j--;
+        /* Bytes of main data in frame j, at least: remove the header, the CRC and the stereo side information */
+        needed -= (int) (index.offsets[j + 1] - index.offsets[j]) - 4 - 2 - 32;
+      }
+      start = Math.min(start, j);
+    }
+    return start;
+  }
+  
+  /**
+   * Returns the indexed frame containing the specified sample, or -1 if the sample is past the last indexed frame.
+   */
+  private static int find(FrameIndex index, long sample, int frameSamples) {
+    if (index.size == 0 || sample >= index.samples[index.size - 1] + frameSamples) {
+      return -1;
+    }
+    int i = Arrays.binarySearch(index.samples, 0, index.size, sample);
+    return i >= 0 ? i : -i - 2;
+  }
+  
+  /**
+   * Extends the frame index up to the frame containing the specified sample or the end of the stream, by reading frame headers only.
+   * <p>
+   * Stops early on free format frames, whose size can only be known by decoding them. Returns true if the end of the stream was reached.
+   */
+  private static boolean scan(SoundData soundData, long sample) throws IOException {
+    FrameIndex index = soundData.index;
+    Buffer buffer = soundData.buffer;
+    BitReader reader = soundData.reader;
+    long resume = buffer.base + buffer.position;
+    seek(buffer, index.offsets[index.size - 1]);
+    boolean first = true;
+    boolean end = false;
+    while (true) {
+      if (!sync(buffer)) {
+        end = true;
+        break;
+      }
+      long frameOffset = buffer.base + buffer.position;
+      int available = fill(buffer, 4 + 2 + 2);
+      reset(reader, buffer.array, buffer.data, buffer.position, buffer.limit);
+      skip(reader, 11);
+      int version = read(reader, 2);
+      int layer = read(reader, 2);
+      int protectionBit = read(reader, 1);
+      int bitrateIndex = read(reader, 4);
+      int samplingFrequency = samplingFrequency(version, read(reader, 2));
+      int paddingBit = read(reader, 1);
+      skip(reader, 9);
+      if (protectionBit == 0) {
+        skip(reader, 16);
+      }
+      int frameSize = frameSize(layer, bitrateIndex, samplingFrequency, paddingBit);
+      if (frameSize < 0 || available < 4 + 2 + 2) {
+        break;
+      }
+      if (!first) {
+        long position = index.samples[index.size - 1] + soundData.frameSamples;
+        add(index, frameOffset, position, layer == 0b01 /* layer III */ ? peek(reader, samplingFrequency >= 3 /* LSF */ ? 8 : 9) : 0);
+        if (position + soundData.frameSamples > sample) {
+          break;
+        }
+      }
+      first = false;
+      if (fill(buffer, frameSize) < frameSize) {
+        break;
+      }
+      buffer.position += frameSize;
+    }
+    /* Resume decoding where it was */
+    seek(buffer, resume);
+    return end;
+  }
+  
+  /**
+   * Extends the frame index up to the end of the stream, and returns the number of frames of the stream, or -1 if the stream isn't seekable or can't be
+   * fully indexed by reading frame headers only, e.g. free format streams or streams with a truncated last frame.
+   */
+  static int frames(SoundData soundData) throws IOException {
+    if (!soundData.buffer.seekable || !scan(soundData, Long.MAX_VALUE)) {
+      return -1;
+    }
+    return soundData.index.size;
+  }
+  
+  /**
+   * Returns a new decoder of the same stream, which must be read from a byte buffer, positioned on its first frame, and with a copy of the frame index of
+   * the specified decoder.
+   * <p>
+   * The decoders don't share any mutable state, so that they can be used concurrently to decode different parts of the stream, see {@link #seek(SoundData, long)}.
+   */
+  static SoundData fork(SoundData soundData) throws IOException {
+    Buffer buffer = new Buffer(soundData.buffer.bytes.duplicate());
+    buffer.end = soundData.buffer.end;
+    SoundData fork = new SoundData();
+    fork.buffer = buffer;
+    FrameIndex index = soundData.index;
+    fork.index.offsets = Arrays.copyOf(index.offsets, index.offsets.length);
+    fork.index.samples = Arrays.copyOf(index.samples, index.samples.length);
+    fork.index.mainDataBegins = Arrays.copyOf(index.mainDataBegins, index.mainDataBegins.length);
+    fork.index.size = index.size;
+    if (!decodeFrame(fork)) {
+      throw new IOException("No MPEG data in the specified buffer!");
+    }
+    return fork;
+  }
+  
+  private static void add(FrameIndex index, long offset, long sample, int mainDataBegin) {
+    if (index.size == index.offsets.length) {
+      int length = index.size * 2;
+      index.offsets = Arrays.copyOf(index.offsets, length);
+      index.samples = Arrays.copyOf(index.samples, length);
+      index.mainDataBegins = Arrays.copyOf(index.mainDataBegins, length);
+    }
+    index.offsets[index.size] = offset;
+    index.samples[index.size] = sample;
+    index.mainDataBegins[index.size] = mainDataBegin;
+    index.size++;
+  }
+  
+  /**
+   * Reads the frame headers of a stream until its end, skipping their payloads, or returns null if there's no frame.
+   */
+  static SoundInfo scan(InputStream in) throws IOException {
+    return scan(new Buffer(in));
+  }
+  
+  static SoundInfo scan(ByteBuffer in) throws IOException {
+    return scan(new Buffer(in));
+  }
+  
+  private static SoundInfo scan(Buffer buffer) throws IOException {
+    if (buffer.seekable) {
+      trailingTags(buffer);
+    }
+    BitReader reader = new BitReader();
+    FrameIndex index = new FrameIndex();
+    int firstLayer = -1;
+    int firstSamplingFrequency = -1;
+    int firstBitrateIndex = -1;
+    boolean stereo = false;
+    boolean variableBitrate = false;
+    long samples = 0;
+    long end = 0;
+    while (sync(buffer)) {
+      reset(reader, buffer.array, buffer.data, buffer.position, buffer.limit);
+      skip(reader, 11);
+      int version = read(reader, 2);
+      int layer = read(reader, 2);
+      skip(reader, 1);
+      int bitrateIndex = read(reader, 4);
+      int samplingFrequency = samplingFrequency(version, read(reader, 2));
+      int paddingBit = read(reader, 1);
+      skip(reader, 1);
+      int mode = read(reader, 2);
       
-      /* Number of bits in the bitstream for the bands */
-        int slen1 = SCALEFACTOR_SIZES_LAYER_III[scalefac_compress[ch * 2 + gr] * 2];
-        int slen2 = SCALEFACTOR_SIZES_LAYER_III[scalefac_compress[ch * 2 + gr] * 2 + 1];
-        
-        if ((win_switch_flag[ch * 2 + gr] != 0) &&
-                (block_type[ch * 2 + gr] == 2)) {
-          if (mixed_block_flag[ch * 2 + gr] != 0) {
-            for (int sfb = 0; sfb < 8; sfb++) {
-              scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen1);
-            }
-            for (int sfb = 3; sfb < 12; sfb++) {
-              int nbits;
-              if (sfb < 6) {	/* slen1 is for bands 3-5, slen2 for 6-11 */
-                nbits = slen1;
-              } else {
-                nbits = slen2;
-              }
-              
-              for (int win = 0; win < 3; win++) {
-                scalefac_s[ch * 2 * 12 * 3 + gr * 12 * 3 + sfb * 3 + win] =
-                        read(mainDataReader, nbits);
-              }
-            }
-          } else {
-            for (int sfb = 0; sfb < 12; sfb++) {
-              int nbits;
-              if (sfb < 6) {	/* slen1 is for bands 3-5, slen2 for 6-11 */
-                nbits = slen1;
-              } else {
-                nbits = slen2;
-              }
-              
-              for (int win = 0; win < 3; win++) {
-                scalefac_s[ch * 2 * 12 * 3 + gr * 12 * 3 + sfb * 3 + win] =
-                        read(mainDataReader, nbits);
-              }
-            }
+      if (layer == 0b00 /* reserved */ || bitrateIndex == 0b1111 /* forbidden */ || samplingFrequency == -1 /* reserved */
+              || (firstLayer != -1 && (layer != firstLayer || samplingFrequency != firstSamplingFrequency))) {
+        /* Not a frame header */
+        buffer.position++;
+        continue;
+      }
+      if (firstLayer == -1) {
+        firstLayer = layer;
+        firstSamplingFrequency = samplingFrequency;
+        firstBitrateIndex = bitrateIndex;
+        stereo = mode != 0b11 /* single_channel */;
+      } else if (bitrateIndex != firstBitrateIndex) {
+        variableBitrate = true;
+      }
+      add(index, buffer.base + buffer.position, samples, 0);
+      samples += frameSamples(layer, samplingFrequency);
+      
+      int frameSize = frameSize(layer, bitrateIndex, samplingFrequency, paddingBit);
+      if (frameSize < 0) {
+        /* Free format: the frame ends at the next sync word */
+        buffer.position += 4;
+        end = buffer.base + buffer.position;
+        continue;
+      }
+      /* Skip the payload, which may be truncated at the end of the stream */
+      int available = fill(buffer, frameSize);
+      buffer.position += Math.min(available, frameSize);
+      end = buffer.base + buffer.position;
+    }
+    if (index.size == 0) {
+      return null;
+    }
+    long bytes = end - index.offsets[0];
+    return new SoundInfo(SAMPLING_FREQUENCY[firstSamplingFrequency], stereo, Arrays.copyOf(index.offsets, index.size), samples, bytes, variableBitrate);
+  }
+  
+  /**
+   * Parses the Xing, Info or VBRI header of a frame, if any, or returns null.
+   * <p>
+   * A Xing header is right after the side information, and a VBRI header is always 32 bytes after the frame header.
+   */
+  private static VbrHeader vbrHeader(ByteBuffer frame, int offset, int frameSize, int sideInfoEnd) {
+    int i = offset + sideInfoEnd;
+    int end = offset + frameSize;
+    if (i + 8 <= end && (tag(frame, i, "Xing") || tag(frame, i, "Info"))) {
+      VbrHeader.Type type = tag(frame, i, "Xing") ? VbrHeader.Type.XING : VbrHeader.Type.INFO;
+      int flags = bigEndian(frame, i + 4, 4);
+      i += 8;
+      int frameCount = -1;
+      long byteCount = -1;
+      double[] tocFractions = null;
+      long[] tocOffsets = null;
+      if ((flags & 0x1) != 0 && i + 4 <= end) {
+        frameCount = bigEndian(frame, i, 4);
+        i += 4;
+      }
+      if ((flags & 0x2) != 0 && i + 4 <= end) {
+        byteCount = bigEndian(frame, i, 4) & 0xFFFFFFFFL;
+        i += 4;
+      }
+      if ((flags & 0x4) != 0 && i + 100 <= end) {
+        if (byteCount > 0) {
+          /* 100 points, at every percent of the duration, each a fraction of the size in 1/256 */
+          tocFractions = new double[101];
+          tocOffsets = new long[101];
+          for (int k = 0; k < 100; k++) {
+            tocFractions[k] = k / 100.0;
+            tocOffsets[k] = (frame.get(i + k) & 0xFF) * byteCount / 256;
           }
-        } else { /* block_type == 0 if winswitch == 0 */
-
-	/* Scale factor bands 0-5 */
-          if ((scfsi[ch * 4 + 0] == 0) || (gr == 0)) {
-            for (int sfb = 0; sfb < 6; sfb++) {
-              scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen1);
-            }
-          } else if ((scfsi[ch * 4 + 0] == 1) && (gr == 1)) {
-    /* Copy scalefactors from granule 0 to granule 1 */
-            for (int sfb = 0; sfb < 6; sfb++) {
-              scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
-                      scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
-            }
+          tocFractions[100] = 1;
+          tocOffsets[100] = byteCount;
+        }
+        i += 100;
+      }
+      if ((flags & 0x8) != 0) {
+        i += 4;
+      }
+      String encoder = null;
+      int encoderDelay = -1;
+      int encoderPadding = -1;
+      /* The LAME extension: a 9 characters version string, and the delay and padding as two 12-bit values 21 bytes after it */
+      if (i + 24 <= end && (tag(frame, i, "LAME") || tag(frame, i, "Lavf") || tag(frame, i, "Lavc"))) {
+        StringBuilder sb = new StringBuilder(9);
+        for (int k = 0; k < 9 && frame.get(i + k) >= 0x20 && frame.get(i + k) < 0x7F; k++) {
+          sb.append((char) frame.get(i + k));
+        }
+        encoder = sb.toString().trim();
+        int delayPadding = bigEndian(frame, i + 21, 3);
+        encoderDelay = delayPadding >>> 12;
+        encoderPadding = delayPadding & 0xFFF;
+      }
+      return new VbrHeader(type, frameCount, byteCount, tocFractions, tocOffsets, encoder, encoderDelay, encoderPadding);
+    }
+    i = offset + 4 + 32;
+    if (i + 26 <= end && tag(frame, i, "VBRI")) {
+      long byteCount = bigEndian(frame, i + 10, 4) & 0xFFFFFFFFL;
+      int frameCount = bigEndian(frame, i + 14, 4);
+      int entries = bigEndian(frame, i + 18, 2);
+      int scale = bigEndian(frame, i + 20, 2);
+      int entrySize = bigEndian(frame, i + 22, 2);
+      int framesPerEntry = bigEndian(frame, i + 24, 2);
+      double[] tocFractions = null;
+      long[] tocOffsets = null;
+      i += 26;
+      if (entries > 0 && frameCount > 0 && entrySize >= 1 && entrySize <= 4 && i + entries * entrySize <= end) {
+        /* Each entry is the size of the next framesPerEntry frames, divided by the scale */
+        tocFractions = new double[entries + 1];
+        tocOffsets = new long[entries + 1];
+        for (int k = 0; k < entries; k++) {
+          tocFractions[k + 1] = Math.min(1, (double) (k + 1) * framesPerEntry / frameCount);
+          tocOffsets[k + 1] = tocOffsets[k] + (long) bigEndian(frame, i + k * entrySize, entrySize) * scale;
+        }
+      }
+      return new VbrHeader(VbrHeader.Type.VBRI, frameCount, byteCount, tocFractions, tocOffsets, null, -1, -1);
+    }
+    return null;
+  }
+  
+  private static boolean tag(ByteBuffer data, int offset, String tag) {
+    for (int i = 0; i < tag.length(); i++) {
+      if (data.get(offset + i) != tag.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private static int bigEndian(ByteBuffer data, int offset, int length) {
+    int value = 0;
+    for (int i = 0; i < length; i++) {
+      value = value << 8 | data.get(offset + i) & 0xFF;
+    }
+    return value;
+  }
+  
+  /**
+   * Copies bytes of the data of a buffer at an absolute index into an array. The position of the data is otherwise unused, as it is only read at
+   * absolute indices.
+   */
+  private static void get(ByteBuffer data, int index, byte[] array, int offset, int length) {
+    if (data.hasArray()) {
+      System.arraycopy(data.array(), data.arrayOffset() + index, array, offset, length);
+    } else {
+      ((java.nio.Buffer) data).position(index);
+      data.get(array, offset, length);
+    }
+  }
+  
+  /**
+   * Returns the index in SAMPLING_FREQUENCY of the sampling frequency of a frame, from the version and sampling frequency fields of its header,
+   * or -1 if either is reserved.
+   * <p>
+   * The indices of the MPEG-2 and MPEG-2.5 low sampling frequencies (LSF) are 3 and above.
+   */
+  private static int samplingFrequency(int version, int samplingFrequency) {
+    if (version == 0b01 /* reserved */ || samplingFrequency == 0b11 /* reserved */) {
+      return -1;
+    }
+    if (version == 0b11 /* MPEG-1 */) {
+      return samplingFrequency;
+    } else if (version == 0b10 /* MPEG-2 */) {
+      return 3 + samplingFrequency;
+    } else { /* MPEG-2.5 */
+      return 6 + samplingFrequency;
+    }
+  }
+  
+  /**
+   * Returns the number of samples per channel of a frame: Layer III frames only have a single granule at low sampling frequencies.
+   */
+  private static int frameSamples(int layer, int samplingFrequency) {
+    if (layer == 0b11 /* layer I */) {
+      return 384;
+    } else if (layer == 0b01 /* layer III */ && samplingFrequency >= 3 /* LSF */) {
+      return 576;
+    } else {
+      return 1152;
+    }
+  }
+  
+  /**
+   * Returns the size in bytes of the side information of a Layer III frame.
+   */
+  private static int sideInfoSize(int samplingFrequency, int mode) {
+    if (samplingFrequency >= 3 /* LSF */) {
+      return mode == 0b11 /* single_channel */ ? 9 : 17;
+    }
+    return mode == 0b11 /* single_channel */ ? 17 : 32;
+  }
+  
+  /**
+   * Returns the first line of short band 3 of a Layer III granule, which ends region 0 of short block granules and the long bands of mixed block
+   * granules: 36, except for MPEG-2.5 at 8 kHz, whose short bands are twice as wide, where it is 72.
+   */
+  private static int shortBand3_III(int samplingFrequency) {
+    return SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + 3] * 3;
+  }
+  
+  /**
+   * Returns whether the CRC of a frame protected by a CRC matches the last 16 bits of its header and the bits that follow its CRC up to the end of its
+   * side information, which must be available.
+   */
+  private static boolean crc(SoundData soundData, ByteBuffer data, int offset, int layer, int bitrateIndex, int samplingFrequency, int mode, int modeExtension) {
+    int channels = mode == 0b11 /* single_channel */ ? 1 : 2;
+    int bound = mode == 0b01 /* intensity_stereo */ ? 4 + modeExtension * 4 : 32;
+    int bits;
+    if (layer == 0b11 /* layer I */) {
+      /* The bit allocation */
+      bits = 4 * (channels * bound + 32 - bound);
+    } else if (layer == 0b10 /* layer II */) {
+      /* The bit allocation, then the scalefactor selection of the allocated subbands */
+      int bitrate = (samplingFrequency >= 3 /* LSF */ ? BITRATE_LAYER_II_III_LSF : BITRATE_LAYER_II)[bitrateIndex];
+      int sbIndex = allocationTable_II(bitrate, SAMPLING_FREQUENCY[samplingFrequency]);
+      int sbLimit = SB_LIMIT[sbIndex];
+      bound = Math.min(bound, sbLimit);
+      BitReader reader = soundData.crcReader;
+      reset(reader, null, data, offset + 6, data.limit());
+      bits = 0;
+      for (int sb = 0; sb < sbLimit; sb++) {
+        int nbal = NBAL[sbIndex][sb];
+        for (int ch = 0; ch < (sb < bound ? channels : 1); ch++) {
+          bits += nbal;
+          if (read(reader, nbal) != 0) {
+            bits += 2 * (sb < bound ? 1 : channels);
           }
-
-	/* Scale factor bands 6-10 */
-          if ((scfsi[ch * 4 + 1] == 0) || (gr == 0)) {
-            for (int sfb = 6; sfb < 11; sfb++) {
-              scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen1);
-            }
-          } else if ((scfsi[ch * 4 + 1] == 1) && (gr == 1)) {
-    /* Copy scalefactors from granule 0 to granule 1 */
-            for (int sfb = 6; sfb < 11; sfb++) {
-              scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
-                      scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
-            }
+        }
+      }
+    } else {
+      bits = sideInfoSize(samplingFrequency, mode) * 8;
+    }
+    int crc = 0xFFFF;
+    crc = (crc & 0xFF) << 8 ^ CRC_16[(crc >>> 8 ^ data.get(offset + 2)) & 0xFF];
+    crc = (crc & 0xFF) << 8 ^ CRC_16[(crc >>> 8 ^ data.get(offset + 3)) & 0xFF];
+    /* Byte by byte, then bit by bit for the last bits of Layer I and II side information */
+    int i = offset + 6;
+    for (; bits >= 8; bits -= 8) {
+      crc = (crc & 0xFF) << 8 ^ CRC_16[(crc >>> 8 ^ data.get(i++)) & 0xFF];
+    }
+    for (int bit = 7; bit > 7 - bits; bit--) {
+      crc = (((crc >>> 15 ^ data.get(i) >>> bit) & 1) != 0 ? crc << 1 ^ 0x8005 : crc << 1) & 0xFFFF;
+    }
+    return crc == ((data.get(offset + 4) & 0xFF) << 8 | data.get(offset + 5) & 0xFF);
+  }
+  
+  /**
+   * Returns the size in bytes of a frame, including its header, or -1 if the frame uses the free format bitrate.
+   */
+  private static int frameSize(int layer, int bitrateIndex, int samplingFrequency, int paddingBit) {
+    if (bitrateIndex == 0) {
+      return -1;
+    }
+    boolean lsf = samplingFrequency >= 3;
+    if (layer == 0b11 /* layer I */) {
+      return (12 * (lsf ? BITRATE_LAYER_I_LSF : BITRATE_LAYER_I)[bitrateIndex] / SAMPLING_FREQUENCY[samplingFrequency] + paddingBit) * 4;
+    } else if (layer == 0b10 /* layer II */) {
+      return 144 * (lsf ? BITRATE_LAYER_II_III_LSF : BITRATE_LAYER_II)[bitrateIndex] / SAMPLING_FREQUENCY[samplingFrequency] + paddingBit;
+    } else if (lsf) {
+      /* A frame has a single granule */
+      return 72 * BITRATE_LAYER_II_III_LSF[bitrateIndex] / SAMPLING_FREQUENCY[samplingFrequency] + paddingBit;
+    } else {
+      return 144 * BITRATE_LAYER_III[bitrateIndex] / SAMPLING_FREQUENCY[samplingFrequency] + paddingBit;
+    }
+  }
+  
+  /**
+   * Appends the main data of a Layer III frame to the bit reservoir without decoding it, so that the next frames may still refer to it. Only the last
+   * 511 bytes of the reservoir, the most a frame may refer to, are kept before it.
+   */
+  private static void skipMainData_III(SoundData soundData, ByteBuffer frame, int frameOffset, int frameSize, int protectionBit, int samplingFrequency, int mode) {
+    byte[] mainData = soundData.mainData;
+    int mainDataOffset = 4 + (protectionBit == 0 ? 2 : 0) + sideInfoSize(samplingFrequency, mode);
+    int mainDataSize = frameSize - mainDataOffset;
+    int kept = Math.min(soundData.mainDataTop, 511);
+    System.arraycopy(mainData, soundData.mainDataTop - kept, mainData, 0, kept);
+    get(frame, frameOffset + mainDataOffset, mainData, kept, mainDataSize);
+    soundData.mainDataTop = kept + mainDataSize;
+  }
+  
+  /**
+   * Reads the side information of a Layer III frame, after its header and CRC, into the workspace, and returns its main_data_begin.
+   */
+  private static int sideInfo_III(BitReader buffer, int stereo, boolean lsf, LayerIIIWorkspace workspace) {
+    int[] scfsi = workspace.scfsi;
+    int[] part2_3_length = workspace.part2_3_length;
+    int[] big_values = workspace.big_values;
+    int[] global_gain = workspace.global_gain;
+    int[] scalefac_compress = workspace.scalefac_compress;
+    int[] win_switch_flag = workspace.win_switch_flag;
+    int[] block_type = workspace.block_type;
+    int[] mixed_block_flag = workspace.mixed_block_flag;
+    int[] table_select = workspace.table_select;
+    int[] subblock_gain = workspace.subblock_gain;
+    int[] region0_count = workspace.region0_count;
+    int[] region1_count = workspace.region1_count;
+    int[] preflag = workspace.preflag;
+    int[] scalefac_scale = workspace.scalefac_scale;
+    int[] count1table_select = workspace.count1table_select;
+    int granules = lsf ? 1 : 2;
+    int mainDataBegin = read(buffer, lsf ? 8 : 9);
+    if (lsf) {
+      read(buffer, stereo);
+    } else {
+      read(buffer, stereo == 1 ? 5 : 3);
+      
+      for (int ch = 0; ch < stereo; ch++) {
+        for (int scaleband = 0; scaleband < 4; scaleband++) {
+          scfsi[ch * 4 + scaleband] = read(buffer, 1);
+        }
+      }
+    }
+    for (int gr = 0; gr < granules; gr++) {
+      for (int ch = 0; ch < stereo; ch++) {
+        part2_3_length[ch * 2 + gr] = read(buffer, 12);
+        big_values[ch * 2 + gr] = read(buffer, 9);
+        global_gain[ch * 2 + gr] = read(buffer, 8);
+        scalefac_compress[ch * 2 + gr] = read(buffer, lsf ? 9 : 4);
+        
+        win_switch_flag[ch * 2 + gr] = read(buffer, 1);
+        
+        if (win_switch_flag[ch * 2 + gr] == 1) {
+          block_type[ch * 2 + gr] = read(buffer, 2);
+          mixed_block_flag[ch * 2 + gr] = read(buffer, 1);
+          for (int region = 0; region < 2; region++) {
+            table_select[ch * 2 * 3 + gr * 3 + region] = read(buffer, 5);
           }
-
-	/* Scale factor bands 11-15 */
-          if ((scfsi[ch * 4 + 2] == 0) || (gr == 0)) {
-            for (int sfb = 11; sfb < 16; sfb++) {
-              scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen2);
-            }
-          } else if ((scfsi[ch * 4 + 2] == 1) && (gr == 1)) {
-    /* Copy scalefactors from granule 0 to granule 1 */
-            for (int sfb = 11; sfb < 16; sfb++) {
-              scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
-                      scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
-            }
+          for (int window = 0; window < 3; window++) {
+            subblock_gain[ch * 2 * 3 + gr * 3 + window] = read(buffer, 3);
           }
-
-	/* Scale factor bands 16-20 */
-          if ((scfsi[ch * 4 + 3] == 0) || (gr == 0)) {
-            for (int sfb = 16; sfb < 21; sfb++) {
-              scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen2);
-            }
-          } else if ((scfsi[ch * 4 + 3] == 1) && (gr == 1)) {
-    /* Copy scalefactors from granule 0 to granule 1 */
-            for (int sfb = 16; sfb < 21; sfb++) {
-              scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
-                      scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
-            }
+          if ((block_type[ch * 2 + gr] == 2) &&
+                  (mixed_block_flag[ch * 2 + gr] == 0)) {
+            region0_count[ch * 2 + gr] = 8;
+          } else {
+            region0_count[ch * 2 + gr] = 7;
+          }
+          
+          region1_count[ch * 2 + gr] =
+                  20 - region0_count[ch * 2 + gr];
+        } else {
+          for (int region = 0; region < 3; region++) {
+            table_select[ch * 2 * 3 + gr * 3 + region] = read(buffer, 5);
           }
+          region0_count[ch * 2 + gr] = read(buffer, 4);
+          region1_count[ch * 2 + gr] = read(buffer, 3);
+          block_type[ch * 2 + gr] = 0;
+          mixed_block_flag[ch * 2 + gr] = 0;
         }
-
+        /* The preflag of LSF granules is implied by scalefac_compress */
+        preflag[ch * 2 + gr] = lsf ? 0 : read(buffer, 1);
+        scalefac_scale[ch * 2 + gr] = read(buffer, 1);
+        count1table_select[ch * 2 + gr] = read(buffer, 1);
+      }
+    }
+    return mainDataBegin;
+  }
+  
+  private static void samples_III(BitReader buffer, ByteBuffer frame, int frameOffset, int stereo, int frameSize, int protectionBit, int samplingFrequency, int mode, int modeExtension, LayerIIIWorkspace workspace, SoundData soundData) {
+    int[] part2_3_length = workspace.part2_3_length;
+    int[] big_values = workspace.big_values;
+    int[] global_gain = workspace.global_gain;
+    int[] win_switch_flag = workspace.win_switch_flag;
+    int[] block_type = workspace.block_type;
+    int[] mixed_block_flag = workspace.mixed_block_flag;
+    int[] table_select = workspace.table_select;
+    int[] subblock_gain = workspace.subblock_gain;
+    int[] region0_count = workspace.region0_count;
+    int[] region1_count = workspace.region1_count;
+    int[] preflag = workspace.preflag;
+    int[] scalefac_scale = workspace.scalefac_scale;
+    int[] count1table_select = workspace.count1table_select;
+    int[] count1 = workspace.count1;
+    int[] scalefac_l = workspace.scalefac_l;
+    int[] scalefac_s = workspace.scalefac_s;
+    float[] is = workspace.is;
+    /* MPEG-2 and MPEG-2.5 frames have a single granule, and a smaller side information */
+    boolean lsf = samplingFrequency >= 3;
+    int granules = lsf ? 1 : 2;
+    int mainDataBegin = sideInfo_III(buffer, stereo, lsf, workspace);
+    
+    BitReader mainDataReader = soundData.mainDataReader;
+    byte[] mainData = soundData.mainData;
+    int mainDataOffset = 4 + (protectionBit == 0 ? 2 : 0) + sideInfoSize(samplingFrequency, mode);
+    int mainDataSize = frameSize - mainDataOffset;
+    
+    /* The main data of the frame starts before the bytes we have in the reservoir, e.g. right after a seek:
+     * keep filling the reservoir, but decode the frame as silence */
+    boolean underflow = mainDataBegin > soundData.mainDataTop;
+    if (underflow) {
+      if (soundData.metrics != null) {
+        soundData.metrics.reservoirUnderflow();
+      }
+      get(frame, frameOffset + mainDataOffset, mainData, soundData.mainDataTop, mainDataSize);
+      soundData.mainDataTop += mainDataSize;
+    } else {
+      System.arraycopy(mainData, soundData.mainDataTop - mainDataBegin, mainData, 0, mainDataBegin);
+      get(frame, frameOffset + mainDataOffset, mainData, mainDataBegin, mainDataSize);
+      soundData.mainDataTop = mainDataBegin + mainDataSize;
+    }
+    reset(mainDataReader, mainData, 0, soundData.mainDataTop);
+    
+    for (int gr = 0; gr < granules; gr++) {
+      for (int ch = 0; ch < stereo; ch++) {
+        
+        if (underflow) {
+          count1[ch * 2 + gr] = 0;
+          Arrays.fill(is, ch * 2 * 576 + gr * 576, ch * 2 * 576 + gr * 576 + 576, 0.0f);
+          continue;
+        }
+        
+        int part_2_start = position(mainDataReader);
+        
+        if (lsf) {
+          scalefactors_lsf_III(mainDataReader, workspace, ch, mode == 0b01 /* joint_stereo */ && (modeExtension & 0x1) != 0);
+        } else {
+          scalefactors_III(mainDataReader, workspace, gr, ch);
+        }
+        
         /* Check that there is any data to decode. If not, zero the array. */
         if (part2_3_length[ch * 2 + gr] != 0) {
         
@@ -740,13 +2012,13 @@ final class Decoder {
           int table_num;
           int is_pos;
           
-          int[] huffman = new int[4];
+          int[] huffman = workspace.huffman;
           
   /* Determine region boundaries */
           if ((win_switch_flag[ch * 2 + gr] == 1) &&
                   (block_type[ch * 2 + gr] == 2)) {
             
-            region_1_start = 36;  /* sfb[9/3]*3=36 */
+            region_1_start = shortBand3_III(samplingFrequency);  /* sfb[9/3]*3=36, or 72 for MPEG-2.5 at 8 kHz */
             region_2_start = 576; /* No Region2 for short block case. */
           } else {
             region_1_start =
@@ -777,7 +2049,7 @@ final class Decoder {
   /* Read small values until is_pos = 576 or we run out of huffman data */
           table_num = count1table_select[ch * 2 + gr] + 32;
           for (is_pos = big_values[ch * 2 + gr] * 2;
-               (is_pos <= 572) && (mainDataReader.index * 8 + mainDataReader.current <= bit_pos_end); is_pos++) {
+               (is_pos <= 572) && (position(mainDataReader) <= bit_pos_end); is_pos++) {
 
     /* Get next Huffman coded words */
             huffman_III(mainDataReader, table_num, huffman);
@@ -801,7 +2073,7 @@ final class Decoder {
           }
 
   /* Check that we didn't read past the end of this section */
-          if (mainDataReader.index * 8 + mainDataReader.current > (bit_pos_end + 1)) {
+          if (position(mainDataReader) > (bit_pos_end + 1)) {
     /* Remove last words read */
             is_pos -= 4;
           }
@@ -815,16 +2087,16 @@ final class Decoder {
           }
 
   /* Set the bitpos to point to the next part to read */
-          mainDataReader.index = (bit_pos_end + 1) / 8;
-          mainDataReader.current = (bit_pos_end + 1) % 8;
+          seek(mainDataReader, bit_pos_end + 1);
+        } else {
+          /* The workspace is reused across frames, so the stale granule must be cleared */
+          count1[ch * 2 + gr] = 0;
+          Arrays.fill(is, ch * 2 * 576 + gr * 576, ch * 2 * 576 + gr * 576 + 576, 0.0f);
         }
       } /* end for (gr... */
     }
   
-    if(soundData.samplesBuffer == null)
-      soundData.samplesBuffer = new byte[18 * 32 * 2 * stereo * 2];
-    
-    for (int gr = 0; gr < 2; gr++) {
+    for (int gr = 0; gr < granules; gr++) {
       for (int ch = 0; ch < stereo; ch++) {
         
         // requantize ===================================================
@@ -842,7 +2114,8 @@ final class Decoder {
        */
             int sfb = 0;
             int next_sfb = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 0 + sfb + 1];
-            for (int i = 0; i < 36; i++) {
+            int longLines = shortBand3_III(samplingFrequency);
+            for (int i = 0; i < longLines; i++) {
               if (i == next_sfb) {
                 sfb++;
                 next_sfb = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 0 + sfb + 1];
@@ -858,7 +2131,7 @@ final class Decoder {
             int win_len = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] -
                     SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb];
             
-            for (int i = 36; i < count1[ch * 2 + gr]; /* i++ done below! */) {
+            for (int i = longLines; i < count1[ch * 2 + gr]; /* i++ done below! */) {
 
 	/* Check if we're into the next scalefac band */
               if (i == next_sfb) {	/* Yes */
@@ -912,397 +2185,709 @@ final class Decoder {
             requantize_long_III(gr, ch, scalefac_scale, preflag, global_gain, scalefac_l, is, i, sfb);
           }
         } /* end else (only long blocks) */
-        
-        
-        // reorder ================================================
-        
-        
-        outer:
-        while (true) {
-        
-
-  /* Only reorder short blocks */
-          if ((win_switch_flag[ch * 2 + gr] == 1) &&
-                  (block_type[ch * 2 + gr] == 2)) { /* Short blocks */
-            
-            float[] re = new float[576];
-            
-            int i = 0;
-            int sfb = 0;
-            int next_sfb;
-            int win_len;
-    
-    /* Check if the first two subbands
-     * (=2*18 samples = 8 long or 3 short sfb's) uses long blocks */
-            if (mixed_block_flag[ch * 2 + gr] != 0) { /* 2 longbl. sb  first */
-              sfb = 3;
-              i = 36;
-            }
-            next_sfb = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] * 3;
-            win_len = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] -
-                    SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb];
-            
-            for (; i < 576; /* i++ done below! */) {
+      }
+      // stereo ==============================================
       
-      /* Check if we're into the next scalefac band */
-              if (i == next_sfb) {	/* Yes */
-        
-        /* Copy reordered data back to the original vector */
-                for (int j = 0; j < 3 * win_len; j++) {
-                  is[ch * 2 * 576 + gr * 576 + 3 * (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb]) + j] =
-                          re[j];
-                }
-
-        /* Check if this band is above the rzero region, if so we're done */
-                if (i >= count1[ch * 2 + gr]) {
-          /* Done */
-                  break outer;
-                }
-                
-                sfb++;
-                next_sfb = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] * 3;
-                win_len = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] -
-                        SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb];
-              } /* end if (next_sfb) */
-
-      /* Do the actual reordering */
-              for (int win = 0; win < 3; win++) {
-                for (int j = 0; j < win_len; j++) {
-                  re[j * 3 + win] = is[ch * 2 * 576 + gr * 576 + i];
-                  i++;
-                } /* end for (j... */
-              } /* end for (win... */
-            }	/* end for (i... */
-
-    /* Copy reordered data of the last band back to the original vector */
-            for (int j = 0; j < 3 * win_len; j++) {
-              is[ch * 2 * 576 + gr * 576 + 3 * (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + 12]) + j] = re[j];
-            }
+      /* Do nothing if joint stereo is not enabled */
+      if (mode == 0b01 /* joint_stereo */ && modeExtension != 0) {
+        stereo_III(workspace, gr, samplingFrequency, modeExtension);
+      }
+    }
+  }
+  
+  /**
+   * Reorders, antialiases and synthesizes the requantized spectrum of a Layer III frame.
+   */
+  private static void hybrid_III(SoundData soundData, LayerIIIWorkspace workspace, int stereo, int granules, int samplingFrequency) {
+    ChannelWorker worker = soundData.channelWorker;
+    if (stereo == 2 && worker != null && worker.frames == worker.threshold) {
+      hybrid_parallel_III(soundData, worker, workspace, granules, samplingFrequency);
+    } else {
+      if (worker != null && worker.frames < worker.threshold) {
+        worker.frames++;
+      }
+      for (int ch = 0; ch < stereo; ch++) {
+        hybrid_III(soundData, workspace, ch, granules, samplingFrequency, soundData.pcm, ch, stereo);
+      }
+    }
+    soundData.pcmLength = granules * 18 * 32 * stereo;
+    soundData.pcmScale = 32767.0f;
+  }
+  
+  /**
+   * Synthesizes the right channel of a stereo frame on the channel worker thread, into the buffer of the worker, while the left channel is synthesized
+   * on the calling thread, then interleaves the right channel into the output.
+   * <p>
+   * The channels are synthesized into different arrays so that the two threads don't write to the same cache lines.
+   */
+  private static void hybrid_parallel_III(SoundData soundData, ChannelWorker worker, LayerIIIWorkspace workspace, int granules, int samplingFrequency) {
+    worker.workspace = workspace;
+    worker.granules = granules;
+    worker.samplingFrequency = samplingFrequency;
+    worker.waiter = Thread.currentThread();
+    long request = worker.requested + 1;
+    worker.requested = request;
+    if (worker.running) {
+      LockSupport.unpark(worker.thread);
+    } else {
+      start(soundData, worker);
+    }
+    hybrid_III(soundData, workspace, 0, granules, samplingFrequency, soundData.pcm, 0, 2);
+    for (int spins = 0; worker.done != request; spins++) {
+      /* The worker stops when it is idle, possibly right before the request was published */
+      if (!worker.running && worker.done != request) {
+        start(soundData, worker);
+      }
+      backoff(spins);
+    }
+    Throwable error = worker.error;
+    if (error != null) {
+      worker.error = null;
+      if (error instanceof Error) {
+        throw (Error) error;
+      }
+      throw (RuntimeException) error;
+    }
+    float[] pcm = soundData.pcm;
+    float[] right = worker.pcm;
+    for (int i = 0, n = granules * 18 * 32; i < n; i++) {
+      pcm[2 * i + 1] = right[i];
+    }
+  }
+  
+  /**
+   * Reorders, antialiases and synthesizes the requantized spectrum of a channel of a Layer III frame, into {@code pcm[pcmOffset + i * pcmStride]}.
+   * <p>
+   * The overlap state and the scratch arrays of each channel are distinct, so that the two channels of a frame may be synthesized concurrently.
+   */
+  private static void hybrid_III(SoundData soundData, LayerIIIWorkspace workspace, int ch, int granules, int samplingFrequency, float[] pcm, int pcmOffset, int pcmStride) {
+    int[] win_switch_flag = workspace.win_switch_flag;
+    int[] block_type = workspace.block_type;
+    int[] mixed_block_flag = workspace.mixed_block_flag;
+    int[] count1 = workspace.count1;
+    float[] is = workspace.is;
+    float[] store = soundData.store;
+    boolean timed = soundData.timed;
+    long start = timed ? System.nanoTime() : 0;
+    long synthesis = 0;
+    for (int gr = 0; gr < granules; gr++) {
+      /* A granule with an all-zero spectrum and overlap has an all-zero output: skip to the synthesis, which has its own fast path for silence */
+      if (soundData.storeSilent[ch]) {
+        int zero = 0;
+        while (zero < 576 && is[ch * 2 * 576 + gr * 576 + zero] == 0.0f) {
+          zero++;
+        }
+        if (zero == 576) {
+          long synthStart = timed ? System.nanoTime() : 0;
+          for (int ss = 0; ss < 18; ss++) {
+            synth(is, ch * 2 * 576 + gr * 576 + ss, 18, soundData, ch, pcm, (gr * 18 + ss) * 32 * pcmStride + pcmOffset, pcmStride);
           }
-          break;
+          if (timed) {
+            synthesis += System.nanoTime() - synthStart;
+          }
+          continue;
         }
       }
-      // stereo ==============================================
       
-        /* Do nothing if joint stereo is not enabled */
-      if ((mode == 1) && (modeExtension != 0)) {
-
-  /* Do Middle/Side ("normal") stereo processing */
-        if ((modeExtension & 0x2) != 0) {
-          
-          int max_pos;
-    /* Determine how many frequency lines to transform */
-          if (count1[0 * 2 + gr] > count1[1 * 2 + gr]) {
-            max_pos = count1[0 * 2 + gr];
-          } else {
-            max_pos = count1[1 * 2 + gr];
-          }
-
-    /* Do the actual processing */
-          for (int i = 0; i < max_pos; i++) {
-            float left = (is[0 * 2 * 576 + gr * 576 + i] + is[1 * 2 * 576 + gr * 576 + i])
-                    * (INV_SQUARE_2);
-            float right = (is[0 * 2 * 576 + gr * 576 + i] - is[1 * 2 * 576 + gr * 576 + i])
-                    * (INV_SQUARE_2);
-            is[0 * 2 * 576 + gr * 576 + i] = left;
-            is[1 * 2 * 576 + gr * 576 + i] = right;
-          } /* end for (i... */
-        } /* end if (ms_stereo... */
-
-  /* Do intensity stereo processing */
-        if ((modeExtension & 0x1) != 0) {
-
-    /* The first band that is intensity stereo encoded is the first band
-     * scale factor band on or above the count1 frequency line.
-     * N.B.: Intensity stereo coding is only done for the higher subbands,
-     * but the logic is still included to process lower subbands.
-     */
-
-    /* Determine type of block to process */
-          if ((win_switch_flag[0 * 2 + gr] == 1) &&
-                  (block_type[0 * 2 + gr] == 2)) { /* Short blocks */
-
-      /* Check if the first two subbands
-       * (=2*18 samples = 8 long or 3 short sfb's) uses long blocks */
-            if (mixed_block_flag[0 * 2 + gr] != 0) { /* 2 longbl. sb  first */
+      // reorder ================================================
+      
+      
+      outer:
+      while (true) {
+      
 
-        /*
-         * First process the 8 sfb's at the start
-         */
-              for (int sfb = 0; sfb < 8; sfb++) {
+/* Only reorder short blocks */
+        if ((win_switch_flag[ch * 2 + gr] == 1) &&
+                (block_type[ch * 2 + gr] == 2)) { /* Short blocks */
           
-          /* Is this scale factor band above count1 for the right channel? */
-                if (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 0 + sfb] >= count1[1 * 2 + gr]) {
-                  stereo_long_III(is, scalefac_l, gr, sfb, samplingFrequency);
-                }
-              } /* end if (sfb... */
-        
-        /*
-         * And next the remaining bands which uses short blocks
-         */
-              for (int sfb = 3; sfb < 12; sfb++) {
+          float[] re = workspace.re[ch];
           
-          /* Is this scale factor band above count1 for the right channel? */
-                if (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb] * 3 >= count1[1 * 2 + gr]) {
-            
-            /* Perform the intensity stereo processing */
-                  stereo_short_III(is, scalefac_s, gr, sfb, samplingFrequency);
-                }
-              }
-            } else {			/* Only short blocks */
-              
-              for (int sfb = 0; sfb < 12; sfb++) {
+          int i = 0;
+          int sfb = 0;
+          int next_sfb;
+          int win_len;
+  
+  /* Check if the first two subbands
+   * (=2*18 samples = 8 long or 3 short sfb's) uses long blocks */
+          if (mixed_block_flag[ch * 2 + gr] != 0) { /* 2 longbl. sb  first */
+            sfb = 3;
+            i = shortBand3_III(samplingFrequency);
+          }
+          next_sfb = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] * 3;
+          win_len = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] -
+                  SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb];
           
-          /* Is this scale factor band above count1 for the right channel? */
-                if (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb] * 3 >= count1[1 * 2 + gr]) {
-            
-            /* Perform the intensity stereo processing */
-                  stereo_short_III(is, scalefac_s, gr, sfb, samplingFrequency);
-                }
+          for (; i < 576; /* i++ done below! */) {
+    
+    /* Check if we're into the next scalefac band */
+            if (i == next_sfb) {	/* Yes */
+      
+      /* Copy reordered data back to the original vector */
+              for (int j = 0; j < 3 * win_len; j++) {
+                is[ch * 2 * 576 + gr * 576 + 3 * (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb]) + j] =
+                        re[j];
               }
-            } /* end else (only short blocks) */
-          } else {			/* Only long blocks */
-            
-            for (int sfb = 0; sfb < 21; sfb++) {
-        
-        /* Is this scale factor band above count1 for the right channel? */
-              if (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 0 + sfb] >= count1[1 * 2 + gr]) {
 
-          /* Perform the intensity stereo processing */
-                stereo_long_III(is, scalefac_l, gr, sfb, samplingFrequency);
+      /* Check if this band is above the rzero region, if so we're done */
+              if (i >= count1[ch * 2 + gr]) {
+        /* Done */
+                break outer;
               }
-            }
-          } /* end else (only long blocks) */
-        } /* end if (intensity_stereo processing) */
+              
+              sfb++;
+              next_sfb = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] * 3;
+              win_len = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] -
+                      SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb];
+            } /* end if (next_sfb) */
+
+    /* Do the actual reordering */
+            for (int win = 0; win < 3; win++) {
+              for (int j = 0; j < win_len; j++) {
+                re[j * 3 + win] = is[ch * 2 * 576 + gr * 576 + i];
+                i++;
+              } /* end for (j... */
+            } /* end for (win... */
+          }	/* end for (i... */
+
+  /* Copy reordered data of the last band back to the original vector */
+          for (int j = 0; j < 3 * win_len; j++) {
+            is[ch * 2 * 576 + gr * 576 + 3 * (SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + 12]) + j] = re[j];
+          }
+        }
+        break;
       }
       
-      for (int ch = 0; ch < stereo; ch++) {
-        
-        // antialiasing ==============================================
+      // antialiasing ==============================================
+      
+      /* No antialiasing is done for short blocks */
+      if (!((win_switch_flag[ch * 2 + gr] == 1) &&
+              (block_type[ch * 2 + gr] == 2) &&
+              (mixed_block_flag[ch * 2 + gr]) == 0)) {
         
-        /* No antialiasing is done for short blocks */
-        if (!((win_switch_flag[ch * 2 + gr] == 1) &&
+        int sblim;
+
+/* Setup the limit for how many subbands to transform */
+        if ((win_switch_flag[ch * 2 + gr] == 1) &&
                 (block_type[ch * 2 + gr] == 2) &&
-                (mixed_block_flag[ch * 2 + gr]) == 0)) {
-          
-          int sblim;
+                (mixed_block_flag[ch * 2 + gr]) == 1) {
+          sblim = 2;
+        } else {
+          sblim = 32;
+        }
 
-  /* Setup the limit for how many subbands to transform */
-          if ((win_switch_flag[ch * 2 + gr] == 1) &&
-                  (block_type[ch * 2 + gr] == 2) &&
-                  (mixed_block_flag[ch * 2 + gr]) == 1) {
-            sblim = 2;
-          } else {
-            sblim = 32;
+/* Do the actual antialiasing */
+        for (int sb = 1; sb < sblim; sb++) {
+          for (int i = 0; i < 8; i++) {
+            int li = 18 * sb - 1 - i;
+            int ui = 18 * sb + i;
+            float lb = is[ch * 2 * 576 + gr * 576 + li] * CS_ALIASING_LAYER_III[i] - is[ch * 2 * 576 + gr * 576 + ui] * CA_ALIASING_LAYER_III[i];
+            float ub = is[ch * 2 * 576 + gr * 576 + ui] * CS_ALIASING_LAYER_III[i] + is[ch * 2 * 576 + gr * 576 + li] * CA_ALIASING_LAYER_III[i];
+            is[ch * 2 * 576 + gr * 576 + li] = lb;
+            is[ch * 2 * 576 + gr * 576 + ui] = ub;
           }
+        }
+      }
+      // hybrid synthesis ===========================================
+      
+      /* Subbands above the last non-zero line (plus one for the antialiasing butterflies) have an all-zero IMDCT output */
+      int nonzero = 576;
+      while (nonzero > 0 && is[ch * 2 * 576 + gr * 576 + nonzero - 1] == 0.0f) {
+        nonzero--;
+      }
+      int sbNonzero = Integer.min(32, (nonzero + 17) / 18 + 1);
+      boolean storeSilent = true;
+      
+/* Loop through all 32 subbands */
+      for (int sb = 0; sb < sbNonzero; sb++) {
+        
+        int bt;
 
-  /* Do the actual antialiasing */
-          for (int sb = 1; sb < sblim; sb++) {
-            for (int i = 0; i < 8; i++) {
-              int li = 18 * sb - 1 - i;
-              int ui = 18 * sb + i;
-              float lb = is[ch * 2 * 576 + gr * 576 + li] * CS_ALIASING_LAYER_III[i] - is[ch * 2 * 576 + gr * 576 + ui] * CA_ALIASING_LAYER_III[i];
-              float ub = is[ch * 2 * 576 + gr * 576 + ui] * CS_ALIASING_LAYER_III[i] + is[ch * 2 * 576 + gr * 576 + li] * CA_ALIASING_LAYER_III[i];
-              is[ch * 2 * 576 + gr * 576 + li] = lb;
-              is[ch * 2 * 576 + gr * 576 + ui] = ub;
-            }
-          }
+  /* Determine blocktype for this subband */
+        if ((win_switch_flag[ch * 2 + gr] == 1) &&
+                (mixed_block_flag[ch * 2 + gr] == 1) && (sb < 2)) {
+          bt = 0;			/* Long blocks in first 2 subbands */
+        } else {
+          bt = block_type[ch * 2 + gr];
         }
-        // hybrid synthesis ===========================================
         
-  /* Loop through all 32 subbands */
-        for (int sb = 0; sb < 32; sb++) {
-          
-          int bt;
+        float[] rawout = workspace.rawout[ch];
+        
+  /* Do the inverse modified DCT and windowing */
+        int offset = ch * 2 * 576 + gr * 576 + sb * 18;
+        imdct_III(is, offset, rawout, bt, workspace.imdct[ch]);
 
-    /* Determine blocktype for this subband */
-          if ((win_switch_flag[ch * 2 + gr] == 1) &&
-                  (mixed_block_flag[ch * 2 + gr] == 1) && (sb < 2)) {
-            bt = 0;			/* Long blocks in first 2 subbands */
+  /* Overlapp add with stored vector into main_data vector */
+        for (int i = 0; i < 18; i++) {
+          
+          is[ch * 2 * 576 + gr * 576 + sb * 18 + i] = rawout[i] + store[ch * 32 * 18 + sb * 18 + i];
+          store[ch * 32 * 18 + sb * 18 + i] = rawout[i + 18];
+          if (rawout[i + 18] != 0.0f) {
+            storeSilent = false;
+          }
+        } /* end for (i... */
+      } /* end for (sb... */
+      soundData.storeSilent[ch] = storeSilent;
+      
+/* The remaining subbands only contain the stored overlap */
+      for (int sb = sbNonzero; sb < 32; sb++) {
+        for (int i = 0; i < 18; i++) {
+          is[ch * 2 * 576 + gr * 576 + sb * 18 + i] = store[ch * 32 * 18 + sb * 18 + i];
+          store[ch * 32 * 18 + sb * 18 + i] = 0.0f;
+        }
+      }
+      
+      
+      // frequency inversion ================================================
+      
+      for (int sb = 1; sb < 32; sb += 2) {
+        for (int i = 1; i < 18; i += 2) {
+          is[ch * 2 * 576 + gr * 576 + sb * 18 + i] = -is[ch * 2 * 576 + gr * 576 + sb * 18 + i];
+        }
+      }
+      
+      
+      // polyphase subband synthesis
+      
+      long synthStart = timed ? System.nanoTime() : 0;
+        /* Loop through the 18 samples in each of the 32 subbands */
+      for (int ss = 0; ss < 18; ss++) {
+        synth(is, ch * 2 * 576 + gr * 576 + ss, 18, soundData, ch, pcm, (gr * 18 + ss) * 32 * pcmStride + pcmOffset, pcmStride);
+      } /* end for (ss... */
+      if (timed) {
+        synthesis += System.nanoTime() - synthStart;
+      }
+    }
+    if (timed) {
+      soundData.hybridNanos[ch * 2] = System.nanoTime() - start;
+      soundData.hybridNanos[ch * 2 + 1] = synthesis;
+    }
+  }
+  
+  private static void scalefactors_III(BitReader mainDataReader, LayerIIIWorkspace workspace, int gr, int ch) {
+    int[] scfsi = workspace.scfsi;
+    int[] scalefac_compress = workspace.scalefac_compress;
+    int[] win_switch_flag = workspace.win_switch_flag;
+    int[] block_type = workspace.block_type;
+    int[] mixed_block_flag = workspace.mixed_block_flag;
+    int[] scalefac_l = workspace.scalefac_l;
+    int[] scalefac_s = workspace.scalefac_s;
+    
+    /* Number of bits in the bitstream for the bands */
+    int slen1 = SCALEFACTOR_SIZES_LAYER_III[scalefac_compress[ch * 2 + gr] * 2];
+    int slen2 = SCALEFACTOR_SIZES_LAYER_III[scalefac_compress[ch * 2 + gr] * 2 + 1];
+    
+    if ((win_switch_flag[ch * 2 + gr] != 0) &&
+            (block_type[ch * 2 + gr] == 2)) {
+      if (mixed_block_flag[ch * 2 + gr] != 0) {
+        for (int sfb = 0; sfb < 8; sfb++) {
+          scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen1);
+        }
+        for (int sfb = 3; sfb < 12; sfb++) {
+          int nbits;
+          if (sfb < 6) {	/* slen1 is for bands 3-5, slen2 for 6-11 */
+            nbits = slen1;
           } else {
-            bt = block_type[ch * 2 + gr];
+            nbits = slen2;
           }
           
-          float[] rawout = new float[36];
-          
-          // ----
-    /* Do the inverse modified DCT and windowing */
-          // MPG_IMDCT_Win(& (is[ch * 2 + gr][sb * 18]), rawout, bt);
-          
-          int offset = ch * 2 * 576 + gr * 576 + sb * 18;
-  
-          if (bt == 2) {
-            for (int j = 0; j < 3; j++) {
-              for (int p = 0; p < 12; p++) {
-                float sum = 0;
-                for (int m = 0; m < 6; m++) {
-                  sum += is[offset + j+3*m] * COS_12_LAYER_III[m * 12 + p];
-                }
-                rawout[6*j+p+6] += sum * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
-              }
-            }
+          for (int win = 0; win < 3; win++) {
+            scalefac_s[ch * 2 * 12 * 3 + gr * 12 * 3 + sfb * 3 + win] =
+                    read(mainDataReader, nbits);
+          }
+        }
+      } else {
+        for (int sfb = 0; sfb < 12; sfb++) {
+          int nbits;
+          if (sfb < 6) {	/* slen1 is for bands 3-5, slen2 for 6-11 */
+            nbits = slen1;
           } else {
-            for (int p = 0; p < 36; p++) {
-              float sum = 0;
-              for (int m = 0; m < 18; m++) {
-                sum += is[offset + m] * COS_36_LAYER_III[m * 36 + p];
-              }
-              rawout[p] = sum * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
-            }
+            nbits = slen2;
           }
           
-          
-
-    /* Overlapp add with stored vector into main_data vector */
-          for (int i = 0; i < 18; i++) {
-            
-            is[ch * 2 * 576 + gr * 576 + sb * 18 + i] = rawout[i] + store[ch * 32 * 18 + sb * 18 + i];
-            store[ch * 32 * 18 + sb * 18 + i] = rawout[i + 18];
-          } /* end for (i... */
-        } /* end for (sb... */
-        
-        
-        // frequency inversion ================================================
-        
-        for (int sb = 1; sb < 32; sb += 2) {
-          for (int i = 1; i < 18; i += 2) {
-            is[ch * 2 * 576 + gr * 576 + sb * 18 + i] = -is[ch * 2 * 576 + gr * 576 + sb * 18 + i];
+          for (int win = 0; win < 3; win++) {
+            scalefac_s[ch * 2 * 12 * 3 + gr * 12 * 3 + sfb * 3 + win] =
+                    read(mainDataReader, nbits);
           }
         }
-        
-        
-        // polyphase subband synthesis
-        
-        float[] u = new float[512];
-        float[] s = new float[32];
-        
-          /* Loop through the 18 samples in each of the 32 subbands */
-        for (int ss = 0; ss < 18; ss++) {
-  
-          for (int i = 1023; i > 63; i--)  /* Shift up the V vector */ {
-            v[ch * 1024 + i] = v[ch * 1024 + i - 64];
-          }
+      }
+    } else { /* block_type == 0 if winswitch == 0 */
 
-    /* Copy the next 32 time samples to a temp vector */
-          for (int i = 0; i < 32; i++) {
-            s[i] = is[ch * 2 * 576 + gr * 576 + i * 18 + ss];
-          }
-          
-          for (int i = 0; i < 64; i++) { /* Matrix multiply input with n_win[][] matrix */
-            float sum = 0.0f;
-            for (int j = 0; j < 32; j++) {
-              sum += SYNTH_WINDOW_TABLE_LAYER_III[i * 32 + j] * s[j];
-            }
-            v[ch * 1024 + i] = sum;
-          } /* end for(i... */
-    
-    /* Build the U vector */
-          for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 32; j++) {
-              u[i * 64 + j] = v[ch * 1024 + i * 128 + j];
-              u[i * 64 + j + 32] = v[ch * 1024 + i * 128 + j + 96];
-            }
-          } /* end for (i... */
+	/* Scale factor bands 0-5 */
+      if ((scfsi[ch * 4 + 0] == 0) || (gr == 0)) {
+        for (int sfb = 0; sfb < 6; sfb++) {
+          scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen1);
+        }
+      } else if ((scfsi[ch * 4 + 0] == 1) && (gr == 1)) {
+        /* Copy scalefactors from granule 0 to granule 1 */
+        for (int sfb = 0; sfb < 6; sfb++) {
+          scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
+                  scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
+        }
+      }
 
-    /* Window by u_vec[i] with g_synth_dtbl[i] */
-          for (int i = 0; i < 512; i++) {
-            u[i] *= DI_COEFFICIENTS[i];
-          }
+	/* Scale factor bands 6-10 */
+      if ((scfsi[ch * 4 + 1] == 0) || (gr == 0)) {
+        for (int sfb = 6; sfb < 11; sfb++) {
+          scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen1);
+        }
+      } else if ((scfsi[ch * 4 + 1] == 1) && (gr == 1)) {
+        /* Copy scalefactors from granule 0 to granule 1 */
+        for (int sfb = 6; sfb < 11; sfb++) {
+          scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
+                  scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
+        }
+      }
 
-    /* Calculate 32 samples and store them in the outdata vector */
-          for (int i = 0; i < 32; i++) {
-            float sum = 0.0f;
-            for (int j = 0; j < 16; j++) {
-              sum += u[j * 32 + i];
-            }
-      
-      /* sum now contains time sample 32*ss+i. Convert to 16-bit signed int */
-            int samp = (int) (sum * 32767.0f);
-            if (samp > 32767) {
-              samp = 32767;
-            } else if (samp < -32767) {
-              samp = -32767;
-            }
-            samp &= 0xffff;
+	/* Scale factor bands 11-15 */
+      if ((scfsi[ch * 4 + 2] == 0) || (gr == 0)) {
+        for (int sfb = 11; sfb < 16; sfb++) {
+          scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen2);
+        }
+      } else if ((scfsi[ch * 4 + 2] == 1) && (gr == 1)) {
+        /* Copy scalefactors from granule 0 to granule 1 */
+        for (int sfb = 11; sfb < 16; sfb++) {
+          scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
+                  scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
+        }
+      }
 
-            if (stereo > 1) {
-              soundData.samplesBuffer[gr * 18 * 32 * 2 * 2 + ss * 32 * 2 * 2 + i * 2 * 2 + ch * 2] = (byte) samp;
-              soundData.samplesBuffer[gr * 18 * 32 * 2 * 2 + ss * 32 * 2 * 2 + i * 2 * 2 + ch * 2 + 1] = (byte) (samp >>> 8);
-            } else {
-              soundData.samplesBuffer[gr * 18 * 32 * 2 + ss * 32 * 2 + i * 2] = (byte) samp;
-              soundData.samplesBuffer[gr * 18 * 32 * 2 + ss * 32 * 2 + i * 2 + 1] = (byte) (samp >>> 8);
-            }
-          } /* end for (i... */
-        } /* end for (ss... */
+	/* Scale factor bands 16-20 */
+      if ((scfsi[ch * 4 + 3] == 0) || (gr == 0)) {
+        for (int sfb = 16; sfb < 21; sfb++) {
+          scalefac_l[ch * 2 * 21 + gr * 21 + sfb] = read(mainDataReader, slen2);
+        }
+      } else if ((scfsi[ch * 4 + 3] == 1) && (gr == 1)) {
+        /* Copy scalefactors from granule 0 to granule 1 */
+        for (int sfb = 16; sfb < 21; sfb++) {
+          scalefac_l[ch * 2 * 21 + 1 * 21 + sfb] =
+                  scalefac_l[ch * 2 * 21 + 0 * 21 + sfb];
+        }
       }
     }
   }
   
-  private static void stereo_short_III(float[] is, int[] scalefac_s, int gr, int sfb, int samplingFrequency) {
-  /* The window length */
-    int win_len = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb + 1] - SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb];
-  
-  /* The three windows within the band has different scalefactors */
-    for (int win = 0; win < 3; win++) {
-      
-      int is_pos;
-
-    /* Check that ((is_pos[sfb]=scalefac) != 7) => no intensity stereo */
-      if ((is_pos = scalefac_s[0 * 2 * 12 * 3 + gr * 12 * 3 + sfb * 3 + win]) != 7) {
-        
-        int sfb_start = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 23 + sfb] * 3 + win_len * win;
-        int sfb_stop = sfb_start + win_len;
-        
-        float is_ratio_l;
-        float is_ratio_r;
-        
-      /* tan((6*PI)/12 = PI/2) needs special treatment! */
-        if (is_pos == 6) {
-          is_ratio_l = 1.0f;
-          is_ratio_r = 0.0f;
+  /**
+   * Reads the scalefactors of the single granule of a MPEG-2 or MPEG-2.5 frame.
+   * <p>
+   * The bands are split in up to 4 partitions, with a number of bands and a scalefactor size per partition that are coded together in scalefac_compress.
+   * The right channel of an intensity stereo frame codes them differently, and its intensity positions may be illegal, i.e. mean that the band isn't intensity
+   * stereo coded.
+   */
+  private static void scalefactors_lsf_III(BitReader mainDataReader, LayerIIIWorkspace workspace, int ch, boolean intensityStereo) {
+    int[] slen = workspace.slen;
+    int[] scalefac_l = workspace.scalefac_l;
+    int[] scalefac_s = workspace.scalefac_s;
+    int scalefacCompress = workspace.scalefac_compress[ch * 2];
+    int table;
+    
+    if (intensityStereo && ch == 1) {
+      /* The lowest bit is intensity_scale */
+      int sfc = scalefacCompress >>> 1;
+      if (sfc < 180) {
+        slen[0] = sfc / 36;
+        slen[1] = (sfc % 36) / 6;
+        slen[2] = sfc % 6;
+        slen[3] = 0;
+        table = 3;
+      } else if (sfc < 244) {
+        sfc -= 180;
+        slen[0] = (sfc & 63) >>> 4;
+        slen[1] = (sfc & 15) >>> 2;
+        slen[2] = sfc & 3;
+        slen[3] = 0;
+        table = 4;
+      } else {
+        sfc -= 244;
+        slen[0] = sfc / 3;
+        slen[1] = sfc % 3;
+        slen[2] = 0;
+        slen[3] = 0;
+        table = 5;
+      }
+      workspace.preflag[ch * 2] = 0;
+    } else {
+      int sfc = scalefacCompress;
+      if (sfc < 400) {
+        slen[0] = (sfc >>> 4) / 5;
+        slen[1] = (sfc >>> 4) % 5;
+        slen[2] = (sfc & 15) >>> 2;
+        slen[3] = sfc & 3;
+        table = 0;
+        workspace.preflag[ch * 2] = 0;
+      } else if (sfc < 500) {
+        sfc -= 400;
+        slen[0] = (sfc >>> 2) / 5;
+        slen[1] = (sfc >>> 2) % 5;
+        slen[2] = sfc & 3;
+        slen[3] = 0;
+        table = 1;
+        workspace.preflag[ch * 2] = 0;
+      } else {
+        sfc -= 500;
+        slen[0] = sfc / 3;
+        slen[1] = sfc % 3;
+        slen[2] = 0;
+        slen[3] = 0;
+        table = 2;
+        workspace.preflag[ch * 2] = 1;
+      }
+    }
+    
+    int blocks;
+    if (workspace.win_switch_flag[ch * 2] == 1 && workspace.block_type[ch * 2] == 2) {
+      blocks = workspace.mixed_block_flag[ch * 2] != 0 ? 2 : 1;
+    } else {
+      blocks = 0;
+    }
+    
+    /* The scalefactors are in band order, each short band having one per window, and mixed blocks start with 6 long bands */
+    int longBands = blocks == 0 ? 21 : blocks == 2 ? 6 : 0;
+    int n = 0;
+    for (int partition = 0; partition < 4; partition++) {
+      int bits = slen[partition];
+      int illegal = (1 << bits) - 1;
+      for (int k = SCALEFACTOR_PARTITIONS_LSF_LAYER_III[table * 12 + blocks * 4 + partition]; k > 0; k--, n++) {
+        int scalefactor = read(mainDataReader, bits);
+        if (n < longBands) {
+          scalefac_l[ch * 2 * 21 + n] = scalefactor;
+          workspace.illegal_l[n] = scalefactor == illegal;
         } else {
-          is_ratio_l = IS_RATIOS_LAYER_III[is_pos] / (1.0f + IS_RATIOS_LAYER_III[is_pos]);
-          is_ratio_r = 1.0f / (1.0f + IS_RATIOS_LAYER_III[is_pos]);
+          int i = (blocks == 2 ? 3 * 3 : 0) + n - longBands;
+          scalefac_s[ch * 2 * 12 * 3 + i] = scalefactor;
+          workspace.illegal_s[i] = scalefactor == illegal;
         }
-      
-      /* Now decode all samples in this scale factor band */
-        for (int i = sfb_start; i < sfb_stop; i++) {
-          is[0 * 2 * 576 + gr * 576 + i] *= is_ratio_l;
-          is[1 * 2 * 576 + gr * 576 + i] *= is_ratio_r;
+      }
+    }
+  }
+  
+  static void imdct_III(float[] is, int offset, float[] rawout, int bt, double[] t) {
+    if (bt == 2) {
+      Arrays.fill(rawout, 0.0f);
+      for (int j = 0; j < 3; j++) {
+        /* 6-point DCT-IV, the 12 outputs follow from its symmetries */
+        for (int k = 0; k < 6; k++) {
+          double sum = 0;
+          for (int m = 0; m < 6; m++) {
+            sum += is[offset + j + 3 * m] * COS_6_LAYER_III[k * 6 + m];
+          }
+          t[k] = sum;
+        }
+        for (int p = 0; p < 3; p++) {
+          rawout[6 * j + p + 6] += (float) t[p + 3] * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
+        }
+        for (int p = 3; p < 9; p++) {
+          rawout[6 * j + p + 6] -= (float) t[8 - p] * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
+        }
+        for (int p = 9; p < 12; p++) {
+          rawout[6 * j + p + 6] -= (float) t[p - 9] * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
+        }
+      }
+      return;
+    }
+    
+    /* 18-point DCT-IV computed as a pre-scaled 18-point DCT-II (Lee):
+     * split into two 9-point DCT-II, then C[k] = D[k] + D[k+1] with D[18] = 0 */
+    for (int i = 0; i < 9; i++) {
+      double a = is[offset + i] * IMDCT_PRESCALE_LAYER_III[i];
+      double b = is[offset + 17 - i] * IMDCT_PRESCALE_LAYER_III[17 - i];
+      t[i] = a + b;
+      t[9 + i] = (a - b) * IMDCT_BUTTERFLY_LAYER_III[i];
+    }
+    for (int k = 0; k < 9; k++) {
+      double even = 0;
+      double odd = 0;
+      for (int n = 0; n < 9; n++) {
+        even += t[n] * COS_9_LAYER_III[k * 9 + n];
+        odd += t[9 + n] * COS_9_LAYER_III[k * 9 + n];
+      }
+      t[18 + 2 * k] = even;
+      t[36 + k] = odd;
+    }
+    for (int k = 0; k < 8; k++) {
+      t[18 + 2 * k + 1] = t[36 + k] + t[36 + k + 1];
+    }
+    t[35] = t[44];
+    for (int k = 0; k < 17; k++) {
+      t[k] = t[18 + k] + t[18 + k + 1];
+    }
+    t[17] = t[35];
+    
+    /* Unfold the 18 DCT-IV outputs into the 36 IMDCT outputs and window them */
+    for (int p = 0; p < 9; p++) {
+      rawout[p] = (float) t[p + 9] * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
+    }
+    for (int p = 9; p < 27; p++) {
+      rawout[p] = (float) -t[26 - p] * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
+    }
+    for (int p = 27; p < 36; p++) {
+      rawout[p] = (float) -t[p - 27] * IMDCT_WINDOW_LAYER_III[bt * 36 + p];
+    }
+  }
+  
+  /**
+   * Middle/side and intensity stereo processing of a granule, before the short blocks are reordered.
+   * <p>
+   * The intensity stereo bands are the bands above the last non-zero value of the right channel, in each window for short blocks. Their values are
+   * the ones of the left channel, scaled for each channel according to the intensity position, which is the scalefactor of the right channel.
+   * The other bands, and the bands whose intensity position is illegal, use middle/side stereo if enabled.
+   */
+  private static void stereo_III(LayerIIIWorkspace workspace, int gr, int samplingFrequency, int modeExtension) {
+    float[] is = workspace.is;
+    int[] count1 = workspace.count1;
+    boolean ms = (modeExtension & 0x2) != 0;
+    
+    /* Determine how many frequency lines to transform */
+    int max_pos = Math.max(count1[0 * 2 + gr], count1[1 * 2 + gr]);
+    count1[0 * 2 + gr] = max_pos;
+    count1[1 * 2 + gr] = max_pos;
+    
+    if ((modeExtension & 0x1) == 0) {
+      stereo_ms_III(is, gr, 0, max_pos);
+      return;
+    }
+    
+    int right = 1 * 2 * 576 + gr * 576;
+    int longBands = samplingFrequency * (23 + 14);
+    int shortBands = samplingFrequency * (23 + 14) + 23;
+    
+    if ((workspace.win_switch_flag[1 * 2 + gr] == 1) &&
+            (workspace.block_type[1 * 2 + gr] == 2)) { /* Short blocks */
+      boolean mixed = workspace.mixed_block_flag[1 * 2 + gr] != 0;
+      int firstShort = mixed ? 3 : 0;
+      boolean nonzeroShort = false;
+      for (int win = 0; win < 3; win++) {
+        /* Find the band above the last non-zero value of this window */
+        int bound = firstShort;
+        for (int sfb = 12; sfb >= firstShort && bound == firstShort; sfb--) {
+          int width = SCALEFACTOR_BAND_INDICES_LAYER_III[shortBands + sfb + 1] - SCALEFACTOR_BAND_INDICES_LAYER_III[shortBands + sfb];
+          int start = SCALEFACTOR_BAND_INDICES_LAYER_III[shortBands + sfb] * 3 + width * win;
+          for (int i = start; i < start + width; i++) {
+            if (is[right + i] != 0.0f) {
+              bound = sfb + 1;
+              nonzeroShort = true;
+              break;
+            }
+          }
         }
-      } /* end if (not illegal is_pos) */
-    } /* end for (win... */
+        for (int sfb = firstShort; sfb < 13; sfb++) {
+          int width = SCALEFACTOR_BAND_INDICES_LAYER_III[shortBands + sfb + 1] - SCALEFACTOR_BAND_INDICES_LAYER_III[shortBands + sfb];
+          int start = SCALEFACTOR_BAND_INDICES_LAYER_III[shortBands + sfb] * 3 + width * win;
+          /* The last band has no scalefactor and uses the intensity position of the band below */
+          int position = Math.min(sfb, 11) * 3 + win;
+          stereo_band_III(workspace, gr, samplingFrequency, ms, start, start + width, sfb < bound ? -1 : position, false);
+        }
+      }
+      if (!mixed) {
+        return;
+      }
+      /* The long bands of mixed blocks are intensity stereo coded only if the short bands all are */
+      int longLines = shortBand3_III(samplingFrequency);
+      int bands = 0;
+      while (SCALEFACTOR_BAND_INDICES_LAYER_III[longBands + bands] < longLines) {
+        bands++;
+      }
+      int bound = nonzeroShort ? bands : stereo_bound_III(is, right, longBands, longLines);
+      for (int sfb = 0; sfb < bands; sfb++) {
+        stereo_band_III(workspace, gr, samplingFrequency, ms, SCALEFACTOR_BAND_INDICES_LAYER_III[longBands + sfb],
+                Math.min(SCALEFACTOR_BAND_INDICES_LAYER_III[longBands + sfb + 1], longLines), sfb < bound ? -1 : sfb, true);
+      }
+    } else { /* Only long blocks */
+      int bound = stereo_bound_III(is, right, longBands, 576);
+      for (int sfb = 0; sfb < 22; sfb++) {
+        /* The last band has no scalefactor and uses the intensity position of the band below */
+        stereo_band_III(workspace, gr, samplingFrequency, ms, SCALEFACTOR_BAND_INDICES_LAYER_III[longBands + sfb],
+                SCALEFACTOR_BAND_INDICES_LAYER_III[longBands + sfb + 1], sfb < bound ? -1 : Math.min(sfb, 20), true);
+      }
+    }
   }
   
-  private static void stereo_long_III(float[] is, int[] scalefac_l, int gr, int sfb, int samplingFrequency) {
-    int is_pos;
-      /* Check that ((is_pos[sfb]=scalefac) != 7) => no intensity stereo */
-    if ((is_pos = scalefac_l[0 * 2 * 21 + gr * 21 + sfb]) != 7) {
-      
-      int sfb_start = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 0 + sfb];
-      int sfb_stop = SCALEFACTOR_BAND_INDICES_LAYER_III[samplingFrequency * (23 + 14) + 0 + sfb + 1];
-      
-      float is_ratio_l;
-      float is_ratio_r;
-
-    /* tan((6*PI)/12 = PI/2) needs special treatment! */
-      if (is_pos == 6) {
-        is_ratio_l = 1.0f;
-        is_ratio_r = 0.0f;
+  /**
+   * Returns the first long band above the last non-zero value of the right channel, among the values before end.
+   */
+  private static int stereo_bound_III(float[] is, int right, int longBands, int end) {
+    int last = end - 1;
+    while (last >= 0 && is[right + last] == 0.0f) {
+      last--;
+    }
+    int sfb = 0;
+    while (SCALEFACTOR_BAND_INDICES_LAYER_III[longBands + sfb] <= last) {
+      sfb++;
+    }
+    return sfb;
+  }
+  
+  /**
+   * Applies intensity stereo to the values of a band, with the intensity position of the specified scalefactor of the right channel, or middle/side
+   * stereo if enabled and either the scalefactor is -1 or its intensity position is illegal.
+   */
+  private static void stereo_band_III(LayerIIIWorkspace workspace, int gr, int samplingFrequency, boolean ms, int from, int to, int scalefactor, boolean isLong) {
+    float[] is = workspace.is;
+    int position = -1;
+    boolean lsf = samplingFrequency >= 3;
+    if (scalefactor >= 0) {
+      if (isLong) {
+        position = workspace.scalefac_l[1 * 2 * 21 + gr * 21 + scalefactor];
+        if (lsf ? workspace.illegal_l[scalefactor] : position >= 7) {
+          position = -1;
+        }
       } else {
-        is_ratio_l = IS_RATIOS_LAYER_III[is_pos] / (1.0f + IS_RATIOS_LAYER_III[is_pos]);
-        is_ratio_r = 1.0f / (1.0f + IS_RATIOS_LAYER_III[is_pos]);
+        position = workspace.scalefac_s[1 * 2 * 12 * 3 + gr * 12 * 3 + scalefactor];
+        if (lsf ? workspace.illegal_s[scalefactor] : position >= 7) {
+          position = -1;
+        }
       }
-      
-    /* Now decode all samples in this scale factor band */
-      for (int i = sfb_start; i < sfb_stop; i++) {
-        is[0 * 2 * 576 + gr * 576 + i] *= is_ratio_l;
-        is[1 * 2 * 576 + gr * 576 + i] *= is_ratio_r;
+    }
+    if (position == -1) {
+      if (ms) {
+        stereo_ms_III(is, gr, from, to);
       }
+      return;
+    }
+    
+    float is_ratio_l;
+    float is_ratio_r;
+    if (lsf) {
+      /* One channel is attenuated by a power of a ratio depending on intensity_scale, the lowest bit of the right channel scalefac_compress */
+      int scale = (workspace.scalefac_compress[1 * 2 + gr] & 0x1) * 32;
+      if ((position & 1) != 0) {
+        is_ratio_l = IS_RATIOS_LSF_LAYER_III[scale + (position + 1) / 2];
+        is_ratio_r = 1.0f;
+      } else {
+        is_ratio_l = 1.0f;
+        is_ratio_r = IS_RATIOS_LSF_LAYER_III[scale + position / 2];
+      }
+    } else if (position == 6) {
+      /* tan((6*PI)/12 = PI/2) needs special treatment! */
+      is_ratio_l = 1.0f;
+      is_ratio_r = 0.0f;
+    } else {
+      is_ratio_l = IS_RATIOS_LAYER_III[position] / (1.0f + IS_RATIOS_LAYER_III[position]);
+      is_ratio_r = 1.0f / (1.0f + IS_RATIOS_LAYER_III[position]);
+    }
+    
+    /* Now decode all samples in this scale factor band, from the values of the left channel */
+    for (int i = from; i < to; i++) {
+      float value = is[0 * 2 * 576 + gr * 576 + i];
+      is[0 * 2 * 576 + gr * 576 + i] = value * is_ratio_l;
+      is[1 * 2 * 576 + gr * 576 + i] = value * is_ratio_r;
     }
   }
   
-  private static void requantize_short_III(int gr, int ch, int[] scalefac_scale, int[] subblock_gain, int[] global_gain, int[] scalefac_s, float[] is, int is_pos, int sfb, int win) {
+  /**
+   * Do Middle/Side ("normal") stereo processing of the values of a band.
+   */
+  private static void stereo_ms_III(float[] is, int gr, int from, int to) {
+    for (int i = from; i < to; i++) {
+      float left = (is[0 * 2 * 576 + gr * 576 + i] + is[1 * 2 * 576 + gr * 576 + i])
+              * (INV_SQUARE_2);
+      float right = (is[0 * 2 * 576 + gr * 576 + i] - is[1 * 2 * 576 + gr * 576 + i])
+              * (INV_SQUARE_2);
+      is[0 * 2 * 576 + gr * 576 + i] = left;
+      is[1 * 2 * 576 + gr * 576 + i] = right;
+    }
+  }
+  
+  static void requantize_short_III(int gr, int ch, int[] scalefac_scale, int[] subblock_gain, int[] global_gain, int[] scalefac_s, float[] is, int is_pos, int sfb, int win) {
     
     float sf_mult = scalefac_scale[ch * 2 + gr] != 0 ? 1.0f : 0.5f;
     
@@ -1327,7 +2912,7 @@ final class Decoder {
     is[ch * 2 * 576 + gr * 576 + is_pos] = tmp1 * tmp2 * tmp3;
   }
   
-  private static void requantize_long_III(int gr, int ch, int[] scalefac_scale, int[] preflag, int[] global_gain, int[] scalefac_l, float[] is, int is_pos, int sfb) {
+  static void requantize_long_III(int gr, int ch, int[] scalefac_scale, int[] preflag, int[] global_gain, int[] scalefac_l, float[] is, int is_pos, int sfb) {
     
     
     float sf_mult = scalefac_scale[ch * 2 + gr] != 0 ? 1.0f : 0.5f;
@@ -1350,13 +2935,91 @@ final class Decoder {
     if (is[ch * 2 * 576 + gr * 576 + is_pos] < 0.0) {
       tmp3 = -POWTAB_LAYER_III[(int) -is[ch * 2 * 576 + gr * 576 + is_pos]];
     } else {
-      tmp3 = POWTAB_LAYER_III[(int) is[ch * 2 * 576 + gr * 576 + is_pos]];
+      tmp3 = POWTAB_LAYER_III[(int) is[ch * 2 * 576 + gr * 576 + is_pos]];
+    }
+    
+    is[ch * 2 * 576 + gr * 576 + is_pos] = tmp1 * tmp2 * tmp3;
+  }
+  
+  static void huffman_III(BitReader mainDataReader, int table_num, int[] array) {
+    int[] lut = HUFFMAN_LUT_LAYER_III[table_num];
+  
+  /* Check for empty tables */
+    if (lut == null) {
+      array[0] = array[1] = array[2] = array[3] = 0;
+      return;
+    }
+    
+  /* Most code words are resolved by a single lookup of the next HUFFMAN_LUT_BITS bits */
+    int entry = lut[peek(mainDataReader, HUFFMAN_LUT_BITS)];
+    int value;
+    if (entry >= 0) {
+      skip(mainDataReader, entry >>> 8);
+      value = entry & 0xff;
+    } else {
+      skip(mainDataReader, HUFFMAN_LUT_BITS);
+      value = huffman_tree_III(mainDataReader, table_num, ~entry);
     }
     
-    is[ch * 2 * 576 + gr * 576 + is_pos] = tmp1 * tmp2 * tmp3;
+  /* Process sign encodings for quadruples tables. */
+    if (table_num > 31) {
+      int v = (value >> 3) & 1;
+      int w = (value >> 2) & 1;
+      int x = (value >> 1) & 1;
+      int y = value & 1;
+      int signs = v + w + x + y;
+      int bits = signs == 0 ? 0 : read(mainDataReader, signs);
+      if (y != 0) {
+        y -= (bits & 1) << 1;
+        bits >>>= 1;
+      }
+      if (x != 0) {
+        x -= (bits & 1) << 1;
+        bits >>>= 1;
+      }
+      if (w != 0) {
+        w -= (bits & 1) << 1;
+        bits >>>= 1;
+      }
+      if (v != 0) {
+        v -= (bits & 1) << 1;
+      }
+      array[2] = v;
+      array[3] = w;
+      array[0] = x;
+      array[1] = y;
+    } else {
+      int x = (value >> 4) & 0xf;
+      int y = value & 0xf;
+      int linbits = HUFFMAN_LINBITS_LAYER_III[table_num];
+      
+    /* Read the linbits and sign bit of both values at once */
+      int xLinbits = (linbits > 0 && x == 15) ? linbits : 0;
+      int xBits = xLinbits + (x != 0 ? 1 : 0);
+      int yLinbits = (linbits > 0 && y == 15) ? linbits : 0;
+      int yBits = yLinbits + (y != 0 ? 1 : 0);
+      if (xBits + yBits != 0) {
+        int bits = read(mainDataReader, xBits + yBits);
+        if (y != 0) {
+          y += (bits >>> 1) & ((1 << yLinbits) - 1);
+          if ((bits & 1) != 0) {
+            y = -y;
+          }
+          bits >>>= yBits;
+        }
+        if (x != 0) {
+          x += (bits >>> 1) & ((1 << xLinbits) - 1);
+          if ((bits & 1) != 0) {
+            x = -x;
+          }
+        }
+      }
+      array[0] = x;
+      array[1] = y;
+    }
   }
   
-  private static void huffman_III(MainDataReader mainDataReader, int table_num, int[] array) {
+  private static int huffman_tree_III(BitReader mainDataReader, int table_num, int point) {
     /* Table entries are 16 bits each:
    * Bit(s)
    * 15     hit/miss (1/0)
@@ -1365,102 +3028,40 @@ final class Decoder {
    * 12-0   start offset of next table if miss
    */
     
-    int point = 0;
-    int currpos;
-  
-  /* Check for empty tables */
-    if (HUFFMAN_TREELEN_LAYER_III[table_num] == 0) {
-      array[0] = array[1] = array[2] = array[3] = 0;
-      return;
-    }
-    
     int treelen = HUFFMAN_TREELEN_LAYER_III[table_num];
-    int linbits = HUFFMAN_LINBITS_LAYER_III[table_num];
     int offset = HUFFMAN_TABLE_OFFSET_LAYER_III[table_num];
     
-    int error = 1;
-    int bitsleft = 32;
+    int bitsleft = 32 - HUFFMAN_LUT_BITS;
     
-    do {   /* Start reading the Huffman code word,bit by bit */
+    while (point < treelen) {   /* Continue reading the Huffman code word,bit by bit */
     /* Check if we've matched a code word */
       if ((HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff00) == 0) {
-        error = 0;
-        array[0] = (HUFFMAN_TABLE_LAYER_III[offset + point] >> 4) & 0xf;
-        array[1] = HUFFMAN_TABLE_LAYER_III[offset + point] & 0xf;
-        break;
+        return HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff;
       }
-      if (read(mainDataReader, 1) != 0) { /* Go right in tree */
-        while ((HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff) >= 250) {
-          point += HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff;
-        }
-        point += HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff;
-      } else { /* Go left in tree */
-        while ((HUFFMAN_TABLE_LAYER_III[offset + point] >> 8) >= 250) {
-          point += HUFFMAN_TABLE_LAYER_III[offset + point] >> 8;
-        }
-        point += HUFFMAN_TABLE_LAYER_III[offset + point] >> 8;
+      if (--bitsleft < 0) {
+        break;
       }
-    } while ((--bitsleft > 0) && (point < treelen));
-    if (error != 0) {  /* Check for error. */
-      array[0] = array[1] = 0;
-      throw new IllegalStateException("Illegal Huff code in data. bleft = %d,point = %d. tab = %d." +
-              bitsleft + " " + point + " " + table_num);
+      point = huffman_step_III(offset, point, read(mainDataReader, 1));
     }
-  /* Process sign encodings for quadruples tables. */
-    if (table_num > 31) {
-      array[2] = (array[1] >> 3) & 1;
-      array[3] = (array[1] >> 2) & 1;
-      array[0] = (array[1] >> 1) & 1;
-      array[1] = array[1] & 1;
-      
-      if (array[2] > 0) {
-        if (read(mainDataReader, 1) == 1) {
-          array[2] = -array[2];
-        }
-      }
-      if (array[3] > 0) {
-        if (read(mainDataReader, 1) == 1) {
-          array[3] = -array[3];
-        }
-      }
-      if (array[0] > 0) {
-        if (read(mainDataReader, 1) == 1) {
-          array[0] = -array[0];
-        }
-      }
-      if (array[1] > 0) {
-        if (read(mainDataReader, 1) == 1) {
-          array[1] = -array[1];
-        }
-      }
-    } else {
-    /* Get linbits */
-      if ((linbits > 0) && (array[0] == 15)) {
-        array[0] += read(mainDataReader, linbits);
-      }
-
-    /* Get sign bit */
-      if (array[0] > 0) {
-        if (read(mainDataReader, 1) == 1) {
-          array[0] = -array[0];
-        }
-      }
-
-    /* Get linbits */
-      if ((linbits > 0) && (array[1] == 15)) {
-        array[1] += read(mainDataReader, linbits);
+    throw new IllegalStateException("Illegal Huff code in data. bleft = " + bitsleft + ", point = " + point + ", tab = " + table_num + ".");
+  }
+  
+  private static int huffman_step_III(int offset, int point, int bit) {
+    if (bit != 0) { /* Go right in tree */
+      while ((HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff) >= 250) {
+        point += HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff;
       }
-
-    /* Get sign bit */
-      if (array[1] > 0) {
-        if (read(mainDataReader, 1) == 1) {
-          array[1] = -array[1];
-        }
+      point += HUFFMAN_TABLE_LAYER_III[offset + point] & 0xff;
+    } else { /* Go left in tree */
+      while ((HUFFMAN_TABLE_LAYER_III[offset + point] >> 8) >= 250) {
+        point += HUFFMAN_TABLE_LAYER_III[offset + point] >> 8;
       }
+      point += HUFFMAN_TABLE_LAYER_III[offset + point] >> 8;
     }
+    return point;
   }
   
-  private static float[] samples_I(Buffer buffer, int stereo, int bound) throws IOException {
+  private static float[] samples_I(BitReader buffer, int stereo, int bound) {
     if (bound < 0) {
       bound = 32;
     }
@@ -1527,15 +3128,25 @@ final class Decoder {
     return sampleDecoded;
   }
   
-  private static float[] samples_II(Buffer buffer, int stereo, int bound, int bitrate, int frequency) throws IOException {
-    int sbIndex = 0;
-    if (frequency != 48000 && (bitrate >= 96000 || bitrate == 0)) {
-      sbIndex = 1;
+  /**
+   * Returns the index of the allocation table of a Layer II frame, in SB_LIMIT and NBAL.
+   */
+  private static int allocationTable_II(int bitrate, int frequency) {
+    if (frequency < 32000) {
+      /* Low sampling frequencies use a single allocation table */
+      return 4;
+    } else if (frequency != 48000 && (bitrate >= 96000 || bitrate == 0)) {
+      return 1;
     } else if (frequency != 32000 && (bitrate > 0 && bitrate <= 48000)) {
-      sbIndex = 2;
+      return 2;
     } else if (frequency == 32000 && (bitrate > 0 && bitrate <= 48000)) {
-      sbIndex = 3;
+      return 3;
     }
+    return 0;
+  }
+  
+  private static float[] samples_II(BitReader buffer, int stereo, int bound, int bitrate, int frequency) {
+    int sbIndex = allocationTable_II(bitrate, frequency);
     int sbLimit = SB_LIMIT[sbIndex];
     if (bound < 0) {
       bound = sbLimit;
@@ -1697,113 +3308,848 @@ final class Decoder {
     return sampleDecoded;
   }
   
-  private static void synth(SoundData soundData, float[] samples, int[] synthOffset, float[] synthBuffer, int stereo) {
+  private static void synth(SoundData soundData, float[] samples, int stereo) {
     int size = samples.length / stereo / 32;
-    float[] pcm = new float[size * 32 * stereo];
     for (int ch = 0; ch < stereo; ch++) {
       for (int s = 0; s < size; s++) {
-        synthOffset[ch] = (synthOffset[ch] - 64) & 0x3ff;
-        for (int i = 0; i < 64; i++) {
-          float sum = 0;
-          for (int k = 0; k < 32; k++) {
-            sum += NIK_COEFFICIENTS[i * 32 + k] * samples[ch * 32 * size + k * size + s];
-          }
-          synthBuffer[ch * 1024 + synthOffset[ch] + i] = sum;
-        }
+        synth(samples, ch * 32 * size + s, size, soundData, ch, soundData.pcm, s * 32 * stereo + ch, stereo);
+      }
+    }
+    soundData.pcmLength = size * 32 * stereo;
+    soundData.pcmScale = 32768.0f;
+  }
+  
+  /**
+   * Runs one time slot of the polyphase synthesis filterbank, shared by all layers.
+   * <p>
+   * The 32 subband samples are read from {@code samples[offset + k * stride]}, the 32 PCM samples are written to {@code pcm[pcmOffset + j * pcmStride]}.
+   * The V vector of each channel is kept in a 1024-sample ring buffer indexed by {@code soundData.synthOffset[ch]}, and the matrixing is done with a fast 32-point DCT.
+   * <p>
+   * Silent time slots, whose subband samples are all zero, have an all-zero V vector. Once the ring buffer only contains silent time slots, the output is
+   * all zero, and the ring buffer is left as is, since its offset doesn't matter anymore.
+   */
+  static void synth(float[] samples, int offset, int stride, SoundData soundData, int ch, float[] pcm, int pcmOffset, int pcmStride) {
+    double[] dct = soundData.synthDct;
+    /* Each channel has its own DCT scratch space, so that channels may be synthesized concurrently */
+    int d = ch * 64;
+    boolean silent = true;
+    for (int k = 0; k < 32; k++) {
+      float sample = samples[offset + k * stride];
+      dct[d + k] = sample;
+      if (sample != 0.0f) {
+        silent = false;
+      }
+    }
+    if (silent) {
+      if (soundData.synthSilence[ch] == 16) {
         for (int j = 0; j < 32; j++) {
-          float sum = 0;
-          for (int i = 0; i < 16; i++) {
-            int k = j + (i << 5);
-            sum += DI_COEFFICIENTS[k] * synthBuffer[ch * 1024 + ((synthOffset[ch] + (k + (((i + 1) >> 1) << 6))) & 0x3FF)];
+          pcm[pcmOffset + j * pcmStride] = 0.0f;
+        }
+        return;
+      }
+      soundData.synthSilence[ch]++;
+    } else {
+      soundData.synthSilence[ch] = 0;
+      dct_II(dct, d, 32, dct, d + 32);
+    }
+    
+    float[] synthBuffer = soundData.synthBuffer;
+    int synthOffset = soundData.synthOffset[ch] = (soundData.synthOffset[ch] - 64) & 0x3FF;
+    int base = ch * 1024;
+    
+    if (silent) {
+      Arrays.fill(synthBuffer, base + synthOffset, base + synthOffset + 64, 0.0f);
+    } else {
+      /* V[i] = sum cos((16 + i) * (2k + 1) * PI / 64) * S[k] unfolds from the DCT-II X of S:
+       * V[0..15] = X[16..31], V[16] = 0, V[17..47] = -X[31..1], V[48..63] = -X[0..15] */
+      for (int i = 0; i < 16; i++) {
+        synthBuffer[base + synthOffset + i] = (float) dct[d + i + 16];
+      }
+      synthBuffer[base + synthOffset + 16] = 0.0f;
+      for (int i = 17; i < 48; i++) {
+        synthBuffer[base + synthOffset + i] = (float) -dct[d + 48 - i];
+      }
+      for (int i = 48; i < 64; i++) {
+        synthBuffer[base + synthOffset + i] = (float) -dct[d + i - 48];
+      }
+    }
+    
+    for (int j = 0; j < 32; j++) {
+      float sum = 0;
+      for (int i = 0; i < 16; i++) {
+        int k = j + (i << 5);
+        sum += DI_COEFFICIENTS[k] * synthBuffer[base + ((synthOffset + (k + (((i + 1) >> 1) << 6))) & 0x3FF)];
+      }
+      pcm[pcmOffset + j * pcmStride] = sum;
+    }
+  }
+  
+  /**
+   * Unscaled DCT-II (Lee's algorithm) of {@code v[off..off+len)} in place, {@code len} being a power of two, using {@code tmp[tmpOff..tmpOff+len)} as scratch.
+   */
+  private static void dct_II(double[] v, int off, int len, double[] tmp, int tmpOff) {
+    if (len == 1) {
+      return;
+    }
+    int half = len / 2;
+    for (int i = 0; i < half; i++) {
+      double x = v[off + i];
+      double y = v[off + len - 1 - i];
+      tmp[tmpOff + i] = x + y;
+      tmp[tmpOff + i + half] = (x - y) * DCT_FACTORS[half - 1 + i];
+    }
+    dct_II(tmp, tmpOff, half, v, off);
+    dct_II(tmp, tmpOff + half, half, v, off + half);
+    for (int i = 0; i < half - 1; i++) {
+      v[off + i * 2] = tmp[tmpOff + i];
+      v[off + i * 2 + 1] = tmp[tmpOff + i + half] + tmp[tmpOff + i + half + 1];
+    }
+    v[off + len - 2] = tmp[tmpOff + half - 1];
+    v[off + len - 1] = tmp[tmpOff + len - 1];
+  }
+  
+  /**
+   * Quantizes the decoded samples {@code [from, to)} of the last decoded frame into {@code dst} in the specified format, and returns the number of bytes written.
+   */
+  static int pack(SoundData soundData, SampleFormat format, int from, int to, byte[] dst, int dstOffset) {
+    float[] pcm = soundData.pcm;
+    int index = dstOffset;
+    switch (format) {
+      case PCM_16: {
+        float scale = soundData.pcmScale;
+        int min = -(int) scale;
+        for (int i = from; i < to; i++) {
+          int sample = pcm16(pcm[i], scale, min);
+          dst[index++] = (byte) sample;
+          dst[index++] = (byte) (sample >>> 8);
+        }
+        break;
+      }
+      case PCM_24:
+        for (int i = from; i < to; i++) {
+          int sample = pcm24(pcm[i]);
+          dst[index++] = (byte) sample;
+          dst[index++] = (byte) (sample >>> 8);
+          dst[index++] = (byte) (sample >>> 16);
+        }
+        break;
+      case PCM_32:
+        for (int i = from; i < to; i++) {
+          int sample = pcm32(pcm[i]);
+          dst[index++] = (byte) sample;
+          dst[index++] = (byte) (sample >>> 8);
+          dst[index++] = (byte) (sample >>> 16);
+          dst[index++] = (byte) (sample >>> 24);
+        }
+        break;
+      case FLOAT_32:
+        for (int i = from; i < to; i++) {
+          int sample = Float.floatToRawIntBits(pcm[i]);
+          dst[index++] = (byte) sample;
+          dst[index++] = (byte) (sample >>> 8);
+          dst[index++] = (byte) (sample >>> 16);
+          dst[index++] = (byte) (sample >>> 24);
+        }
+        break;
+    }
+    return index - dstOffset;
+  }
+  
+  /**
+   * Quantizes the decoded samples {@code [from, to)} of the last decoded frame into {@code dst} at its position in the specified format, and advances its position.
+   * <p>
+   * The samples are little-endian regardless of the order of {@code dst}. Buffers backed by an array are written through their array, other buffers (e.g. direct buffers) with their little-endian bulk accessors.
+   */
+  static void pack(SoundData soundData, SampleFormat format, int from, int to, ByteBuffer dst) {
+    if (dst.hasArray()) {
+      int position = dst.position();
+      ((java.nio.Buffer) dst).position(position + pack(soundData, format, from, to, dst.array(), dst.arrayOffset() + position));
+      return;
+    }
+    float[] pcm = soundData.pcm;
+    ByteOrder order = dst.order();
+    dst.order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      switch (format) {
+        case PCM_16: {
+          float scale = soundData.pcmScale;
+          int min = -(int) scale;
+          for (int i = from; i < to; i++) {
+            dst.putShort((short) pcm16(pcm[i], scale, min));
           }
-          pcm[s * 32 * stereo + j * stereo + ch] = sum;
+          break;
         }
+        case PCM_24:
+          for (int i = from; i < to; i++) {
+            int sample = pcm24(pcm[i]);
+            dst.put((byte) sample);
+            dst.putShort((short) (sample >>> 8));
+          }
+          break;
+        case PCM_32:
+          for (int i = from; i < to; i++) {
+            dst.putInt(pcm32(pcm[i]));
+          }
+          break;
+        case FLOAT_32:
+          for (int i = from; i < to; i++) {
+            dst.putFloat(pcm[i]);
+          }
+          break;
+      }
+    } finally {
+      dst.order(order);
+    }
+  }
+  
+  /**
+   * Quantizes the decoded samples {@code [from, to)} of the last decoded frame into {@code dst} at its position as 16-bit samples, and advances its position.
+   */
+  static void pack(SoundData soundData, int from, int to, ShortBuffer dst) {
+    float[] pcm = soundData.pcm;
+    float scale = soundData.pcmScale;
+    int min = -(int) scale;
+    if (dst.hasArray()) {
+      short[] array = dst.array();
+      int index = dst.arrayOffset() + dst.position();
+      for (int i = from; i < to; i++) {
+        array[index++] = (short) pcm16(pcm[i], scale, min);
       }
+      ((java.nio.Buffer) dst).position(dst.position() + to - from);
+      return;
+    }
+    for (int i = from; i < to; i++) {
+      dst.put((short) pcm16(pcm[i], scale, min));
+    }
+  }
+  
+  /* Layer III has always been quantized to [-32767, 32767], Layers I/II to [-32768, 32767] */
+  private static int pcm16(float sample, float scale, int min) {
+    int quantized = (int) (sample * scale);
+    if (quantized > 32767) {
+      return 32767;
+    } else if (quantized < min) {
+      return min;
+    }
+    return quantized;
+  }
+  
+  private static int pcm24(float sample) {
+    int quantized = (int) (sample * 8388608.0f);
+    if (quantized > 8388607) {
+      return 8388607;
+    } else if (quantized < -8388608) {
+      return -8388608;
+    }
+    return quantized;
+  }
+  
+  private static int pcm32(float sample) {
+    /* the float to int conversion saturates to [Integer.MIN_VALUE, Integer.MAX_VALUE] */
+    return (int) (sample * 2147483648.0);
+  }
+  
+  static void reset(BitReader reader, byte[] array, int offset, int limit) {
+    reset(reader, array, null, offset, limit);
+  }
+  
+  /**
+   * Resets the reader to read from the array if it is non-null, or else from the byte buffer, in place, at absolute indices.
+   */
+  private static void reset(BitReader reader, byte[] array, ByteBuffer data, int offset, int limit) {
+    reader.array = array;
+    reader.data = data;
+    reader.index = offset;
+    reader.limit = limit;
+    reader.cache = 0;
+    reader.bits = 0;
+    reader.offset = offset;
+  }
+  
+  /**
+   * Loads whole bytes into the bit cache until it holds more than 56 bits, bytes past the limit are read as zeros.
+   */
+  private static void refill(BitReader reader) {
+    byte[] array = reader.array;
+    if (array == null) {
+      refill(reader, reader.data);
+      return;
     }
-    if(soundData.samplesBuffer == null)
-      soundData.samplesBuffer = new byte[size * 32 * stereo * 2];
-    for (int i = 0; i < size * 32 * stereo; i++) {
-      int sample = (int) (pcm[i] * 32768);
-      if (sample >= 32768) {
-        sample = 32767;
-      } else if (sample < -32768) {
-        sample = -32768;
+    long cache = reader.cache;
+    int bits = reader.bits;
+    int index = reader.index;
+    int limit = reader.limit;
+    while (bits <= 56) {
+      if (index < limit) {
+        cache |= (long) (array[index] & 0xFF) << (56 - bits);
       }
-      soundData.samplesBuffer[i * 2] = (byte) sample;
-      soundData.samplesBuffer[i * 2 + 1] = (byte) (sample >>> 8);
+      index++;
+      bits += 8;
     }
+    reader.cache = cache;
+    reader.bits = bits;
+    reader.index = index;
   }
   
-  private static int read(MainDataReader reader, int bits) {
-    int number = 0;
-    while (bits > 0) {
-      int advance = Integer.min(bits, 8 - reader.current);
-      bits -= advance;
-      reader.current += advance;
-      number |= ((reader.array[reader.index] >>> (8 - reader.current)) & (0xFF >>> (8 - advance))) << bits;
-      if (reader.current == 8) {
-        reader.current = 0;
-        reader.index++;
+  /**
+   * Loads whole bytes of a byte buffer into the bit cache, as {@link #refill(BitReader)}, reading them with a single big-endian long unless the limit is
+   * near.
+   */
+  private static void refill(BitReader reader, ByteBuffer data) {
+    long cache = reader.cache;
+    int bits = reader.bits;
+    int index = reader.index;
+    int limit = reader.limit;
+    if (index + 8 <= limit) {
+      int bytes = (64 - bits) >>> 3;
+      cache |= data.getLong(index) >>> (64 - bytes * 8) << (64 - bits - bytes * 8);
+      index += bytes;
+      bits += bytes * 8;
+    } else {
+      while (bits <= 56) {
+        if (index < limit) {
+          cache |= (long) (data.get(index) & 0xFF) << (56 - bits);
+        }
+        index++;
+        bits += 8;
       }
     }
+    reader.cache = cache;
+    reader.bits = bits;
+    reader.index = index;
+  }
+  
+  private static int peek(BitReader reader, int bits) {
+    if (reader.bits < bits) {
+      refill(reader);
+    }
+    return (int) (reader.cache >>> (64 - bits));
+  }
+  
+  private static void skip(BitReader reader, int bits) {
+    if (reader.bits < bits) {
+      refill(reader);
+    }
+    reader.cache <<= bits;
+    reader.bits -= bits;
+  }
+  
+  static int read(BitReader reader, int bits) {
+    if (bits == 0) {
+      return 0;
+    }
+    if (reader.bits < bits) {
+      refill(reader);
+    }
+    int number = (int) (reader.cache >>> (64 - bits));
+    reader.cache <<= bits;
+    reader.bits -= bits;
     return number;
   }
   
-  private static int read(Buffer buffer, int bits) throws IOException {
-    int number = 0;
-    while (bits > 0) {
-      int advance = Integer.min(bits, 8 - buffer.current);
-      bits -= advance;
-      buffer.current += advance;
-      if (bits != 0 && buffer.lastByte == -1) {
-        throw new EOFException("Unexpected EOF reached in MPEG data");
+  /**
+   * Returns the number of bits read since the offset the reader was reset to.
+   */
+  private static int position(BitReader reader) {
+    return (reader.index - reader.offset) * 8 - reader.bits;
+  }
+  
+  private static void seek(BitReader reader, int position) {
+    reader.index = reader.offset + (position >>> 3);
+    reader.cache = 0;
+    reader.bits = 0;
+    if ((position & 7) != 0) {
+      skip(reader, position & 7);
+    }
+  }
+  
+  /**
+   * Advances the buffer to the next frame sync word, and makes its header available, or returns false if the end of stream is reached.
+   */
+  private static boolean sync(Buffer buffer) throws IOException {
+    while (true) {
+      if (fill(buffer, 2) < 2) {
+        return false;
+      }
+      ByteBuffer data = buffer.data;
+      int end = buffer.limit - 1;
+      int i = buffer.position;
+      /* 11 bits of sync word, and any version but the reserved one, as MPEG-2.5 uses the last bit of the historical 12 bits sync word.
+       * Also stop on the first letter of a tag, so that tags are skipped at once, rather than searched for sync words */
+      while (i < end && (data.get(i) != (byte) 0b11111111 || (data.get(i + 1) & 0b11100000) != 0b11100000 || (data.get(i + 1) & 0b00011000) == 0b00001000)
+              && data.get(i) != 'I' && data.get(i) != 'T' && data.get(i) != 'A') {
+        i++;
+      }
+      buffer.skipped += i - buffer.position;
+      buffer.position = i;
+      if (i < end) {
+        if (data.get(i) == (byte) 0b11111111) {
+          break;
+        }
+        if (!tag(buffer)) {
+          if (buffer.starved) {
+            return false;
+          }
+          buffer.skipped++;
+          buffer.position++;
+        }
       }
-      number |= ((buffer.lastByte >>> (8 - buffer.current)) & (0xFF >>> (8 - advance))) << bits;
-      if (buffer.current == 8) {
-        buffer.current = 0;
-        buffer.lastByte = buffer.in.read();
+    }
+    return fill(buffer, 4) >= 4;
+  }
+  
+  /**
+   * Skips the ID3v2, ID3v1 or APE tag at the buffer position, if any, and records it.
+   */
+  private static boolean tag(Buffer buffer) throws IOException {
+    int available = fill(buffer, 10);
+    ByteBuffer data = buffer.data;
+    int i = buffer.position;
+    long offset = buffer.base + i;
+    if (available >= 10 && tag(data, i, "ID3") && data.get(i + 3) != (byte) 0xFF && data.get(i + 4) != (byte) 0xFF
+            && (data.get(i + 6) | data.get(i + 7) | data.get(i + 8) | data.get(i + 9)) >= 0) {
+      /* The size is stored in 4 bytes of 7 bits, and excludes the 10 bytes header and the optional 10 bytes footer */
+      int length = 10 + ((data.get(i + 6) << 21) | (data.get(i + 7) << 14) | (data.get(i + 8) << 7) | data.get(i + 9)) + ((data.get(i + 5) & 0x10) != 0 ? 10 : 0);
+      addTag(buffer, Tag.Type.ID3V2, offset, length);
+      skip(buffer, length);
+      return true;
+    }
+    if (available >= 3 && tag(data, i, "TAG")) {
+      /* An ID3v1 tag is exactly the last 128 bytes of the stream */
+      available = fill(buffer, 129);
+      if (available == 128 && buffer.eof) {
+        addTag(buffer, Tag.Type.ID3V1, offset, 128);
+        buffer.position += 128;
+        return true;
       }
+      return false;
     }
-    return number;
+    if (available >= 8 && tag(data, i, "APETAGEX")) {
+      available = fill(buffer, 32);
+      data = buffer.data;
+      i = buffer.position;
+      if (available < 32) {
+        return false;
+      }
+      int size = littleEndian(data, i + 12);
+      int flags = littleEndian(data, i + 20);
+      if ((flags & 1 << 29) != 0) {
+        /* A header: the size includes the items and the footer */
+        addTag(buffer, Tag.Type.APE, offset, size + 32);
+        skip(buffer, size + 32);
+      } else {
+        /* A footer, after items that were already read */
+        buffer.position += 32;
+      }
+      return true;
+    }
+    return false;
   }
   
-  private static void readInto(Buffer buffer, byte[] array, int offset, int length) throws IOException {
-    if (buffer.current != 0) // TODO remove
-    {
-      throw new IllegalStateException("buffer current is " + buffer.current);
+  /**
+   * Records the ID3v1 and APE tags at the end of a seekable stream, and makes the stream end before them.
+   * <p>
+   * This also finds APE tags without a header, which can't be found while reading the stream.
+   */
+  private static void trailingTags(Buffer buffer) throws IOException {
+    long length = buffer.end;
+    int tailLength = (int) Math.min(length, 128 + 32);
+    ByteBuffer tail;
+    if (buffer.bytes != null) {
+      tail = buffer.bytes.duplicate();
+      ((java.nio.Buffer) tail).position((int) (buffer.start + length - tailLength));
+      tail = tail.slice();
+    } else {
+      tail = ByteBuffer.allocate(tailLength);
+      while (tail.hasRemaining()) {
+        if (buffer.channel.read(tail, buffer.start + length - tailLength + tail.position()) < 0) {
+          return;
+        }
+      }
+    }
+    long end = length;
+    if (end >= 128 && tag(tail, (int) (tailLength - (length - end) - 128), "TAG")) {
+      end -= 128;
+      addTag(buffer, Tag.Type.ID3V1, end, 128);
+    }
+    int footer = (int) (tailLength - (length - end) - 32);
+    if (footer >= 0 && tag(tail, footer, "APETAGEX")) {
+      long size = (littleEndian(tail, footer + 12) & 0xFFFFFFFFL) + ((littleEndian(tail, footer + 20) & 1 << 31) != 0 ? 32 : 0);
+      if (size <= end) {
+        end -= size;
+        addTag(buffer, Tag.Type.APE, end, (int) size);
+      }
+    }
+    buffer.end = end;
+    if (buffer.channel == null) {
+      /* A byte buffer, read in place */
+      buffer.limit = (int) Math.min(buffer.limit, end - buffer.base);
+    }
+  }
+  
+  private static void addTag(Buffer buffer, Tag.Type type, long offset, int length) {
+    for (Tag tag : buffer.tags) {
+      if (tag.getOffset() == offset) {
+        /* Already found, e.g. before a seek */
+        return;
+      }
+    }
+    buffer.tags.add(new Tag(type, offset, length, buffer.bytes, buffer.channel, buffer.start));
+  }
+  
+  private static int littleEndian(ByteBuffer data, int offset) {
+    return (data.get(offset) & 0xFF) | (data.get(offset + 1) & 0xFF) << 8 | (data.get(offset + 2) & 0xFF) << 16 | (data.get(offset + 3) & 0xFF) << 24;
+  }
+  
+  /**
+   * Skips the specified number of bytes from the buffer position, seeking if possible.
+   */
+  private static void skip(Buffer buffer, long length) throws IOException {
+    long target = buffer.base + buffer.position + length;
+    if (target <= buffer.base + buffer.limit) {
+      buffer.position = (int) (target - buffer.base);
+      return;
     }
-    if (length == 0) {
+    if (buffer.seekable) {
+      seek(buffer, Math.min(target, buffer.end));
       return;
     }
-    if (buffer.lastByte == -1) {
-      throw new EOFException("Unexpected EOF reached in MPEG data");
+    long remaining = target - buffer.base - buffer.limit;
+    buffer.base += buffer.limit;
+    buffer.position = 0;
+    buffer.limit = 0;
+    if (buffer.push) {
+      /* Skipped as it is fed */
+      buffer.pending = remaining;
+      return;
     }
-    array[offset] = (byte) buffer.lastByte;
-    int read = 1;
-    while (read < length) {
-      read += buffer.in.read(array, offset + read, length - read);
+    while (remaining > 0 && !buffer.eof) {
+      long skipped = buffer.in.skip(remaining);
+      if (skipped <= 0) {
+        /* The stream may not support skipping */
+        skipped = buffer.in.read(buffer.array, 0, (int) Math.min(buffer.array.length, remaining));
+        if (skipped < 0) {
+          buffer.eof = true;
+          break;
+        }
+      }
+      remaining -= skipped;
+      buffer.base += skipped;
     }
-    buffer.lastByte = buffer.in.read();
   }
   
-  private static final class MainDataReader {
-    public final byte[] array;
-    public int top = 0;
-    public int index = 0;
-    public int current = 0;
-    
-    public MainDataReader(byte[] array) {
-      this.array = array;
+  /**
+   * Moves the buffer to the specified offset in the stream, which must be seekable unless the offset is still in the buffer.
+   */
+  private static void seek(Buffer buffer, long offset) throws IOException {
+    if (offset >= buffer.base && offset <= buffer.base + buffer.limit) {
+      buffer.position = (int) (offset - buffer.base);
+      return;
+    }
+    buffer.channel.position(buffer.start + offset);
+    buffer.base = offset;
+    buffer.position = 0;
+    buffer.limit = 0;
+    buffer.eof = false;
+  }
+  
+  /**
+   * Makes at least {@code length} bytes available from the buffer position, unless the end of stream is reached, and returns the number of available bytes.
+   * <p>
+   * The underlying stream is read in bulk, as many bytes as fit in the buffer.
+   */
+  private static int fill(Buffer buffer, int length) throws IOException {
+    int available = buffer.limit - buffer.position;
+    if (available >= length || buffer.eof) {
+      return available;
+    }
+    if (buffer.push) {
+      buffer.starved = true;
+      return available;
+    }
+    if (buffer.position + length > buffer.array.length) {
+      System.arraycopy(buffer.array, buffer.position, buffer.array, 0, available);
+      buffer.base += buffer.position;
+      buffer.position = 0;
+      buffer.limit = available;
     }
+    while (buffer.limit - buffer.position < length) {
+      int room = (int) Math.min(buffer.array.length - buffer.limit, buffer.end - buffer.base - buffer.limit);
+      int read = room == 0 ? -1 : buffer.in.read(buffer.array, buffer.limit, room);
+      if (read < 0) {
+        buffer.eof = true;
+        break;
+      }
+      buffer.limit += read;
+    }
+    return buffer.limit - buffer.position;
+  }
+  
+  /**
+   * A big-endian bit reader over a byte array or a byte buffer, that caches up to 64 bits.
+   */
+  static final class BitReader {
+    public byte[] array;
+    /* Read in place if the array is null, e.g. a direct or memory-mapped byte buffer */
+    public ByteBuffer data;
+    public int offset;
+    public int index;
+    public int limit;
+    public long cache;
+    public int bits;
   }
   
+  /**
+   * The encoded data, read in bulk from a stream, or from a byte buffer.
+   * <p>
+   * A byte buffer is read in place: a heap byte buffer through its array, and other byte buffers, e.g. memory-mapped files, which have no array, at
+   * absolute indices.
+   */
   private static final class Buffer {
     public final InputStream in;
-    public int current = 0;
-    public int lastByte = -1;
+    /* Set if the stream is a file, to seek in it */
+    public final FileChannel channel;
+    /* The position of the file or byte buffer when the decoding started */
+    public final long start;
+    public final boolean seekable;
+    /* Set if the data is read from a byte buffer, at its initial position, to get the bytes of tags */
+    public final ByteBuffer bytes;
+    /* The offset in the stream of its end, set to the start of its trailing tags if the stream is seekable */
+    public long end = Long.MAX_VALUE;
+    /* Synchronized, as tags are found by the front end of the decoder, which may run on another thread */
+    public final List<Tag> tags = Collections.synchronizedList(new ArrayList<>());
+    /* The array, null if the data is read in place from a byte buffer which doesn't expose one */
+    public final byte[] array;
+    /* The bytes of the array, or the byte buffer read in place, at the same indices */
+    public final ByteBuffer data;
+    /* The offset in the stream of the byte at index 0 */
+    public long base = 0;
+    public int position = 0;
+    public int limit = 0;
+    public boolean eof = false;
+    /* The number of bytes skipped while searching for sync words, excluding tags */
+    public long skipped = 0;
+    /* The number of bytes skipped before the last frame found */
+    public long synced = 0;
+    /* Set if the data is fed by chunks, see push(), rather than read */
+    public final boolean push;
+    /* Set if fewer bytes than needed were fed */
+    public boolean starved = false;
+    /* The number of bytes to skip from the next chunks fed */
+    public long pending = 0;
+    
+    public Buffer() {
+      in = null;
+      channel = null;
+      start = 0;
+      seekable = false;
+      bytes = null;
+      array = new byte[1 << 15];
+      data = ByteBuffer.wrap(array);
+      push = true;
+    }
+    
+    public Buffer(ByteBuffer byteBuffer) {
+      push = false;
+      in = null;
+      channel = null;
+      seekable = true;
+      bytes = byteBuffer.duplicate();
+      end = byteBuffer.remaining();
+      start = byteBuffer.position();
+      if (byteBuffer.hasArray()) {
+        array = byteBuffer.array();
+        data = ByteBuffer.wrap(array);
+        position = byteBuffer.arrayOffset() + byteBuffer.position();
+        limit = byteBuffer.arrayOffset() + byteBuffer.limit();
+      } else {
+        array = null;
+        /* The bit reader reads big-endian longs */
+        data = byteBuffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        position = byteBuffer.position();
+        limit = byteBuffer.limit();
+      }
+      /* The whole data is available */
+      base = -position;
+      eof = true;
+    }
     
     public Buffer(InputStream inputStream) {
+      this(inputStream, null);
+    }
+    
+    public Buffer(InputStream inputStream, byte[] array) {
+      push = false;
       in = inputStream;
+      bytes = null;
+      this.array = array != null ? array : new byte[1 << 15];
+      data = ByteBuffer.wrap(this.array);
+      FileChannel channel = null;
+      long start = 0;
+      if (inputStream instanceof FileInputStream) {
+        try {
+          channel = ((FileInputStream) inputStream).getChannel();
+          start = channel.position();
+          end = channel.size() - start;
+        } catch (IOException e) {
+          /* e.g. a pipe, which can't be seeked */
+          channel = null;
+        }
+      }
+      this.channel = channel;
+      this.start = start;
+      seekable = channel != null;
+    }
+    
+    /**
+     * Returns the array of this buffer if it may be reused by another buffer once this one isn't used anymore, that is if a stream is read into it, or
+     * null otherwise.
+     */
+    public byte[] recyclable() {
+      return in != null ? array : null;
+    }
+  }
+  
+  /**
+   * The offset in the stream, first sample position and main_data_begin of every frame decoded or scanned so far, for seekable sources only.
+   */
+  private static final class FrameIndex {
+    public long[] offsets = new long[1024];
+    public long[] samples = new long[1024];
+    public int[] mainDataBegins = new int[1024];
+    public int size = 0;
+  }
+  
+  /**
+   * A frame parsed by the front end of the decoder, to be synthesized by its back end: the subband samples of a Layer I or II frame, or the requantized
+   * spectrum of a Layer III frame, after stereo processing.
+   */
+  private static final class Block {
+    public long position;
+    public int channels;
+    /* Layer I and II */
+    public float[] samples;
+    /* Layer III */
+    public int samplingFrequency;
+    public int granules;
+    public LayerIIIWorkspace workspace;
+    /* Set in the blocks of a pipeline when the end of the stream is reached, or when parsing the frame failed */
+    public boolean end;
+    public Throwable error;
+    /* Metrics: whether the time of the frame is measured, the time spent in its front end, and its flight recorder event, if any */
+    public boolean timed;
+    public long syncNanos;
+    public long bitstreamNanos;
+    public FrameEvent event;
+    /* Set when the frame was corrupt, and concealed by a resilient decoder */
+    public boolean concealed;
+    /* Set by skipFrame to only parse the frame, and cleared if it must be decoded */
+    public boolean skip;
+  }
+  
+  /**
+   * A bounded single-producer single-consumer ring of blocks, between the front end of a decoder running on the producer thread, and its back end.
+   * <p>
+   * The producer only writes {@code tail} and the consumer only writes {@code head}, each after it is done with the block, so that no lock is needed.
+   */
+  private static final class Pipeline {
+    public final Block[] blocks = new Block[PIPELINE_BLOCKS];
+    /* The number of blocks consumed and produced */
+    public final AtomicLong head = new AtomicLong();
+    public final AtomicLong tail = new AtomicLong();
+    /* Whether new blocks are parsed, only accessed by the consumer */
+    public boolean enabled;
+    public volatile boolean stopped;
+    /* Cleared by the producer after its last write */
+    public volatile boolean running;
+    public volatile Thread producer;
+    
+    public Pipeline(int layerIIIChannels) {
+      for (int i = 0; i < blocks.length; i++) {
+        blocks[i] = new Block();
+        if (layerIIIChannels > 0) {
+          blocks[i].workspace = new LayerIIIWorkspace(layerIIIChannels);
+        }
+      }
+    }
+  }
+  
+  /**
+   * A thread synthesizing the right channel of stereo Layer III frames, handed off by the decoding thread.
+   * <p>
+   * The decoding thread publishes a frame by incrementing {@code requested}, and the worker publishes its result by setting {@code done} to it.
+   */
+  private static final class ChannelWorker {
+    /* The number of frames to synthesize on the decoding thread only, and the number of frames synthesized so far, up to threshold */
+    public int threshold;
+    public int frames;
+    public final float[] pcm = new float[2 * 18 * 32];
+    public LayerIIIWorkspace workspace;
+    public int granules;
+    public int samplingFrequency;
+    public volatile long requested;
+    public volatile long done;
+    public volatile Throwable error;
+    public volatile boolean stopped;
+    /* Cleared by the worker after its last write */
+    public volatile boolean running;
+    public volatile Thread thread;
+    public volatile Thread waiter;
+  }
+  
+  private static final class LayerIIIWorkspace {
+    public final int[] scfsi;
+    public final int[] part2_3_length;
+    public final int[] big_values;
+    public final int[] global_gain;
+    public final int[] scalefac_compress;
+    public final int[] win_switch_flag;
+    public final int[] block_type;
+    public final int[] mixed_block_flag;
+    public final int[] table_select;
+    public final int[] subblock_gain;
+    public final int[] region0_count;
+    public final int[] region1_count;
+    public final int[] preflag;
+    public final int[] scalefac_scale;
+    public final int[] count1table_select;
+    public final int[] count1;
+    public final int[] scalefac_l;
+    public final int[] scalefac_s;
+    /* The LSF scalefactor sizes of each partition, and whether each intensity position of the right channel is illegal */
+    public final int[] slen = new int[4];
+    public final boolean[] illegal_l = new boolean[21];
+    public final boolean[] illegal_s = new boolean[12 * 3];
+    public final float[] is;
+    public final int[] huffman = new int[4];
+    /* Scratch arrays of each channel */
+    public final float[][] re;
+    public final float[][] rawout;
+    public final double[][] imdct;
+    
+    public LayerIIIWorkspace(int stereo) {
+      scfsi = new int[stereo * 4];
+      part2_3_length = new int[stereo * 2];
+      big_values = new int[stereo * 2];
+      global_gain = new int[stereo * 2];
+      scalefac_compress = new int[stereo * 2];
+      win_switch_flag = new int[stereo * 2];
+      block_type = new int[stereo * 2];
+      mixed_block_flag = new int[stereo * 2];
+      table_select = new int[stereo * 2 * 3];
+      subblock_gain = new int[stereo * 2 * 3];
+      region0_count = new int[stereo * 2];
+      region1_count = new int[stereo * 2];
+      preflag = new int[stereo * 2];
+      scalefac_scale = new int[stereo * 2];
+      count1table_select = new int[stereo * 2];
+      count1 = new int[stereo * 2];
+      scalefac_l = new int[stereo * 2 * 21];
+      scalefac_s = new int[stereo * 2 * 12 * 3];
+      is = new float[stereo * 2 * 576];
+      re = new float[stereo][576];
+      rawout = new float[stereo][36];
+      imdct = new double[stereo][45];
     }
   }
   
@@ -1812,16 +4158,53 @@ final class Decoder {
   
     int frequency = -1;
     int stereo = -1;
+    private int layer = -1;
+    /* The number of samples per channel of every frame */
+    int frameSamples;
+  
+    private final FrameIndex index = new FrameIndex();
+    /* The index of the frame in pcm, and its first sample */
+    private int frame = -1;
+    long position;
   
     private int[] synthOffset;
     private float[] synthBuffer;
+    /* The number of consecutive silent time slots in the V vector of each channel, up to 16 when it is all zero */
+    private int[] synthSilence;
+    /* Whether the IMDCT overlap of each channel is all zero */
+    private boolean[] storeSilent;
+    private final double[] synthDct = new double[2 * 64];
+    float[] pcm;
+    int pcmLength;
+    private float pcmScale;
+  
+    private final BitReader reader = new BitReader();
   
     private byte[] mainData;
-    private MainDataReader mainDataReader;
+    private int mainDataTop;
+    private BitReader mainDataReader;
   
     private float[] store;
-    private float[] v;
+    /* The block parsed and synthesized by decodeFrame when the decoder isn't pipelined */
+    private final Block block = new Block();
+    private Pipeline pipeline;
+    private ChannelWorker channelWorker;
+    
+    VbrHeader vbrHeader;
     
-    byte[] samplesBuffer;
+    DecoderMetrics metrics;
+    /* The buffer of packed samples of the sound that used this decoder, kept while the decoder is pooled */
+    byte[] output;
+    /* The number of frames parsed since the last frame whose time was measured */
+    private int untimedFrames;
+    /* Whether the time of the frame being synthesized is measured, and the time spent by each channel in hybrid_III, and in its synthesis */
+    private boolean timed;
+    private final long[] hybridNanos = new long[2 * 2];
+    /* Whether corrupt data is skipped and concealed rather than thrown, how, and the listener of the errors found */
+    boolean resilient;
+    Concealment concealment = Concealment.SILENCE;
+    Consumer<DecodingError> errorListener;
+    CrcCheck crcCheck = CrcCheck.OFF;
+    private final BitReader crcReader = new BitReader();
   }
 }
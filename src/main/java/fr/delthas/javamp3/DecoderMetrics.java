@@ -0,0 +1,279 @@
+package fr.delthas.javamp3;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Counters of the work done by the decoders of sounds, e.g. to monitor decoding in production.
+ * <p>
+ * Attach metrics to a sound with {@link Sound#setMetrics(DecoderMetrics)}. The same metrics may be attached to several sounds, decoded concurrently, in which case they count the work done by all of them. Sounds without metrics don't count anything, and cost nothing more to decode.
+ * <p>
+ * The counters are updated as frames are decoded, and may be read at any time, from any thread. Counting frames and errors is cheap enough to be always enabled. The time spent in each stage of the decoder is only measured for one frame out of a configurable number of frames, see {@link #DecoderMetrics(int)}, since reading the time is more costly than decoding small frames. Each frame may also be recorded as a Java Flight Recorder event, see {@link #setFlightRecorderEvents(boolean)}.
+ *
+ * @see Sound#setMetrics(DecoderMetrics)
+ */
+public final class DecoderMetrics {
+  /**
+   * A stage of the decoding of a frame, whose time is measured for a sample of the frames.
+   */
+  public enum Stage {
+    /**
+     * The search for the sync word of the frame, including skipping tags and garbage data before it.
+     */
+    SYNC,
+    /**
+     * The reading of the contents of the frame: for Layer I and II frames, their bit allocation and scalefactors, and the dequantization of their samples; for Layer III frames, their side information and scalefactors, the Huffman decoding and requantization of their spectrum, and the joint stereo processing.
+     */
+    BITSTREAM,
+    /**
+     * The hybrid filterbank of Layer III frames, that is the reordering, antialiasing, inverse MDCT and overlap of their spectrum. Always zero for Layer I and II frames.
+     */
+    IMDCT,
+    /**
+     * The polyphase synthesis filterbank, from subband samples to PCM samples.
+     */
+    SYNTHESIS
+  }
+  
+  private static final int FRAMES = 0; /* 3 counters, per layer */
+  private static final int TIMED_FRAMES = 3;
+  private static final int SKIPPED_BYTES = 4;
+  private static final int RESYNCS = 5;
+  private static final int RESERVOIR_UNDERFLOWS = 6;
+  private static final int OVERSIZED_FRAMES = 7;
+  private static final int FALSE_SYNCS = 8;
+  private static final int CONCEALED_FRAMES = 9;
+  private static final int CRC_ERRORS = 10;
+  private static final int NANOS = 11; /* Stage.values().length counters, per stage */
+  
+  private final int timingInterval;
+  private final AtomicLongArray counters = new AtomicLongArray(NANOS + Stage.values().length);
+  /* The factory of the flight recorder events of the frames, or null if events are disabled */
+  private volatile Supplier<FrameEvent> frameEvents;
+  
+  /**
+   * Creates new metrics that count frames and errors, but don't measure the time spent in the stages of the decoder.
+   */
+  public DecoderMetrics() {
+    this(0);
+  }
+  
+  /**
+   * Creates new metrics that count frames and errors, and measure the time spent in the stages of the decoder for one frame out of the specified number of frames.
+   * <p>
+   * For example, with an interval of 100, the time of every hundredth frame decoded by each sound is measured. An interval of 1 measures every frame, and an interval of 0 measures no frame.
+   *
+   * @param timingInterval The number of frames decoded per frame whose time is measured, or 0 to measure no frame, must be non-negative.
+   */
+  public DecoderMetrics(int timingInterval) {
+    if(timingInterval < 0) {
+      throw new IllegalArgumentException("The timing interval must be non-negative!");
+    }
+    this.timingInterval = timingInterval;
+  }
+  
+  /**
+   * Returns the number of frames decoded, of all layers.
+   *
+   * @return The number of frames decoded.
+   */
+  public long getFrames() {
+    return counters.get(FRAMES) + counters.get(FRAMES + 1) + counters.get(FRAMES + 2);
+  }
+  
+  /**
+   * Returns the number of frames decoded of the specified layer.
+   *
+   * @param layer The MPEG audio layer of the frames, either 1, 2, or 3.
+   * @return The number of frames of the specified layer decoded.
+   */
+  public long getFrames(int layer) {
+    if(layer < 1 || layer > 3) {
+      throw new IllegalArgumentException("The layer must be 1, 2 or 3!");
+    }
+    return counters.get(FRAMES + layer - 1);
+  }
+  
+  /**
+   * Returns the number of frames whose time was measured, see {@link #DecoderMetrics(int)}.
+   *
+   * @return The number of frames whose time was measured.
+   */
+  public long getTimedFrames() {
+    return counters.get(TIMED_FRAMES);
+  }
+  
+  /**
+   * Returns the total time spent in the specified stage of the decoder, for the frames whose time was measured.
+   * <p>
+   * The time spent in a stage for each frame on average is {@code getNanos(stage) / getTimedFrames()}. When the channels of a sound are synthesized in parallel (see {@link Sound#setParallelChannels(boolean)}), the time spent by both threads is counted.
+   *
+   * @param stage The stage of the decoder, must be non-null.
+   * @return The time spent in the specified stage, in nanoseconds.
+   */
+  public long getNanos(Stage stage) {
+    return counters.get(NANOS + stage.ordinal());
+  }
+  
+  /**
+   * Returns the number of bytes skipped while searching for the sync word of frames, that is bytes that are neither part of a frame nor of a tag, e.g. garbage data or truncated frames.
+   *
+   * @return The number of bytes skipped to find frames.
+   */
+  public long getSkippedBytes() {
+    return counters.get(SKIPPED_BYTES);
+  }
+  
+  /**
+   * Returns the number of frames that didn't directly follow the previous frame or tag, that is the number of times bytes were skipped to find a frame, see {@link #getSkippedBytes()}.
+   *
+   * @return The number of times the decoder lost and found again the sync of the stream.
+   */
+  public long getResyncs() {
+    return counters.get(RESYNCS);
+  }
+  
+  /**
+   * Returns the number of Layer III frames whose main data starts before the bytes available in the bit reservoir, and that were decoded as silence.
+   * <p>
+   * This happens for the first frames decoded after the start of a stream that was cut, after frames were lost, and for some of the frames decoded again when seeking, whose samples are discarded.
+   *
+   * @return The number of Layer III frames decoded as silence because of a bit reservoir underflow.
+   */
+  public long getReservoirUnderflows() {
+    return counters.get(RESERVOIR_UNDERFLOWS);
+  }
+  
+  /**
+   * Returns the number of Layer III frames larger than 2000 bytes, which is more than the size of any frame of a standard bitrate, and is usually caused by a corrupted frame header.
+   *
+   * @return The number of unexpectedly large Layer III frames.
+   */
+  public long getOversizedFrames() {
+    return counters.get(OVERSIZED_FRAMES);
+  }
+  
+  /**
+   * Returns the number of frame headers rejected by resilient decoders as false sync words, that is sync words found in corrupt or garbage data that aren't followed by another frame, see {@link Sound#setResilient(boolean)}. The bytes skipped past them are counted in {@link #getSkippedBytes()}.
+   *
+   * @return The number of false sync words rejected.
+   */
+  public long getFalseSyncs() {
+    return counters.get(FALSE_SYNCS);
+  }
+  
+  /**
+   * Returns the number of corrupt frames concealed by resilient decoders, that is frames whose data couldn't be decoded, and that were replaced by silence or by the previous frame, see {@link Sound#setConcealment(Concealment)}.
+   *
+   * @return The number of corrupt frames concealed.
+   */
+  public long getConcealedFrames() {
+    return counters.get(CONCEALED_FRAMES);
+  }
+  
+  /**
+   * Returns the number of frames whose CRC didn't match their header and side information, when CRCs are checked, see {@link Sound#setCrcCheck(CrcCheck)}.
+   *
+   * @return The number of frames with a CRC error.
+   */
+  public long getCrcErrors() {
+    return counters.get(CRC_ERRORS);
+  }
+  
+  /**
+   * Sets whether each frame decoded is recorded as a {@code fr.delthas.javamp3.FrameDecode} Java Flight Recorder event. Events are disabled by default.
+   * <p>
+   * Events are only recorded while a flight recording with this event enabled is running, but when events are enabled with this method, an event object is created for every frame decoded. The event duration spans from the start of the parsing of the frame to the end of its synthesis, and its fields are its layer, its number of channels, its offset in the encoded data, and the position of its first sample.
+   *
+   * @param enabled Whether to record frames as Java Flight Recorder events.
+   * @throws UnsupportedOperationException If the Java Flight Recorder API isn't available on this runtime, or if this library was built without it, by a JDK older than 11.
+   */
+  public void setFlightRecorderEvents(boolean enabled) {
+    if(!enabled) {
+      frameEvents = null;
+      return;
+    }
+    if(frameEvents != null) {
+      return;
+    }
+    try {
+      @SuppressWarnings("unchecked")
+      Supplier<FrameEvent> factory = (Supplier<FrameEvent>) Class.forName("fr.delthas.javamp3.FrameDecodeEvent$Factory").getDeclaredConstructor().newInstance();
+      frameEvents = factory;
+    } catch(ReflectiveOperationException | LinkageError e) {
+      throw new UnsupportedOperationException("The Java Flight Recorder API isn't available on this runtime, or this library was built without it", e);
+    }
+  }
+  
+  /**
+   * Resets all the counters to zero.
+   * <p>
+   * Frames decoded concurrently with this call may be partially counted.
+   */
+  public void reset() {
+    for(int i = 0; i < counters.length(); i++) {
+      counters.set(i, 0);
+    }
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("DecoderMetrics{frames=[").append(counters.get(FRAMES)).append(", ").append(counters.get(FRAMES + 1)).append(", ").append(counters.get(FRAMES + 2));
+    sb.append("], skippedBytes=").append(getSkippedBytes()).append(", resyncs=").append(getResyncs());
+    sb.append(", reservoirUnderflows=").append(getReservoirUnderflows()).append(", oversizedFrames=").append(getOversizedFrames());
+    sb.append(", falseSyncs=").append(getFalseSyncs()).append(", concealedFrames=").append(getConcealedFrames());
+    sb.append(", crcErrors=").append(getCrcErrors());
+    sb.append(", timedFrames=").append(getTimedFrames());
+    for(Stage stage : Stage.values()) {
+      sb.append(", ").append(stage.name().toLowerCase()).append("Nanos=").append(getNanos(stage));
+    }
+    return sb.append('}').toString();
+  }
+  
+  int timingInterval() {
+    return timingInterval;
+  }
+  
+  Supplier<FrameEvent> frameEvents() {
+    return frameEvents;
+  }
+  
+  void synced(long skippedBytes) {
+    if(skippedBytes != 0) {
+      counters.addAndGet(SKIPPED_BYTES, skippedBytes);
+      counters.incrementAndGet(RESYNCS);
+    }
+  }
+  
+  void reservoirUnderflow() {
+    counters.incrementAndGet(RESERVOIR_UNDERFLOWS);
+  }
+  
+  void oversizedFrame() {
+    counters.incrementAndGet(OVERSIZED_FRAMES);
+  }
+  
+  void falseSync() {
+    counters.incrementAndGet(FALSE_SYNCS);
+  }
+  
+  void concealedFrame() {
+    counters.incrementAndGet(CONCEALED_FRAMES);
+  }
+  
+  void crcError() {
+    counters.incrementAndGet(CRC_ERRORS);
+  }
+  
+  void frame(int layer) {
+    counters.incrementAndGet(FRAMES + layer - 1);
+  }
+  
+  void timedFrame(long sync, long bitstream, long imdct, long synthesis) {
+    counters.incrementAndGet(TIMED_FRAMES);
+    counters.addAndGet(NANOS + Stage.SYNC.ordinal(), sync);
+    counters.addAndGet(NANOS + Stage.BITSTREAM.ordinal(), bitstream);
+    counters.addAndGet(NANOS + Stage.IMDCT.ordinal(), imdct);
+    counters.addAndGet(NANOS + Stage.SYNTHESIS.ordinal(), synthesis);
+  }
+}
@@ -0,0 +1,168 @@
+package fr.delthas.javamp3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of decoders, that opens sounds whose decoder is reused once they are closed, e.g. for servers decoding many short sounds.
+ * <p>
+ * Each {@link Sound} has a decoder, which holds the buffers of the encoded data, of the bit reservoir, of the filterbanks and of the decoded samples, about a hundred kilobytes in total. Sounds opened with this pool take an idle decoder from the pool if there is one, and reset it rather than allocating a new one, and return their decoder to the pool when they are closed. This avoids allocating and zeroing these buffers for each sound, and keeps reusing the same memory. The buffers are reused if the sounds have the same number of channels and the same layer, which is usually the case.
+ * <p>
+ * <b>Sounds opened with a pool must be closed to return their decoder to the pool</b>, typically in a try-with-resources statement. Sounds that aren't closed don't return their decoder, which is then simply garbage collected. The metadata methods of a sound may still be called after it is closed, regardless of its decoder being reused by another sound.
+ * <p>
+ * The pool keeps at most a maximum number of idle decoders, and is safe for use by multiple threads. Sounds opened with a pool behave exactly as sounds created with the {@link Sound} constructors, and decode exactly the same data.
+ *
+ * @see Sound
+ */
+public final class DecoderPool {
+  private final int capacity;
+  /* Used as a stack, so that the decoder reused is the last one returned, whose buffers are most likely in the CPU caches */
+  private final ConcurrentLinkedDeque<Decoder.SoundData> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger size = new AtomicInteger();
+  
+  /**
+   * Creates a new pool, that keeps at most 4 idle decoders per available processor.
+   */
+  public DecoderPool() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+  
+  /**
+   * Creates a new pool, that keeps at most the specified number of idle decoders.
+   * <p>
+   * Decoders returned to the pool while it has this number of idle decoders are dropped. The capacity is typically the number of sounds expected to be decoded concurrently.
+   *
+   * @param capacity The maximum number of idle decoders kept by this pool, must be non-negative.
+   */
+  public DecoderPool(int capacity) {
+    if(capacity < 0) {
+      throw new IllegalArgumentException("The capacity must be non-negative!");
+    }
+    this.capacity = capacity;
+  }
+  
+  /**
+   * Opens a new Sound, that will read from the specified encoded MPEG data stream, with a decoder from this pool.
+   * <p>
+   * This method behaves exactly as {@link Sound#Sound(InputStream)}, except that the decoder of the sound is taken from this pool, and returned to it when the sound is closed.
+   *
+   * @param in The input stream from which to read the encoded MPEG data, must be non-null.
+   * @return The sound, non-null.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified stream.
+   * @see Sound#Sound(InputStream)
+   */
+  public Sound open(InputStream in) throws IOException {
+    return new Sound(in, SampleFormat.PCM_16, this);
+  }
+  
+  /**
+   * Opens a new Sound, that will read from the specified encoded MPEG data stream, and return decoded samples in the specified format, with a decoder from this pool.
+   * <p>
+   * This method behaves exactly as {@link Sound#Sound(InputStream, SampleFormat)}, except that the decoder of the sound is taken from this pool, and returned to it when the sound is closed.
+   *
+   * @param in The input stream from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples returned when reading bytes from the sound, must be non-null.
+   * @return The sound, non-null.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified stream.
+   * @see Sound#Sound(InputStream, SampleFormat)
+   */
+  public Sound open(InputStream in, SampleFormat format) throws IOException {
+    return new Sound(in, format, this);
+  }
+  
+  /**
+   * Opens a new Sound, that will read from the specified encoded MPEG data buffer, with a decoder from this pool.
+   * <p>
+   * This method behaves exactly as {@link Sound#Sound(ByteBuffer)}, except that the decoder of the sound is taken from this pool, and returned to it when the sound is closed.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @return The sound, non-null.
+   * @throws IOException If there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified buffer.
+   * @see Sound#Sound(ByteBuffer)
+   */
+  public Sound open(ByteBuffer buffer) throws IOException {
+    return new Sound(buffer, SampleFormat.PCM_16, this);
+  }
+  
+  /**
+   * Opens a new Sound, that will read from the specified encoded MPEG data buffer, and return decoded samples in the specified format, with a decoder from this pool.
+   * <p>
+   * This method behaves exactly as {@link Sound#Sound(ByteBuffer, SampleFormat)}, except that the decoder of the sound is taken from this pool, and returned to it when the sound is closed.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples returned when reading bytes from the sound, must be non-null.
+   * @return The sound, non-null.
+   * @throws IOException If there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified buffer.
+   * @see Sound#Sound(ByteBuffer, SampleFormat)
+   */
+  public Sound open(ByteBuffer buffer, SampleFormat format) throws IOException {
+    return new Sound(buffer, format, this);
+  }
+  
+  /**
+   * Opens a new Sound, that will read from the specified encoded MPEG data file, by mapping it into memory, with a decoder from this pool.
+   * <p>
+   * This method behaves exactly as {@link Sound#Sound(Path)}, except that the decoder of the sound is taken from this pool, and returned to it when the sound is closed.
+   *
+   * @param path The path of the file from which to read the encoded MPEG data, must be non-null.
+   * @return The sound, non-null.
+   * @throws IOException If an {@link IOException} is thrown when opening or mapping the file, or if the file is larger than 2GiB, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified file.
+   * @see Sound#Sound(Path)
+   */
+  public Sound open(Path path) throws IOException {
+    return new Sound(Sound.map(path), SampleFormat.PCM_16, this);
+  }
+  
+  /**
+   * Opens a new Sound, that will read from the specified encoded MPEG data file, by mapping it into memory, and return decoded samples in the specified format, with a decoder from this pool.
+   * <p>
+   * This method behaves exactly as {@link Sound#Sound(Path, SampleFormat)}, except that the decoder of the sound is taken from this pool, and returned to it when the sound is closed.
+   *
+   * @param path The path of the file from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples returned when reading bytes from the sound, must be non-null.
+   * @return The sound, non-null.
+   * @throws IOException If an {@link IOException} is thrown when opening or mapping the file, or if the file is larger than 2GiB, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified file.
+   * @see Sound#Sound(Path, SampleFormat)
+   */
+  public Sound open(Path path, SampleFormat format) throws IOException {
+    return new Sound(Sound.map(path), format, this);
+  }
+  
+  /**
+   * Returns the number of idle decoders in this pool, that is decoders returned by closed sounds, and not yet reused.
+   *
+   * @return The number of idle decoders in this pool.
+   */
+  public int getIdleCount() {
+    return size.get();
+  }
+  
+  /**
+   * Drops all the idle decoders of this pool, to free their memory.
+   */
+  public void clear() {
+    while(lease() != null) {
+      // drop it
+    }
+  }
+  
+  Decoder.SoundData lease() {
+    Decoder.SoundData soundData = idle.pollFirst();
+    if(soundData != null) {
+      size.decrementAndGet();
+    }
+    return soundData;
+  }
+  
+  void release(Decoder.SoundData soundData) {
+    if(size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      return;
+    }
+    idle.addFirst(soundData);
+  }
+}
@@ -0,0 +1,96 @@
+package fr.delthas.javamp3;
+
+import java.util.Objects;
+
+/**
+ * An error found in the encoded MPEG data by a resilient decoder, which recovered from it rather than throwing an exception, see {@link Sound#setResilient(boolean)}, or a CRC error found when CRCs are checked, see {@link Sound#setCrcCheck(CrcCheck)}.
+ *
+ * @see Sound#setErrorListener(java.util.function.Consumer)
+ */
+public final class DecodingError {
+  /**
+   * The kind of a {@link DecodingError}.
+   */
+  public enum Type {
+    /**
+     * Bytes that are neither part of a frame nor of a tag were skipped to find the next frame, e.g. garbage data, false sync words, or the rest of a frame that was cut. The bit reservoir of Layer III streams is reset, so that the next frames that refer to data before the skipped bytes are decoded as silence.
+     */
+    LOST_SYNC,
+    /**
+     * The data of a frame couldn't be decoded, e.g. because of an illegal Huffman code, and the frame was concealed, see {@link Concealment}.
+     */
+    CORRUPT_FRAME,
+    /**
+     * The last frame of the stream is truncated, and was dropped.
+     */
+    TRUNCATED_FRAME,
+    /**
+     * The CRC of a frame doesn't match its header and side information, see {@link Sound#setCrcCheck(CrcCheck)}. The frame is decoded as is, or concealed if CRC errors are dropped.
+     */
+    CRC_MISMATCH
+  }
+  
+  private final Type type;
+  private final long offset;
+  private final long position;
+  private final long length;
+  private final Exception cause;
+  
+  DecodingError(Type type, long offset, long position, long length, Exception cause) {
+    this.type = Objects.requireNonNull(type);
+    this.offset = offset;
+    this.position = position;
+    this.length = length;
+    this.cause = cause;
+  }
+  
+  /**
+   * Returns the kind of this error.
+   *
+   * @return The kind of this error, non-null.
+   */
+  public Type getType() {
+    return type;
+  }
+  
+  /**
+   * Returns the offset in bytes of the frame concerned by this error, from the start of the stream: for {@link Type#LOST_SYNC}, the frame found after the skipped bytes.
+   *
+   * @return The offset in bytes of the frame concerned by this error.
+   */
+  public long getOffset() {
+    return offset;
+  }
+  
+  /**
+   * Returns the position of the first sample of the frame concerned by this error, in samples per channel, see {@link Sound#getPosition()}.
+   *
+   * @return The position of the first sample of the frame concerned by this error.
+   */
+  public long getPosition() {
+    return position;
+  }
+  
+  /**
+   * Returns the number of bytes skipped or dropped because of this error: for {@link Type#LOST_SYNC}, the bytes skipped before the frame; for {@link Type#TRUNCATED_FRAME}, the bytes of the truncated frame; for {@link Type#CORRUPT_FRAME}, 0, as the bytes of the frame aren't skipped.
+   *
+   * @return The number of bytes skipped or dropped because of this error.
+   */
+  public long getLength() {
+    return length;
+  }
+  
+  /**
+   * Returns the exception thrown when decoding the frame, for {@link Type#CORRUPT_FRAME} errors, or null, e.g. for frames that were read past their end.
+   *
+   * @return The exception thrown when decoding the corrupt frame, or null.
+   */
+  public Exception getCause() {
+    return cause;
+  }
+  
+  @Override
+  public String toString() {
+    return "DecodingError{type=" + type + ", offset=" + offset + ", position=" + position + ", length=" + length + ", cause=" + cause + '}';
+  }
+}
@@ -0,0 +1,23 @@
+package fr.delthas.javamp3;
+
+/**
+ * The Java Flight Recorder event of the decoding of a frame, as seen by the decoder, see {@link DecoderMetrics#setFlightRecorderEvents(boolean)}.
+ * <p>
+ * The only implementation is {@code FrameDecodeEvent}, in {@code src/main/java11}, since the Java Flight Recorder API isn't part of Java 8. The decoder only refers to it through this interface, and it is only loaded by name when events are enabled, so that the library still builds and runs on Java 8.
+ */
+interface FrameEvent {
+  /**
+   * Starts timing the event, when the parsing of the frame starts.
+   */
+  void begin();
+  
+  /**
+   * Sets the offset of the frame in the encoded data, once it is synced.
+   */
+  void offset(long offset);
+  
+  /**
+   * Stops timing the event, when the synthesis of the frame ends, and commits it if it is enabled in a running recording.
+   */
+  void end(int layer, int channels, long position);
+}
@@ -0,0 +1,228 @@
+package fr.delthas.javamp3;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A decoder that decodes a whole MPEG sound on several threads, e.g. for offline transcoding of long recordings.
+ * <p>
+ * The frames of the sound are indexed by reading their headers only, and the sound is split into segments of consecutive frames, that are decoded concurrently. Each segment is decoded as if by seeking to its first frame with {@link Sound#seek(long)}: its decoding restarts a few frames before it, to restore the bit reservoir and the overlap state of the filterbanks, and the samples of these frames are discarded. The decoded samples of each segment are then stored at their position in the output.
+ * <p>
+ * <b>The decoded data is exactly the same as the data read from a {@link Sound} of the same encoded data and format</b>, e.g. with {@link Sound#decodeFullyInto(OutputStream)}, and its layout is described in the documentation of {@link Sound}. Free format sounds and sounds whose last frame is truncated can't be indexed by reading their frame headers, and are decoded sequentially.
+ * <p>
+ * Segments are decoded by tasks submitted to an {@link Executor}, by default the {@link ForkJoinPool#commonPool() common pool}. Any executor may be used, e.g. a dedicated {@link ForkJoinPool}, or an executor that runs each task in a new virtual thread on runtimes that support them.
+ *
+ * @see Sound
+ */
+public final class ParallelDecoder {
+  /* The number of segments per thread, so that threads that finish early can pick up more work */
+  private static final int SEGMENTS_PER_THREAD = 4;
+  /* The minimum number of frames of a segment, so that the frames decoded again before each segment are a small fraction of the work */
+  private static final int MIN_SEGMENT_FRAMES = 64;
+  /* The number of frames whose samples are written to the output at once */
+  private static final int CHUNK_FRAMES = 32;
+
+  private ParallelDecoder() {
+    throw new IllegalStateException("This class cannot be instantiated!");
+  }
+
+  /**
+   * Decodes the specified encoded MPEG data buffer on all available processors, and returns the decoded samples in the specified format.
+   * <p>
+   * This method behaves exactly as {@link #decode(ByteBuffer, SampleFormat, Executor, int)} with the {@link ForkJoinPool#commonPool() common pool}, and a parallelism equal to the number of available processors.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples, must be non-null.
+   * @return A heap buffer containing the decoded samples, between its position, which is 0, and its limit.
+   * @throws IOException If there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified buffer, or if the decoded data is larger than 2GiB.
+   */
+  public static ByteBuffer decode(ByteBuffer buffer, SampleFormat format) throws IOException {
+    return decode(buffer, format, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Decodes the specified encoded MPEG data buffer on the specified executor, and returns the decoded samples in the specified format.
+   * <p>
+   * The encoded data is the remaining content of the specified buffer, that is its content between its position and its limit. The position of the specified buffer is not modified, but its content must not be modified while it is decoded.
+   * <p>
+   * The sound is split into about {@code 4 * parallelism} segments, each submitted as a task to the executor, and this method blocks until all of them are decoded. The decoded data is the same as the data read from {@link Sound#Sound(ByteBuffer, SampleFormat)}, see {@link ParallelDecoder}.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples, must be non-null.
+   * @param executor The executor on which to decode the segments of the sound, must be non-null.
+   * @param parallelism The number of segments that the executor is expected to decode concurrently, typically its number of threads, must be positive.
+   * @return A heap buffer containing the decoded samples, between its position, which is 0, and its limit.
+   * @throws IOException If there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified buffer, or if the decoded data is larger than 2GiB.
+   */
+  public static ByteBuffer decode(ByteBuffer buffer, SampleFormat format, Executor executor, int parallelism) throws IOException {
+    Objects.requireNonNull(buffer, "The specified ByteBuffer must be non-null!");
+    Objects.requireNonNull(format, "The specified SampleFormat must be non-null!");
+    Objects.requireNonNull(executor, "The specified Executor must be non-null!");
+    if(parallelism <= 0) {
+      throw new IllegalArgumentException("The parallelism must be positive!");
+    }
+    Decoder.SoundData soundData = Decoder.init(buffer);
+    if(soundData == null) {
+      throw new IOException("No MPEG data in the specified buffer!");
+    }
+    int frames = Decoder.frames(soundData);
+    if(frames == -1) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      try(Sound sound = new Sound(buffer, format)) {
+        sound.decodeFullyInto(os);
+      }
+      return ByteBuffer.wrap(os.toByteArray());
+    }
+    long length = (long) frames * frameBytes(soundData, format);
+    if(length > Integer.MAX_VALUE - 8) {
+      throw new IOException("Decoded data too large to be stored in a buffer: " + length + " bytes");
+    }
+    byte[] pcm = new byte[(int) length];
+    decode(soundData, frames, format, executor, parallelism, (offset, b, len) -> System.arraycopy(b, 0, pcm, (int) offset, len));
+    return ByteBuffer.wrap(pcm);
+  }
+
+  /**
+   * Decodes the specified encoded MPEG data file on all available processors, and writes the decoded samples in the specified format into the specified file.
+   * <p>
+   * This method behaves exactly as {@link #decode(Path, Path, SampleFormat, Executor, int)} with the {@link ForkJoinPool#commonPool() common pool}, and a parallelism equal to the number of available processors.
+   *
+   * @param source The path of the file from which to read the encoded MPEG data, must be non-null.
+   * @param destination The path of the file into which to write the decoded samples, must be non-null.
+   * @param format The format of the decoded samples, must be non-null.
+   * @return The number of <b>BYTES</b> that were written into the destination file.
+   * @throws IOException If an {@link IOException} is thrown when opening, mapping or writing the files, or if the source file is larger than 2GiB, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the source file.
+   */
+  public static long decode(Path source, Path destination, SampleFormat format) throws IOException {
+    return decode(source, destination, format, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Decodes the specified encoded MPEG data file on the specified executor, and writes the decoded samples in the specified format into the specified file.
+   * <p>
+   * The source file is mapped into memory, as in {@link Sound#Sound(Path)}, and must not be modified while it is decoded. The destination file is created if needed, and truncated otherwise. The segments of the sound are written at their position in the destination file as soon as they are decoded, so that the decoded data is never fully stored in memory.
+   * <p>
+   * The sound is split into about {@code 4 * parallelism} segments, each submitted as a task to the executor, and this method blocks until all of them are decoded and written. The decoded data is the same as the data read from {@link Sound#Sound(Path, SampleFormat)}, see {@link ParallelDecoder}.
+   *
+   * @param source The path of the file from which to read the encoded MPEG data, must be non-null.
+   * @param destination The path of the file into which to write the decoded samples, must be non-null.
+   * @param format The format of the decoded samples, must be non-null.
+   * @param executor The executor on which to decode the segments of the sound, must be non-null.
+   * @param parallelism The number of segments that the executor is expected to decode concurrently, typically its number of threads, must be positive.
+   * @return The number of <b>BYTES</b> that were written into the destination file.
+   * @throws IOException If an {@link IOException} is thrown when opening, mapping or writing the files, or if the source file is larger than 2GiB, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the source file.
+   */
+  public static long decode(Path source, Path destination, SampleFormat format, Executor executor, int parallelism) throws IOException {
+    Objects.requireNonNull(destination, "The specified Path must be non-null!");
+    Objects.requireNonNull(format, "The specified SampleFormat must be non-null!");
+    Objects.requireNonNull(executor, "The specified Executor must be non-null!");
+    if(parallelism <= 0) {
+      throw new IllegalArgumentException("The parallelism must be positive!");
+    }
+    ByteBuffer buffer = Sound.map(source);
+    Decoder.SoundData soundData = Decoder.init(buffer);
+    if(soundData == null) {
+      throw new IOException("No MPEG data in the specified file!");
+    }
+    int frames = Decoder.frames(soundData);
+    try(FileChannel channel = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      if(frames == -1) {
+        try(Sound sound = new Sound(buffer, format)) {
+          OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+          sound.decodeFullyInto(os);
+          os.flush();
+        }
+        return channel.size();
+      }
+      decode(soundData, frames, format, executor, parallelism, (offset, b, len) -> {
+        ByteBuffer bb = ByteBuffer.wrap(b, 0, len);
+        long position = offset;
+        while(bb.hasRemaining()) {
+          position += channel.write(bb, position);
+        }
+      });
+      return (long) frames * frameBytes(soundData, format);
+    }
+  }
+
+  private static int frameBytes(Decoder.SoundData soundData, SampleFormat format) {
+    return soundData.frameSamples * (soundData.stereo + 1) * format.getBytesPerSample();
+  }
+
+  /**
+   * Splits the sound into segments, decodes them on the executor, and blocks until they are all decoded.
+   */
+  private static void decode(Decoder.SoundData soundData, int frames, SampleFormat format, Executor executor, int parallelism, Output output) throws IOException {
+    int segments = (int) Math.max(1, Math.min((long) parallelism * SEGMENTS_PER_THREAD, frames / MIN_SEGMENT_FRAMES));
+    CompletableFuture<?>[] tasks = new CompletableFuture<?>[segments];
+    for(int i = 0; i < segments; i++) {
+      int from = (int) ((long) frames * i / segments);
+      int to = (int) ((long) frames * (i + 1) / segments);
+      tasks[i] = CompletableFuture.runAsync(() -> {
+        try {
+          decode(soundData, from, to, format, output);
+        } catch(IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, executor);
+    }
+    try {
+      CompletableFuture.allOf(tasks).join();
+    } catch(CompletionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      if(cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if(cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Decodes the frames {@code [from, to)} of the sound with a new decoder, and writes their samples at their position in the output.
+   */
+  private static void decode(Decoder.SoundData soundData, int from, int to, SampleFormat format, Output output) throws IOException {
+    Decoder.SoundData segment = Decoder.fork(soundData);
+    int frameBytes = frameBytes(segment, format);
+    if(!Decoder.seek(segment, (long) from * segment.frameSamples)) {
+      throw new EOFException("Unexpected EOF reached in MPEG data");
+    }
+    byte[] chunk = new byte[Integer.min(CHUNK_FRAMES, to - from) * frameBytes];
+    long offset = (long) from * frameBytes;
+    int length = 0;
+    for(int frame = from; frame < to; frame++) {
+      if(frame > from && !Decoder.decodeFrame(segment)) {
+        throw new EOFException("Unexpected EOF reached in MPEG data");
+      }
+      length += Decoder.pack(segment, format, 0, segment.pcmLength, chunk, length);
+      if(length == chunk.length || frame == to - 1) {
+        output.write(offset, chunk, length);
+        offset += length;
+        length = 0;
+      }
+    }
+  }
+
+  /**
+   * Where the decoded samples of the segments are stored, at their offset in bytes in the decoded data.
+   * <p>
+   * Writes of different segments are concurrent, but never overlap.
+   */
+  private interface Output {
+    void write(long offset, byte[] b, int length) throws IOException;
+  }
+}
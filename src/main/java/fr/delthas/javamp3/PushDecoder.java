@@ -0,0 +1,287 @@
+package fr.delthas.javamp3;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A decoder that is fed chunks of encoded MPEG data as they arrive, rather than reading them from a stream, e.g. for servers decoding many live streams received from the network.
+ * <p>
+ * Each call to {@link #feed(ByteBuffer)} decodes the frames completed by the chunk and returns their samples. Frames and tags split across chunks are kept until the rest of them is fed, as well as the bit reservoir of Layer III streams, so that chunks may be of any size, down to a single byte. The decoder never blocks: when a frame isn't complete yet, it simply returns the frames decoded so far, which makes it suited to be called from the threads of an event loop. Call {@link #finish()} once the whole stream has been fed to decode its last frames.
+ * <p>
+ * The samples returned have the same layout as the bytes read from a {@link Sound} created with the same {@link SampleFormat}, and are exactly the same samples: a stream fed to a push decoder and read from a sound decodes to the same bytes.
+ * <p>
+ * The properties of the stream, e.g. {@link #getSamplingFrequency()}, are known once its first frame is decoded, see {@link #isStarted()}. Pushed streams aren't indexed, so that live streams of any duration may be decoded in constant memory, and can't be seeked.
+ * <p>
+ * A push decoder isn't thread-safe, but it may be fed by different threads as long as calls are not concurrent, e.g. by the successive threads running an event loop. See {@code DecoderProcessor}, available from Java 9, to decode a {@code java.util.concurrent.Flow.Publisher} of chunks.
+ *
+ * @see Sound
+ */
+public final class PushDecoder {
+  private final Decoder.SoundData soundData = Decoder.push();
+  private final SampleFormat format;
+  private long position;
+  private boolean finished;
+  private AudioFormat audioFormat;
+  
+  /**
+   * Creates a new push decoder, that returns 16-bit samples, see {@link SampleFormat#PCM_16}.
+   */
+  public PushDecoder() {
+    this(SampleFormat.PCM_16);
+  }
+  
+  /**
+   * Creates a new push decoder, that returns samples in the specified format.
+   *
+   * @param format The format of the decoded samples, must be non-null.
+   */
+  public PushDecoder(SampleFormat format) {
+    this.format = Objects.requireNonNull(format, "The specified SampleFormat must be non-null!");
+  }
+  
+  /**
+   * Feeds the specified chunk of encoded MPEG data to this decoder, and returns the samples of the frames completed by it.
+   * <p>
+   * The whole chunk is consumed: its position is advanced to its limit, and the bytes of the frames and tags that aren't complete yet are kept by this decoder. The samples of each frame decoded are returned as a separate heap buffer, owned by the caller, from its position 0 to its limit, with the layout described in this class documentation.
+   *
+   * @param chunk The next bytes of the stream, must be non-null.
+   * @return A list of the samples of the frames decoded, in order, possibly empty, non-null.
+   * @throws IOException If there's an error while decoding the MPEG data.
+   * @throws IllegalStateException If {@link #finish()} was called.
+   */
+  public List<ByteBuffer> feed(ByteBuffer chunk) throws IOException {
+    Objects.requireNonNull(chunk, "The specified ByteBuffer must be non-null!");
+    if(finished) {
+      throw new IllegalStateException("The decoder is finished!");
+    }
+    List<ByteBuffer> frames = null;
+    do {
+      int remaining = chunk.remaining();
+      Decoder.feed(soundData, chunk);
+      int decoded = frames == null ? 0 : frames.size();
+      frames = decode(frames);
+      if(remaining == chunk.remaining() && remaining > 0 && (frames == null ? 0 : frames.size()) == decoded) {
+        throw new IllegalStateException("Shouldn't happen (internal error)");
+      }
+    } while(chunk.hasRemaining());
+    return frames == null ? Collections.emptyList() : frames;
+  }
+  
+  /**
+   * Marks the end of the stream, and returns the samples of its last frames.
+   * <p>
+   * The last frames of a stream may only be decoded once its end is known, e.g. frames followed by a partial ID3v1 tag. Once finished, this decoder can't be fed anymore.
+   *
+   * @return A list of the samples of the frames decoded, in order, possibly empty, non-null.
+   * @throws IOException If there's an error while decoding the MPEG data, or if the last frame of the stream is truncated.
+   */
+  public List<ByteBuffer> finish() throws IOException {
+    if(finished) {
+      return Collections.emptyList();
+    }
+    finished = true;
+    Decoder.finish(soundData);
+    List<ByteBuffer> frames = decode(null);
+    return frames == null ? Collections.emptyList() : frames;
+  }
+  
+  private List<ByteBuffer> decode(List<ByteBuffer> frames) throws IOException {
+    while(Decoder.decodePushed(soundData)) {
+      int length = soundData.pcmLength;
+      byte[] samples = new byte[length * format.getBytesPerSample()];
+      Decoder.pack(soundData, format, 0, length, samples, 0);
+      if(frames == null) {
+        frames = new ArrayList<>();
+      }
+      frames.add(ByteBuffer.wrap(samples));
+      position += length / (soundData.stereo + 1);
+    }
+    return frames;
+  }
+  
+  /**
+   * Returns whether the first frame of the stream has been decoded, that is whether the properties of the stream are known.
+   *
+   * @return Whether the first frame of the stream has been decoded.
+   */
+  public boolean isStarted() {
+    return soundData.frequency != -1;
+  }
+  
+  /**
+   * Returns whether {@link #finish()} was called.
+   *
+   * @return Whether the end of the stream has been fed.
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+  
+  /**
+   * Returns the number of samples per channel decoded so far.
+   *
+   * @return The number of samples per channel returned by this decoder.
+   */
+  public long getPosition() {
+    return position;
+  }
+  
+  /**
+   * Returns the format of the samples returned by this decoder.
+   *
+   * @return The format of the decoded samples, non-null.
+   */
+  public SampleFormat getFormat() {
+    return format;
+  }
+  
+  /**
+   * Returns the sampling frequency of the stream, that is its of samples per second, in Hertz (Hz).
+   *
+   * @return The sampling frequency of the stream in Hertz.
+   * @throws IllegalStateException If the first frame of the stream hasn't been decoded yet, see {@link #isStarted()}.
+   */
+  public int getSamplingFrequency() {
+    checkStarted();
+    return soundData.frequency;
+  }
+  
+  /**
+   * Returns {@code true} if the stream is in stereo mode, that is if it has exactly two channels, and returns false otherwise, that is if it has exactly one channel.
+   *
+   * @return {@code true} if the stream is in stereo mode.
+   * @throws IllegalStateException If the first frame of the stream hasn't been decoded yet, see {@link #isStarted()}.
+   */
+  public boolean isStereo() {
+    checkStarted();
+    return soundData.stereo == 1;
+  }
+  
+  /**
+   * Returns the {@link AudioFormat} of the samples returned by this decoder, to be used with the {@link javax.sound.sampled} API.
+   *
+   * @return The {@link AudioFormat} of the decoded samples.
+   * @throws IllegalStateException If the first frame of the stream hasn't been decoded yet, see {@link #isStarted()}.
+   */
+  public AudioFormat getAudioFormat() {
+    checkStarted();
+    if(audioFormat == null) {
+      audioFormat = format.toAudioFormat(soundData.frequency, soundData.stereo + 1);
+    }
+    return audioFormat;
+  }
+  
+  /**
+   * Returns the metadata tags found so far in the stream, sorted by offset.
+   * <p>
+   * The bytes of pushed streams aren't kept, so the data of these tags isn't available, see {@link Tag#getData()}.
+   *
+   * @return An unmodifiable list of the tags found so far, non-null.
+   */
+  public List<Tag> getTags() {
+    List<Tag> tags = new ArrayList<>(Decoder.tags(soundData));
+    tags.sort(Comparator.comparingLong(Tag::getOffset));
+    return Collections.unmodifiableList(tags);
+  }
+  
+  /**
+   * Attaches the specified metrics to this decoder, or detaches its metrics if null, see {@link Sound#setMetrics(DecoderMetrics)}.
+   *
+   * @param metrics The metrics to which to count the work done by this decoder, or null to detach them.
+   */
+  public void setMetrics(DecoderMetrics metrics) {
+    soundData.metrics = metrics;
+  }
+  
+  /**
+   * Returns the metrics attached to this decoder with {@link #setMetrics(DecoderMetrics)}, or null if it has none.
+   *
+   * @return The metrics of this decoder, or null if it has none.
+   */
+  public DecoderMetrics getMetrics() {
+    return soundData.metrics;
+  }
+  
+  /**
+   * Sets whether this decoder recovers from errors in the encoded MPEG data, rather than throwing an exception, see {@link Sound#setResilient(boolean)}.
+   * <p>
+   * As the header of a frame found after skipping bytes is checked against the header of the next frame, such a frame is only decoded once the first bytes of the next frame are fed, or once the stream is finished.
+   *
+   * @param resilient Whether to recover from errors in the encoded MPEG data.
+   */
+  public void setResilient(boolean resilient) {
+    soundData.resilient = resilient;
+  }
+  
+  /**
+   * Returns whether this decoder recovers from errors in the encoded MPEG data, see {@link #setResilient(boolean)}.
+   *
+   * @return Whether this decoder recovers from errors in the encoded MPEG data.
+   */
+  public boolean isResilient() {
+    return soundData.resilient;
+  }
+  
+  /**
+   * Sets how the corrupt frames found when this decoder is resilient are concealed, see {@link Sound#setConcealment(Concealment)}.
+   *
+   * @param concealment The way corrupt frames are concealed, must be non-null.
+   */
+  public void setConcealment(Concealment concealment) {
+    soundData.concealment = Objects.requireNonNull(concealment, "The specified Concealment must be non-null!");
+  }
+  
+  /**
+   * Returns how the corrupt frames found when this decoder is resilient are concealed, see {@link #setConcealment(Concealment)}.
+   *
+   * @return The way corrupt frames are concealed, non-null.
+   */
+  public Concealment getConcealment() {
+    return soundData.concealment;
+  }
+  
+  /**
+   * Sets whether and how the CRC of the frames that have one is checked, see {@link Sound#setCrcCheck(CrcCheck)}.
+   *
+   * @param crcCheck Whether and how CRCs are checked, must be non-null.
+   */
+  public void setCrcCheck(CrcCheck crcCheck) {
+    soundData.crcCheck = Objects.requireNonNull(crcCheck, "The specified CrcCheck must be non-null!");
+  }
+  
+  /**
+   * Returns whether and how the CRC of the frames that have one is checked, see {@link #setCrcCheck(CrcCheck)}.
+   *
+   * @return Whether and how CRCs are checked, non-null.
+   */
+  public CrcCheck getCrcCheck() {
+    return soundData.crcCheck;
+  }
+  
+  /**
+   * Sets a listener called with each error found and recovered from when this decoder is resilient, and with each CRC error when CRCs are checked, or removes it if null, see {@link Sound#setErrorListener(Consumer)}. The listener is called from the thread feeding this decoder.
+   *
+   * @param listener The listener of the errors recovered from, or null to remove it.
+   */
+  public void setErrorListener(Consumer<DecodingError> listener) {
+    soundData.errorListener = listener;
+  }
+  
+  /**
+   * Returns the listener set with {@link #setErrorListener(Consumer)}, or null if it has none.
+   *
+   * @return The listener of the errors recovered from, or null if it has none.
+   */
+  public Consumer<DecodingError> getErrorListener() {
+    return soundData.errorListener;
+  }
+  
+  private void checkStarted() {
+    if(!isStarted()) {
+      throw new IllegalStateException("No frame has been decoded yet!");
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package fr.delthas.javamp3;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The layout of the decoded PCM sound data samples returned by a {@link Sound} when reading bytes from it.
+ * <p>
+ * All formats are little-endian, and samples of the two channels of a stereo sound are interleaved, e.g. {@code left_sample_0, right_sample_0, left_sample_1, right_sample_1, ...}.
+ * <p>
+ * The decoder synthesizes 32-bit float samples; {@link #FLOAT_32} exposes them as is, while the integer formats quantize them to the specified sample size.
+ *
+ * @see Sound#Sound(java.io.InputStream, SampleFormat)
+ * @see Sound#readFloats(float[], int, int)
+ */
+public enum SampleFormat {
+  /**
+   * 16-bit signed integer samples (2 bytes per sample). This is the default format.
+   */
+  PCM_16(2),
+  /**
+   * 24-bit signed integer samples (3 bytes per sample).
+   */
+  PCM_24(3),
+  /**
+   * 32-bit signed integer samples (4 bytes per sample).
+   */
+  PCM_32(4),
+  /**
+   * 32-bit IEEE 754 floating-point samples, nominally in the range [-1, 1] (4 bytes per sample).
+   */
+  FLOAT_32(4);
+
+  private final int bytesPerSample;
+
+  SampleFormat(int bytesPerSample) {
+    this.bytesPerSample = bytesPerSample;
+  }
+
+  /**
+   * Returns the number of bytes used to store a sample of a single channel in this format.
+   *
+   * @return The number of bytes per sample.
+   */
+  public int getBytesPerSample() {
+    return bytesPerSample;
+  }
+
+  AudioFormat toAudioFormat(int samplingFrequency, int channels) {
+    if (this == FLOAT_32) {
+      return new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, samplingFrequency, 32, channels, 4 * channels, samplingFrequency, false);
+    }
+    return new AudioFormat(samplingFrequency, bytesPerSample * 8, channels, true, false);
+  }
+}
@@ -4,9 +4,14 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.swing.text.html.HTMLDocument;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Objects;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * A sound object, that represents an input stream of uncompressed PCM sound data samples, decoded from encoded MPEG data.
@@ -21,8 +26,23 @@ import java.util.Objects;
  * @see Sound#decodeFullyInto(OutputStream)
  */
 public final class Sound extends FilterInputStream {
+  /* The number of samples per channel by which the output of a Layer III decoder lags behind the input of the encoder */
+  private static final int DECODER_DELAY_LAYER_III = 528 + 1;
+  /* The number of frames decoded before the channels are synthesized in parallel by default, i.e. about one second of sound */
+  private static final int PARALLEL_CHANNELS_THRESHOLD = 40;
+  
   private Decoder.SoundData soundData;
+  private final SampleFormat format;
+  /* The pool to which the decoder is returned when this sound is closed, if any */
+  private final DecoderPool pool;
+  private byte[] samplesBuffer;
+  private boolean packed;
   private int index;
+  private long mark = -1;
+  private boolean closed;
+  /* The decoded samples that are output, in samples per channel */
+  private long start = 0;
+  private long end = Long.MAX_VALUE;
   private AudioFormat audioFormat;
   
   /**
@@ -35,8 +55,10 @@ public final class Sound extends FilterInputStream {
    * <p>
    * The various metadata methods such as {@link #getSamplingFrequency()} and {@link #isStereo()} may be called as soon as this object is instantiated (i.e. may be called at any time during the object lifetime).
    * <p>
+   * The specified stream is read in bulk, up to 32KiB ahead of the frame being decoded, rather than frame by frame. <b>This means that bytes following the MPEG data in the specified stream, if any, may be consumed by this object, and won't be returned by later reads of the specified stream.</b> If the specified stream must be left right after the MPEG data, e.g. if other data follows it, pass a stream that ends with the MPEG data instead.
+   * <p>
    * <b>The data layout is as follows (this is a contract that won't change):</b>
-   * <br>The decoded PCM sound data is stored as a contiguous stream of 16-bit little-endian signed samples (2 bytes per sample).
+   * <br>The decoded PCM sound data is stored as a contiguous stream of 16-bit little-endian signed samples (2 bytes per sample). Use {@link #Sound(InputStream, SampleFormat)} to get samples in another format.
    * <ul>
    * <li>If the sound is in stereo mode, then the samples will be interleaved, e.g. {@code left_sample_0 (2 bytes), right_sample_0 (2 bytes), left_sample_1 (2 bytes), right_sample_1 (2 bytes), ...}
    * <li>If the sound is in mono mode, then the samples will be contiguous, e.g. {@code sample_0 (2 bytes), sample_1 (2 bytes), ...}
@@ -45,11 +67,138 @@ public final class Sound extends FilterInputStream {
    * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified stream.
    */
   public Sound(InputStream in) throws IOException {
+    this(in, SampleFormat.PCM_16);
+  }
+  
+  /**
+   * Creates a new Sound, that will read from the specified encoded MPEG data stream, and return decoded samples in the specified format.
+   * <p>
+   * This constructor behaves exactly as {@link #Sound(InputStream)}, except that the bytes read from this stream are samples in the specified {@link SampleFormat} rather than 16-bit samples. The layout is otherwise the same: little-endian samples, interleaved if the sound is in stereo mode.
+   * <p>
+   * Regardless of the format, the samples may also be read as floats, without any quantization, with {@link #readFloats(float[], int, int)}.
+   *
+   * @param in The input stream from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples returned when reading bytes from this stream, must be non-null.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified stream.
+   */
+  public Sound(InputStream in, SampleFormat format) throws IOException {
+    this(in, format, null);
+  }
+  
+  Sound(InputStream in, SampleFormat format, DecoderPool pool) throws IOException {
     super(Objects.requireNonNull(in, "The specified InputStream must be non-null!"));
-    soundData = Decoder.init(in);
+    this.format = Objects.requireNonNull(format, "The specified SampleFormat must be non-null!");
+    this.pool = pool;
+    Decoder.SoundData recycled = pool == null ? null : pool.lease();
+    try {
+      soundData = Decoder.init(in, recycled);
+    } catch(IOException | RuntimeException e) {
+      release(recycled);
+      throw e;
+    }
     if(soundData == null) {
+      release(recycled);
       throw new IOException("No MPEG data in the specified input stream!");
     }
+    samplesBuffer = samplesBuffer();
+  }
+  
+  /**
+   * Creates a new Sound, that will read from the specified encoded MPEG data buffer.
+   * <p>
+   * This constructor behaves exactly as {@link #Sound(InputStream)}, except that the encoded data is the remaining content of the specified buffer, that is its content between its position and its limit. The position of the specified buffer is not modified, but its content must not be modified while this sound is used.
+   * <p>
+   * The encoded data is read in place, without being copied: from the array of the buffer if it is a heap buffer, or else directly from the buffer, e.g. for a direct or memory-mapped buffer. The sound is seekable, see {@link #seek(long)}.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @throws IOException If there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified buffer.
+   * @see #Sound(Path)
+   */
+  public Sound(ByteBuffer buffer) throws IOException {
+    this(buffer, SampleFormat.PCM_16);
+  }
+  
+  /**
+   * Creates a new Sound, that will read from the specified encoded MPEG data buffer, and return decoded samples in the specified format.
+   * <p>
+   * This constructor behaves exactly as {@link #Sound(ByteBuffer)}, except that the bytes read from this stream are samples in the specified {@link SampleFormat}, as in {@link #Sound(InputStream, SampleFormat)}.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples returned when reading bytes from this stream, must be non-null.
+   * @throws IOException If there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified buffer.
+   */
+  public Sound(ByteBuffer buffer, SampleFormat format) throws IOException {
+    this(buffer, format, null);
+  }
+  
+  Sound(ByteBuffer buffer, SampleFormat format, DecoderPool pool) throws IOException {
+    super(null);
+    Objects.requireNonNull(buffer, "The specified ByteBuffer must be non-null!");
+    this.format = Objects.requireNonNull(format, "The specified SampleFormat must be non-null!");
+    this.pool = pool;
+    Decoder.SoundData recycled = pool == null ? null : pool.lease();
+    try {
+      soundData = Decoder.init(buffer, recycled);
+    } catch(IOException | RuntimeException e) {
+      release(recycled);
+      throw e;
+    }
+    if(soundData == null) {
+      release(recycled);
+      throw new IOException("No MPEG data in the specified buffer!");
+    }
+    samplesBuffer = samplesBuffer();
+  }
+  
+  /**
+   * Creates a new Sound, that will read from the specified encoded MPEG data file, by mapping it into memory.
+   * <p>
+   * This constructor behaves exactly as {@link #Sound(ByteBuffer)} with a buffer mapped from the whole file, see {@link FileChannel#map(FileChannel.MapMode, long, long)}. The mapped data is read in place, without being copied. The file must not be modified while this sound is used.
+   *
+   * @param path The path of the file from which to read the encoded MPEG data, must be non-null.
+   * @throws IOException If an {@link IOException} is thrown when opening or mapping the file, or if the file is larger than 2GiB, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified file.
+   */
+  public Sound(Path path) throws IOException {
+    this(path, SampleFormat.PCM_16);
+  }
+  
+  /**
+   * Creates a new Sound, that will read from the specified encoded MPEG data file, by mapping it into memory, and return decoded samples in the specified format.
+   * <p>
+   * This constructor behaves exactly as {@link #Sound(Path)}, except that the bytes read from this stream are samples in the specified {@link SampleFormat}, as in {@link #Sound(InputStream, SampleFormat)}.
+   *
+   * @param path The path of the file from which to read the encoded MPEG data, must be non-null.
+   * @param format The format of the decoded samples returned when reading bytes from this stream, must be non-null.
+   * @throws IOException If an {@link IOException} is thrown when opening or mapping the file, or if the file is larger than 2GiB, or if there's an error while decoding the MPEG data, e.g. if there's no MPEG data in the specified file.
+   */
+  public Sound(Path path, SampleFormat format) throws IOException {
+    this(map(path), format);
+  }
+  
+  /**
+   * Returns the buffer of packed samples kept by the decoder if it was pooled and is large enough, or a new buffer otherwise.
+   */
+  private byte[] samplesBuffer() {
+    int length = soundData.pcm.length * format.getBytesPerSample();
+    byte[] output = soundData.output;
+    soundData.output = null;
+    return output != null && output.length >= length ? output : new byte[length];
+  }
+  
+  private void release(Decoder.SoundData recycled) {
+    if(recycled != null) {
+      pool.release(recycled);
+    }
+  }
+  
+  static ByteBuffer map(Path path) throws IOException {
+    try(FileChannel channel = FileChannel.open(Objects.requireNonNull(path, "The specified Path must be non-null!"), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if(size > Integer.MAX_VALUE) {
+        throw new IOException("File too large to be mapped: " + path);
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
   }
   
   /**
@@ -61,16 +210,13 @@ public final class Sound extends FilterInputStream {
   public int read() throws IOException {
     if(index == -1)
       return -1;
-    if(index == soundData.samplesBuffer.length) {
-      if(!Decoder.decodeFrame(soundData)) {
-        index = -1;
-        soundData.samplesBuffer = null;
+    if(index == frameBytes()) {
+      if(!nextFrame()) {
         return -1;
       }
-      index = 1;
-      return soundData.samplesBuffer[0] & 0xFF;
     }
-    return soundData.samplesBuffer[index++] & 0xFF;
+    pack();
+    return samplesBuffer[index++] & 0xFF;
   }
   
   
@@ -102,39 +248,247 @@ public final class Sound extends FilterInputStream {
       return -1;
     int len_ = len;
     while(len > 0) {
-      if(index == soundData.samplesBuffer.length) {
-        if(!Decoder.decodeFrame(soundData)) {
-          index = -1;
-          soundData.samplesBuffer = null;
+      if(index == frameBytes()) {
+        if(!nextFrame()) {
           return len_ == len ? -1 : len_ - len;
         }
-        index = 0;
       }
-      int remaining = soundData.samplesBuffer.length - index;
-      if(remaining > 0) {
-        if(remaining >= len) {
-          System.arraycopy(soundData.samplesBuffer, index, b, off, len);
-          index += len;
-          return len_;
-        }
-        System.arraycopy(soundData.samplesBuffer, index, b, off, remaining);
-        off += remaining;
-        len -= remaining;
-        index = soundData.samplesBuffer.length;
+      pack();
+      int remaining = frameBytes() - index;
+      if(remaining >= len) {
+        System.arraycopy(samplesBuffer, index, b, off, len);
+        index += len;
+        return len_;
       }
+      System.arraycopy(samplesBuffer, index, b, off, remaining);
+      off += remaining;
+      len -= remaining;
+      index += remaining;
     }
     throw new IllegalStateException("Shouldn't happen (internal error)");
   }
   
+  /**
+   * Reads up to {@code len} decoded samples into the specified array, as 32-bit floats nominally in the range [-1, 1], and returns the number of samples read, or -1 if the end of the stream is reached.
+   * <p>
+   * The samples are copied directly from the output of the decoder, without being quantized to the format of this stream, and the layout is the same as when reading bytes: samples of the two channels of a stereo sound are interleaved. Reading floats advances this stream by {@link SampleFormat#getBytesPerSample()} bytes per sample read, so that calls to this method and to the byte reading methods may be mixed, as long as the stream is positioned on a sample boundary when calling this method.
+   * <p>
+   * Like {@link #read(byte[], int, int)}, this method blocks until at least one sample is available, and returns early if the end of the stream is reached.
+   *
+   * @param b The array into which to store the samples, must be non-null.
+   * @param off The offset in {@code b} at which to store the first sample.
+   * @param len The maximum number of samples to read.
+   * @return The number of samples read, or -1 if there are no more samples because the end of the stream has been reached.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data.
+   * @throws IllegalStateException If the stream is not positioned on a sample boundary, i.e. if a number of bytes that isn't a multiple of the sample size has been read.
+   */
+  public int readFloats(float[] b, int off, int len) throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    } else if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    }
+    if(index == -1)
+      return -1;
+    int bytesPerSample = format.getBytesPerSample();
+    if(index % bytesPerSample != 0) {
+      throw new IllegalStateException("The stream is not positioned on a sample boundary!");
+    }
+    int len_ = len;
+    while(len > 0) {
+      if(index == frameBytes()) {
+        if(!nextFrame()) {
+          return len_ == len ? -1 : len_ - len;
+        }
+      }
+      int sample = index / bytesPerSample;
+      int copied = Integer.min(frameLength() - sample, len);
+      System.arraycopy(soundData.pcm, sample, b, off, copied);
+      off += copied;
+      len -= copied;
+      index += copied * bytesPerSample;
+    }
+    return len_;
+  }
+  
+  /**
+   * Decodes the samples of the current MPEG frame into the specified buffer, at its position, and returns the number of bytes written, or -1 if the end of the stream is reached.
+   * <p>
+   * The samples are written in the format of this stream, with the same layout as when reading bytes, regardless of the byte order of the buffer. If all the samples of the current frame have been read, the next frame is decoded first. The samples are quantized from the output of the decoder directly into the buffer, without being copied through an intermediate array, including for direct buffers, which makes this method suited to writing the decoded samples to a {@link java.nio.channels.WritableByteChannel}, e.g. a socket.
+   * <p>
+   * This method writes at most the remaining samples of one frame, and only whole samples: as many samples as fit in the remaining bytes of the buffer. It returns 0 if the buffer has less remaining bytes than the size of a sample. Writing bytes advances this stream by the same number of bytes, so that calls to this method and to the other reading methods may be mixed, as long as the stream is positioned on a sample boundary when calling this method.
+   *
+   * @param dst The buffer into which to write the samples, must be non-null and writable.
+   * @return The number of bytes written, or -1 if there are no more samples because the end of the stream has been reached.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data.
+   * @throws IllegalStateException If the stream is not positioned on a sample boundary, i.e. if a number of bytes that isn't a multiple of the sample size has been read.
+   * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+   */
+  public int decodeFrameInto(ByteBuffer dst) throws IOException {
+    Objects.requireNonNull(dst, "The specified ByteBuffer must be non-null!");
+    if(index == -1)
+      return -1;
+    int bytesPerSample = format.getBytesPerSample();
+    if(index % bytesPerSample != 0) {
+      throw new IllegalStateException("The stream is not positioned on a sample boundary!");
+    }
+    if(index == frameBytes()) {
+      if(!nextFrame()) {
+        return -1;
+      }
+    }
+    int sample = index / bytesPerSample;
+    int samples = Integer.min(frameLength() - sample, dst.remaining() / bytesPerSample);
+    Decoder.pack(soundData, format, sample, sample + samples, dst);
+    index += samples * bytesPerSample;
+    return samples * bytesPerSample;
+  }
+  
+  /**
+   * Decodes up to {@code dst.remaining()} samples into the specified buffer, at its position, as 16-bit signed samples, and returns the number of samples written, or -1 if the end of the stream is reached.
+   * <p>
+   * The samples are quantized to 16 bits regardless of the format of this stream, as with {@link SampleFormat#PCM_16}, and the layout is the same as when reading bytes: samples of the two channels of a stereo sound are interleaved. They are quantized from the output of the decoder directly into the buffer, without being copied through an intermediate array. Writing samples advances this stream by {@link SampleFormat#getBytesPerSample()} bytes per sample written, so that calls to this method and to the other reading methods may be mixed, as long as the stream is positioned on a sample boundary when calling this method.
+   * <p>
+   * Like {@link #readFloats(float[], int, int)}, this method decodes as many frames as needed to fill the buffer, and returns early if the end of the stream is reached.
+   *
+   * @param dst The buffer into which to write the samples, must be non-null and writable.
+   * @return The number of samples written, or -1 if there are no more samples because the end of the stream has been reached.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an unexpected EOF during an MPEG frame, or if there's an error while decoding the MPEG data.
+   * @throws IllegalStateException If the stream is not positioned on a sample boundary, i.e. if a number of bytes that isn't a multiple of the sample size has been read.
+   * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+   */
+  public int decodeInto(ShortBuffer dst) throws IOException {
+    Objects.requireNonNull(dst, "The specified ShortBuffer must be non-null!");
+    if(!dst.hasRemaining()) {
+      return 0;
+    }
+    if(index == -1)
+      return -1;
+    int bytesPerSample = format.getBytesPerSample();
+    if(index % bytesPerSample != 0) {
+      throw new IllegalStateException("The stream is not positioned on a sample boundary!");
+    }
+    int len = dst.remaining();
+    int len_ = len;
+    while(len > 0) {
+      if(index == frameBytes()) {
+        if(!nextFrame()) {
+          return len_ == len ? -1 : len_ - len;
+        }
+      }
+      int sample = index / bytesPerSample;
+      int copied = Integer.min(frameLength() - sample, len);
+      Decoder.pack(soundData, sample, sample + copied, dst);
+      len -= copied;
+      index += copied * bytesPerSample;
+    }
+    return len_;
+  }
+  
+  private int frameBytes() {
+    return frameLength() * format.getBytesPerSample();
+  }
+  
+  /**
+   * Returns the number of samples of all channels of the current frame that are output, that is before the end of the sound.
+   */
+  private int frameLength() {
+    long samples = end - soundData.position;
+    if(samples >= soundData.frameSamples) {
+      return soundData.pcmLength;
+    }
+    return (int) Math.max(samples, 0) * (soundData.stereo + 1);
+  }
+  
+  private boolean nextFrame() throws IOException {
+    if(!Decoder.decodeFrame(soundData) || frameLength() == 0) {
+      index = -1;
+      return false;
+    }
+    index = 0;
+    packed = false;
+    return true;
+  }
+  
+  private void pack() {
+    if(!packed) {
+      Decoder.pack(soundData, format, 0, soundData.pcmLength, samplesBuffer, 0);
+      packed = true;
+    }
+  }
+  
   /**
    * {@inheritDoc}
    * <p>
-   * <b>Fast MPEG seeking isn't implemented yet, so calling this method will still compute all frames to be skipped.</b>
+   * Skipping is sample-accurate, and doesn't decode the skipped frames when possible, see {@link #seek(long)}.
    */
   @Override
   public long skip(long n) throws IOException {
-    // TODO add MPEG seeking
-    return super.skip(n);
+    if(n <= 0 || index == -1)
+      return 0;
+    if(n <= frameBytes() - index) {
+      index += n;
+      return n;
+    }
+    int stride = stride();
+    long from = (soundData.position - start) * stride + index;
+    long to = from + n;
+    seek(to / stride);
+    if(index == -1) {
+      return getPosition() * stride - from;
+    }
+    index += (int) (to % stride);
+    return n;
+  }
+  
+  /**
+   * Moves this stream to the specified position, so that the next sample read is the sample at this position.
+   * <p>
+   * The position is a number of samples <b>per channel</b> since the start of the sound, that is, the position of the n-th sample of each channel is n. If the position is past the end of the sound, the stream is moved to its end.
+   * <p>
+   * Seeking is sample-accurate: the samples read after seeking are exactly the same as if the sound had been decoded from its start. To do so, the decoding restarts a few frames before the frame containing the position, and the samples decoded before the position are discarded.
+   * <p>
+   * Seeking forward is always possible. Seeking backward is only possible if the sound is seekable, that is, if it reads from a {@link ByteBuffer} or a {@link Path}, or from a {@link java.io.FileInputStream} reading from a regular file. On a seekable sound, the offset of every frame is indexed once, so that seeking to a part of the sound that was already decoded or seeked past doesn't need to read the frames before it again, and seeking forward reads the headers of the frames to be skipped, rather than decoding them. Other sounds aren't indexed, so that streams of any duration are decoded in constant memory, and seeking forward reads the frames to be skipped, but only decodes the last frames before the position, whose samples overlap it, so that skipping is still much faster than decoding.
+   *
+   * @param position The position to move this stream to, in samples per channel, must be non-negative.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's an error while decoding the MPEG data, or if seeking backward in a non-seekable stream, or if the stream is closed.
+   * @see #getPosition()
+   */
+  public void seek(long position) throws IOException {
+    if(position < 0) {
+      throw new IllegalArgumentException("The position must be non-negative!");
+    }
+    if(closed) {
+      throw new IOException("Stream closed");
+    }
+    packed = false;
+    long absolute = start + position;
+    if(absolute >= end || !Decoder.seek(soundData, absolute)) {
+      index = -1;
+      return;
+    }
+    index = (int) (absolute - soundData.position) * stride();
+  }
+  
+  /**
+   * Returns the position of the next sample to be read, in samples per channel since the start of the sound.
+   * <p>
+   * If a number of bytes that isn't a multiple of the size of a sample of all channels has been read, this is the position of the partially read sample.
+   *
+   * @return The position of the next sample to be read, in samples per channel.
+   * @see #seek(long)
+   */
+  public long getPosition() {
+    if(index == -1) {
+      return Math.min(end, soundData.position + soundData.pcmLength / (soundData.stereo + 1)) - start;
+    }
+    return soundData.position - start + index / stride();
+  }
+  
+  private int stride() {
+    return format.getBytesPerSample() * (soundData.stereo + 1);
   }
   
   /**
@@ -144,62 +498,88 @@ public final class Sound extends FilterInputStream {
    */
   @Override
   public int available() throws IOException {
-    if(soundData.samplesBuffer == null)
+    if(index == -1)
       return 0;
-    return soundData.samplesBuffer.length - index;
+    return frameBytes() - index;
   }
   
   /**
-   * Closes the underlying input stream and frees up allocated memory.
+   * Closes the underlying input stream, if any, and frees up allocated memory.
    * <p>
    * You may still call metadata-related methods (e.g. {@link #isStereo()}) after calling this method.
+   * <p>
+   * If this sound was opened from a {@link DecoderPool}, its decoder is returned to the pool, to be reused by the next sound opened from the pool.
    *
    * @throws IOException If an {@link IOException} is thrown when closing the underlying stream.
    */
   @Override
   public void close() throws IOException {
-    if(in != null) {
-      in.close();
-      in = null;
-      soundData.samplesBuffer = null;
+    if(!closed) {
+      closed = true;
+      if(in != null) {
+        in.close();
+        in = null;
+      }
+      Decoder.pipeline(soundData, false);
+      Decoder.parallelChannels(soundData, false, 0);
+      if(pool != null) {
+        /* The properties of this sound stay available once its decoder is reused */
+        Decoder.SoundData recycled = soundData;
+        soundData = Decoder.detach(recycled);
+        recycled.output = samplesBuffer;
+        pool.release(recycled);
+      }
+      samplesBuffer = null;
     }
     index = -1;
   }
   
   /**
-   * Does nothing.
+   * Marks the current position in this stream, if marking is supported.
    * <p>
-   * Setting a mark and resetting to the mark isn't supported.
+   * Setting a mark and resetting to the mark is only supported if the sound is seekable, see {@link #markSupported()}. The mark stays valid regardless of how many bytes are read after it.
    *
    * @param readlimit Ignored.
    */
   @Override
   public synchronized void mark(int readlimit) {
-    super.mark(readlimit);
+    if(markSupported()) {
+      mark = index == -1 ? getPosition() * stride() : (soundData.position - start) * stride() + index;
+    }
   }
   
   /**
-   * Throws an IOException.
+   * Moves this stream back to the last mark, by seeking to it.
    * <p>
-   * Setting a mark and resetting to the mark isn't supported.
+   * Setting a mark and resetting to the mark is only supported if the sound is seekable, see {@link #markSupported()}.
    *
-   * @throws IOException Always, because setting a mark and resetting to it isn't supported.
+   * @throws IOException If setting a mark and resetting to it isn't supported, or if no mark was set, or if an {@link IOException} is thrown when seeking.
+   * @see #seek(long)
    */
   @Override
   public synchronized void reset() throws IOException {
-    throw new IOException("mark/reset not supported");
+    if(!markSupported()) {
+      throw new IOException("mark/reset not supported");
+    }
+    if(mark == -1) {
+      throw new IOException("Resetting to invalid mark");
+    }
+    int stride = stride();
+    seek(mark / stride);
+    if(index != -1) {
+      index += (int) (mark % stride);
+    }
   }
   
   /**
-   * Returns false.
-   * <p>
-   * Setting a mark and resetting to the mark isn't supported.
+   * Returns whether setting a mark and resetting to the mark is supported, that is, whether the sound is seekable.
    *
-   * @return false, always.
+   * @return true if the sound is seekable, that is if it reads from a {@link ByteBuffer} or a {@link Path}, or from a {@link java.io.FileInputStream} reading from a regular file.
+   * @see #seek(long)
    */
   @Override
   public boolean markSupported() {
-    return false;
+    return !closed && Decoder.seekable(soundData);
   }
   
   
@@ -220,18 +600,224 @@ public final class Sound extends FilterInputStream {
     Objects.requireNonNull(os);
     if(index == -1)
       return 0;
-    int remaining = soundData.samplesBuffer.length - index;
-    if(remaining > 0) {
-      os.write(soundData.samplesBuffer, index, remaining);
+    int read = 0;
+    do {
+      int remaining = frameBytes() - index;
+      if(remaining > 0) {
+        pack();
+        os.write(samplesBuffer, index, remaining);
+        read += remaining;
+      }
+    } while(nextFrame());
+    return read;
+  }
+  
+  /**
+   * Returns the metadata tags found so far in the encoded data, such as ID3v2 tags, sorted by offset.
+   * <p>
+   * Tags are skipped by the decoder without being parsed, so that their contents (e.g. cover art images) are neither read byte by byte nor mistaken for MPEG frames. ID3v2 tags at the start of the sound are found when creating the sound. If the sound is seekable (see {@link #seek(long)}), ID3v1 and APE tags at the end of the sound are also found when creating the sound; otherwise, they are found when reading the end of the sound.
+   *
+   * @return An unmodifiable list of the tags found so far, non-null.
+   * @see Tag#getData()
+   */
+  public List<Tag> getTags() {
+    List<Tag> tags = new ArrayList<>(Decoder.tags(soundData));
+    tags.sort(Comparator.comparingLong(Tag::getOffset));
+    return Collections.unmodifiableList(tags);
+  }
+  
+  /**
+   * Returns the Xing, Info or VBRI header of this sound, if it has one, or null otherwise.
+   * <p>
+   * Such a header is stored by most MP3 encoders in the first frame of the sound, and notably stores the number of frames of the sound, which gives its duration without reading it, and the number of samples of silence added by the encoder at its start and end, see {@link #setGapless(boolean)}.
+   *
+   * @return The Xing, Info or VBRI header of this sound, or null if it has none.
+   */
+  public VbrHeader getVbrHeader() {
+    return soundData.vbrHeader;
+  }
+  
+  /**
+   * Sets whether this sound is decoded gaplessly, that is without the frame containing its {@link VbrHeader}, and without the silence added by the encoder and the decoder at its start and end. Gapless decoding is disabled by default.
+   * <p>
+   * When enabled, the first frame of the sound is skipped if it contains a {@link VbrHeader}, and if the header has a LAME extension, the encoder delay and padding it stores are trimmed, as well as the delay of the decoder. Sounds decoded gaplessly can then be concatenated without gaps, e.g. for tracks of a live album. This has no effect on sounds without a {@link VbrHeader}.
+   * <p>
+   * Positions are relative to the output samples, see {@link #getPosition()}. This method moves the stream to the start of the output samples, so it is intended to be called before reading from this stream.
+   *
+   * @param gapless Whether to decode this sound gaplessly.
+   * @throws IOException If an {@link IOException} is thrown when seeking to the start of the sound, see {@link #seek(long)}.
+   */
+  public void setGapless(boolean gapless) throws IOException {
+    long position = start + getPosition();
+    VbrHeader header = soundData.vbrHeader;
+    if(gapless && header != null) {
+      int delay = Math.max(header.getEncoderDelay(), 0);
+      int padding = Math.max(header.getEncoderPadding(), 0);
+      start = soundData.frameSamples;
+      if(header.getEncoderDelay() != -1) {
+        start += delay + DECODER_DELAY_LAYER_III;
+      }
+      end = header.getFrameCount() == -1 ? Long.MAX_VALUE : start + (long) header.getFrameCount() * soundData.frameSamples - delay - padding;
+    } else {
+      start = 0;
+      end = Long.MAX_VALUE;
     }
-    int read = remaining;
-    while(!Decoder.decodeFrame(soundData)) {
-      os.write(soundData.samplesBuffer);
-      read += soundData.samplesBuffer.length;
+    if(position != start) {
+      seek(0);
     }
-    soundData.samplesBuffer = null;
-    index = -1;
-    return read;
+  }
+  
+  /**
+   * Sets whether this sound is decoded by a pipeline of two threads. Pipelined decoding is disabled by default.
+   * <p>
+   * When enabled, the frames of the sound are parsed on a background thread, which reads the encoded data, decodes its Huffman codes and requantizes it, while the thread reading from this stream synthesizes the PCM samples of the frames parsed so far, with the inverse MDCT and the polyphase synthesis filterbank. The two threads exchange frames through a small bounded queue, so that the background thread runs at most a few frames ahead. This reduces the time taken to decode a single sound, e.g. for real-time transcoding, at the cost of a second thread. The decoded data is exactly the same as without pipelining.
+   * <p>
+   * The background thread is started when frames are read, and stops when this sound is closed, when pipelining is disabled, and temporarily when seeking or when this stream isn't read for about a second. The underlying stream is read by the background thread, so it must not be used by other threads while this sound is pipelined.
+   *
+   * @param pipelined Whether to decode this sound with a pipeline of two threads.
+   */
+  public void setPipelined(boolean pipelined) {
+    if(!closed) {
+      Decoder.pipeline(soundData, pipelined);
+    }
+  }
+  
+  /**
+   * Sets whether the two channels of this sound are synthesized in parallel, on two threads, after about one second of sound was decoded. Parallel synthesis is disabled by default.
+   * <p>
+   * This method behaves exactly as {@link #setParallelChannels(boolean, int)} with a threshold of 40 frames.
+   *
+   * @param parallel Whether to synthesize the channels of this sound in parallel.
+   */
+  public void setParallelChannels(boolean parallel) {
+    setParallelChannels(parallel, PARALLEL_CHANNELS_THRESHOLD);
+  }
+  
+  /**
+   * Sets whether the two channels of this sound are synthesized in parallel, on two threads, after the specified number of frames was decoded. Parallel synthesis is disabled by default.
+   * <p>
+   * When enabled, the last stages of the decoding of each frame of a stereo MPEG Layer III sound, that is the inverse MDCT and the polyphase synthesis filterbank, which are independent for each channel, run for the right channel on a background thread, while the thread reading from this stream runs them for the left channel. This reduces the time taken to decode each frame, e.g. for low-latency live streams, at the cost of a second thread and of a hand-off per frame. The decoded data is exactly the same as without parallel synthesis. This has no effect on mono sounds, and on MPEG Layer I and II sounds.
+   * <p>
+   * The hand-off costs are only paid once the specified number of frames was decoded since this method was called, so that short sounds are fully decoded on a single thread. The background thread is started when needed, and stops when this sound is closed, when parallel synthesis is disabled, or when this stream isn't read for about a second. This may be combined with {@link #setPipelined(boolean)}.
+   *
+   * @param parallel Whether to synthesize the channels of this sound in parallel.
+   * @param threshold The number of frames to decode on a single thread before synthesizing the channels in parallel, must be non-negative.
+   */
+  public void setParallelChannels(boolean parallel, int threshold) {
+    if(threshold < 0) {
+      throw new IllegalArgumentException("The threshold must be non-negative!");
+    }
+    if(!closed) {
+      Decoder.parallelChannels(soundData, parallel, threshold);
+    }
+  }
+  
+  /**
+   * Sets the metrics that count the frames decoded for this sound, and the time spent decoding them, or detaches them if null. No metrics are attached by default.
+   * <p>
+   * Only the frames decoded after this method is called are counted, which excludes the first frame of the sound, decoded when creating it. The frames decoded again when seeking are counted. The same metrics may be attached to several sounds, see {@link DecoderMetrics}.
+   *
+   * @param metrics The metrics of the decoding of this sound, or null to stop counting.
+   */
+  public void setMetrics(DecoderMetrics metrics) {
+    soundData.metrics = metrics;
+  }
+  
+  /**
+   * Returns the metrics attached to this sound with {@link #setMetrics(DecoderMetrics)}, or null if it has none.
+   *
+   * @return The metrics of the decoding of this sound, or null if it has none.
+   */
+  public DecoderMetrics getMetrics() {
+    return soundData.metrics;
+  }
+  
+  /**
+   * Sets whether this sound recovers from errors in the encoded MPEG data, rather than throwing an {@link IOException} or a {@link RuntimeException} when reading it. Sounds aren't resilient by default.
+   * <p>
+   * Resilient sounds are suited to streams received from unreliable sources, e.g. broadcast or radio streams, which may contain corrupt bytes, garbage data, or cuts:
+   * <ul>
+   * <li>Each frame header must match the previous frames, and the header of a frame found after skipping bytes is checked against the header of the next frame before decoding it, so that sync words found in corrupt data aren't decoded as frames, see {@link DecoderMetrics#getFalseSyncs()}. Bytes skipped to find the next frame are reported as a {@link DecodingError.Type#LOST_SYNC} error, and reset the bit reservoir of Layer III streams, so that the next frames that refer to data before the skipped bytes are decoded as silence rather than as garbage.</li>
+   * <li>Frames whose data can't be decoded are concealed rather than thrown, see {@link #setConcealment(Concealment)}, and reported as a {@link DecodingError.Type#CORRUPT_FRAME} error.</li>
+   * <li>A truncated last frame ends the stream rather than throwing an {@link EOFException}, and is reported as a {@link DecodingError.Type#TRUNCATED_FRAME} error.</li>
+   * </ul>
+   * Errors are reported to the listener set with {@link #setErrorListener(Consumer)}, if any. Streams without errors decode to exactly the same samples whether the sound is resilient or not, and as fast, as the next frame header is only read when resyncing.
+   * <p>
+   * Only the frames decoded after this method is called are checked, which excludes the first frame of the sound, decoded when creating it.
+   *
+   * @param resilient Whether to recover from errors in the encoded MPEG data.
+   */
+  public void setResilient(boolean resilient) {
+    soundData.resilient = resilient;
+  }
+  
+  /**
+   * Returns whether this sound recovers from errors in the encoded MPEG data, see {@link #setResilient(boolean)}.
+   *
+   * @return Whether this sound recovers from errors in the encoded MPEG data.
+   */
+  public boolean isResilient() {
+    return soundData.resilient;
+  }
+  
+  /**
+   * Sets how the corrupt frames found when this sound is resilient are concealed, see {@link #setResilient(boolean)}. Corrupt frames are decoded as silence by default, see {@link Concealment#SILENCE}.
+   *
+   * @param concealment The way corrupt frames are concealed, must be non-null.
+   */
+  public void setConcealment(Concealment concealment) {
+    soundData.concealment = Objects.requireNonNull(concealment, "The specified Concealment must be non-null!");
+  }
+  
+  /**
+   * Returns how the corrupt frames found when this sound is resilient are concealed, see {@link #setConcealment(Concealment)}.
+   *
+   * @return The way corrupt frames are concealed, non-null.
+   */
+  public Concealment getConcealment() {
+    return soundData.concealment;
+  }
+  
+  /**
+   * Sets whether and how the CRC of the frames that have one is checked. CRCs aren't checked by default, see {@link CrcCheck#OFF}.
+   * <p>
+   * Frames with a CRC error are counted in {@link DecoderMetrics#getCrcErrors()}, and reported as a {@link DecodingError.Type#CRC_MISMATCH} error to the listener set with {@link #setErrorListener(Consumer)}. When this sound is resilient, see {@link #setResilient(boolean)}, CRCs are also used to reject false sync words as soon as they are found, which speeds up the recovery of streams with CRCs, such as broadcast captures.
+   * <p>
+   * Most streams don't have CRCs, in which case this setting has no effect. Checking the CRC of a frame costs about as much as reading its side information.
+   *
+   * @param crcCheck Whether and how CRCs are checked, must be non-null.
+   */
+  public void setCrcCheck(CrcCheck crcCheck) {
+    soundData.crcCheck = Objects.requireNonNull(crcCheck, "The specified CrcCheck must be non-null!");
+  }
+  
+  /**
+   * Returns whether and how the CRC of the frames that have one is checked, see {@link #setCrcCheck(CrcCheck)}.
+   *
+   * @return Whether and how CRCs are checked, non-null.
+   */
+  public CrcCheck getCrcCheck() {
+    return soundData.crcCheck;
+  }
+  
+  /**
+   * Sets a listener called with each error found and recovered from when this sound is resilient, see {@link #setResilient(boolean)}, and with each CRC error when CRCs are checked, see {@link #setCrcCheck(CrcCheck)}, or removes it if null.
+   * <p>
+   * The listener is called while decoding, from the thread reading this sound, or from the thread of its pipeline if it is pipelined, see {@link #setPipelined(boolean)}, but never concurrently. It should return quickly, and must not use this sound.
+   *
+   * @param listener The listener of the errors recovered from, or null to remove it.
+   */
+  public void setErrorListener(Consumer<DecodingError> listener) {
+    soundData.errorListener = listener;
+  }
+  
+  /**
+   * Returns the listener set with {@link #setErrorListener(Consumer)}, or null if it has none.
+   *
+   * @return The listener of the errors recovered from, or null if it has none.
+   */
+  public Consumer<DecodingError> getErrorListener() {
+    return soundData.errorListener;
   }
   
   /**
@@ -263,7 +849,7 @@ public final class Sound extends FilterInputStream {
    */
   public AudioFormat getAudioFormat() {
     if (audioFormat == null) {
-      audioFormat = new AudioFormat(getSamplingFrequency(), 16, isStereo() ? 2 : 1, true, false);
+      audioFormat = format.toAudioFormat(getSamplingFrequency(), isStereo() ? 2 : 1);
     }
     return audioFormat;
   }
@@ -0,0 +1,144 @@
+package fr.delthas.javamp3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * The properties of an MPEG sound, obtained by reading the headers of its frames only, without decoding them.
+ * <p>
+ * Use {@link #scan(InputStream)} to get the properties of a sound. Scanning a sound is much faster than decoding it, and is typically only limited by the speed at which the underlying stream can be read.
+ * <p>
+ * Instances of this class are immutable.
+ *
+ * @see Sound
+ */
+public final class SoundInfo {
+  private final int samplingFrequency;
+  private final boolean stereo;
+  private final long[] frameOffsets;
+  private final long samples;
+  private final long bytes;
+  private final boolean variableBitrate;
+  
+  SoundInfo(int samplingFrequency, boolean stereo, long[] frameOffsets, long samples, long bytes, boolean variableBitrate) {
+    this.samplingFrequency = samplingFrequency;
+    this.stereo = stereo;
+    this.frameOffsets = frameOffsets;
+    this.samples = samples;
+    this.bytes = bytes;
+    this.variableBitrate = variableBitrate;
+  }
+  
+  /**
+   * Reads the specified encoded MPEG data stream until its end, by reading the headers of its frames and skipping their contents, and returns the properties of the sound.
+   * <p>
+   * The stream is not closed by this method. Only frames with the same layer and sampling frequency as the first frame of the stream are counted, which skips garbage data that looks like a frame header.
+   * <p>
+   * You are encouraged to use a buffered stream as the underlying stream.
+   *
+   * @param in The input stream from which to read the encoded MPEG data, must be non-null.
+   * @return The properties of the sound, non-null.
+   * @throws IOException If an {@link IOException} is thrown when reading the underlying stream, or if there's no MPEG data in the specified stream.
+   */
+  public static SoundInfo scan(InputStream in) throws IOException {
+    SoundInfo info = Decoder.scan(Objects.requireNonNull(in, "The specified InputStream must be non-null!"));
+    if(info == null) {
+      throw new IOException("No MPEG data in the specified input stream!");
+    }
+    return info;
+  }
+  
+  /**
+   * Reads the specified encoded MPEG data buffer, by reading the headers of its frames and skipping their contents, and returns the properties of the sound.
+   * <p>
+   * This method behaves exactly as {@link #scan(InputStream)}, except that the encoded data is the remaining content of the specified buffer, that is its content between its position and its limit. The position of the specified buffer is not modified.
+   *
+   * @param buffer The buffer from which to read the encoded MPEG data, must be non-null.
+   * @return The properties of the sound, non-null.
+   * @throws IOException If there's no MPEG data in the specified buffer.
+   */
+  public static SoundInfo scan(ByteBuffer buffer) throws IOException {
+    SoundInfo info = Decoder.scan(Objects.requireNonNull(buffer, "The specified ByteBuffer must be non-null!"));
+    if(info == null) {
+      throw new IOException("No MPEG data in the specified buffer!");
+    }
+    return info;
+  }
+  
+  /**
+   * Returns the sampling frequency of this sound, that is its of samples per second, in Hertz (Hz).
+   *
+   * @return The sampling frequency of the sound in Hertz.
+   * @see Sound#getSamplingFrequency()
+   */
+  public int getSamplingFrequency() {
+    return samplingFrequency;
+  }
+  
+  /**
+   * Returns {@code true} if the sound is in stereo mode, that is if it has exactly two channels, and returns false otherwise, that is if it has exactly one channel.
+   *
+   * @return {@code true} if the sound is in stereo mode.
+   * @see Sound#isStereo()
+   */
+  public boolean isStereo() {
+    return stereo;
+  }
+  
+  /**
+   * Returns the number of MPEG frames of this sound.
+   *
+   * @return The number of frames.
+   */
+  public int getFrameCount() {
+    return frameOffsets.length;
+  }
+  
+  /**
+   * Returns the offset in bytes of the header of the specified frame, from the position of the stream when it was scanned.
+   *
+   * @param frame The index of the frame, between 0 inclusive and {@link #getFrameCount()} exclusive.
+   * @return The offset in bytes of the frame in the stream.
+   */
+  public long getFrameOffset(int frame) {
+    return frameOffsets[frame];
+  }
+  
+  /**
+   * Returns the number of samples <b>per channel</b> of this sound, that is the number of samples that would be decoded by a {@link Sound} divided by the number of channels.
+   *
+   * @return The number of samples per channel.
+   */
+  public long getSampleCount() {
+    return samples;
+  }
+  
+  /**
+   * Returns the duration of this sound, in seconds.
+   *
+   * @return The duration of the sound in seconds.
+   */
+  public double getDuration() {
+    return (double) samples / samplingFrequency;
+  }
+  
+  /**
+   * Returns the average bitrate of this sound, that is the number of bits of its frames per second of sound, in bits per second.
+   *
+   * @return The average bitrate of the sound, in bits per second.
+   */
+  public int getAverageBitrate() {
+    return (int) (bytes * 8 * samplingFrequency / samples);
+  }
+  
+  /**
+   * Returns {@code true} if the frames of this sound don't all have the same bitrate, that is if this sound is encoded with a variable bitrate (VBR), and returns false if this sound is encoded with a constant bitrate (CBR).
+   *
+   * @return {@code true} if the sound is encoded with a variable bitrate.
+   */
+  public boolean isVariableBitrate() {
+    return variableBitrate;
+  }
+}
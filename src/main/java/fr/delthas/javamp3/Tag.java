@@ -0,0 +1,103 @@
+package fr.delthas.javamp3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The location of a metadata tag in an MPEG stream, such as an ID3v2 tag, which the decoder skips.
+ * <p>
+ * The decoder doesn't parse tags: it only exposes their type and location, and their raw bytes when they are still available, see {@link #getData()}.
+ *
+ * @see Sound#getTags()
+ */
+public final class Tag {
+  /**
+   * The format of a {@link Tag}.
+   */
+  public enum Type {
+    /**
+     * An ID3v2 tag, usually at the start of the stream, including its header and its footer if any.
+     */
+    ID3V2,
+    /**
+     * An ID3v1 tag, 128 bytes at the very end of the stream.
+     */
+    ID3V1,
+    /**
+     * An APE tag, usually at the end of the stream, including its header if any and its footer.
+     */
+    APE
+  }
+  
+  private final Type type;
+  private final long offset;
+  private final int length;
+  private final ByteBuffer bytes;
+  private final FileChannel channel;
+  private final long start;
+  
+  Tag(Type type, long offset, int length, ByteBuffer bytes, FileChannel channel, long start) {
+    this.type = type;
+    this.offset = offset;
+    this.length = length;
+    this.bytes = bytes;
+    this.channel = channel;
+    this.start = start;
+  }
+  
+  /**
+   * Returns the format of this tag.
+   *
+   * @return The format of this tag, non-null.
+   */
+  public Type getType() {
+    return type;
+  }
+  
+  /**
+   * Returns the offset in bytes of the start of this tag, from the start of the stream.
+   *
+   * @return The offset of this tag.
+   */
+  public long getOffset() {
+    return offset;
+  }
+  
+  /**
+   * Returns the length in bytes of this tag.
+   *
+   * @return The length of this tag.
+   */
+  public int getLength() {
+    return length;
+  }
+  
+  /**
+   * Returns the raw bytes of this tag, as a read-only buffer, or null if they aren't available anymore.
+   * <p>
+   * If the sound reads from a {@link ByteBuffer} or a {@link java.nio.file.Path}, this returns a view of the tag bytes, without copying them. If the sound reads from a {@link java.io.FileInputStream}, the tag bytes are read from the file when calling this method. Otherwise, the tag bytes were skipped when reading the stream, and this returns null.
+   *
+   * @return The raw bytes of this tag, or null if they aren't available.
+   * @throws IOException If an {@link IOException} is thrown when reading the file, e.g. if the sound was closed.
+   */
+  public ByteBuffer getData() throws IOException {
+    if(bytes != null) {
+      ByteBuffer data = bytes.duplicate();
+      ((java.nio.Buffer) data).position((int) (start + offset));
+      ((java.nio.Buffer) data).limit((int) (start + offset) + length);
+      return data.slice().asReadOnlyBuffer();
+    }
+    if(channel != null) {
+      ByteBuffer data = ByteBuffer.allocate(length);
+      while(data.hasRemaining()) {
+        if(channel.read(data, start + offset + data.position()) < 0) {
+          throw new IOException("Unexpected EOF reached when reading the tag");
+        }
+      }
+      ((java.nio.Buffer) data).flip();
+      return data.asReadOnlyBuffer();
+    }
+    return null;
+  }
+}
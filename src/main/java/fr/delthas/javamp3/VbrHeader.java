@@ -0,0 +1,136 @@
+package fr.delthas.javamp3;
+
+import java.util.Arrays;
+
+/**
+ * The information stored by an encoder in the first frame of an MP3 sound, that is a Xing, Info or VBRI header, and an optional LAME extension.
+ * <p>
+ * The frame containing the header contains no audio: it is decoded as a frame of silence, unless gapless decoding is enabled with {@link Sound#setGapless(boolean)}.
+ * <p>
+ * Instances of this class are immutable.
+ *
+ * @see Sound#getVbrHeader()
+ */
+public final class VbrHeader {
+  /**
+   * The kind of a {@link VbrHeader}.
+   */
+  public enum Type {
+    /**
+     * A Xing header, written by most encoders for variable bitrate sounds.
+     */
+    XING,
+    /**
+     * An Info header, which is a Xing header written for a constant bitrate sound.
+     */
+    INFO,
+    /**
+     * A VBRI header, written by the Fraunhofer encoder.
+     */
+    VBRI
+  }
+  
+  private final Type type;
+  private final int frameCount;
+  private final long byteCount;
+  private final double[] tocFractions;
+  private final long[] tocOffsets;
+  private final String encoder;
+  private final int encoderDelay;
+  private final int encoderPadding;
+  
+  VbrHeader(Type type, int frameCount, long byteCount, double[] tocFractions, long[] tocOffsets, String encoder, int encoderDelay, int encoderPadding) {
+    this.type = type;
+    this.frameCount = frameCount;
+    this.byteCount = byteCount;
+    this.tocFractions = tocFractions;
+    this.tocOffsets = tocOffsets;
+    this.encoder = encoder;
+    this.encoderDelay = encoderDelay;
+    this.encoderPadding = encoderPadding;
+  }
+  
+  /**
+   * Returns the kind of this header.
+   *
+   * @return The kind of this header, non-null.
+   */
+  public Type getType() {
+    return type;
+  }
+  
+  /**
+   * Returns the number of audio frames of the sound, that is the number of frames <b>excluding</b> the frame containing this header, or -1 if it is unknown.
+   *
+   * @return The number of audio frames, or -1 if unknown.
+   */
+  public int getFrameCount() {
+    return frameCount;
+  }
+  
+  /**
+   * Returns the size in bytes of the sound, as stored by the encoder, or -1 if it is unknown.
+   *
+   * @return The size in bytes of the sound, or -1 if unknown.
+   */
+  public long getByteCount() {
+    return byteCount;
+  }
+  
+  /**
+   * Returns {@code true} if this header has a table of contents, which maps positions in the sound to byte offsets in the stream, see {@link #getSeekOffset(double)}.
+   *
+   * @return {@code true} if this header has a table of contents.
+   */
+  public boolean hasTableOfContents() {
+    return tocOffsets != null;
+  }
+  
+  /**
+   * Returns the approximate offset in bytes, from the frame containing this header, of the frame at the specified fraction of the duration of the sound, using the table of contents of this header.
+   * <p>
+   * This is an approximation, computed in constant time, intended to start reading a variable bitrate stream from an arbitrary position, e.g. for streams that aren't seekable. {@link Sound#seek(long)} seeks exactly.
+   *
+   * @param fraction The position in the sound, as a fraction of its duration, between 0 and 1.
+   * @return The approximate offset in bytes of the frame at this position, from the frame containing this header.
+   * @throws IllegalStateException If this header has no table of contents, see {@link #hasTableOfContents()}.
+   */
+  public long getSeekOffset(double fraction) {
+    if(tocOffsets == null) {
+      throw new IllegalStateException("This header has no table of contents!");
+    }
+    fraction = Math.max(0, Math.min(1, fraction));
+    int i = Arrays.binarySearch(tocFractions, fraction);
+    i = Math.min(i >= 0 ? i : -i - 2, tocFractions.length - 2);
+    double width = tocFractions[i + 1] - tocFractions[i];
+    double t = width <= 0 ? 0 : (fraction - tocFractions[i]) / width;
+    return tocOffsets[i] + (long) (t * (tocOffsets[i + 1] - tocOffsets[i]));
+  }
+  
+  /**
+   * Returns the name and version of the encoder that wrote this header, e.g. {@code LAME3.99r}, or null if it is unknown.
+   *
+   * @return The encoder name and version, or null if unknown.
+   */
+  public String getEncoder() {
+    return encoder;
+  }
+  
+  /**
+   * Returns the number of samples per channel of silence added by the encoder at the start of the sound, as stored in the LAME extension of this header, or -1 if it is unknown.
+   *
+   * @return The encoder delay, in samples per channel, or -1 if unknown.
+   */
+  public int getEncoderDelay() {
+    return encoderDelay;
+  }
+  
+  /**
+   * Returns the number of samples per channel of silence added by the encoder at the end of the sound, as stored in the LAME extension of this header, or -1 if it is unknown.
+   *
+   * @return The encoder padding, in samples per channel, or -1 if unknown.
+   */
+  public int getEncoderPadding() {
+    return encoderPadding;
+  }
+}
@@ -3,6 +3,6 @@
  * <p>
  * You may refer to the project README (on Github) for some context and various examples on how to use the library.
  * <p>
- * The only public class of the library is the {@link fr.delthas.javamp3.Sound} class, whose Javadoc may be of interest to learn how to use the library.
+ * The main class of the library is the {@link fr.delthas.javamp3.Sound} class, whose Javadoc may be of interest to learn how to use the library. The {@link fr.delthas.javamp3.SoundInfo} class gets the properties of a sound, such as its duration, without decoding it.
  */
 package fr.delthas.javamp3;
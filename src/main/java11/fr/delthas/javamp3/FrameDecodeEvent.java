@@ -0,0 +1,58 @@
+package fr.delthas.javamp3;
+
+import jdk.jfr.*;
+
+import java.util.function.Supplier;
+
+/**
+ * The Java Flight Recorder event of the decoding of a frame, see {@link DecoderMetrics#setFlightRecorderEvents(boolean)}.
+ * <p>
+ * This class is compiled separately, by JDK 11 and later, and is only loaded through its {@link Factory} when events are enabled, so that the decoder still builds and runs without the Java Flight Recorder API.
+ */
+@Name("fr.delthas.javamp3.FrameDecode")
+@Label("Frame Decode")
+@Category("JavaMP3")
+@Description("The decoding of an MPEG audio frame, from the start of its parsing to the end of its synthesis")
+@StackTrace(false)
+final class FrameDecodeEvent extends Event implements FrameEvent {
+  @Label("Layer")
+  int layer;
+  
+  @Label("Channels")
+  int channels;
+  
+  @Label("Offset")
+  @Description("The offset of the frame in the encoded data")
+  @DataAmount
+  long offset;
+  
+  @Label("Position")
+  @Description("The position of the first sample of the frame, in samples per channel")
+  long position;
+  
+  @Override
+  public void offset(long offset) {
+    this.offset = offset;
+  }
+  
+  @Override
+  public void end(int layer, int channels, long position) {
+    end();
+    if(shouldCommit()) {
+      this.layer = layer;
+      this.channels = channels;
+      this.position = position;
+      commit();
+    }
+  }
+  
+  /**
+   * Creates the events of the frames, loaded by name by {@link DecoderMetrics#setFlightRecorderEvents(boolean)}.
+   */
+  static final class Factory implements Supplier<FrameEvent> {
+    @Override
+    public FrameEvent get() {
+      return new FrameDecodeEvent();
+    }
+  }
+}
@@ -0,0 +1,231 @@
+package fr.delthas.javamp3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Processor} that decodes chunks of encoded MPEG data published by its upstream publisher into frames of samples published to its subscriber, with a {@link PushDecoder}.
+ * <p>
+ * The chunks are decoded on the threads that publish them, as they are received, without blocking. Chunks are requested from the upstream publisher one at a time, and only while the subscriber has requested frames and no decoded frame is pending, so that the back pressure of the subscriber is propagated upstream. Each frame is published as a separate heap buffer, see {@link PushDecoder#feed(ByteBuffer)}. When the upstream publisher completes, the last frames of the stream are published before completing the subscriber.
+ * <p>
+ * A processor decodes a single stream: it accepts a single upstream subscription and a single subscriber. Errors while decoding are published to the subscriber, and cancel the upstream subscription.
+ * <p>
+ * This class requires Java 9 or later, unlike the rest of the library. It is compiled separately, and only by JDK 9 and later.
+ *
+ * @see PushDecoder
+ */
+public final class DecoderProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+  private final PushDecoder decoder;
+  private final ConcurrentLinkedQueue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+  /* The number of pending calls to drain, so that only one thread publishes at a time */
+  private final AtomicInteger wip = new AtomicInteger();
+  private final AtomicLong requested = new AtomicLong();
+  private volatile Flow.Subscription upstream;
+  /* Set once a chunk is requested from upstream, until it is received */
+  private volatile boolean awaiting;
+  private volatile Flow.Subscriber<? super ByteBuffer> subscriber;
+  /* Set once the subscriber was passed its subscription */
+  private volatile boolean subscribed;
+  private volatile boolean cancelled;
+  private volatile boolean done;
+  private volatile Throwable error;
+  private boolean terminated;
+  
+  /**
+   * Creates a new processor, that publishes 16-bit samples, see {@link SampleFormat#PCM_16}.
+   */
+  public DecoderProcessor() {
+    this(new PushDecoder());
+  }
+  
+  /**
+   * Creates a new processor, that decodes chunks with the specified decoder.
+   * <p>
+   * The decoder must not be used anymore, except for its metadata methods, e.g. {@link PushDecoder#getSamplingFrequency()}, which may be called by the subscriber once it receives frames.
+   *
+   * @param decoder The decoder of the stream, must be non-null.
+   */
+  public DecoderProcessor(PushDecoder decoder) {
+    this.decoder = Objects.requireNonNull(decoder, "The specified PushDecoder must be non-null!");
+  }
+  
+  /**
+   * Returns the decoder of this processor.
+   *
+   * @return The decoder of this processor, non-null.
+   */
+  public PushDecoder getDecoder() {
+    return decoder;
+  }
+  
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    Objects.requireNonNull(subscriber, "The specified Subscriber must be non-null!");
+    synchronized(this) {
+      if(this.subscriber == null) {
+        this.subscriber = subscriber;
+        subscriber = null;
+      }
+    }
+    if(subscriber != null) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+  
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("The processor already has a subscriber!"));
+      return;
+    }
+    this.subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        if(n <= 0) {
+          fail(new IllegalArgumentException("The number of frames requested must be positive!"));
+          return;
+        }
+        requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+        drain();
+      }
+  
+      @Override
+      public void cancel() {
+        cancelled = true;
+        Flow.Subscription upstream = DecoderProcessor.this.upstream;
+        if(upstream != null) {
+          upstream.cancel();
+        }
+        drain();
+      }
+    });
+    subscribed = true;
+    drain();
+  }
+  
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription, "The specified Subscription must be non-null!");
+    if(upstream != null || cancelled) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    drain();
+  }
+  
+  @Override
+  public void onNext(ByteBuffer chunk) {
+    Objects.requireNonNull(chunk, "The specified ByteBuffer must be non-null!");
+    if(done) {
+      return;
+    }
+    try {
+      publish(decoder.feed(chunk));
+    } catch(IOException | RuntimeException e) {
+      fail(e);
+      return;
+    }
+    awaiting = false;
+    drain();
+  }
+  
+  @Override
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable, "The specified Throwable must be non-null!");
+    if(done) {
+      return;
+    }
+    error = throwable;
+    done = true;
+    drain();
+  }
+  
+  @Override
+  public void onComplete() {
+    if(done) {
+      return;
+    }
+    try {
+      publish(decoder.finish());
+    } catch(IOException | RuntimeException e) {
+      fail(e);
+      return;
+    }
+    done = true;
+    drain();
+  }
+  
+  private void publish(List<ByteBuffer> decoded) {
+    if(!cancelled) {
+      frames.addAll(decoded);
+    }
+  }
+  
+  private void fail(Throwable throwable) {
+    Flow.Subscription upstream = this.upstream;
+    if(upstream != null) {
+      upstream.cancel();
+    }
+    onError(throwable);
+  }
+  
+  /**
+   * Publishes the pending frames and terminal signal to the subscriber as requested, and requests the next chunk from upstream if needed.
+   */
+  private void drain() {
+    if(wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    while(true) {
+      Flow.Subscriber<? super ByteBuffer> subscriber = this.subscriber;
+      if(subscribed && !terminated) {
+        if(cancelled) {
+          frames.clear();
+          terminated = true;
+        } else if(error != null) {
+          /* Errors are published at once, without the pending frames */
+          frames.clear();
+          terminated = true;
+          subscriber.onError(error);
+        } else {
+          long requested = this.requested.get();
+          long published = 0;
+          while(published != requested) {
+            ByteBuffer frame = frames.poll();
+            if(frame == null) {
+              break;
+            }
+            subscriber.onNext(frame);
+            published++;
+          }
+          if(published != 0 && requested != Long.MAX_VALUE) {
+            requested = this.requested.addAndGet(-published);
+          }
+          if(frames.isEmpty()) {
+            if(done) {
+              terminated = true;
+              subscriber.onComplete();
+            } else if(requested > 0 && !awaiting && upstream != null) {
+              awaiting = true;
+              upstream.request(1);
+            }
+          }
+        }
+      }
+      missed = wip.addAndGet(-missed);
+      if(missed == 0) {
+        break;
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+
+public class AllocationTest {
+
+  private static long allocatedBytes(com.sun.management.ThreadMXBean bean) {
+    return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static void assertNoSteadyStateAllocation(String name) throws IOException {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+    Assume.assumeTrue(bean.isThreadAllocatedMemorySupported());
+    bean.setThreadAllocatedMemoryEnabled(true);
+
+    // JIT compilation and deoptimization events may be accounted to the decoding thread once in a while,
+    // so retry a few times and only fail if we never observe an allocation-free run
+    long allocated = -1;
+    for (int attempt = 0; attempt < 5 && allocated != 0; attempt++) {
+      try(InputStream in = new BufferedInputStream(AllocationTest.class.getResourceAsStream(name), 1 << 20)) {
+        Decoder.SoundData soundData = Decoder.init(in);
+        Assert.assertNotNull(soundData);
+        // warm up, so that lazily created buffers exist
+        for (int i = 0; i < 50; i++) {
+          Assert.assertTrue(Decoder.decodeFrame(soundData));
+        }
+        long overhead = allocatedBytes(bean);
+        overhead = allocatedBytes(bean) - overhead;
+        int frames = 0;
+        long start = allocatedBytes(bean);
+        for (int i = 0; i < 200; i++) {
+          if (!Decoder.decodeFrame(soundData)) {
+            break;
+          }
+          frames++;
+        }
+        allocated = allocatedBytes(bean) - start - overhead;
+        Assert.assertTrue(frames > 0);
+      }
+    }
+    Assert.assertEquals("Bytes allocated while decoding frames of " + name, 0, allocated);
+  }
+  
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    assertNoSteadyStateAllocation("/mp3/stereo_kikuo.mp3");
+    assertNoSteadyStateAllocation("/mp3/joint_stereo_kikuo.mp3");
+    assertNoSteadyStateAllocation("/mp3/mono_kikuo.mp3");
+  }
+}
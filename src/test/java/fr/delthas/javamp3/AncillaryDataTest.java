@@ -0,0 +1,36 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+
+public class AncillaryDataTest {
+
+  private static byte[] decode(byte[] data) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new ByteArrayInputStream(data))) {
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  @Test
+  public void layerIAncillaryData() throws IOException {
+    // 224 kbps 48 kHz Layer I frames, of 224 bytes, whose audio data fills the whole frame
+    byte[] data = TestResources.data("/mp1/mono_kikuo.mp1");
+    int frames = data.length / 224;
+    // raise their bitrate to 256 kbps, and fill the 32 bytes added at the end of each frame with ancillary data starting with a copy of the frame header
+    byte[] ancillary = new byte[frames * 256];
+    for(int i = 0; i < frames; i++) {
+      System.arraycopy(data, i * 224, ancillary, i * 256, 224);
+      ancillary[i * 256 + 2] = (byte) ((ancillary[i * 256 + 2] & 0x0F) | 0b1000 << 4);
+      System.arraycopy(data, i * 224, ancillary, i * 256 + 224, 4);
+      for(int j = 4; j < 32; j++) {
+        ancillary[i * 256 + 224 + j] = (byte) (j * 37);
+      }
+    }
+    // the ancillary data must be skipped, rather than searched for a sync word and decoded as a frame
+    Assert.assertArrayEquals(decode(data), decode(ancillary));
+  }
+}
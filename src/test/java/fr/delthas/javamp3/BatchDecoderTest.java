@@ -0,0 +1,117 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchDecoderTest {
+  private static final String[] NAMES = {
+          "/mp3/stereo_kikuo.mp3",
+          "/mp3/mono_kikuo.mp3",
+          "/mp1/stereo_kikuo.mp1",
+          "/mp2/mono_kikuo.mp2",
+          "/mp3/joint_stereo_22050_kikuo.mp3",
+  };
+  
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  private static byte[] decode(byte[] data) throws IOException {
+    try(Sound sound = new Sound(ByteBuffer.wrap(data))) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      sound.decodeFullyInto(os);
+      return os.toByteArray();
+    }
+  }
+  
+  @Test
+  public void batch() throws Exception {
+    List<Path> paths = new ArrayList<>();
+    Map<Path, byte[]> expected = new HashMap<>();
+    for(int i = 0; i < 3; i++) {
+      for(String name : NAMES) {
+        byte[] data = TestResources.data(name);
+        Path path = folder.newFile().toPath();
+        Files.write(path, data);
+        paths.add(path);
+        expected.put(path, decode(data));
+      }
+    }
+    for(int parallelism : new int[]{1, 3}) {
+      BatchDecoder decoder = new BatchDecoder(parallelism);
+      if(decoder.isVirtualThreads()) {
+        decoder.setVirtualThreads(false);
+      }
+      Map<Path, byte[]> decoded = new ConcurrentHashMap<>();
+      AtomicInteger concurrent = new AtomicInteger();
+      AtomicInteger maxConcurrent = new AtomicInteger();
+      List<BatchDecoder.Result> progress = new ArrayList<>();
+      decoder.setProgress(progress::add);
+      List<BatchDecoder.Result> results = decoder.decodeAll(paths, (path, sound) -> {
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        sound.decodeFullyInto(os);
+        decoded.put(path, os.toByteArray());
+        concurrent.decrementAndGet();
+      });
+      Assert.assertTrue(maxConcurrent.get() <= parallelism);
+      Assert.assertEquals(paths.size(), results.size());
+      Assert.assertEquals(paths.size(), progress.size());
+      for(int i = 0; i < paths.size(); i++) {
+        BatchDecoder.Result result = results.get(i);
+        Assert.assertEquals(paths.get(i), result.getPath());
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertNull(result.getError());
+        Assert.assertArrayEquals(expected.get(result.getPath()), decoded.get(result.getPath()));
+        try(Sound sound = new Sound(paths.get(i))) {
+          Assert.assertEquals(expected.get(result.getPath()).length / 2 / (sound.isStereo() ? 2 : 1), result.getSamples());
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void errors() throws Exception {
+    Path good = folder.newFile().toPath();
+    Files.write(good, TestResources.data("/mp3/mono_kikuo.mp3"));
+    Path empty = folder.newFile().toPath();
+    Files.write(empty, new byte[1000]);
+    Path missing = folder.getRoot().toPath().resolve("missing.mp3");
+    Path failing = folder.newFile().toPath();
+    Files.write(failing, TestResources.data("/mp2/mono_kikuo.mp2"));
+    BatchDecoder decoder = new BatchDecoder(2);
+    if(decoder.isVirtualThreads()) {
+      decoder.setVirtualThreads(false);
+    }
+    decoder.setFormat(SampleFormat.FLOAT_32);
+    List<BatchDecoder.Result> results = decoder.decodeAll(Arrays.asList(good, empty, missing, failing, good), (path, sound) -> {
+      Assert.assertEquals(4, sound.getAudioFormat().getSampleSizeInBits() / 8);
+      byte[] b = new byte[10_000];
+      sound.read(b);
+      if(path.equals(failing)) {
+        throw new IOException("Sink error");
+      }
+      while(sound.read(b) != -1) {
+        // decode fully
+      }
+    });
+    Assert.assertTrue(results.get(0).isSuccess());
+    Assert.assertTrue(results.get(0).getSamples() > 0);
+    Assert.assertTrue(results.get(1).getError() instanceof IOException);
+    Assert.assertTrue(results.get(2).getError() instanceof IOException);
+    Assert.assertEquals(0, results.get(2).getSamples());
+    Assert.assertEquals("Sink error", results.get(3).getError().getMessage());
+    Assert.assertEquals(2500, results.get(3).getSamples());
+    Assert.assertTrue(results.get(4).isSuccess());
+    Assert.assertEquals(results.get(0).getSamples(), results.get(4).getSamples());
+  }
+}
@@ -0,0 +1,143 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+public class BufferDecodeTest {
+  private static final String[] NAMES = {
+          "/mp3/stereo_kikuo.mp3",
+          "/mp3/mono_kikuo.mp3",
+          "/mp1/stereo_kikuo.mp1",
+          "/mp2/mono_kikuo.mp2",
+  };
+  
+  private static byte[] decode(byte[] data, SampleFormat format) throws IOException {
+    try(Sound sound = new Sound(new ByteArrayInputStream(data), format)) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      sound.decodeFullyInto(os);
+      return os.toByteArray();
+    }
+  }
+  
+  private static byte[] decodeFrames(byte[] data, SampleFormat format, ByteBuffer buffer) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(ByteBuffer.wrap(data), format)) {
+      int frames = 0;
+      int n;
+      while((n = sound.decodeFrameInto(buffer)) != -1) {
+        Assert.assertEquals(n, buffer.position());
+        Assert.assertEquals(0, n % format.getBytesPerSample());
+        ((java.nio.Buffer) buffer).flip();
+        byte[] b = new byte[buffer.remaining()];
+        buffer.get(b);
+        os.write(b);
+        ((java.nio.Buffer) buffer).clear();
+        frames++;
+      }
+      Assert.assertEquals(0, sound.available());
+      Assert.assertTrue(frames > 0);
+    }
+    Assert.assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+    return os.toByteArray();
+  }
+  
+  @Test
+  public void frames() throws IOException {
+    for(String name : NAMES) {
+      byte[] data = TestResources.data(name);
+      for(SampleFormat format : SampleFormat.values()) {
+        byte[] expected = decode(data, format);
+        Assert.assertArrayEquals(name + " " + format, expected, decodeFrames(data, format, ByteBuffer.allocate(8192)));
+        Assert.assertArrayEquals(name + " " + format, expected, decodeFrames(data, format, ByteBuffer.allocateDirect(8192)));
+        /* Buffers smaller than a frame, whose size isn't a multiple of the sample size */
+        Assert.assertArrayEquals(name + " " + format, expected, decodeFrames(data, format, ByteBuffer.allocateDirect(1001)));
+        ByteBuffer slice = ByteBuffer.allocate(1200);
+        ((java.nio.Buffer) slice).position(100);
+        Assert.assertArrayEquals(name + " " + format, expected, decodeFrames(data, format, slice.slice()));
+      }
+    }
+  }
+  
+  @Test
+  public void shorts() throws IOException {
+    for(String name : NAMES) {
+      byte[] data = TestResources.data(name);
+      ShortBuffer expected = ByteBuffer.wrap(decode(data, SampleFormat.PCM_16)).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+      for(SampleFormat format : new SampleFormat[]{SampleFormat.PCM_16, SampleFormat.FLOAT_32}) {
+        for(ShortBuffer buffer : new ShortBuffer[]{ShortBuffer.allocate(expected.capacity() + 10), ByteBuffer.allocateDirect(2 * expected.capacity() + 20).asShortBuffer()}) {
+          try(Sound sound = new Sound(ByteBuffer.wrap(data), format)) {
+            Assert.assertEquals(expected.capacity(), sound.decodeInto(buffer));
+            Assert.assertEquals(-1, sound.decodeInto(buffer));
+          }
+          ((java.nio.Buffer) buffer).flip();
+          Assert.assertEquals(name + " " + format, expected, buffer);
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void mixed() throws IOException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    byte[] expected = decode(data, SampleFormat.PCM_16);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(ByteBuffer.wrap(data))) {
+      byte[] b = new byte[1000];
+      ByteBuffer buffer = ByteBuffer.allocateDirect(3000);
+      ShortBuffer shorts = ShortBuffer.allocate(700);
+      while(true) {
+        int n = sound.read(b);
+        if(n == -1) {
+          break;
+        }
+        os.write(b, 0, n);
+        ((java.nio.Buffer) buffer).clear();
+        if(sound.decodeFrameInto(buffer) == -1) {
+          break;
+        }
+        ((java.nio.Buffer) buffer).flip();
+        while(buffer.hasRemaining()) {
+          os.write(buffer.get());
+        }
+        ((java.nio.Buffer) shorts).clear();
+        if(sound.decodeInto(shorts) == -1) {
+          break;
+        }
+        ((java.nio.Buffer) shorts).flip();
+        while(shorts.hasRemaining()) {
+          short sample = shorts.get();
+          os.write(sample);
+          os.write(sample >>> 8);
+        }
+      }
+      Assert.assertEquals(-1, sound.decodeFrameInto(ByteBuffer.allocate(100)));
+    }
+    Assert.assertArrayEquals(expected, os.toByteArray());
+  }
+  
+  @Test
+  public void errors() throws IOException {
+    try(Sound sound = new Sound(ByteBuffer.wrap(TestResources.data("/mp3/mono_kikuo.mp3")))) {
+      Assert.assertEquals(0, sound.decodeFrameInto(ByteBuffer.allocate(1)));
+      Assert.assertEquals(0, sound.decodeInto(ShortBuffer.allocate(0)));
+      try {
+        sound.decodeFrameInto(ByteBuffer.allocate(100).asReadOnlyBuffer());
+        Assert.fail();
+      } catch(java.nio.ReadOnlyBufferException expected) {
+        // expected
+      }
+      sound.read();
+      try {
+        sound.decodeFrameInto(ByteBuffer.allocate(100));
+        Assert.fail();
+      } catch(IllegalStateException expected) {
+        // expected
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CrcTest {
+  /* MPEG-1 bitrates in kbps, per layer */
+  private static final int[][] BITRATES = {
+          {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+          {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+          {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+  };
+
+  /* The CRC-16 of the frame, computed bit by bit */
+  private static int crc(byte[] frame, int bits) {
+    int crc = 0xFFFF;
+    for(int i = 0; i < 16 + bits; i++) {
+      int offset = i < 16 ? 2 * 8 + i : 6 * 8 + i - 16;
+      int bit = frame[offset / 8] >> (7 - offset % 8) & 1;
+      crc = (crc >> 15 ^ bit) != 0 ? (crc << 1 ^ 0x8005) & 0xFFFF : crc << 1 & 0xFFFF;
+    }
+    return crc;
+  }
+
+  private static int read(byte[] frame, int offset, int bits) {
+    int value = 0;
+    for(int i = offset; i < offset + bits; i++) {
+      value = value << 1 | frame[i / 8] >> (7 - i % 8) & 1;
+    }
+    return value;
+  }
+
+  /* The number of bits protected by the CRC of a 48 kHz Layer II frame, whose allocation table has 27 subbands */
+  private static int bits_II(byte[] frame, int channels) {
+    /* The bit allocation, then the scalefactor selection of the allocated subbands */
+    int allocation = 0;
+    int scfsi = 0;
+    for(int sb = 0; sb < 27; sb++) {
+      int nbal = sb < 11 ? 4 : sb < 23 ? 3 : 2;
+      for(int ch = 0; ch < channels; ch++) {
+        if(read(frame, 6 * 8 + allocation, nbal) != 0) {
+          scfsi += 2;
+        }
+        allocation += nbal;
+      }
+    }
+    return allocation + scfsi;
+  }
+
+  /**
+   * Returns the stream with a CRC inserted in every frame. Layer I and II frames are enlarged to the next bitrate, and padded with ancillary data, so
+   * that they decode to the same samples. Layer III frames, whose main data may continue in the next frames, keep their size and lose their last two
+   * bytes.
+   */
+  private static byte[] protect(byte[] data) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    int i = 0;
+    while (i + 4 <= data.length && (data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xE0) == 0xE0) {
+      int layer = 4 - (data[i + 1] >> 1 & 0b11);
+      int bitrateIndex = (data[i + 2] & 0xFF) >> 4;
+      int padding = data[i + 2] >> 1 & 1;
+      int channels = (data[i + 3] & 0xFF) >> 6 == 0b11 ? 1 : 2;
+      Assert.assertEquals(0b01, (data[i + 2] >> 2) & 0b11); /* 48 kHz */
+      int size = frameSize(layer, bitrateIndex, padding);
+      int newBitrateIndex = layer == 3 ? bitrateIndex : bitrateIndex + 1;
+      byte[] frame = new byte[frameSize(layer, newBitrateIndex, padding)];
+      frame[0] = data[i];
+      frame[1] = (byte) (data[i + 1] & ~1);
+      frame[2] = (byte) (data[i + 2] & 0x0F | newBitrateIndex << 4);
+      frame[3] = data[i + 3];
+      System.arraycopy(data, i + 4, frame, 6, Math.min(size - 4, frame.length - 6));
+      int bits = layer == 1 ? 4 * 32 * channels : layer == 2 ? bits_II(frame, channels) : (channels == 1 ? 17 : 32) * 8;
+      int crc = crc(frame, bits);
+      frame[4] = (byte) (crc >> 8);
+      frame[5] = (byte) crc;
+      os.write(frame, 0, frame.length);
+      i += size;
+    }
+    os.write(data, i, data.length - i);
+    return os.toByteArray();
+  }
+
+  private static int frameSize(int layer, int bitrateIndex, int padding) {
+    int bitrate = BITRATES[layer - 1][bitrateIndex] * 1000;
+    return layer == 1 ? (12 * bitrate / 48000 + padding) * 4 : 144 * bitrate / 48000 + padding;
+  }
+
+  /* Returns the offsets of the frames of the stream */
+  private static List<Integer> frames(byte[] data) {
+    List<Integer> frames = new ArrayList<>();
+    int i = 0;
+    while (i + 4 <= data.length && (data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xE0) == 0xE0) {
+      frames.add(i);
+      i += frameSize(4 - (data[i + 1] >> 1 & 0b11), (data[i + 2] & 0xFF) >> 4, data[i + 2] >> 1 & 1);
+    }
+    return frames;
+  }
+
+  private static byte[] decode(byte[] data, CrcCheck crcCheck, boolean resilient, List<DecodingError> errors, DecoderMetrics metrics) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(ByteBuffer.wrap(data))) {
+      sound.setCrcCheck(crcCheck);
+      sound.setResilient(resilient);
+      sound.setErrorListener(errors::add);
+      sound.setMetrics(metrics);
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  @Test
+  public void valid() throws IOException {
+    for(String name : new String[]{"/mp1/mono_kikuo.mp1", "/mp1/stereo_kikuo.mp1", "/mp2/mono_kikuo.mp2", "/mp2/stereo_kikuo.mp2"}) {
+      byte[] data = TestResources.data(name);
+      byte[] protectedData = protect(data);
+      Assert.assertTrue(protectedData.length > data.length);
+      byte[] expected = decode(data, CrcCheck.OFF, false, new ArrayList<>(), null);
+      for(CrcCheck crcCheck : CrcCheck.values()) {
+        List<DecodingError> errors = new ArrayList<>();
+        DecoderMetrics metrics = new DecoderMetrics();
+        Assert.assertArrayEquals(name, expected, decode(protectedData, crcCheck, false, errors, metrics));
+        Assert.assertEquals(name, 0, errors.size());
+        Assert.assertEquals(name, 0, metrics.getCrcErrors());
+      }
+    }
+  }
+
+  @Test
+  public void mismatch() throws IOException {
+    for(String name : new String[]{"/mp1/stereo_kikuo.mp1", "/mp2/stereo_kikuo.mp2"}) {
+      byte[] data = protect(TestResources.data(name));
+      List<Integer> frames = frames(data);
+      List<Long> corrupt = new ArrayList<>();
+      for(int frame = 10; frame < frames.size(); frame += 100) {
+        /* The first bit allocation of the frame */
+        data[frames.get(frame) + 6] ^= 0b00010000;
+        corrupt.add((long) frames.get(frame));
+      }
+      byte[] expected = decode(data, CrcCheck.OFF, false, new ArrayList<>(), null);
+      List<DecodingError> errors = new ArrayList<>();
+      DecoderMetrics metrics = new DecoderMetrics();
+      Assert.assertArrayEquals(name, expected, decode(data, CrcCheck.COUNT, false, errors, metrics));
+      Assert.assertEquals(name, corrupt.size(), metrics.getCrcErrors());
+      Assert.assertEquals(name, 0, metrics.getConcealedFrames());
+      List<Long> offsets = new ArrayList<>();
+      for(DecodingError error : errors) {
+        Assert.assertEquals(name, DecodingError.Type.CRC_MISMATCH, error.getType());
+        offsets.add(error.getOffset());
+      }
+      Assert.assertEquals(name, corrupt, offsets);
+
+      metrics = new DecoderMetrics();
+      byte[] dropped = decode(data, CrcCheck.DROP, false, new ArrayList<>(), metrics);
+      Assert.assertEquals(name, expected.length, dropped.length);
+      Assert.assertEquals(name, corrupt.size(), metrics.getCrcErrors());
+      Assert.assertEquals(name, corrupt.size(), metrics.getConcealedFrames());
+    }
+  }
+
+  @Test
+  public void layerIII() throws IOException {
+    byte[] data = protect(TestResources.data("/mp3/stereo_kikuo.mp3"));
+    List<Integer> frames = frames(data);
+    DecoderMetrics metrics = new DecoderMetrics();
+    decode(data, CrcCheck.COUNT, true, new ArrayList<>(), metrics);
+    Assert.assertEquals(0, metrics.getCrcErrors());
+    int corrupt = 0;
+    for(int frame = 10; frame < frames.size(); frame += 100) {
+      /* The main_data_begin of the frame */
+      data[frames.get(frame) + 6] ^= 0b00100000;
+      corrupt++;
+    }
+    for(CrcCheck crcCheck : new CrcCheck[]{CrcCheck.COUNT, CrcCheck.DROP}) {
+      metrics = new DecoderMetrics();
+      decode(data, crcCheck, true, new ArrayList<>(), metrics);
+      Assert.assertEquals(corrupt, metrics.getCrcErrors());
+    }
+    Assert.assertEquals(corrupt, metrics.getConcealedFrames());
+  }
+
+  @Test
+  public void protectedLayerIII() throws IOException {
+    /* Encoded with a CRC in every frame, whose main data starts in the bit reservoir of the previous frames */
+    byte[] data = TestResources.data("/mp3/joint_stereo_protected_kikuo.mp3");
+    byte[] expected = decode(data, CrcCheck.OFF, false, new ArrayList<>(), null);
+    for(CrcCheck crcCheck : CrcCheck.values()) {
+      List<DecodingError> errors = new ArrayList<>();
+      DecoderMetrics metrics = new DecoderMetrics();
+      Assert.assertArrayEquals(expected, decode(data, crcCheck, false, errors, metrics));
+      Assert.assertEquals(0, errors.size());
+      Assert.assertEquals(0, metrics.getCrcErrors());
+    }
+
+    List<Integer> frames = frames(data);
+    int[] corrupt = {10, 50, 90};
+    for(int frame : corrupt) {
+      /* The last bit of the global_gain of the first granule of the first channel */
+      data[frames.get(frame) + 6 + 6] ^= 0b10000000;
+    }
+    List<DecodingError> errors = new ArrayList<>();
+    DecoderMetrics metrics = new DecoderMetrics();
+    byte[] counted = decode(data, CrcCheck.COUNT, false, errors, metrics);
+    Assert.assertEquals(corrupt.length, metrics.getCrcErrors());
+    Assert.assertEquals(0, metrics.getConcealedFrames());
+    Assert.assertEquals(corrupt.length, errors.size());
+    for(int i = 0; i < corrupt.length; i++) {
+      Assert.assertEquals(DecodingError.Type.CRC_MISMATCH, errors.get(i).getType());
+      Assert.assertEquals((long) frames.get(corrupt[i]), errors.get(i).getOffset());
+    }
+
+    metrics = new DecoderMetrics();
+    byte[] dropped = decode(data, CrcCheck.DROP, false, new ArrayList<>(), metrics);
+    Assert.assertEquals(corrupt.length, metrics.getCrcErrors());
+    Assert.assertEquals(corrupt.length, metrics.getConcealedFrames());
+    Assert.assertEquals(expected.length, dropped.length);
+    /* The dropped frames are concealed rather than decoded, and their main data is kept in the bit reservoir: only them and the frames that
+     * overlap them differ from the clean decode */
+    int frameBytes = 1152 * 2 * 2;
+    for(int frame = 0; frame < frames.size(); frame++) {
+      int from = frame * frameBytes;
+      byte[] decoded = Arrays.copyOfRange(dropped, from, from + frameBytes);
+      boolean concealed = false;
+      boolean overlapped = false;
+      for(int c : corrupt) {
+        concealed |= frame == c;
+        overlapped |= frame == c + 1;
+      }
+      if(concealed) {
+        Assert.assertFalse("Frame " + frame, Arrays.equals(Arrays.copyOfRange(counted, from, from + frameBytes), decoded));
+      } else if(!overlapped) {
+        Assert.assertArrayEquals("Frame " + frame, Arrays.copyOfRange(expected, from, from + frameBytes), decoded);
+      }
+    }
+  }
+
+  @Test
+  public void resync() throws IOException {
+    byte[] data = protect(TestResources.data("/mp1/stereo_kikuo.mp1"));
+    List<Integer> frames = frames(data);
+    /* Copies of a frame header and CRC, in the middle of a frame */
+    int cut = frames.get(frames.size() / 2) + 100;
+    byte[] corrupt = new byte[data.length + 600];
+    System.arraycopy(data, 0, corrupt, 0, cut);
+    for(int i = 0; i < 600; i += 6) {
+      System.arraycopy(data, 0, corrupt, cut + i, 6);
+    }
+    System.arraycopy(data, cut, corrupt, cut + 600, data.length - cut);
+    DecoderMetrics metrics = new DecoderMetrics();
+    byte[] decoded = decode(corrupt, CrcCheck.COUNT, true, new ArrayList<>(), metrics);
+    Assert.assertTrue(metrics.getFalseSyncs() > 0);
+    /* A copy of a header may be found right at the end of the frame cut, and decoded as a corrupt frame */
+    int frameBytes = 384 * 2 * 2;
+    Assert.assertTrue(Math.abs(frames.size() - decoded.length / frameBytes) <= 1);
+  }
+}
@@ -0,0 +1,101 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+public class DecoderMetricsTest {
+
+  static int decode(byte[] data, DecoderMetrics metrics, boolean pipelined) throws IOException {
+    try(Sound sound = new Sound(new ByteArrayInputStream(data))) {
+      sound.setMetrics(metrics);
+      sound.setPipelined(pipelined);
+      return sound.decodeFullyInto(new ByteArrayOutputStream());
+    }
+  }
+
+  private static void assertCounts(String name, int layer, int frameBytes, boolean pipelined) throws IOException {
+    DecoderMetrics metrics = new DecoderMetrics(1);
+    int read = decode(TestResources.data(name), metrics, pipelined);
+    /* The first frame is decoded when creating the sound, before the metrics are attached */
+    long frames = read / frameBytes - 1;
+    Assert.assertEquals(frames, metrics.getFrames(layer));
+    Assert.assertEquals(frames, metrics.getFrames());
+    Assert.assertEquals(frames, metrics.getTimedFrames());
+    Assert.assertEquals(0, metrics.getSkippedBytes());
+    Assert.assertEquals(0, metrics.getResyncs());
+    Assert.assertEquals(0, metrics.getReservoirUnderflows());
+    Assert.assertEquals(0, metrics.getOversizedFrames());
+    Assert.assertTrue(metrics.getNanos(DecoderMetrics.Stage.BITSTREAM) > 0);
+    Assert.assertTrue(metrics.getNanos(DecoderMetrics.Stage.SYNTHESIS) > 0);
+    if(layer == 3) {
+      Assert.assertTrue(metrics.getNanos(DecoderMetrics.Stage.IMDCT) > 0);
+    } else {
+      Assert.assertEquals(0, metrics.getNanos(DecoderMetrics.Stage.IMDCT));
+    }
+  }
+
+  @Test
+  public void frames() throws IOException {
+    assertCounts("/mp1/stereo_kikuo.mp1", 1, 384 * 4, false);
+    assertCounts("/mp2/mono_kikuo.mp2", 2, 1152 * 2, false);
+    assertCounts("/mp3/stereo_kikuo.mp3", 3, 1152 * 4, false);
+    assertCounts("/mp3/stereo_kikuo.mp3", 3, 1152 * 4, true);
+    assertCounts("/mp3/joint_stereo_22050_kikuo.mp3", 3, 576 * 4, false);
+  }
+
+  @Test
+  public void sampling() throws IOException {
+    DecoderMetrics metrics = new DecoderMetrics(10);
+    decode(TestResources.data("/mp3/mono_kikuo.mp3"), metrics, false);
+    Assert.assertEquals(metrics.getFrames() / 10, metrics.getTimedFrames());
+
+    metrics = new DecoderMetrics();
+    decode(TestResources.data("/mp3/mono_kikuo.mp3"), metrics, false);
+    Assert.assertTrue(metrics.getFrames() > 0);
+    Assert.assertEquals(0, metrics.getTimedFrames());
+    for(DecoderMetrics.Stage stage : DecoderMetrics.Stage.values()) {
+      Assert.assertEquals(0, metrics.getNanos(stage));
+    }
+    metrics.reset();
+    Assert.assertEquals(0, metrics.getFrames());
+  }
+
+  @Test
+  public void resync() throws IOException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    int offset = (int) SoundInfo.scan(ByteBuffer.wrap(data)).getFrameOffset(100);
+    byte[] garbage = new byte[data.length + 1000];
+    System.arraycopy(data, 0, garbage, 0, offset);
+    System.arraycopy(data, offset, garbage, offset + 1000, data.length - offset);
+    DecoderMetrics metrics = new DecoderMetrics();
+    Assert.assertEquals(decode(data, null, false), decode(garbage, metrics, false));
+    Assert.assertEquals(1000, metrics.getSkippedBytes());
+    Assert.assertEquals(1, metrics.getResyncs());
+  }
+
+  @Test
+  public void underflow() throws IOException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    SoundInfo info = SoundInfo.scan(ByteBuffer.wrap(data));
+    /* Cut the stream before a frame whose main data starts in the previous frames */
+    int frame = 100;
+    while((data[(int) info.getFrameOffset(frame) + 4] & 0xFF) == 0 && (data[(int) info.getFrameOffset(frame) + 5] & 0x80) == 0) {
+      frame++;
+    }
+    int offset = (int) info.getFrameOffset(frame);
+    byte[] cut = new byte[data.length - offset];
+    System.arraycopy(data, offset, cut, 0, cut.length);
+    DecoderMetrics metrics = new DecoderMetrics();
+    try(Sound sound = new Sound(ByteBuffer.wrap(cut))) {
+      sound.setMetrics(metrics);
+      /* Seek backward, so that the decoding restarts from the first frame */
+      sound.seek(10_000);
+      sound.seek(0);
+      Assert.assertTrue(sound.read() != -1);
+    }
+    Assert.assertTrue(metrics.getReservoirUnderflows() > 0);
+  }
+}
@@ -0,0 +1,117 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+public class DecoderPoolTest {
+  private static final String[] NAMES = {
+          "/mp3/stereo_kikuo.mp3",
+          "/mp3/mono_kikuo.mp3",
+          "/mp1/stereo_kikuo.mp1",
+          "/mp3/joint_stereo_kikuo.mp3",
+          "/mp2/mono_kikuo.mp2",
+          "/mp3/joint_stereo_22050_kikuo.mp3",
+          "/mp3/stereo_kikuo.mp3",
+  };
+
+  private static byte[] decode(Sound sound) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try {
+      sound.decodeFullyInto(os);
+    } finally {
+      sound.close();
+    }
+    return os.toByteArray();
+  }
+
+  @Test
+  public void reuse() throws IOException {
+    DecoderPool pool = new DecoderPool(1);
+    for(int round = 0; round < 2; round++) {
+      for(String name : NAMES) {
+        byte[] data = TestResources.data(name);
+        byte[] expected = decode(new Sound(new ByteArrayInputStream(data)));
+        Assert.assertArrayEquals(name, expected, decode(pool.open(new ByteArrayInputStream(data))));
+        Assert.assertArrayEquals(name, expected, decode(pool.open(ByteBuffer.wrap(data))));
+        Assert.assertEquals(1, pool.getIdleCount());
+      }
+    }
+  }
+
+  @Test
+  public void formats() throws IOException {
+    DecoderPool pool = new DecoderPool();
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    for(SampleFormat format : new SampleFormat[]{SampleFormat.PCM_16, SampleFormat.FLOAT_32, SampleFormat.PCM_16}) {
+      byte[] expected = decode(new Sound(new ByteArrayInputStream(data), format));
+      Assert.assertArrayEquals(expected, decode(pool.open(new ByteArrayInputStream(data), format)));
+    }
+  }
+
+  @Test
+  public void seek() throws IOException {
+    DecoderPool pool = new DecoderPool();
+    byte[] data = TestResources.data("/mp3/joint_stereo_kikuo.mp3");
+    byte[] expected = decode(new Sound(ByteBuffer.wrap(data)));
+    decode(pool.open(ByteBuffer.wrap(TestResources.data("/mp3/stereo_kikuo.mp3"))));
+    try(Sound sound = pool.open(ByteBuffer.wrap(data))) {
+      sound.seek(100_000);
+      byte[] b = new byte[10_000];
+      Assert.assertEquals(b.length, sound.read(b));
+      byte[] from = new byte[b.length];
+      System.arraycopy(expected, 100_000 * 4, from, 0, from.length);
+      Assert.assertArrayEquals(from, b);
+    }
+  }
+
+  @Test
+  public void closed() throws IOException {
+    DecoderPool pool = new DecoderPool();
+    Sound first = pool.open(new ByteArrayInputStream(TestResources.data("/mp3/joint_stereo_22050_kikuo.mp3")));
+    first.read(new byte[10_000]);
+    first.close();
+    long position = first.getPosition();
+    Assert.assertEquals(1, pool.getIdleCount());
+    int frequency;
+    try(Sound sound = new Sound(new ByteArrayInputStream(TestResources.data("/mp3/mono_kikuo.mp3")))) {
+      frequency = sound.getSamplingFrequency();
+    }
+    try(Sound second = pool.open(new ByteArrayInputStream(TestResources.data("/mp3/mono_kikuo.mp3")))) {
+      Assert.assertEquals(0, pool.getIdleCount());
+      Assert.assertEquals(frequency, second.getSamplingFrequency());
+      Assert.assertFalse(second.isStereo());
+      /* The closed sound keeps its own properties */
+      Assert.assertEquals(22050, first.getSamplingFrequency());
+      Assert.assertTrue(first.isStereo());
+      Assert.assertEquals(position, first.getPosition());
+      Assert.assertEquals(-1, first.read());
+    }
+    Assert.assertEquals(1, pool.getIdleCount());
+    pool.clear();
+    Assert.assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void capacity() throws IOException {
+    DecoderPool pool = new DecoderPool(2);
+    byte[] data = TestResources.data("/mp3/mono_kikuo.mp3");
+    Sound[] sounds = new Sound[4];
+    for(int i = 0; i < sounds.length; i++) {
+      sounds[i] = pool.open(ByteBuffer.wrap(data));
+    }
+    for(Sound sound : sounds) {
+      sound.close();
+    }
+    Assert.assertEquals(2, pool.getIdleCount());
+    try {
+      pool.open(ByteBuffer.wrap(new byte[1000]));
+      Assert.fail();
+    } catch(IOException expected) {
+      // expected
+    }
+    Assert.assertEquals(2, pool.getIdleCount());
+  }
+}
@@ -0,0 +1,98 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ImdctTest {
+
+  /* The window of a block type, as defined in ISO/IEC 11172-3 2.4.3.4.10.3 */
+  private static double window(int bt, int i) {
+    switch(bt) {
+      case 1:
+        if(i < 18) {
+          return Math.sin(Math.PI / 36 * (i + 0.5));
+        }
+        if(i < 24) {
+          return 1;
+        }
+        if(i < 30) {
+          return Math.sin(Math.PI / 12 * (i - 18 + 0.5));
+        }
+        return 0;
+      case 3:
+        if(i < 6) {
+          return 0;
+        }
+        if(i < 12) {
+          return Math.sin(Math.PI / 12 * (i - 6 + 0.5));
+        }
+        if(i < 18) {
+          return 1;
+        }
+        return Math.sin(Math.PI / 36 * (i + 0.5));
+      default:
+        return Math.sin(Math.PI / 36 * (i + 0.5));
+    }
+  }
+
+  /* The windowed IMDCT of a subband, computed from its definition: 36 values for long blocks, or the overlap of the 12 values of each of the
+   * 3 windows of short blocks, whose 6 values are interleaved */
+  private static double[] imdct(float[] in, int bt) {
+    double[] out = new double[36];
+    if(bt == 2) {
+      for(int j = 0; j < 3; j++) {
+        for(int i = 0; i < 12; i++) {
+          double sum = 0;
+          for(int k = 0; k < 6; k++) {
+            sum += in[j + 3 * k] * Math.cos(Math.PI / 24 * (2 * i + 1 + 6) * (2 * k + 1));
+          }
+          out[6 + 6 * j + i] += sum * Math.sin(Math.PI / 12 * (i + 0.5));
+        }
+      }
+    } else {
+      for(int i = 0; i < 36; i++) {
+        double sum = 0;
+        for(int k = 0; k < 18; k++) {
+          sum += in[k] * Math.cos(Math.PI / 72 * (2 * i + 1 + 18) * (2 * k + 1));
+        }
+        out[i] = sum * window(bt, i);
+      }
+    }
+    return out;
+  }
+
+  private static void assertImdct(float[] in, int bt) {
+    float[] rawout = new float[36];
+    Decoder.imdct_III(in, 0, rawout, bt, new double[45]);
+    double[] expected = imdct(in, bt);
+    for(int i = 0; i < 36; i++) {
+      Assert.assertEquals("Block type " + bt + ", value " + i, expected[i], rawout[i], 1e-5);
+    }
+  }
+
+  @Test
+  public void basis() {
+    // each frequency line on its own
+    for(int bt = 0; bt < 4; bt++) {
+      for(int k = 0; k < 18; k++) {
+        float[] in = new float[18];
+        in[k] = 1;
+        assertImdct(in, bt);
+      }
+    }
+  }
+
+  @Test
+  public void random() {
+    Random random = new Random(0);
+    for(int n = 0; n < 1000; n++) {
+      float[] in = new float[18];
+      for(int k = 0; k < 18; k++) {
+        in[k] = random.nextFloat() * 2 - 1;
+      }
+      assertImdct(in, n & 3);
+    }
+  }
+}
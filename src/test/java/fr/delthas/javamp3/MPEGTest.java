@@ -57,8 +57,74 @@ public class MPEGTest {
   
   @Test
   public void MPEG_I_layer_III() throws IOException {
-    compare("/mp3/joint_stereo_kikuo.mp3", "/mp3/joint_stereo_kikuo.raw", 5000f); // TODO more accurate joint stereo decoding
+    compare("/mp3/joint_stereo_kikuo.mp3", "/mp3/joint_stereo_kikuo.raw", 0.05f);
     compare("/mp3/stereo_kikuo.mp3", "/mp3/stereo_kikuo.raw", 0.05f);
     compare("/mp3/mono_kikuo.mp3", "/mp3/mono_kikuo.raw", 0.05f);
+    // intensity stereo enabled in the joint stereo frames, giving legal and illegal intensity positions to the zero bands of the right channel;
+    // reference decoded by ffmpeg, up to 1 LSB off, with the silent first frame it drops
+    compare("/mp3/intensity_stereo_kikuo.mp3", "/mp3/intensity_stereo_kikuo.raw", 1f);
+    // frames protected by a CRC, reference decoded by mpglib, which rounds differently: up to 1 LSB off
+    compare("/mp3/joint_stereo_protected_kikuo.mp3", "/mp3/joint_stereo_protected_kikuo.raw", 1f);
+  }
+  
+  @Test
+  public void MPEG_II_layer_I() throws IOException {
+    // the first frames of the stereo stream relabeled as MPEG-2, at 24 kHz and half the bitrate; reference decoded by ffmpeg, up to 1 LSB off
+    compare("/mp1/stereo_24000_kikuo.mp1", "/mp1/stereo_24000_kikuo.raw", 1f);
+  }
+  
+  @Test
+  public void MPEG_II_layer_II() throws IOException {
+    // encoded and decoded by ffmpeg, up to 1 LSB off
+    compare("/mp2/stereo_22050_kikuo.mp2", "/mp2/stereo_22050_kikuo.raw", 1f);
+  }
+  
+  @Test
+  public void MPEG_II_layer_III() throws IOException {
+    compare("/mp3/joint_stereo_22050_kikuo.mp3", "/mp3/joint_stereo_22050_kikuo.raw", 0.05f);
+    compare("/mp3/mono_16000_kikuo.mp3", "/mp3/mono_16000_kikuo.raw", 0.05f);
+  }
+  
+  @Test
+  public void MPEG_II_5_layer_III() throws IOException {
+    compare("/mp3/stereo_12000_kikuo.mp3", "/mp3/stereo_12000_kikuo.raw", 0.05f);
+    // reference decoded by mpglib, which rounds differently: up to 1 LSB off
+    compare("/mp3/mono_8000_kikuo.mp3", "/mp3/mono_8000_kikuo.raw", 1f);
+  }
+  
+  private static void compareFormats(String name) throws IOException {
+    ByteArrayOutputStream pcm16 = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new BufferedInputStream(MPEGTest.class.getResourceAsStream(name)))) {
+      sound.decodeFullyInto(pcm16);
+    }
+    ByteArrayOutputStream pcm24 = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new BufferedInputStream(MPEGTest.class.getResourceAsStream(name)), SampleFormat.PCM_24)) {
+      sound.decodeFullyInto(pcm24);
+    }
+    float[] floats = new float[pcm16.size() / 2];
+    try(Sound sound = new Sound(new BufferedInputStream(MPEGTest.class.getResourceAsStream(name)), SampleFormat.FLOAT_32)) {
+      int n = 0;
+      while(n < floats.length) {
+        int read = sound.readFloats(floats, n, Integer.min(1000, floats.length - n));
+        Assert.assertNotEquals(-1, read);
+        n += read;
+      }
+      Assert.assertEquals(-1, sound.readFloats(floats, 0, 1));
+    }
+    byte[] b16 = pcm16.toByteArray();
+    byte[] b24 = pcm24.toByteArray();
+    Assert.assertEquals(b16.length / 2 * 3, b24.length);
+    for(int i = 0; i < floats.length; i++) {
+      int s16 = (short) ((b16[2 * i] & 0xFF) | (b16[2 * i + 1] << 8));
+      int s24 = (b24[3 * i] & 0xFF) | (b24[3 * i + 1] & 0xFF) << 8 | b24[3 * i + 2] << 16;
+      Assert.assertEquals(s16, s24 / 256f, 2.01f);
+      Assert.assertEquals(s16, Math.max(-32768f, Math.min(32767f, floats[i] * 32768f)), 2.01f);
+    }
+  }
+  
+  @Test
+  public void sample_formats() throws IOException {
+    compareFormats("/mp2/mono_kikuo.mp2");
+    compareFormats("/mp3/mono_kikuo.mp3");
   }
 }
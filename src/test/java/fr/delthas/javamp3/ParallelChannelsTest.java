@@ -0,0 +1,61 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+
+public class ParallelChannelsTest {
+
+  private static byte[] decode(String name, int threshold, boolean pipelined) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new BufferedInputStream(ParallelChannelsTest.class.getResourceAsStream(name)))) {
+      if(threshold >= 0) {
+        sound.setParallelChannels(true, threshold);
+      }
+      sound.setPipelined(pipelined);
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  private static void compare(String name) throws IOException {
+    byte[] full = decode(name, -1, false);
+    Assert.assertArrayEquals(full, decode(name, 0, false));
+    Assert.assertArrayEquals(full, decode(name, 100, false));
+    Assert.assertArrayEquals(full, decode(name, 0, true));
+  }
+
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    compare("/mp3/stereo_kikuo.mp3");
+    compare("/mp3/joint_stereo_kikuo.mp3");
+    compare("/mp3/mono_kikuo.mp3");
+  }
+
+  @Test
+  public void MPEG_II_layer_III() throws IOException {
+    compare("/mp3/joint_stereo_22050_kikuo.mp3");
+    compare("/mp3/stereo_12000_kikuo.mp3");
+  }
+
+  @Test
+  public void disable() throws IOException {
+    byte[] full = decode("/mp3/stereo_kikuo.mp3", -1, false);
+    try(Sound sound = new Sound(new BufferedInputStream(ParallelChannelsTest.class.getResourceAsStream("/mp3/stereo_kikuo.mp3")))) {
+      sound.setParallelChannels(true, 0);
+      byte[] b = new byte[full.length];
+      int n = sound.read(b, 0, 100_000);
+      sound.setParallelChannels(false);
+      while(n < b.length) {
+        int read = sound.read(b, n, b.length - n);
+        if(read == -1) {
+          break;
+        }
+        n += read;
+      }
+      Assert.assertArrayEquals(full, Arrays.copyOf(b, n));
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelDecoderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Path path(String name) throws IOException {
+    try {
+      return new File(ParallelDecoderTest.class.getResource(name).toURI()).toPath();
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static byte[] decode(String name, SampleFormat format) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new BufferedInputStream(ParallelDecoderTest.class.getResourceAsStream(name)), format)) {
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] b = new byte[buffer.remaining()];
+    buffer.get(b);
+    return b;
+  }
+
+  private void compare(String name) throws IOException {
+    byte[] full = decode(name, SampleFormat.PCM_16);
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path(name)));
+    Assert.assertArrayEquals(full, bytes(ParallelDecoder.decode(data, SampleFormat.PCM_16)));
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for(int parallelism : new int[]{1, 2, 5}) {
+        Assert.assertArrayEquals("Parallelism " + parallelism, full, bytes(ParallelDecoder.decode(data, SampleFormat.PCM_16, executor, parallelism)));
+      }
+      Path destination = folder.newFile().toPath();
+      Assert.assertEquals(full.length, ParallelDecoder.decode(path(name), destination, SampleFormat.PCM_16, executor, 4));
+      Assert.assertArrayEquals(full, Files.readAllBytes(destination));
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertEquals(0, data.position());
+  }
+
+  @Test
+  public void MPEG_I_layer_I() throws IOException {
+    compare("/mp1/stereo_kikuo.mp1");
+  }
+
+  @Test
+  public void MPEG_I_layer_II() throws IOException {
+    compare("/mp2/mono_kikuo.mp2");
+  }
+
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    compare("/mp3/joint_stereo_kikuo.mp3");
+    compare("/mp3/mono_kikuo.mp3");
+  }
+
+  @Test
+  public void MPEG_II_layer_III() throws IOException {
+    compare("/mp3/joint_stereo_22050_kikuo.mp3");
+    compare("/mp3/stereo_12000_kikuo.mp3");
+  }
+
+  @Test
+  public void sample_formats() throws IOException {
+    byte[] full = decode("/mp3/stereo_kikuo.mp3", SampleFormat.FLOAT_32);
+    Path destination = folder.newFile().toPath();
+    Assert.assertEquals(full.length, ParallelDecoder.decode(path("/mp3/stereo_kikuo.mp3"), destination, SampleFormat.FLOAT_32));
+    Assert.assertArrayEquals(full, Files.readAllBytes(destination));
+  }
+}
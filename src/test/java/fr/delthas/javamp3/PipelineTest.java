@@ -0,0 +1,107 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PipelineTest {
+
+  private static byte[] decode(InputStream in, boolean pipelined) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(in)) {
+      sound.setPipelined(pipelined);
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  private static byte[] read(Sound sound, int length) throws IOException {
+    byte[] b = new byte[length];
+    int n = 0;
+    while(n < length) {
+      int read = sound.read(b, n, length - n);
+      if(read == -1) {
+        break;
+      }
+      n += read;
+    }
+    return Arrays.copyOf(b, n);
+  }
+
+  private static void compare(String name) throws IOException {
+    byte[] data = TestResources.data(name);
+    byte[] full = decode(new ByteArrayInputStream(data), false);
+    Assert.assertArrayEquals(full, decode(new ByteArrayInputStream(data), true));
+    try(Sound sound = new Sound(ByteBuffer.wrap(data))) {
+      sound.setPipelined(true);
+      int stride = sound.isStereo() ? 4 : 2;
+      for(long position : new long[]{100_000, 3_000, 0, 60_000, 61_000, 1}) {
+        sound.seek(position);
+        int from = (int) Math.min(position * stride, full.length);
+        int to = Math.min(from + 20_000, full.length);
+        Assert.assertArrayEquals("Samples after seeking to " + position, Arrays.copyOfRange(full, from, to), read(sound, 20_000));
+      }
+      sound.setPipelined(false);
+      int from = (int) Math.min((1 + 20_000 / stride) * stride, full.length);
+      int to = Math.min(from + 20_000, full.length);
+      Assert.assertArrayEquals(Arrays.copyOfRange(full, from, to), read(sound, 20_000));
+    }
+  }
+
+  @Test
+  public void MPEG_I_layer_I() throws IOException {
+    compare("/mp1/stereo_kikuo.mp1");
+  }
+
+  @Test
+  public void MPEG_I_layer_II() throws IOException {
+    compare("/mp2/mono_kikuo.mp2");
+  }
+
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    compare("/mp3/joint_stereo_kikuo.mp3");
+    compare("/mp3/mono_kikuo.mp3");
+  }
+
+  @Test
+  public void MPEG_II_layer_III() throws IOException {
+    compare("/mp3/joint_stereo_22050_kikuo.mp3");
+  }
+
+  @Test
+  public void idle() throws IOException, InterruptedException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    byte[] full = decode(new ByteArrayInputStream(data), false);
+    try(Sound sound = new Sound(new ByteArrayInputStream(data))) {
+      sound.setPipelined(true);
+      byte[] start = read(sound, 100_000);
+      /* Long enough for the background thread to stop until frames are read again */
+      Thread.sleep(1500);
+      byte[] end = read(sound, full.length);
+      Assert.assertArrayEquals(Arrays.copyOf(full, start.length), start);
+      Assert.assertArrayEquals(Arrays.copyOfRange(full, start.length, full.length), end);
+    }
+  }
+
+  @Test
+  public void truncated() throws IOException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    byte[] truncated = Arrays.copyOf(data, data.length / 2 + 100);
+    try {
+      decode(new ByteArrayInputStream(truncated), false);
+      Assert.fail();
+    } catch(EOFException expected) {
+      // expected
+    }
+    try {
+      decode(new ByteArrayInputStream(truncated), true);
+      Assert.fail();
+    } catch(EOFException expected) {
+      // expected
+    }
+  }
+}
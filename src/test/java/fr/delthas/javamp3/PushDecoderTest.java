@@ -0,0 +1,146 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+public class PushDecoderTest {
+  static final String[] NAMES = {
+          "/mp3/stereo_kikuo.mp3",
+          "/mp3/mono_kikuo.mp3",
+          "/mp3/joint_stereo_22050_kikuo.mp3",
+          "/mp1/stereo_kikuo.mp1",
+          "/mp2/mono_kikuo.mp2",
+  };
+  
+  static byte[] decode(byte[] data, SampleFormat format) throws IOException {
+    try(Sound sound = new Sound(new ByteArrayInputStream(data), format)) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      sound.decodeFullyInto(os);
+      return os.toByteArray();
+    }
+  }
+  
+  private static void write(ByteArrayOutputStream os, List<ByteBuffer> frames) {
+    for(ByteBuffer frame : frames) {
+      Assert.assertEquals(0, frame.position());
+      os.write(frame.array(), frame.arrayOffset(), frame.remaining());
+    }
+  }
+  
+  /* Feeds the data in chunks of random sizes up to the specified size */
+  private static byte[] push(PushDecoder decoder, byte[] data, int chunkSize, boolean direct) throws IOException {
+    Random random = new Random(chunkSize);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for(int i = 0; i < data.length; ) {
+      int length = Math.min(data.length - i, 1 + random.nextInt(chunkSize));
+      ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+      ((java.nio.Buffer) chunk.put(data, i, length)).flip();
+      write(os, decoder.feed(chunk));
+      Assert.assertFalse(chunk.hasRemaining());
+      i += length;
+    }
+    write(os, decoder.finish());
+    return os.toByteArray();
+  }
+  
+  @Test
+  public void chunks() throws IOException {
+    for(String name : NAMES) {
+      byte[] data = TestResources.data(name);
+      byte[] expected = decode(data, SampleFormat.PCM_16);
+      for(int chunkSize : new int[]{1, 13, 418, 5000, 100_000, data.length}) {
+        PushDecoder decoder = new PushDecoder();
+        Assert.assertArrayEquals(name + " " + chunkSize, expected, push(decoder, data, chunkSize, chunkSize == 418));
+        Assert.assertEquals(expected.length / 2 / (decoder.isStereo() ? 2 : 1), decoder.getPosition());
+        try(Sound sound = new Sound(new ByteArrayInputStream(data))) {
+          Assert.assertEquals(sound.getSamplingFrequency(), decoder.getSamplingFrequency());
+          Assert.assertEquals(sound.isStereo(), decoder.isStereo());
+          Assert.assertEquals(sound.getAudioFormat().toString(), decoder.getAudioFormat().toString());
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void format() throws IOException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    Assert.assertArrayEquals(decode(data, SampleFormat.FLOAT_32), push(new PushDecoder(SampleFormat.FLOAT_32), data, 2000, false));
+  }
+  
+  @Test
+  public void tags() throws IOException {
+    byte[] audio = TestResources.data("/mp2/stereo_kikuo.mp2");
+    byte[] expected = decode(audio, SampleFormat.PCM_16);
+    int size = 100_000;
+    byte[] id3v2 = new byte[10 + size];
+    System.arraycopy("ID3".getBytes(StandardCharsets.US_ASCII), 0, id3v2, 0, 3);
+    id3v2[3] = 4;
+    id3v2[6] = (byte) (size >>> 21 & 0x7F);
+    id3v2[7] = (byte) (size >>> 14 & 0x7F);
+    id3v2[8] = (byte) (size >>> 7 & 0x7F);
+    id3v2[9] = (byte) (size & 0x7F);
+    /* Garbage which contains valid MPEG frame headers */
+    for(int i = 10; i < id3v2.length - 2; i += 7) {
+      id3v2[i] = (byte) 0xFF;
+      id3v2[i + 1] = (byte) 0xFD;
+    }
+    byte[] id3v1 = new byte[128];
+    System.arraycopy("TAG".getBytes(StandardCharsets.US_ASCII), 0, id3v1, 0, 3);
+    byte[] data = new byte[id3v2.length + audio.length + id3v1.length];
+    System.arraycopy(id3v2, 0, data, 0, id3v2.length);
+    System.arraycopy(audio, 0, data, id3v2.length, audio.length);
+    System.arraycopy(id3v1, 0, data, id3v2.length + audio.length, id3v1.length);
+    for(int chunkSize : new int[]{7, 3000, 50_000}) {
+      PushDecoder decoder = new PushDecoder();
+      Assert.assertArrayEquals(expected, push(decoder, data, chunkSize, false));
+      List<Tag> tags = decoder.getTags();
+      Assert.assertEquals(2, tags.size());
+      Assert.assertEquals(Tag.Type.ID3V2, tags.get(0).getType());
+      Assert.assertEquals(id3v2.length, tags.get(0).getLength());
+      Assert.assertNull(tags.get(0).getData());
+      Assert.assertEquals(Tag.Type.ID3V1, tags.get(1).getType());
+      Assert.assertEquals(id3v2.length + audio.length, tags.get(1).getOffset());
+    }
+  }
+  
+  @Test
+  public void state() throws IOException {
+    PushDecoder decoder = new PushDecoder();
+    Assert.assertFalse(decoder.isStarted());
+    Assert.assertTrue(decoder.feed(ByteBuffer.wrap(new byte[]{(byte) 0xFF})).isEmpty());
+    try {
+      decoder.getSamplingFrequency();
+      Assert.fail();
+    } catch(IllegalStateException expected) {
+      // expected
+    }
+    Assert.assertTrue(decoder.finish().isEmpty());
+    Assert.assertTrue(decoder.isFinished());
+    try {
+      decoder.feed(ByteBuffer.allocate(1));
+      Assert.fail();
+    } catch(IllegalStateException expected) {
+      // expected
+    }
+  }
+  
+  @Test
+  public void truncated() throws IOException {
+    byte[] data = TestResources.data("/mp3/mono_kikuo.mp3");
+    PushDecoder decoder = new PushDecoder();
+    List<ByteBuffer> frames = decoder.feed(ByteBuffer.wrap(data, 0, data.length - 100));
+    Assert.assertFalse(frames.isEmpty());
+    try {
+      decoder.finish();
+      Assert.fail();
+    } catch(EOFException expected) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ResilienceTest {
+  private static final String[] NAMES = {
+          "/mp1/mono_kikuo.mp1",
+          "/mp1/stereo_kikuo.mp1",
+          "/mp2/mono_kikuo.mp2",
+          "/mp2/stereo_kikuo.mp2",
+          "/mp3/joint_stereo_22050_kikuo.mp3",
+          "/mp3/joint_stereo_kikuo.mp3",
+          "/mp3/mono_16000_kikuo.mp3",
+          "/mp3/mono_8000_kikuo.mp3",
+          "/mp3/mono_kikuo.mp3",
+          "/mp3/stereo_12000_kikuo.mp3",
+          "/mp3/stereo_kikuo.mp3",
+  };
+
+  private static byte[] decode(byte[] data) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(ByteBuffer.wrap(data))) {
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  private static byte[] decode(byte[] data, Concealment concealment, List<DecodingError> errors, DecoderMetrics metrics, boolean pipelined) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new ByteArrayInputStream(data))) {
+      sound.setResilient(true);
+      sound.setConcealment(concealment);
+      sound.setErrorListener(errors::add);
+      sound.setMetrics(metrics);
+      sound.setPipelined(pipelined);
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+
+  /* Overwrites random bytes past the first frames, including frame headers */
+  private static byte[] corrupt(byte[] data) {
+    byte[] corrupt = data.clone();
+    Random random = new Random(42);
+    for(int i = 0; i < 200; i++) {
+      corrupt[5000 + random.nextInt(data.length - 10000)] = (byte) random.nextInt();
+    }
+    return corrupt;
+  }
+
+  private static long count(List<DecodingError> errors, DecodingError.Type type) {
+    return errors.stream().filter(e -> e.getType() == type).count();
+  }
+
+  @Test
+  public void clean() throws IOException {
+    for(String name : NAMES) {
+      byte[] data = TestResources.data(name);
+      byte[] expected = decode(data);
+      for(boolean pipelined : new boolean[]{false, true}) {
+        List<DecodingError> errors = new ArrayList<>();
+        DecoderMetrics metrics = new DecoderMetrics();
+        Assert.assertArrayEquals(name, expected, decode(data, Concealment.SILENCE, errors, metrics, pipelined));
+        Assert.assertEquals(name, Arrays.asList(), errors);
+        Assert.assertEquals(name, 0, metrics.getFalseSyncs());
+        Assert.assertEquals(name, 0, metrics.getConcealedFrames());
+      }
+    }
+  }
+
+  @Test
+  public void corruptFrames() throws IOException {
+    byte[] data = corrupt(TestResources.data("/mp1/stereo_kikuo.mp1"));
+    try {
+      decode(data);
+      Assert.fail();
+    } catch(RuntimeException expected) {
+      // expected
+    }
+    List<DecodingError> errors = new ArrayList<>();
+    DecoderMetrics metrics = new DecoderMetrics();
+    byte[] decoded = decode(data, Concealment.SILENCE, errors, metrics, false);
+    long corrupt = count(errors, DecodingError.Type.CORRUPT_FRAME);
+    Assert.assertTrue(corrupt > 0);
+    Assert.assertEquals(corrupt, metrics.getConcealedFrames());
+    /* Frames whose header is corrupt are lost, the others are concealed */
+    int frameBytes = 384 * 2 * 2;
+    Assert.assertEquals(0, decoded.length % frameBytes);
+    Assert.assertEquals(decode(TestResources.data("/mp1/stereo_kikuo.mp1")).length / frameBytes - count(errors, DecodingError.Type.LOST_SYNC), decoded.length / frameBytes);
+    for(DecodingError error : errors) {
+      if(error.getType() == DecodingError.Type.CORRUPT_FRAME) {
+        Assert.assertEquals(0, error.getLength());
+        Assert.assertTrue(error.getOffset() >= 5000);
+      } else {
+        Assert.assertEquals(DecodingError.Type.LOST_SYNC, error.getType());
+        Assert.assertTrue(error.getLength() > 0);
+      }
+    }
+    Assert.assertArrayEquals(decoded, decode(data, Concealment.SILENCE, new ArrayList<>(), null, true));
+  }
+
+  @Test
+  public void repeat() throws IOException {
+    byte[] data = corrupt(TestResources.data("/mp1/stereo_kikuo.mp1"));
+    List<DecodingError> errors = new ArrayList<>();
+    byte[] silence = decode(data, Concealment.SILENCE, new ArrayList<>(), null, false);
+    byte[] repeated = decode(data, Concealment.REPEAT, errors, null, false);
+    Assert.assertEquals(silence.length, repeated.length);
+    int frameBytes = 384 * 2 * 2;
+    for(DecodingError error : errors) {
+      if(error.getType() == DecodingError.Type.CORRUPT_FRAME) {
+        int offset = (int) error.getPosition() * 4;
+        Assert.assertArrayEquals(Arrays.copyOfRange(repeated, offset - frameBytes, offset), Arrays.copyOfRange(repeated, offset, offset + frameBytes));
+      }
+    }
+  }
+
+  @Test
+  public void falseSyncs() throws IOException {
+    byte[] data = TestResources.data("/mp3/stereo_kikuo.mp3");
+    /* Random garbage full of copies of the header of the first frame, in the middle of the stream */
+    byte[] garbage = new byte[1000];
+    new Random(42).nextBytes(garbage);
+    for(int i = 0; i < garbage.length - 4; i += 7) {
+      System.arraycopy(data, 0, garbage, i, 4);
+    }
+    byte[] corrupt = new byte[data.length + garbage.length];
+    System.arraycopy(data, 0, corrupt, 0, data.length / 2);
+    System.arraycopy(garbage, 0, corrupt, data.length / 2, garbage.length);
+    System.arraycopy(data, data.length / 2, corrupt, data.length / 2 + garbage.length, data.length - data.length / 2);
+    List<DecodingError> errors = new ArrayList<>();
+    DecoderMetrics metrics = new DecoderMetrics();
+    byte[] decoded = decode(corrupt, Concealment.SILENCE, errors, metrics, false);
+    Assert.assertTrue(metrics.getFalseSyncs() > 0);
+    Assert.assertTrue(count(errors, DecodingError.Type.LOST_SYNC) > 0);
+    Assert.assertTrue(errors.stream().mapToLong(DecodingError::getLength).sum() >= garbage.length);
+    /* At most the frame cut by the garbage is lost */
+    int frameBytes = 1152 * 2 * 2;
+    byte[] expected = decode(data);
+    Assert.assertTrue(decoded.length >= expected.length - frameBytes);
+    Assert.assertTrue(decoded.length <= expected.length);
+  }
+
+  @Test
+  public void truncated() throws IOException {
+    for(String name : new String[]{"/mp2/stereo_kikuo.mp2", "/mp3/stereo_kikuo.mp3"}) {
+      byte[] data = TestResources.data(name);
+      byte[] cut = Arrays.copyOf(data, data.length - 200);
+      List<DecodingError> errors = new ArrayList<>();
+      byte[] decoded = decode(cut, Concealment.SILENCE, errors, null, false);
+      Assert.assertEquals(name, 1, errors.size());
+      DecodingError error = errors.get(0);
+      Assert.assertEquals(name, DecodingError.Type.TRUNCATED_FRAME, error.getType());
+      Assert.assertEquals(name, cut.length, error.getOffset() + error.getLength());
+      Assert.assertEquals(name, decoded.length, error.getPosition() * 4);
+    }
+  }
+
+  @Test
+  public void push() throws IOException {
+    for(String name : new String[]{"/mp1/stereo_kikuo.mp1", "/mp3/joint_stereo_kikuo.mp3"}) {
+      byte[] data = corrupt(TestResources.data(name));
+      List<DecodingError> expectedErrors = new ArrayList<>();
+      byte[] expected = decode(data, Concealment.SILENCE, expectedErrors, null, false);
+      List<DecodingError> errors = new ArrayList<>();
+      PushDecoder decoder = new PushDecoder();
+      decoder.setResilient(true);
+      decoder.setErrorListener(errors::add);
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      for(int i = 0; i < data.length; i += 1000) {
+        for(ByteBuffer frame : decoder.feed(ByteBuffer.wrap(data, i, Math.min(1000, data.length - i)))) {
+          os.write(frame.array());
+        }
+      }
+      for(ByteBuffer frame : decoder.finish()) {
+        os.write(frame.array());
+      }
+      Assert.assertArrayEquals(name, expected, os.toByteArray());
+      Assert.assertEquals(name, expectedErrors.size(), errors.size());
+    }
+  }
+}
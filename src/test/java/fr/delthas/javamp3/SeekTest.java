@@ -0,0 +1,145 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class SeekTest {
+  
+  private static File file(String name) throws IOException {
+    try {
+      return new File(SeekTest.class.getResource(name).toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+  
+  private static byte[] decode(String name) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(Sound sound = new Sound(new BufferedInputStream(SeekTest.class.getResourceAsStream(name)))) {
+      sound.decodeFullyInto(os);
+    }
+    return os.toByteArray();
+  }
+  
+  private static void assertRead(Sound sound, byte[] full, long position, int length) throws IOException {
+    int stride = sound.isStereo() ? 4 : 2;
+    Assert.assertEquals(position, sound.getPosition());
+    byte[] b = new byte[length];
+    int n = 0;
+    while(n < length) {
+      int read = sound.read(b, n, length - n);
+      if(read == -1) {
+        break;
+      }
+      n += read;
+    }
+    int from = (int) (position * stride);
+    int expected = Integer.max(0, Integer.min(length, full.length - from));
+    Assert.assertEquals(expected, n);
+    Assert.assertArrayEquals("Samples after seeking to " + position, Arrays.copyOfRange(full, from, from + expected), Arrays.copyOf(b, n));
+  }
+  
+  private static void seek(Sound sound, byte[] full) throws IOException {
+    long[] positions = {1_000_000, 100_000, 100_500, 3_000, 0, 500_000, 499_000, 1_152 * 40 + 7, 1};
+    try(Sound s = sound) {
+      Assert.assertTrue(s.markSupported());
+      for(long position : positions) {
+        s.seek(position);
+        assertRead(s, full, Math.min(position, full.length / (s.isStereo() ? 4 : 2)), 10_000);
+      }
+      long marked = Math.min(200_000, full.length / (s.isStereo() ? 4 : 2) / 2);
+      s.seek(marked);
+      s.mark(0);
+      assertRead(s, full, marked, 50_000);
+      s.reset();
+      assertRead(s, full, marked, 10_000);
+    }
+  }
+  
+  private static void seek(String name) throws IOException {
+    byte[] full = decode(name);
+    byte[] data = Files.readAllBytes(file(name).toPath());
+    seek(new Sound(new FileInputStream(file(name))), full);
+    seek(new Sound(file(name).toPath()), full);
+    /* A heap buffer with a non-zero array offset and position */
+    byte[] padded = new byte[data.length + 10];
+    System.arraycopy(data, 0, padded, 7, data.length);
+    ByteBuffer heap = ByteBuffer.wrap(padded, 2, data.length + 8);
+    ((java.nio.Buffer) heap).position(3);
+    heap = heap.slice();
+    ((java.nio.Buffer) heap).position(4);
+    ((java.nio.Buffer) heap).limit(4 + data.length);
+    seek(new Sound(heap), full);
+    Assert.assertEquals(4, heap.position());
+    /* Buffers without an array, read in place, with a non-zero position */
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 5);
+    ((java.nio.Buffer) direct).position(5);
+    direct.put(data);
+    ((java.nio.Buffer) direct).position(5);
+    seek(new Sound(direct), full);
+    Assert.assertEquals(5, direct.position());
+    seek(new Sound(ByteBuffer.wrap(padded, 7, data.length).asReadOnlyBuffer()), full);
+    /* Non-seekable streams can only skip forward */
+    try(Sound sound = new Sound(new BufferedInputStream(SeekTest.class.getResourceAsStream(name)))) {
+      Assert.assertFalse(sound.markSupported());
+      int stride = sound.isStereo() ? 4 : 2;
+      long skipped = Math.min(123_457, full.length / stride * 2 / 3);
+      Assert.assertEquals(skipped * stride + 1, sound.skip(skipped * stride + 1));
+      sound.skip(stride - 1);
+      assertRead(sound, full, skipped + 1, 10_000);
+      try {
+        sound.seek(0);
+        Assert.fail();
+      } catch(IOException expected) {
+        // expected
+      }
+    }
+  }
+  
+  @Test
+  public void fastForward() throws IOException {
+    String[] names = {"/mp1/stereo_kikuo.mp1", "/mp2/mono_kikuo.mp2", "/mp3/stereo_kikuo.mp3", "/mp3/joint_stereo_22050_kikuo.mp3", "/mp3/mono_8000_kikuo.mp3"};
+    for(String name : names) {
+      byte[] full = decode(name);
+      int stride = name.contains("mono") ? 2 : 4;
+      for(long position : new long[]{1_152 * 3 + 5, 100_000, full.length / stride - 1_000, full.length / stride + 1_000}) {
+        DecoderMetrics metrics = new DecoderMetrics();
+        try(Sound sound = new Sound(new BufferedInputStream(SeekTest.class.getResourceAsStream(name)))) {
+          sound.setMetrics(metrics);
+          sound.seek(position);
+          /* Only the frames overlapping the target frame, and the target frame, are decoded */
+          Assert.assertTrue(name + " " + position + " " + metrics, metrics.getFrames() <= 3);
+          assertRead(sound, full, Math.min(position, full.length / stride), 10_000);
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void MPEG_I_layer_I() throws IOException {
+    seek("/mp1/stereo_kikuo.mp1");
+  }
+  
+  @Test
+  public void MPEG_I_layer_II() throws IOException {
+    seek("/mp2/mono_kikuo.mp2");
+  }
+  
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    seek("/mp3/stereo_kikuo.mp3");
+    seek("/mp3/mono_kikuo.mp3");
+  }
+  
+  @Test
+  public void MPEG_II_layer_III() throws IOException {
+    seek("/mp3/joint_stereo_22050_kikuo.mp3");
+    seek("/mp3/mono_8000_kikuo.mp3");
+  }
+}
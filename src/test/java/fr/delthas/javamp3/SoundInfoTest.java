@@ -0,0 +1,53 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+
+public class SoundInfoTest {
+  
+  private static void scan(String name, int bitrate, boolean variableBitrate) throws IOException {
+    SoundInfo info;
+    try(InputStream in = new BufferedInputStream(SoundInfoTest.class.getResourceAsStream(name))) {
+      info = SoundInfo.scan(in);
+    }
+    long samples = 0;
+    try(Sound sound = new Sound(new BufferedInputStream(SoundInfoTest.class.getResourceAsStream(name)))) {
+      Assert.assertEquals(sound.getSamplingFrequency(), info.getSamplingFrequency());
+      Assert.assertEquals(sound.isStereo(), info.isStereo());
+      byte[] b = new byte[1 << 16];
+      int read;
+      while((read = sound.read(b)) != -1) {
+        samples += read;
+      }
+      samples /= sound.isStereo() ? 4 : 2;
+    }
+    Assert.assertEquals(samples, info.getSampleCount());
+    Assert.assertEquals((double) samples / info.getSamplingFrequency(), info.getDuration(), 1e-9);
+    Assert.assertEquals(0, info.getFrameOffset(0));
+    Assert.assertEquals(bitrate, info.getAverageBitrate(), bitrate / 100);
+    Assert.assertEquals(variableBitrate, info.isVariableBitrate());
+  }
+  
+  @Test
+  public void MPEG_I_layer_I() throws IOException {
+    scan("/mp1/stereo_kikuo.mp1", 224000, false);
+  }
+  
+  @Test
+  public void MPEG_I_layer_II() throws IOException {
+    scan("/mp2/mono_kikuo.mp2", 192000, false);
+  }
+  
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    scan("/mp3/stereo_kikuo.mp3", 200000, true);
+  }
+  
+  @Test
+  public void MPEG_II_layer_III() throws IOException {
+    scan("/mp3/joint_stereo_22050_kikuo.mp3", 48000, false);
+    scan("/mp3/mono_8000_kikuo.mp3", 16000, false);
+  }
+}
@@ -0,0 +1,145 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TagTest {
+  
+  private static final String NAME = "/mp2/stereo_kikuo.mp2";
+  
+  private static byte[] read(String name) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try(InputStream in = TagTest.class.getResourceAsStream(name)) {
+      byte[] b = new byte[1 << 16];
+      int read;
+      while((read = in.read(b)) != -1) {
+        os.write(b, 0, read);
+      }
+    }
+    return os.toByteArray();
+  }
+  
+  private static byte[] decode(Sound sound) throws IOException {
+    try(Sound s = sound) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      s.decodeFullyInto(os);
+      return os.toByteArray();
+    }
+  }
+  
+  /* Garbage which contains valid MPEG frame headers */
+  private static byte[] garbage(int length) {
+    byte[] garbage = new byte[length];
+    for(int i = 0; i < length; i += 7) {
+      garbage[i] = (byte) 0xFF;
+      if(i + 1 < length) {
+        garbage[i + 1] = (byte) 0xFD;
+      }
+      if(i + 2 < length) {
+        garbage[i + 2] = (byte) 0xB4;
+      }
+    }
+    return garbage;
+  }
+  
+  private static byte[] id3v2(int size) {
+    byte[] tag = new byte[10 + size];
+    System.arraycopy("ID3".getBytes(StandardCharsets.US_ASCII), 0, tag, 0, 3);
+    tag[3] = 4;
+    tag[6] = (byte) (size >>> 21 & 0x7F);
+    tag[7] = (byte) (size >>> 14 & 0x7F);
+    tag[8] = (byte) (size >>> 7 & 0x7F);
+    tag[9] = (byte) (size & 0x7F);
+    System.arraycopy(garbage(size), 0, tag, 10, size);
+    return tag;
+  }
+  
+  private static byte[] ape(int items, boolean header) {
+    byte[] tag = new byte[(header ? 32 : 0) + items + 32];
+    byte[] block = new byte[32];
+    System.arraycopy("APETAGEX".getBytes(StandardCharsets.US_ASCII), 0, block, 0, 8);
+    ByteBuffer.wrap(block).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(8, 2000).putInt(12, items + 32).putInt(20, header ? 1 << 31 : 0);
+    if(header) {
+      System.arraycopy(block, 0, tag, 0, 32);
+      tag[23] |= 1 << 5;
+    }
+    System.arraycopy(garbage(items), 0, tag, header ? 32 : 0, items);
+    System.arraycopy(block, 0, tag, tag.length - 32, 32);
+    return tag;
+  }
+  
+  private static byte[] id3v1() {
+    byte[] tag = new byte[128];
+    System.arraycopy("TAG".getBytes(StandardCharsets.US_ASCII), 0, tag, 0, 3);
+    System.arraycopy(garbage(125), 0, tag, 3, 125);
+    return tag;
+  }
+  
+  private static byte[] concat(byte[]... arrays) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for(byte[] array : arrays) {
+      os.write(array, 0, array.length);
+    }
+    return os.toByteArray();
+  }
+  
+  private static void assertTags(List<Tag> tags, int audio, int id3v2, int ape) throws IOException {
+    Assert.assertEquals(3, tags.size());
+    Assert.assertEquals(Tag.Type.ID3V2, tags.get(0).getType());
+    Assert.assertEquals(0, tags.get(0).getOffset());
+    Assert.assertEquals(id3v2, tags.get(0).getLength());
+    Assert.assertEquals(Tag.Type.APE, tags.get(1).getType());
+    Assert.assertEquals(id3v2 + audio, tags.get(1).getOffset());
+    Assert.assertEquals(ape, tags.get(1).getLength());
+    Assert.assertEquals(Tag.Type.ID3V1, tags.get(2).getType());
+    Assert.assertEquals(id3v2 + audio + ape, tags.get(2).getOffset());
+    Assert.assertEquals(128, tags.get(2).getLength());
+  }
+  
+  @Test
+  public void stream() throws IOException {
+    byte[] audio = read(NAME);
+    byte[] expected = decode(new Sound(new ByteArrayInputStream(audio)));
+    byte[] id3v2 = id3v2(3 << 20);
+    byte[] ape = ape(5000, true);
+    byte[] data = concat(id3v2, audio, ape, id3v1());
+    try(Sound sound = new Sound(new BufferedInputStream(new ByteArrayInputStream(data)))) {
+      Assert.assertEquals(1, sound.getTags().size());
+      Assert.assertNull(sound.getTags().get(0).getData());
+      Assert.assertArrayEquals(expected, decode(sound));
+      assertTags(sound.getTags(), audio.length, id3v2.length, ape.length);
+    }
+  }
+  
+  @Test
+  public void seekable() throws IOException {
+    byte[] audio = read(NAME);
+    byte[] expected = decode(new Sound(new ByteArrayInputStream(audio)));
+    byte[] id3v2 = id3v2(100_000);
+    /* An APE tag without a header can only be found from the end of the stream */
+    byte[] ape = ape(5000, false);
+    byte[] data = concat(id3v2, audio, ape, id3v1());
+    Path path = Files.createTempFile("javamp3", ".mp2");
+    try {
+      Files.write(path, data);
+      for(Sound sound : new Sound[]{new Sound(ByteBuffer.wrap(data)), new Sound(path), new Sound(new FileInputStream(path.toFile()))}) {
+        List<Tag> tags = sound.getTags();
+        assertTags(tags, audio.length, id3v2.length, ape.length);
+        ByteBuffer tag = tags.get(2).getData();
+        Assert.assertEquals(128, tag.remaining());
+        Assert.assertEquals('T', tag.get(0));
+        Assert.assertEquals(ape.length, tags.get(1).getData().remaining());
+        Assert.assertArrayEquals(expected, decode(sound));
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package fr.delthas.javamp3;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+
+final class TestResources {
+  private TestResources() {}
+  
+  /* The bytes of a test resource, such as "/mp3/mono_kikuo.mp3" */
+  static byte[] data(String name) throws IOException {
+    try {
+      return Files.readAllBytes(new File(TestResources.class.getResource(name).toURI()).toPath());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+}
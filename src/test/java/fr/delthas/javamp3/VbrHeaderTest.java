@@ -0,0 +1,102 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class VbrHeaderTest {
+  
+  private static Path path(String name) throws IOException {
+    try {
+      return Paths.get(VbrHeaderTest.class.getResource(name).toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+  
+  private static byte[] decode(Sound sound) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    sound.decodeFullyInto(os);
+    return os.toByteArray();
+  }
+  
+  private static void gapless(String name, long bytes) throws IOException {
+    byte[] full;
+    try(Sound sound = new Sound(new BufferedInputStream(VbrHeaderTest.class.getResourceAsStream(name)))) {
+      VbrHeader header = sound.getVbrHeader();
+      Assert.assertNotNull(header);
+      Assert.assertEquals(VbrHeader.Type.XING, header.getType());
+      Assert.assertEquals(627, header.getFrameCount());
+      Assert.assertEquals(bytes, header.getByteCount());
+      Assert.assertEquals("LAME3.99r", header.getEncoder());
+      Assert.assertEquals(576, header.getEncoderDelay());
+      Assert.assertEquals(794, header.getEncoderPadding());
+      Assert.assertTrue(header.hasTableOfContents());
+      Assert.assertEquals(0, header.getSeekOffset(0));
+      Assert.assertEquals(bytes, header.getSeekOffset(1));
+      Assert.assertTrue(header.getSeekOffset(0.5) > bytes / 4 && header.getSeekOffset(0.5) < bytes * 3 / 4);
+      full = decode(sound);
+    }
+    int stride = full.length / (628 * 1152);
+    int start = 1152 + 576 + 529;
+    int length = 627 * 1152 - 576 - 794;
+    byte[] expected = Arrays.copyOfRange(full, start * stride, (start + length) * stride);
+    try(Sound sound = new Sound(new BufferedInputStream(VbrHeaderTest.class.getResourceAsStream(name)))) {
+      sound.setGapless(true);
+      Assert.assertEquals(0, sound.getPosition());
+      Assert.assertArrayEquals(expected, decode(sound));
+      Assert.assertEquals(length, sound.getPosition());
+    }
+    try(Sound sound = new Sound(path(name))) {
+      sound.setGapless(true);
+      sound.seek(length - 1000);
+      Assert.assertArrayEquals(Arrays.copyOfRange(expected, (length - 1000) * stride, length * stride), decode(sound));
+      sound.seek(0);
+      byte[] b = new byte[1000 * stride];
+      Assert.assertEquals(b.length, sound.read(b));
+      Assert.assertArrayEquals(Arrays.copyOf(expected, b.length), b);
+    }
+  }
+  
+  @Test
+  public void MPEG_I_layer_III() throws IOException {
+    gapless("/mp3/stereo_kikuo.mp3", 0x5c280);
+    gapless("/mp3/mono_kikuo.mp3", 0x2e980);
+  }
+  
+  @Test
+  public void MPEG_II_5_layer_III() throws IOException {
+    byte[] full;
+    try(Sound sound = new Sound(path("/mp3/stereo_12000_kikuo.mp3"))) {
+      VbrHeader header = sound.getVbrHeader();
+      Assert.assertNotNull(header);
+      Assert.assertEquals(VbrHeader.Type.INFO, header.getType());
+      Assert.assertEquals(127, header.getFrameCount());
+      Assert.assertEquals(576, header.getEncoderDelay());
+      Assert.assertEquals(576, header.getEncoderPadding());
+      full = decode(sound);
+    }
+    /* Frames have a single granule of 576 samples */
+    int start = 576 + 576 + 529;
+    int length = 127 * 576 - 576 - 576;
+    try(Sound sound = new Sound(path("/mp3/stereo_12000_kikuo.mp3"))) {
+      sound.setGapless(true);
+      Assert.assertArrayEquals(Arrays.copyOfRange(full, start * 4, (start + length) * 4), decode(sound));
+      Assert.assertEquals(length, sound.getPosition());
+    }
+  }
+  
+  @Test
+  public void MPEG_I_layer_II() throws IOException {
+    try(Sound sound = new Sound(new BufferedInputStream(VbrHeaderTest.class.getResourceAsStream("/mp2/stereo_kikuo.mp2")))) {
+      Assert.assertNull(sound.getVbrHeader());
+      sound.setGapless(true);
+      Assert.assertEquals(0, sound.getPosition());
+    }
+  }
+}
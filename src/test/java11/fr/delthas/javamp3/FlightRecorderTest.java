@@ -0,0 +1,45 @@
+package fr.delthas.javamp3;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+public class FlightRecorderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void flightRecorder() throws IOException {
+    DecoderMetrics metrics = new DecoderMetrics();
+    metrics.setFlightRecorderEvents(true);
+    Path path = folder.newFile().toPath();
+    try(Recording recording = new Recording()) {
+      recording.enable("fr.delthas.javamp3.FrameDecode");
+      recording.start();
+      DecoderMetricsTest.decode(TestResources.data("/mp3/mono_kikuo.mp3"), metrics, true);
+      recording.stop();
+      recording.dump(path);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(path);
+    events.removeIf(event -> !event.getEventType().getName().equals("fr.delthas.javamp3.FrameDecode"));
+    Assert.assertEquals(metrics.getFrames(), events.size());
+    events.sort(Comparator.comparingLong(event -> event.getLong("position")));
+    for(int i = 0; i < events.size(); i++) {
+      RecordedEvent event = events.get(i);
+      Assert.assertEquals(3, event.getInt("layer"));
+      Assert.assertEquals(1, event.getInt("channels"));
+      /* The first frame is decoded when creating the sound, before the metrics are attached */
+      Assert.assertEquals((i + 1) * 1152L, event.getLong("position"));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package fr.delthas.javamp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+public class DecoderProcessorTest {
+  @Test
+  public void processor() throws Exception {
+    for(String name : PushDecoderTest.NAMES) {
+      byte[] data = TestResources.data(name);
+      byte[] expected = PushDecoderTest.decode(data, SampleFormat.PCM_16);
+      DecoderProcessor processor = new DecoderProcessor();
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      CountDownLatch latch = new CountDownLatch(1);
+      Throwable[] error = new Throwable[1];
+      processor.subscribe(new Flow.Subscriber<ByteBuffer>() {
+        private Flow.Subscription subscription;
+        private int frames;
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          this.subscription = subscription;
+          subscription.request(3);
+        }
+        
+        @Override
+        public void onNext(ByteBuffer item) {
+          os.write(item.array(), item.arrayOffset(), item.remaining());
+          /* Requests by small batches, so that the back pressure is applied upstream */
+          if(++frames % 3 == 0) {
+            subscription.request(3);
+          }
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+          error[0] = throwable;
+          latch.countDown();
+        }
+        
+        @Override
+        public void onComplete() {
+          latch.countDown();
+        }
+      });
+      try(SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+        publisher.subscribe(processor);
+        for(int i = 0; i < data.length; i += 1000) {
+          publisher.submit(ByteBuffer.wrap(data, i, Math.min(1000, data.length - i)));
+        }
+      }
+      Assert.assertTrue(latch.await(1, TimeUnit.MINUTES));
+      Assert.assertNull(error[0]);
+      Assert.assertArrayEquals(name, expected, os.toByteArray());
+    }
+  }
+  
+  @Test
+  public void processorError() throws Exception {
+    byte[] data = TestResources.data("/mp3/mono_kikuo.mp3");
+    DecoderProcessor processor = new DecoderProcessor();
+    List<Throwable> errors = new ArrayList<>();
+    processor.subscribe(new Flow.Subscriber<ByteBuffer>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+      
+      @Override
+      public void onNext(ByteBuffer item) {
+      }
+      
+      @Override
+      public void onError(Throwable throwable) {
+        errors.add(throwable);
+      }
+      
+      @Override
+      public void onComplete() {
+        Assert.fail();
+      }
+    });
+    boolean[] cancelled = new boolean[1];
+    processor.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+      }
+      
+      @Override
+      public void cancel() {
+        cancelled[0] = true;
+      }
+    });
+    processor.onNext(ByteBuffer.wrap(data, 0, data.length - 100));
+    processor.onComplete();
+    Assert.assertEquals(1, errors.size());
+    Assert.assertTrue(errors.get(0) instanceof EOFException);
+    Assert.assertTrue(cancelled[0]);
+  }
+}